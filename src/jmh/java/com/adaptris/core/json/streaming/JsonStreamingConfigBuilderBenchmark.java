@@ -0,0 +1,60 @@
+package com.adaptris.core.json.streaming;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+import de.odysseus.staxon.json.JsonXMLConfig;
+
+/**
+ * Measures {@link JsonStreamingConfigBuilder#build()} against the cached lookup used by the factories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonStreamingConfigBuilderBenchmark {
+
+  private JsonStreamingConfigBuilder defaults;
+  private JsonStreamingConfigBuilder configured;
+
+  @Setup
+  public void setup() {
+    defaults = new JsonStreamingConfigBuilder();
+    KeyValuePairSet mappings = new KeyValuePairSet();
+    mappings.addKeyValuePair(new KeyValuePair("ns", "http://example.com/ns"));
+    configured = new JsonStreamingConfigBuilder().withAutoArray(true).withAutoPrimitive(true).withPrettyPrint(true)
+        .withVirtualRoot("root").withNamespaceMappings(mappings);
+  }
+
+  @Benchmark
+  public JsonXMLConfig build_Defaults() {
+    return defaults.build();
+  }
+
+  @Benchmark
+  public JsonXMLConfig build_Configured() {
+    return configured.build();
+  }
+
+  @Benchmark
+  public JsonXMLConfig cached_Defaults() {
+    return JsonStreamingFactoryCache.config(defaults);
+  }
+
+  @Benchmark
+  public JsonXMLConfig cached_Configured() {
+    return JsonStreamingFactoryCache.config(configured);
+  }
+}
@@ -0,0 +1,76 @@
+package com.adaptris.core.json.streaming;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.DefaultMessageFactory;
+import com.adaptris.core.util.CloseableIterable;
+import com.adaptris.core.json.streaming.Payloads.Payload;
+
+/**
+ * Measures iterating over all the split messages from {@link JsonStreamingSplitter#splitMessage(AdaptrisMessage)}.
+ * <p>
+ * The number of elements in the array is derived from {@code payloadSize / elementSize}. Memory mapped input is
+ * measured separately, by {@link MemoryMappedSplitterBenchmark}, since it only applies to file backed payloads.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class JsonStreamingSplitterBenchmark {
+
+  @Param({"1KB", "1MB", "100MB", "1GB"})
+  public String payloadSize;
+
+  @Param({"128", "4096"})
+  public int elementSize;
+
+  @Param({"STAXON", "JACKSON"})
+  public JsonStreamingEngine engine;
+
+  private Payload payload;
+  private JsonStreamingSplitter splitter;
+
+  @Setup
+  public void setup() throws Exception {
+    payload = Payloads.json(payloadSize, elementSize);
+    splitter = new JsonStreamingSplitter(Payloads.SPLIT_PATH);
+    splitter.setJsonStreamingConfig(
+        new JsonStreamingConfigBuilder().withAutoArray(true).withAutoPrimitive(true).withEngine(engine));
+    // Always split into in-memory messages, regardless of the size of the source message.
+    splitter.setMessageFactory(new DefaultMessageFactory());
+  }
+
+  @TearDown
+  public void tearDown() {
+    payload.delete();
+  }
+
+  @Benchmark
+  public long splitMessage(Blackhole bh) throws Exception {
+    long count = 0;
+    try (CloseableIterable<AdaptrisMessage> children = CloseableIterable
+        .ensureCloseable(splitter.splitMessage(payload.newMessage()))) {
+      for (AdaptrisMessage child : children) {
+        bh.consume(child);
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,176 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.lms.FileBackedMessage;
+import com.adaptris.core.lms.FileBackedMessageFactory;
+
+/**
+ * Generates synthetic payloads for the benchmarks.
+ * <p>
+ * Payloads are of the form <code>{"envelope":{"document":[{...},{...}]}}</code> (or the XML equivalent) where each
+ * document is approximately {@code elementSize} bytes; documents are added until the payload reaches the requested
+ * size. Payloads are always generated into a temporary file so that the 1GB variants do not need to be held on the
+ * heap.
+ * </p>
+ */
+final class Payloads {
+
+  static final String SPLIT_PATH = "/envelope/document";
+
+  // Anything larger than this is handled as a FileBackedMessage.
+  private static final long IN_MEMORY_LIMIT = 16L * 1024 * 1024;
+
+  private Payloads() {
+  }
+
+  /**
+   * Parse a size such as {@code 1KB}, {@code 100MB} or {@code 1GB}.
+   */
+  static long parseSize(String size) {
+    String s = size.trim().toUpperCase();
+    if (s.endsWith("GB")) {
+      return Long.parseLong(s.substring(0, s.length() - 2)) * 1024 * 1024 * 1024;
+    }
+    if (s.endsWith("MB")) {
+      return Long.parseLong(s.substring(0, s.length() - 2)) * 1024 * 1024;
+    }
+    if (s.endsWith("KB")) {
+      return Long.parseLong(s.substring(0, s.length() - 2)) * 1024;
+    }
+    return Long.parseLong(s);
+  }
+
+  /**
+   * Generate a JSON payload.
+   */
+  static Payload json(String size, int elementSize) throws IOException {
+    File file = tempFile(".json");
+    long count = writeJson(file, parseSize(size), elementSize);
+    return new Payload(file, count);
+  }
+
+  /**
+   * Generate the XML equivalent of {@link #json(String, int)}.
+   */
+  static Payload xml(String size, int elementSize) throws IOException {
+    File file = tempFile(".xml");
+    long count = writeXml(file, parseSize(size), elementSize);
+    return new Payload(file, count);
+  }
+
+  private static long writeJson(File file, long size, int elementSize) throws IOException {
+    try (Writer w = writer(file)) {
+      w.write("{\"envelope\":{\"document\":[");
+      String pad = padding(elementSize);
+      long count = 0;
+      long written = 0;
+      do {
+        if (count > 0) {
+          w.write(',');
+        }
+        String element = String.format("{\"id\":%d,\"name\":\"document-%d\",\"flag\":%b,\"value\":\"%s\"}", count,
+            count, count % 2 == 0, pad);
+        w.write(element);
+        written += element.length() + 1;
+        count++;
+      } while (written < size);
+      w.write("]}}");
+      return count;
+    }
+  }
+
+  private static long writeXml(File file, long size, int elementSize) throws IOException {
+    try (Writer w = writer(file)) {
+      w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?><envelope><?xml-multiple document?>");
+      String pad = padding(elementSize);
+      long count = 0;
+      long written = 0;
+      do {
+        String element = String.format("<document><id>%d</id><name>document-%d</name><flag>%b</flag><value>%s</value>"
+            + "</document>", count, count, count % 2 == 0, pad);
+        w.write(element);
+        written += element.length();
+        count++;
+      } while (written < size);
+      w.write("</envelope>");
+      return count;
+    }
+  }
+
+  private static File tempFile(String suffix) throws IOException {
+    File f = File.createTempFile("json-streaming-jmh", suffix);
+    f.deleteOnExit();
+    return f;
+  }
+
+  private static Writer writer(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8),
+        65536);
+  }
+
+  // The fixed parts of an element are ~60 bytes, pad out the rest.
+  private static String padding(int elementSize) {
+    return StringUtils.repeat('x', Math.max(0, elementSize - 60));
+  }
+
+  /**
+   * A generated payload.
+   * <p>
+   * Small payloads are read into memory once, so that each invocation doesn't measure disk I/O; larger payloads are
+   * handed to each invocation as a {@link FileBackedMessage}.
+   * </p>
+   */
+  static final class Payload {
+    private final File file;
+    private final byte[] bytes;
+    private final long count;
+
+    private Payload(File file, long count) throws IOException {
+      this.file = file;
+      this.count = count;
+      bytes = file.length() <= IN_MEMORY_LIMIT ? Files.readAllBytes(file.toPath()) : null;
+    }
+
+    /**
+     * The number of repeating documents in the payload.
+     */
+    long count() {
+      return count;
+    }
+
+    AdaptrisMessage newMessage() throws IOException {
+      if (bytes != null) {
+        return AdaptrisMessageFactory.getDefaultInstance().newMessage(bytes);
+      }
+      FileBackedMessage msg = (FileBackedMessage) new FileBackedMessageFactory().newMessage();
+      msg.initialiseFrom(file);
+      return msg;
+    }
+
+    /**
+     * Delete the file that a message from {@link #newMessage()} has been written to, if it isn't the payload itself.
+     */
+    void discard(AdaptrisMessage msg) {
+      if (msg instanceof FileBackedMessage) {
+        File current = ((FileBackedMessage) msg).currentSource();
+        if (!file.equals(current)) {
+          FileUtils.deleteQuietly(current);
+        }
+      }
+    }
+
+    void delete() {
+      FileUtils.deleteQuietly(file);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.adaptris.core.json.streaming;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.json.streaming.Payloads.Payload;
+import com.adaptris.core.transform.json.TransformationDirection;
+import com.adaptris.core.transform.json.TransformationDriver;
+
+/**
+ * Measures both streaming transformation drivers in both directions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class TransformationDriverBenchmark {
+
+  private static final int ELEMENT_SIZE = 512;
+
+  public enum Driver {
+    DEFAULT {
+      @Override
+      TransformationDriver create() {
+        return new DefaultStreamingTransformationDriver();
+      }
+    },
+    ADVANCED {
+      @Override
+      TransformationDriver create() {
+        return new AdvancedStreamingTransformationDriver();
+      }
+    },
+    ADVANCED_CURSOR {
+      @Override
+      TransformationDriver create() {
+        return new AdvancedStreamingTransformationDriver().withCursorTranscoding(true);
+      }
+    },
+    ADVANCED_JACKSON {
+      @Override
+      TransformationDriver create() {
+        return new AdvancedStreamingTransformationDriver().withCursorTranscoding(true)
+            .withConfig(new JsonStreamingConfigBuilder().withEngine(JsonStreamingEngine.JACKSON));
+      }
+    };
+
+    abstract TransformationDriver create();
+  }
+
+  @Param({"1KB", "1MB", "100MB", "1GB"})
+  public String payloadSize;
+
+  @Param({"JSON_TO_XML", "XML_TO_JSON"})
+  public TransformationDirection direction;
+
+  @Param({"DEFAULT", "ADVANCED", "ADVANCED_CURSOR", "ADVANCED_JACKSON"})
+  public Driver driver;
+
+  private Payload payload;
+  private TransformationDriver transformationDriver;
+  private AdaptrisMessage message;
+
+  @Setup
+  public void setup() throws Exception {
+    payload = direction == TransformationDirection.JSON_TO_XML ? Payloads.json(payloadSize, ELEMENT_SIZE)
+        : Payloads.xml(payloadSize, ELEMENT_SIZE);
+    transformationDriver = driver.create();
+  }
+
+  @TearDown
+  public void tearDown() {
+    payload.delete();
+  }
+
+  @TearDown(Level.Iteration)
+  public void deleteOutput() {
+    payload.discard(message);
+    message = null;
+  }
+
+  // File backed messages are written to a new temp file by each invocation, which would otherwise be left until the
+  // message is garbage collected; at 1GB a time, that fills the disk long before the run ends. The previous output is
+  // deleted here rather than in an invocation level fixture, which would skew the timing of the small payloads; it's
+  // a no-op for them anyway.
+  @Benchmark
+  public AdaptrisMessage transform() throws Exception {
+    payload.discard(message);
+    message = payload.newMessage();
+    transformationDriver.transform(message, direction);
+    return message;
+  }
+}
@@ -3,13 +3,15 @@ package com.adaptris.core.json.streaming;
 import javax.validation.Valid;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
+import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.ObjectUtils;
+import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.ComponentProfile;
 import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.transform.json.TransformationDirection;
 import com.adaptris.core.transform.json.TransformationDriver;
-import com.adaptris.stax.XmlInputFactoryBuilder;
-import com.adaptris.stax.XmlOutputFactoryBuilder;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -24,7 +26,7 @@ import lombok.Setter;
  */
 @XStreamAlias("advanced-streaming-transformation-driver")
 @NoArgsConstructor
-@DisplayOrder(order = {"config"})
+@DisplayOrder(order = {"config", "cursorTranscoding", "memoryMappedInput", "metricsId"})
 @ComponentProfile(summary = "streaming xml/json driver that allows customisations",
     tag = "json,xml", since = "3.11.0")
 public class AdvancedStreamingTransformationDriver extends DefaultStreamingTransformationDriver {
@@ -37,11 +39,66 @@ public class AdvancedStreamingTransformationDriver extends DefaultStreamingTrans
   @Setter
   private JsonStreamingConfigBuilder config;
 
+  /**
+   * Whether to transcode using the StAX cursor API rather than the event API.
+   * <p>
+   * The event API creates an {@code XMLEvent} for every element, attribute and piece of character data, which is a
+   * significant source of garbage when transforming large documents. Setting this to true uses the
+   * {@code XMLStreamReader}/{@code XMLStreamWriter} API instead; the output is unchanged. The default is false if not
+   * specified.
+   * </p>
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean cursorTranscoding;
+
+  /**
+   * Whether to read file backed messages through a memory mapped file.
+   * <p>
+   * If the message is a {@link com.adaptris.core.lms.FileBackedMessage} then the underlying file is mapped into memory
+   * and handed directly to the parser, avoiding the copies made by {@link AdaptrisMessage#getInputStream()} and a
+   * {@code BufferedInputStream}. This should not be enabled if the message factory compresses the file. The default is
+   * false if not specified.
+   * </p>
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean memoryMappedInput;
+
   public AdvancedStreamingTransformationDriver withConfig(JsonStreamingConfigBuilder b) {
     setConfig(b);
     return this;
   }
 
+  public AdvancedStreamingTransformationDriver withCursorTranscoding(Boolean b) {
+    setCursorTranscoding(b);
+    return this;
+  }
+
+  public AdvancedStreamingTransformationDriver withMemoryMappedInput(Boolean b) {
+    setMemoryMappedInput(b);
+    return this;
+  }
+
+  public AdvancedStreamingTransformationDriver withMetricsId(String s) {
+    setMetricsId(s);
+    return this;
+  }
+
+  @Override
+  protected boolean cursorTranscoding() {
+    return BooleanUtils.toBooleanDefaultIfNull(getCursorTranscoding(), false);
+  }
+
+  @Override
+  protected boolean memoryMappedInput() {
+    return BooleanUtils.toBooleanDefaultIfNull(getMemoryMappedInput(), false);
+  }
+
   private JsonStreamingConfigBuilder config() {
     return ObjectUtils.defaultIfNull(getConfig(), new JsonStreamingConfigBuilder());
   }
@@ -49,7 +106,7 @@ public class AdvancedStreamingTransformationDriver extends DefaultStreamingTrans
   @Override
   protected XMLInputFactory inputBuilder(TransformationDirection dir) {
     if (dir == TransformationDirection.JSON_TO_XML) {
-      ((XmlInputFactoryBuilder) new JsonStreamingInputFactory().withConfig(config())).build();
+      return JsonStreamingFactoryCache.inputFactory(config());
     }
     return super.inputBuilder(dir);
   }
@@ -58,8 +115,7 @@ public class AdvancedStreamingTransformationDriver extends DefaultStreamingTrans
   @Override
   protected XMLOutputFactory outputBuilder(TransformationDirection dir) {
     if (dir == TransformationDirection.XML_TO_JSON) {
-      return ((XmlOutputFactoryBuilder) new JsonStreamingOutputFactory().withConfig(config()))
-          .build();
+      return JsonStreamingFactoryCache.outputFactory(config());
     }
     return super.outputBuilder(dir);
   }
@@ -0,0 +1,131 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Queue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.util.CloseableIterable;
+
+/**
+ * Saves a checkpoint as the split messages are processed.
+ * <p>
+ * A split message is treated as processed once the consumer asks for the next one (or closes the iterable); so if
+ * processing fails, the checkpoint only covers the split messages before the one that failed, and that split message
+ * is produced again when splitting is resumed. Once every split message has been processed, the checkpoint is
+ * removed.
+ * </p>
+ */
+final class CheckpointingSplitGenerator implements CloseableIterable<AdaptrisMessage>, Iterator<AdaptrisMessage> {
+
+  private transient Logger log = LoggerFactory.getLogger(CheckpointingSplitGenerator.class);
+
+  private final CloseableIterable<AdaptrisMessage> messages;
+  private final SplitCheckpointTracker tracker;
+  private final Queue<Integer> elementCounts;
+  private final SplitCheckpointStore store;
+  private final String id;
+  private final int interval;
+  private Iterator<AdaptrisMessage> iterator;
+  // the number of elements in the split messages that have been returned.
+  private long returned;
+  private long saved;
+  private SplitCheckpoint unsaved;
+  private boolean finished = false;
+
+  /**
+   * Constructor.
+   *
+   * @param messages the split messages.
+   * @param tracker the tracker that the document is read through.
+   * @param elementCounts the number of elements in each split message, in order.
+   * @param store the store.
+   * @param id the id of the message being split.
+   * @param resumedFrom the number of elements processed before this split, if it was resumed from a checkpoint.
+   * @param interval the number of elements between each checkpoint.
+   */
+  CheckpointingSplitGenerator(Iterable<AdaptrisMessage> messages, SplitCheckpointTracker tracker,
+      Queue<Integer> elementCounts, SplitCheckpointStore store, String id, long resumedFrom, int interval) {
+    this.messages = CloseableIterable.ensureCloseable(messages);
+    this.tracker = tracker;
+    this.elementCounts = elementCounts;
+    this.store = store;
+    this.id = id;
+    this.interval = Math.max(1, interval);
+    returned = resumedFrom;
+    saved = resumedFrom;
+    if (resumedFrom > 0) {
+      log.debug("Resuming [{}] after {} elements", id, resumedFrom);
+    }
+  }
+
+  @Override
+  public Iterator<AdaptrisMessage> iterator() {
+    if (iterator != null) {
+      throw new IllegalStateException("iterator already invoked");
+    }
+    iterator = messages.iterator();
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+    commit();
+    boolean result = iterator.hasNext();
+    if (!result && !finished) {
+      finished = true;
+      try {
+        store.delete(id);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public AdaptrisMessage next() {
+    commit();
+    AdaptrisMessage msg = iterator.next();
+    Integer count = elementCounts.poll();
+    returned += count != null ? count : 1;
+    return msg;
+  }
+
+  // Everything that has been returned has now been processed.
+  private void commit() {
+    SplitCheckpoint checkpoint = tracker.checkpoint(returned);
+    if (checkpoint == null) {
+      return;
+    }
+    unsaved = checkpoint;
+    if (checkpoint.getIndex() - saved >= interval) {
+      save();
+    }
+  }
+
+  private void save() {
+    try {
+      store.save(id, unsaved);
+      saved = unsaved.getIndex();
+      unsaved = null;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      // the last split message returned may not have been processed, so it isn't committed.
+      if (!finished && unsaved != null) {
+        save();
+      }
+    } catch (Exception e) {
+      log.warn("Failed to save checkpoint for [{}]", id, e);
+    } finally {
+      messages.close();
+    }
+  }
+}
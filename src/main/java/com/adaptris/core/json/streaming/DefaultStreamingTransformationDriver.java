@@ -2,12 +2,16 @@ package com.adaptris.core.json.streaming;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
+import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.ComponentProfile;
 import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ComponentLifecycle;
 import com.adaptris.core.ServiceException;
 import com.adaptris.core.transform.json.TransformationDirection;
 import com.adaptris.core.transform.json.TransformationDriver;
@@ -18,7 +22,9 @@ import com.adaptris.stax.DefaultWriterFactory;
 import com.adaptris.stax.XmlInputFactoryBuilder;
 import com.adaptris.stax.XmlOutputFactoryBuilder;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 
 /**
  * {@link TransformationDriver} implementation that uses all the defaults.
@@ -30,7 +36,7 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @ComponentProfile(summary = "streaming xml/json driver using defaults",
     tag = "json,xml", since = "3.11.0")
-public class DefaultStreamingTransformationDriver implements TransformationDriver {
+public class DefaultStreamingTransformationDriver implements TransformationDriver, ComponentLifecycle {
 
   private static XmlInputFactoryBuilder XML_IN =  new DefaultInputFactory();
   private static XmlOutputFactoryBuilder XML_OUT = new DefaultWriterFactory();
@@ -38,17 +44,101 @@ public class DefaultStreamingTransformationDriver implements TransformationDrive
   private static XmlInputFactoryBuilder JSON_IN =new JsonStreamingInputFactory();
   private static XmlOutputFactoryBuilder JSON_OUT = new JsonStreamingOutputFactory();
 
+  /**
+   * Record throughput and latency metrics for this driver.
+   * <p>
+   * If set, then the number of messages, bytes in and out, the number of events transformed and the time taken to
+   * transform each message are recorded and available via JMX as
+   * {@code com.adaptris:type=JsonStreamingMetrics,id="<metricsId>"}. Components with the same id share the same
+   * metrics, which are unregistered once they have all been closed. The default is null, which means no metrics are
+   * recorded.
+   * </p>
+   *
+   * @see JsonStreamingMetricsMBean
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  private String metricsId;
+
+  private transient JsonStreamingMetrics.Reference metrics = new JsonStreamingMetrics.Reference();
+
   @Override
   public void transform(AdaptrisMessage msg, TransformationDirection dir) throws ServiceException {
-    try (InputStream in = new BufferedInputStream(msg.getInputStream());
-        OutputStream out = new BufferedOutputStream(msg.getOutputStream());
-        CloseableStaxWrapper wrapper = new CloseableStaxWrapper(
-            inputBuilder(dir).createXMLEventReader(in),
+    JsonStreamingMetrics metrics = metrics();
+    long start = System.nanoTime();
+    long bytesIn = msg.getSize();
+    long tokens = 0;
+    try (InputStream in = openInput(msg);
+        OutputStream out = new BufferedOutputStream(msg.getOutputStream())) {
+      if (cursorTranscoding()) {
+        tokens = StaxCursorCopier.copy(inputBuilder(dir), outputBuilder(dir), in, out);
+      } else {
+        try (CloseableStaxWrapper wrapper = new CloseableStaxWrapper(inputBuilder(dir).createXMLEventReader(in),
             outputBuilder(dir).createXMLEventWriter(out))) {
-      wrapper.writer().add(wrapper.reader());
+          XMLEventReader reader = wrapper.reader();
+          while (reader.hasNext()) {
+            wrapper.writer().add(reader.nextEvent());
+            tokens++;
+          }
+        }
+      }
     } catch (Exception e) {
+      if (metrics != null) {
+        metrics.failed();
+      }
       throw ExceptionHelper.wrapServiceException(e);
     }
+    if (metrics != null) {
+      metrics.transformed(bytesIn, msg.getSize(), tokens, start);
+    }
+  }
+
+  protected JsonStreamingMetrics metrics() {
+    return metrics.get(getMetricsId());
+  }
+
+  @Override
+  public void init() {
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  @Override
+  public void close() {
+    metrics.release();
+  }
+
+  private InputStream openInput(AdaptrisMessage msg) throws IOException {
+    if (memoryMappedInput() && MappedFileInputStream.canMap(msg)) {
+      return MappedFileInputStream.open(msg);
+    }
+    return new BufferedInputStream(msg.getInputStream());
+  }
+
+  /**
+   * Whether to read file backed messages through a memory mapped file rather than
+   * {@link AdaptrisMessage#getInputStream()}.
+   *
+   * @return false by default.
+   */
+  protected boolean memoryMappedInput() {
+    return false;
+  }
+
+  /**
+   * Whether to copy using the {@code XMLStreamReader}/{@code XMLStreamWriter} cursor API rather than events.
+   *
+   * @return false by default.
+   */
+  protected boolean cursorTranscoding() {
+    return false;
   }
 
   protected XMLInputFactory inputBuilder(TransformationDirection dir) {
@@ -0,0 +1,99 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import javax.validation.constraints.NotBlank;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.core.util.Args;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * {@link SplitCheckpointStore} that keeps each checkpoint in a file in a local directory.
+ * <p>
+ * Each checkpoint is written to a temporary file which is then moved over the previous checkpoint, so a checkpoint is
+ * never left half written.
+ * </p>
+ *
+ * @config json-streaming-file-checkpoint-store
+ */
+@XStreamAlias("json-streaming-file-checkpoint-store")
+@ComponentProfile(summary = "Store JSON splitter checkpoints in a local directory", tag = "json", since = "3.11.1")
+public class FileSplitCheckpointStore implements SplitCheckpointStore {
+
+  private static final String OFFSET = "offset";
+  private static final String INDEX = "index";
+  private static final String STRUCTURE = "structure";
+
+  /**
+   * The directory that the checkpoints are stored in; it is created if it does not exist.
+   */
+  @Getter
+  @Setter
+  @NotBlank
+  private String directory;
+
+  public FileSplitCheckpointStore() {
+  }
+
+  public FileSplitCheckpointStore(String directory) {
+    this();
+    setDirectory(directory);
+  }
+
+  public FileSplitCheckpointStore withDirectory(String s) {
+    setDirectory(s);
+    return this;
+  }
+
+  @Override
+  public SplitCheckpoint load(String id) throws IOException {
+    Path file = checkpointFile(id);
+    if (!Files.exists(file)) {
+      return null;
+    }
+    Properties p = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      p.load(in);
+    }
+    return new SplitCheckpoint(Long.parseLong(p.getProperty(OFFSET)), Long.parseLong(p.getProperty(INDEX)),
+        p.getProperty(STRUCTURE));
+  }
+
+  @Override
+  public void save(String id, SplitCheckpoint checkpoint) throws IOException {
+    Path file = checkpointFile(id);
+    Files.createDirectories(file.getParent());
+    Properties p = new Properties();
+    p.setProperty(OFFSET, String.valueOf(checkpoint.getOffset()));
+    p.setProperty(INDEX, String.valueOf(checkpoint.getIndex()));
+    p.setProperty(STRUCTURE, checkpoint.getStructure());
+    Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        p.store(out, null);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  @Override
+  public void delete(String id) throws IOException {
+    Files.deleteIfExists(checkpointFile(id));
+  }
+
+  // Message ids can contain characters that aren't valid in a filename.
+  private Path checkpointFile(String id) {
+    return Paths.get(Args.notBlank(getDirectory(), "directory"),
+        id.replaceAll("[^A-Za-z0-9._-]", "_") + ".checkpoint");
+  }
+}
@@ -0,0 +1,342 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.PrettyPrinter;
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamTarget;
+import de.odysseus.staxon.json.stream.JsonStreamToken;
+
+/**
+ * {@link JsonStreamFactory} implementation that uses Jackson's {@link JsonParser} and {@link JsonGenerator}.
+ * <p>
+ * This behaves in the same way as the default StAXON implementation; the underlying streams are never closed, nested
+ * arrays and multiple root values are rejected, and pretty printing uses the same layout so that the output is byte for
+ * byte the same regardless of which implementation was used.
+ * </p>
+ */
+final class JacksonStreamFactory extends JsonStreamFactory {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET).disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+
+  @Override
+  public JsonStreamSource createJsonStreamSource(InputStream input) throws IOException {
+    return new Source(JSON_FACTORY.createParser(input));
+  }
+
+  @Override
+  public JsonStreamSource createJsonStreamSource(Reader reader) throws IOException {
+    return new Source(JSON_FACTORY.createParser(reader));
+  }
+
+  @Override
+  public JsonStreamTarget createJsonStreamTarget(OutputStream output, boolean pretty) throws IOException {
+    return new Target(JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8), pretty);
+  }
+
+  @Override
+  public JsonStreamTarget createJsonStreamTarget(Writer writer, boolean pretty) throws IOException {
+    return new Target(JSON_FACTORY.createGenerator(writer), pretty);
+  }
+
+  private static class Source implements JsonStreamSource, PathFilteringSource.Skippable {
+    private final JsonParser parser;
+    private JsonStreamToken peeked;
+    private int depth = 0;
+    private boolean complete = false;
+
+    Source(JsonParser parser) {
+      this.parser = parser;
+    }
+
+    @Override
+    public JsonStreamToken peek() throws IOException {
+      if (peeked == null) {
+        peeked = advance();
+      }
+      return peeked;
+    }
+
+    private JsonStreamToken advance() throws IOException {
+      JsonToken token = parser.nextToken();
+      if (token == null) {
+        return JsonStreamToken.NONE;
+      }
+      if (complete) {
+        throw new IOException("Unexpected symbol: " + token + " at " + parser.getCurrentLocation());
+      }
+      switch (token) {
+        case START_OBJECT:
+          depth++;
+          return JsonStreamToken.START_OBJECT;
+        case START_ARRAY:
+          if (parser.getParsingContext().getParent().inArray()) {
+            throw new IOException("Already in an array at " + parser.getCurrentLocation());
+          }
+          depth++;
+          return JsonStreamToken.START_ARRAY;
+        case END_OBJECT:
+          complete = --depth == 0;
+          return JsonStreamToken.END_OBJECT;
+        case END_ARRAY:
+          complete = --depth == 0;
+          return JsonStreamToken.END_ARRAY;
+        case FIELD_NAME:
+          return JsonStreamToken.NAME;
+        default:
+          complete = depth == 0;
+          return JsonStreamToken.VALUE;
+      }
+    }
+
+    private void poll(JsonStreamToken expected) throws IOException {
+      JsonStreamToken token = peek();
+      if (token != expected) {
+        throw new IOException("Unexpected token: " + token);
+      }
+      peeked = null;
+    }
+
+    @Override
+    public String name() throws IOException {
+      poll(JsonStreamToken.NAME);
+      return parser.getCurrentName();
+    }
+
+    @Override
+    public Value value() throws IOException {
+      poll(JsonStreamToken.VALUE);
+      switch (parser.currentToken()) {
+        case VALUE_NULL:
+          return NULL;
+        case VALUE_TRUE:
+          return TRUE;
+        case VALUE_FALSE:
+          return FALSE;
+        case VALUE_NUMBER_INT:
+          return new Value(parser.getText(), new BigInteger(parser.getText()));
+        case VALUE_NUMBER_FLOAT:
+          return new Value(parser.getText(), new BigDecimal(parser.getText()));
+        default:
+          return new Value(parser.getText());
+      }
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+      JsonStreamToken token = peek();
+      if (token == JsonStreamToken.START_OBJECT || token == JsonStreamToken.START_ARRAY) {
+        parser.skipChildren();
+        complete = --depth == 0;
+      } else if (token != JsonStreamToken.VALUE) {
+        throw new IOException("Unexpected token: " + token);
+      }
+      peeked = null;
+    }
+
+    @Override
+    public void startObject() throws IOException {
+      poll(JsonStreamToken.START_OBJECT);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+      poll(JsonStreamToken.END_OBJECT);
+    }
+
+    @Override
+    public void startArray() throws IOException {
+      poll(JsonStreamToken.START_ARRAY);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+      poll(JsonStreamToken.END_ARRAY);
+    }
+
+    @Override
+    public void close() throws IOException {
+      parser.close();
+    }
+
+    @Override
+    public int getLineNumber() {
+      return parser.getCurrentLocation().getLineNr();
+    }
+
+    @Override
+    public int getColumnNumber() {
+      return parser.getCurrentLocation().getColumnNr();
+    }
+
+    @Override
+    public int getCharacterOffset() {
+      JsonLocation location = parser.getCurrentLocation();
+      return (int) (location.getCharOffset() >= 0 ? location.getCharOffset() : location.getByteOffset());
+    }
+
+    @Override
+    public String getPublicId() {
+      return null;
+    }
+
+    @Override
+    public String getSystemId() {
+      return null;
+    }
+  }
+
+  private static class Target implements JsonStreamTarget {
+    private final JsonGenerator generator;
+    private final boolean pretty;
+
+    Target(JsonGenerator generator, boolean pretty) {
+      this.generator = generator;
+      this.pretty = pretty;
+      if (pretty) {
+        generator.setPrettyPrinter(new StaxonLayout());
+      }
+    }
+
+    @Override
+    public void name(String name) throws IOException {
+      generator.writeFieldName(name);
+    }
+
+    @Override
+    public void value(Object value) throws IOException {
+      if (pretty && generator.getOutputContext().inRoot()) {
+        generator.writeRaw(' ');
+      }
+      if (value == null) {
+        generator.writeNull();
+      } else if (value instanceof String) {
+        generator.writeString((String) value);
+      } else {
+        // numbers + booleans (from autoPrimitive) are written as is, as StAXON does.
+        generator.writeRawValue(value.toString());
+      }
+    }
+
+    @Override
+    public void startObject() throws IOException {
+      generator.writeStartObject();
+    }
+
+    @Override
+    public void endObject() throws IOException {
+      generator.writeEndObject();
+      if (generator.getOutputContext().inRoot()) {
+        generator.flush();
+      }
+    }
+
+    @Override
+    public void startArray() throws IOException {
+      if (generator.getOutputContext().inArray()) {
+        throw new IOException("Nested arrays are not supported!");
+      }
+      generator.writeStartArray();
+    }
+
+    @Override
+    public void endArray() throws IOException {
+      generator.writeEndArray();
+    }
+
+    @Override
+    public void flush() throws IOException {
+      generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      generator.close();
+    }
+  }
+
+  /**
+   * Pretty printer that replicates the StAXON layout.
+   * <p>
+   * Object entries are on their own line indented by a tab per level of object nesting; arrays stay on the same line with
+   * their values separated by {@code ", "}, and there is a space either side of the {@code :} between field and value.
+   * </p>
+   */
+  private static class StaxonLayout implements PrettyPrinter {
+    private int depth = 0;
+
+    @Override
+    public void writeRootValueSeparator(JsonGenerator g) throws IOException {
+      g.writeRaw(' ');
+    }
+
+    @Override
+    public void writeStartObject(JsonGenerator g) throws IOException {
+      g.writeRaw('{');
+      depth++;
+    }
+
+    @Override
+    public void writeEndObject(JsonGenerator g, int nrOfEntries) throws IOException {
+      depth--;
+      newline(g);
+      g.writeRaw('}');
+    }
+
+    @Override
+    public void writeObjectEntrySeparator(JsonGenerator g) throws IOException {
+      g.writeRaw(',');
+      newline(g);
+    }
+
+    @Override
+    public void writeObjectFieldValueSeparator(JsonGenerator g) throws IOException {
+      g.writeRaw(" : ");
+    }
+
+    @Override
+    public void writeStartArray(JsonGenerator g) throws IOException {
+      g.writeRaw('[');
+    }
+
+    @Override
+    public void writeEndArray(JsonGenerator g, int nrOfValues) throws IOException {
+      g.writeRaw(" ]");
+    }
+
+    @Override
+    public void writeArrayValueSeparator(JsonGenerator g) throws IOException {
+      g.writeRaw(", ");
+    }
+
+    @Override
+    public void beforeArrayValues(JsonGenerator g) throws IOException {
+      g.writeRaw(' ');
+    }
+
+    @Override
+    public void beforeObjectEntries(JsonGenerator g) throws IOException {
+      newline(g);
+    }
+
+    private void newline(JsonGenerator g) throws IOException {
+      g.writeRaw('\n');
+      for (int i = 0; i < depth; i++) {
+        g.writeRaw('\t');
+      }
+    }
+  }
+}
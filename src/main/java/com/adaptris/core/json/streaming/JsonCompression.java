@@ -0,0 +1,234 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import com.adaptris.core.AdaptrisMessage;
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamTarget;
+
+/**
+ * How the JSON is compressed.
+ * <p>
+ * The JSON is decompressed (or compressed) as it is streamed, so there is never an uncompressed copy of the whole
+ * payload. Only JSON read or written as bytes is affected; if the JSON is being read from a {@code Reader} then it has
+ * already been decoded, so it can't be compressed.
+ * </p>
+ *
+ * @see JsonStreamingConfigBuilder#setInputCompression(JsonCompression)
+ * @see JsonStreamingConfigBuilder#setOutputCompression(JsonCompression)
+ */
+public enum JsonCompression {
+  /**
+   * Not compressed; the default.
+   */
+  NONE {
+    @Override
+    InputStream decompress(InputStream in) {
+      return in;
+    }
+
+    @Override
+    OutputStream compress(OutputStream out) {
+      return out;
+    }
+  },
+  /**
+   * Compressed with gzip.
+   */
+  GZIP {
+    @Override
+    InputStream decompress(InputStream in) throws IOException {
+      return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+
+    @Override
+    OutputStream compress(OutputStream out) throws IOException {
+      return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+  },
+  /**
+   * Detect the compression from the first bytes of the input, so that compressed and uncompressed input can be mixed;
+   * when writing, this is the same as {@link #NONE}.
+   */
+  DETECT {
+    @Override
+    InputStream decompress(InputStream in) throws IOException {
+      InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in, BUFFER_SIZE);
+      buffered.mark(MAGIC_LENGTH);
+      byte[] magic = new byte[MAGIC_LENGTH];
+      int count = 0;
+      for (int n = 0; count < magic.length && (n = buffered.read(magic, count, magic.length - count)) > 0;) {
+        count += n;
+      }
+      buffered.reset();
+      if (count >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+        return GZIP.decompress(buffered);
+      }
+      if (count == MAGIC_LENGTH && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5
+          && (magic[2] & 0xff) == 0x2f && (magic[3] & 0xff) == 0xfd) {
+        throw new IOException("zstd compressed input is not supported");
+      }
+      return buffered;
+    }
+
+    @Override
+    OutputStream compress(OutputStream out) {
+      return out;
+    }
+  };
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final int MAGIC_LENGTH = 4;
+
+  /**
+   * Wrap the input so that it is decompressed as it is read; closing the result closes the input.
+   */
+  abstract InputStream decompress(InputStream in) throws IOException;
+
+  /**
+   * Wrap the output so that it is compressed as it is written; closing the result finishes the compressed stream and
+   * closes the output.
+   */
+  abstract OutputStream compress(OutputStream out) throws IOException;
+
+  /**
+   * Read the message as characters, decompressing it first if required.
+   */
+  Reader reader(AdaptrisMessage msg) throws IOException {
+    if (this == NONE) {
+      return msg.getReader();
+    }
+    InputStream in = decompress(msg.getInputStream());
+    return msg.getContentEncoding() != null ? new InputStreamReader(in, msg.getContentEncoding())
+        : new InputStreamReader(in);
+  }
+
+  /**
+   * Write the message as characters, compressing it if required.
+   */
+  Writer writer(AdaptrisMessage msg) throws IOException {
+    if (this != GZIP) {
+      return msg.getWriter();
+    }
+    OutputStream out = compress(msg.getOutputStream());
+    return msg.getContentEncoding() != null ? new OutputStreamWriter(out, msg.getContentEncoding())
+        : new OutputStreamWriter(out);
+  }
+
+  /**
+   * Wrap the factory so that JSON read from an {@code InputStream} is decompressed, and JSON written to an
+   * {@code OutputStream} is compressed.
+   *
+   * @param factory the factory.
+   * @param input the compression of the JSON that is read.
+   * @param output the compression of the JSON that is written.
+   */
+  static JsonStreamFactory wrap(JsonStreamFactory factory, JsonCompression input, JsonCompression output) {
+    if (input == NONE && output != GZIP) {
+      return factory;
+    }
+    return new CompressedStreamFactory(factory, input, output);
+  }
+
+  private static class CompressedStreamFactory extends JsonStreamFactory {
+    private final JsonStreamFactory delegate;
+    private final JsonCompression input;
+    private final JsonCompression output;
+
+    CompressedStreamFactory(JsonStreamFactory delegate, JsonCompression input, JsonCompression output) {
+      this.delegate = delegate;
+      this.input = input;
+      this.output = output;
+    }
+
+    @Override
+    public JsonStreamSource createJsonStreamSource(InputStream in) throws IOException {
+      return delegate.createJsonStreamSource(input.decompress(in));
+    }
+
+    @Override
+    public JsonStreamSource createJsonStreamSource(Reader reader) throws IOException {
+      return delegate.createJsonStreamSource(reader);
+    }
+
+    @Override
+    public JsonStreamTarget createJsonStreamTarget(OutputStream out, boolean pretty) throws IOException {
+      if (output != GZIP) {
+        return delegate.createJsonStreamTarget(out, pretty);
+      }
+      // the output belongs to the caller, so only the compressed stream is closed.
+      OutputStream compressed = output.compress(new CloseShieldOutputStream(out));
+      return new CompressedTarget(delegate.createJsonStreamTarget(compressed, pretty), compressed);
+    }
+
+    @Override
+    public JsonStreamTarget createJsonStreamTarget(Writer writer, boolean pretty) throws IOException {
+      return delegate.createJsonStreamTarget(writer, pretty);
+    }
+  }
+
+  // Finishes the compressed stream when the target is closed, since the targets don't close their output.
+  private static class CompressedTarget implements JsonStreamTarget {
+    private final JsonStreamTarget delegate;
+    private final OutputStream compressed;
+
+    CompressedTarget(JsonStreamTarget delegate, OutputStream compressed) {
+      this.delegate = delegate;
+      this.compressed = compressed;
+    }
+
+    @Override
+    public void name(String name) throws IOException {
+      delegate.name(name);
+    }
+
+    @Override
+    public void value(Object value) throws IOException {
+      delegate.value(value);
+    }
+
+    @Override
+    public void startObject() throws IOException {
+      delegate.startObject();
+    }
+
+    @Override
+    public void endObject() throws IOException {
+      delegate.endObject();
+    }
+
+    @Override
+    public void startArray() throws IOException {
+      delegate.startArray();
+    }
+
+    @Override
+    public void endArray() throws IOException {
+      delegate.endArray();
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        delegate.close();
+      } finally {
+        compressed.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamTarget;
+
+/**
+ * Enforces the limits configured on {@link JsonStreamingConfigBuilder} on JSON as it is read.
+ * <p>
+ * The limits are checked on the raw characters (or bytes) as they are handed to the tokeniser, rather than on the
+ * tokens, so that a string that is too long, or nesting that is too deep, fails before the tokeniser has buffered it.
+ * Only strings and structural characters are tracked; the check is a simple state machine that doesn't validate the
+ * JSON. Since UTF-8 never uses ASCII bytes within a multibyte sequence, input streams are checked byte by byte, and the
+ * limits are then in bytes rather than characters.
+ * </p>
+ */
+final class JsonInputLimits {
+
+  private final int maxTokenLength;
+  private final int maxNestingDepth;
+  private final long maxDocumentSize;
+
+  JsonInputLimits(int maxTokenLength, int maxNestingDepth, long maxDocumentSize) {
+    this.maxTokenLength = maxTokenLength;
+    this.maxNestingDepth = maxNestingDepth;
+    this.maxDocumentSize = maxDocumentSize;
+  }
+
+  Reader wrap(Reader reader) {
+    return new LimitedReader(reader, new Tracker());
+  }
+
+  InputStream wrap(InputStream input) {
+    return new LimitedInputStream(input, new Tracker());
+  }
+
+  /**
+   * Wrap the stream factory so that every source it creates is limited; targets are unchanged.
+   */
+  JsonStreamFactory wrap(JsonStreamFactory factory) {
+    return new LimitedStreamFactory(factory);
+  }
+
+  private class Tracker {
+    private long total = 0;
+    private int depth = 0;
+    private int tokenLength = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+
+    void update(int c) throws IOException {
+      if (maxDocumentSize > 0 && ++total > maxDocumentSize) {
+        throw new IOException("Document exceeds the maximum size of " + maxDocumentSize);
+      }
+      if (inString) {
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == '"') {
+          inString = false;
+          tokenLength = 0;
+          return;
+        }
+        checkTokenLength();
+        return;
+      }
+      switch (c) {
+        case '"':
+          inString = true;
+          tokenLength = 0;
+          break;
+        case '{':
+        case '[':
+          if (maxNestingDepth > 0 && ++depth > maxNestingDepth) {
+            throw new IOException("Document exceeds the maximum nesting depth of " + maxNestingDepth);
+          }
+          tokenLength = 0;
+          break;
+        case '}':
+        case ']':
+          depth--;
+          tokenLength = 0;
+          break;
+        case ',':
+        case ':':
+        case ' ':
+        case '\t':
+        case '\r':
+        case '\n':
+          tokenLength = 0;
+          break;
+        default:
+          // numbers and literals
+          checkTokenLength();
+      }
+    }
+
+    private void checkTokenLength() throws IOException {
+      if (maxTokenLength > 0 && ++tokenLength > maxTokenLength) {
+        throw new IOException("Value exceeds the maximum length of " + maxTokenLength);
+      }
+    }
+  }
+
+  private static class LimitedReader extends FilterReader {
+    private final Tracker tracker;
+
+    LimitedReader(Reader in, Tracker tracker) {
+      super(in);
+      this.tracker = tracker;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int c = super.read();
+      if (c >= 0) {
+        tracker.update(c);
+      }
+      return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      int n = super.read(cbuf, off, len);
+      for (int i = 0; i < n; i++) {
+        tracker.update(cbuf[off + i]);
+      }
+      return n;
+    }
+
+    // Skipped characters aren't seen, so skip by reading.
+    @Override
+    public long skip(long n) throws IOException {
+      char[] buf = new char[(int) Math.min(n, 8192)];
+      long remaining = n;
+      int read = 0;
+      while (remaining > 0 && (read = read(buf, 0, (int) Math.min(remaining, buf.length))) > 0) {
+        remaining -= read;
+      }
+      return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+
+  private static class LimitedInputStream extends FilterInputStream {
+    private final Tracker tracker;
+
+    LimitedInputStream(InputStream in, Tracker tracker) {
+      super(in);
+      this.tracker = tracker;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int c = super.read();
+      if (c >= 0) {
+        tracker.update(c);
+      }
+      return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      for (int i = 0; i < n; i++) {
+        tracker.update(b[off + i] & 0xFF);
+      }
+      return n;
+    }
+
+    // Skipped bytes aren't seen, so skip by reading.
+    @Override
+    public long skip(long n) throws IOException {
+      byte[] buf = new byte[(int) Math.min(n, 8192)];
+      long remaining = n;
+      int read = 0;
+      while (remaining > 0 && (read = read(buf, 0, (int) Math.min(remaining, buf.length))) > 0) {
+        remaining -= read;
+      }
+      return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+
+  private class LimitedStreamFactory extends JsonStreamFactory {
+    private final JsonStreamFactory delegate;
+
+    LimitedStreamFactory(JsonStreamFactory delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public JsonStreamSource createJsonStreamSource(InputStream input) throws IOException {
+      return delegate.createJsonStreamSource(wrap(input));
+    }
+
+    @Override
+    public JsonStreamSource createJsonStreamSource(Reader reader) throws IOException {
+      return delegate.createJsonStreamSource(wrap(reader));
+    }
+
+    @Override
+    public JsonStreamTarget createJsonStreamTarget(OutputStream output, boolean pretty) throws IOException {
+      return delegate.createJsonStreamTarget(output, pretty);
+    }
+
+    @Override
+    public JsonStreamTarget createJsonStreamTarget(Writer writer, boolean pretty) throws IOException {
+      return delegate.createJsonStreamTarget(writer, pretty);
+    }
+  }
+}
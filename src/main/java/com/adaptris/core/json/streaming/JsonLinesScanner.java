@@ -0,0 +1,135 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Finds the records in JSON Lines (newline delimited JSON) without parsing them.
+ * <p>
+ * Since a newline can't appear within a JSON value except as whitespace, each record is simply the bytes up to the next
+ * {@code \n}; the only thing that is scanned for is the newline, and the records are copied verbatim. Blank lines are
+ * skipped, and whitespace (including the {@code \r} of a {@code \r\n}) around each record is removed. Like
+ * {@link JsonPathScanner} the input is assumed to be UTF-8, or any other ASCII compatible encoding, and the records
+ * themselves aren't validated.
+ * </p>
+ */
+final class JsonLinesScanner implements VerbatimScanner {
+
+  private final InputStream input;
+  private final byte[] buffer;
+  private int pos = 0;
+  private int limit = 0;
+  private boolean pending = false;
+  // trailing whitespace that has been read, but not yet written since it might be the end of the record.
+  private byte[] held = new byte[16];
+  private int heldCount = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param input the input, closed when this scanner is closed.
+   * @param bufferSize the size of the internal buffer.
+   */
+  JsonLinesScanner(InputStream input, int bufferSize) {
+    this.input = input;
+    buffer = new byte[bufferSize];
+  }
+
+  @Override
+  public boolean hasNext() throws IOException {
+    if (!pending) {
+      pending = skipWhitespace();
+    }
+    return pending;
+  }
+
+  @Override
+  public void copyTo(OutputStream out) throws IOException {
+    if (!pending) {
+      throw new IllegalStateException("No current value");
+    }
+    copyLine(out);
+    pending = false;
+  }
+
+  // Skips to the next record, or the end of the input.
+  private boolean skipWhitespace() throws IOException {
+    while (true) {
+      if (pos == limit && !fill()) {
+        return false;
+      }
+      if (!isWhitespace(buffer[pos])) {
+        return true;
+      }
+      pos++;
+    }
+  }
+
+  // Copy (or skip if out is null) the rest of the current line.
+  private void copyLine(OutputStream out) throws IOException {
+    heldCount = 0;
+    while (pos < limit || fill()) {
+      int start = pos;
+      int end = indexOfNewline(start);
+      pos = end < limit ? end + 1 : limit;
+      int last = end;
+      while (last > start && isWhitespace(buffer[last - 1])) {
+        last--;
+      }
+      if (last > start) {
+        if (out != null) {
+          out.write(held, 0, heldCount);
+          out.write(buffer, start, last - start);
+        }
+        heldCount = 0;
+      }
+      hold(last, end);
+      if (end < limit) {
+        return;
+      }
+    }
+  }
+
+  private int indexOfNewline(int from) {
+    for (int i = from; i < limit; i++) {
+      if (buffer[i] == '\n') {
+        return i;
+      }
+    }
+    return limit;
+  }
+
+  private void hold(int start, int end) {
+    int len = end - start;
+    if (heldCount + len > held.length) {
+      held = Arrays.copyOf(held, Math.max(heldCount + len, held.length * 2));
+    }
+    System.arraycopy(buffer, start, held, heldCount, len);
+    heldCount += len;
+  }
+
+  private boolean fill() throws IOException {
+    pos = 0;
+    limit = 0;
+    int count;
+    while ((count = input.read(buffer)) == 0) {
+      // keep going.
+    }
+    if (count > 0) {
+      limit = count;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+  }
+}
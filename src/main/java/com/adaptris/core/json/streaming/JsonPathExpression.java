@@ -0,0 +1,205 @@
+package com.adaptris.core.json.streaming;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A compiled path expression for {@link JsonPathMatcher}.
+ * <p>
+ * This extends the pseudo-xpath used by {@link JsonStreamingSplitter} with a small subset of XPath:
+ * </p>
+ * <ul>
+ * <li>{@code *} matches any key, so {@code /data/*}{@code /items} matches {@code items} in every child of
+ * {@code data}.</li>
+ * <li>{@code //} matches at any depth, so {@code //record} matches every {@code record} wherever it is.</li>
+ * <li>{@code [field='x']} only matches objects where the scalar child {@code field} has the value {@code x}; multiple
+ * predicates must all match. Predicates are evaluated against the scalar children that appear before the first object
+ * or array child (i.e. the header fields that come before the body), a field that appears after that does not
+ * match.</li>
+ * </ul>
+ * <p>
+ * As with the splitter, keys are compared on their local name, and arrays are transparent; each element of an array is
+ * treated as a separate occurrence of the key. Compiled expressions are immutable and cached, so each distinct
+ * expression is only parsed once.
+ * </p>
+ */
+final class JsonPathExpression {
+
+  // Expressions may contain %message{} expressions so this is just to stop runaway growth.
+  private static final int MAX_ENTRIES = 256;
+
+  private static final ConcurrentMap<String, JsonPathExpression> CACHE = new ConcurrentHashMap<>();
+
+  private final String expression;
+  private final Step[] steps;
+
+  private JsonPathExpression(String expression) {
+    this.expression = expression;
+    steps = parse(expression);
+  }
+
+  /**
+   * Get the compiled version of the expression.
+   *
+   * @throws IllegalArgumentException if the expression is invalid.
+   */
+  static JsonPathExpression compile(String expression) {
+    JsonPathExpression result = CACHE.get(expression);
+    if (result == null) {
+      if (CACHE.size() >= MAX_ENTRIES) {
+        CACHE.clear();
+      }
+      result = CACHE.computeIfAbsent(expression, JsonPathExpression::new);
+    }
+    return result;
+  }
+
+  /**
+   * Whether the path uses anything other than a simple {@code /path/to/element}.
+   */
+  static boolean isExpression(String path) {
+    return StringUtils.containsAny(path, '*', '[') || path.contains("//");
+  }
+
+  static void clear() {
+    CACHE.clear();
+  }
+
+  static int size() {
+    return CACHE.size();
+  }
+
+  int length() {
+    return steps.length;
+  }
+
+  Step step(int i) {
+    return steps[i];
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+
+  private static Step[] parse(String expression) {
+    if (!StringUtils.startsWith(expression, "/")) {
+      throw invalid(expression, "must start with /");
+    }
+    List<Step> result = new ArrayList<>();
+    int i = 0;
+    while (i < expression.length()) {
+      // i is always at a '/'
+      i++;
+      boolean descendant = false;
+      if (i < expression.length() && expression.charAt(i) == '/') {
+        descendant = true;
+        i++;
+      }
+      int start = i;
+      char quote = 0;
+      for (; i < expression.length(); i++) {
+        char c = expression.charAt(i);
+        if (quote != 0) {
+          quote = c == quote ? 0 : quote;
+        } else if (c == '\'' || c == '"') {
+          quote = c;
+        } else if (c == '/') {
+          break;
+        }
+      }
+      result.add(parseStep(expression, expression.substring(start, i), descendant));
+    }
+    return result.toArray(new Step[0]);
+  }
+
+  private static Step parseStep(String expression, String step, boolean descendant) {
+    int bracket = step.indexOf('[');
+    String name = (bracket >= 0 ? step.substring(0, bracket) : step).trim();
+    if (name.isEmpty()) {
+      throw invalid(expression, "empty step");
+    }
+    Map<String, String> predicates = new LinkedHashMap<>();
+    String rest = bracket >= 0 ? step.substring(bracket) : "";
+    int i = 0;
+    while (i < rest.length()) {
+      int eq = rest.indexOf('=', i);
+      int open = skipWhitespace(rest, eq + 1);
+      if (rest.charAt(i) != '[' || eq < 0 || open == rest.length()
+          || (rest.charAt(open) != '\'' && rest.charAt(open) != '"')) {
+        throw invalid(expression, "invalid predicate " + rest.substring(i));
+      }
+      int close = rest.indexOf(rest.charAt(open), open + 1);
+      int end = close < 0 ? -1 : skipWhitespace(rest, close + 1);
+      String field = rest.substring(i + 1, eq).trim();
+      if (end < 0 || end == rest.length() || rest.charAt(end) != ']' || field.isEmpty()) {
+        throw invalid(expression, "invalid predicate " + rest.substring(i));
+      }
+      predicates.put(field, rest.substring(open + 1, close));
+      i = skipWhitespace(rest, end + 1);
+    }
+    return new Step("*".equals(name) ? null : name, descendant, predicates);
+  }
+
+  private static int skipWhitespace(String s, int from) {
+    int i = from;
+    while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Whether a key matches a name in a path.
+   * <p>
+   * These are the same rules as {@code StaxSplitGenerator}, which compares the local name only; so {@code ns:record}
+   * matches {@code record}. All of the path matching in this package uses this.
+   * </p>
+   */
+  static boolean matchesKey(String key, String name) {
+    return key.equals(name) || key.endsWith(":" + name);
+  }
+
+  private static IllegalArgumentException invalid(String expression, String reason) {
+    return new IllegalArgumentException("Invalid path [" + expression + "]: " + reason);
+  }
+
+  /**
+   * A single step in the expression.
+   */
+  static final class Step {
+    private final String name;
+    private final boolean descendant;
+    private final Map<String, String> predicates;
+
+    private Step(String name, boolean descendant, Map<String, String> predicates) {
+      this.name = name;
+      this.descendant = descendant;
+      this.predicates = Collections.unmodifiableMap(predicates);
+    }
+
+    /**
+     * Whether this step can skip any number of levels before matching.
+     */
+    boolean descendant() {
+      return descendant;
+    }
+
+    /**
+     * The predicates that must be satisfied; {@code field -> value}
+     */
+    Map<String, String> predicates() {
+      return predicates;
+    }
+
+    boolean matches(String key) {
+      return name == null || matchesKey(key, name);
+    }
+  }
+}
@@ -0,0 +1,560 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamSource.Value;
+import de.odysseus.staxon.json.stream.JsonStreamToken;
+
+/**
+ * Finds the values that match one or more {@link JsonPathExpression}s in a single pass over a {@link JsonStreamSource}.
+ * <p>
+ * The expressions are evaluated as a state machine; each object on the way down holds the set of states (the next step
+ * of each expression) that its keys are tested against, and the states for a child are derived from its parent's
+ * states as each key is read, so there is no backtracking. Keys that can't lead to a match are skipped without being
+ * read. When an object has to satisfy a predicate, its leading scalar children are buffered until the predicate can be
+ * decided, and then replayed.
+ * </p>
+ * <p>
+ * Each match is exposed as a {@link JsonStreamSource} of the form <code>{"key": value}</code>; the value is read
+ * directly from the underlying source as the match is consumed, so matches are never held in memory.
+ * </p>
+ */
+final class JsonPathMatcher implements Closeable {
+
+  private static final int[] NO_STATES = new int[0];
+
+  private final JsonStreamSource source;
+  private final JsonPathExpression[] expressions;
+  private final Deque<Frame> stack = new ArrayDeque<>();
+  private final Deque<Match> matches = new ArrayDeque<>();
+  private boolean started = false;
+  private Match current;
+
+  /**
+   * Constructor.
+   *
+   * @param source the source, closed when this matcher is closed.
+   * @param expressions the expressions; {@link #expression()} is the index into this list.
+   */
+  JsonPathMatcher(JsonStreamSource source, List<JsonPathExpression> expressions) {
+    this.source = source;
+    this.expressions = expressions.toArray(new JsonPathExpression[0]);
+  }
+
+  /**
+   * Move to the next match, skipping whatever remains of the current match.
+   *
+   * @return true if there is a match.
+   */
+  boolean next() throws IOException {
+    if (current != null) {
+      current.skipRemaining();
+      current = null;
+    }
+    while (matches.isEmpty()) {
+      if (!advance()) {
+        return false;
+      }
+    }
+    current = matches.poll();
+    return true;
+  }
+
+  /**
+   * The key of the current match.
+   */
+  String name() {
+    return current().name;
+  }
+
+  /**
+   * The index of the expression that the current match matched; if more than one matched then the first.
+   */
+  int expression() {
+    return current().expression;
+  }
+
+  /**
+   * The current match as <code>{"key": value}</code>.
+   */
+  JsonStreamSource match() {
+    return current();
+  }
+
+  @Override
+  public void close() throws IOException {
+    source.close();
+  }
+
+  private Match current() {
+    if (current == null) {
+      throw new IllegalStateException("No current match");
+    }
+    return current;
+  }
+
+  // Process the next token(s); returns false if there's nothing left to read.
+  private boolean advance() throws IOException {
+    if (!started) {
+      started = true;
+      if (source.peek() != JsonStreamToken.START_OBJECT) {
+        return false;
+      }
+      source.startObject();
+      int[] states = new int[expressions.length];
+      for (int i = 0; i < states.length; i++) {
+        states[i] = state(i, 0);
+      }
+      stack.push(new Frame(null, new Transition(states, NO_STATES, -1), false));
+      return true;
+    }
+    Frame frame = stack.peek();
+    if (frame == null) {
+      // Don't read anything after the root object.
+      return false;
+    }
+    JsonStreamToken token = source.peek();
+    if (frame.array) {
+      if (token == JsonStreamToken.END_ARRAY) {
+        source.endArray();
+        stack.pop();
+      } else if (token == JsonStreamToken.START_ARRAY) {
+        throw new IOException("Already in an array at offset " + source.getCharacterOffset());
+      } else {
+        element(frame.name, frame.transition, token);
+      }
+      return true;
+    }
+    switch (token) {
+      case END_OBJECT:
+        if (frame.pending()) {
+          frame.buffer.add(Token.END_OBJECT);
+          source.endObject();
+          if (resolve(frame)) {
+            return true;
+          }
+        } else {
+          source.endObject();
+        }
+        stack.pop();
+        return true;
+      case NAME:
+        key(frame, source.name());
+        return true;
+      default:
+        throw new IOException("Unexpected token " + token + " at offset " + source.getCharacterOffset());
+    }
+  }
+
+  private void key(Frame frame, String name) throws IOException {
+    JsonStreamToken value = source.peek();
+    if (frame.pending()) {
+      if (value == JsonStreamToken.VALUE) {
+        Value v = source.value();
+        frame.buffer.add(new Token(name));
+        frame.buffer.add(new Token(v));
+        frame.fields.putIfAbsent(name, v.text);
+        if (frame.decided()) {
+          resolve(frame);
+        }
+        return;
+      }
+      // The body has started, so the predicates have to be decided now.
+      frame.buffer.add(new Token(name));
+      if (resolve(frame)) {
+        return;
+      }
+    }
+    Transition t = transition(frame.states, name);
+    if (t.empty()) {
+      PathFilteringSource.skipValue(source);
+    } else {
+      element(name, t, value);
+    }
+  }
+
+  // An occurrence of a key (or an element of an array), having transitioned from the parent's states.
+  private void element(String name, Transition t, JsonStreamToken token) throws IOException {
+    if (t.match >= 0 && token != JsonStreamToken.START_ARRAY) {
+      matches.add(new Match(t.match, name, Collections.emptyList()));
+      return;
+    }
+    // Arrays are transparent, so each element of a matching array is a match.
+    switch (token) {
+      case START_OBJECT:
+        source.startObject();
+        stack.push(new Frame(name, t, false));
+        break;
+      case START_ARRAY:
+        source.startArray();
+        stack.push(new Frame(name, t, true));
+        break;
+      default:
+        // Only a match can be a scalar, and predicates can only match objects.
+        PathFilteringSource.skipValue(source);
+    }
+  }
+
+  // Decide the predicates for an object; returns true if the object itself was a match (and has been popped).
+  private boolean resolve(Frame frame) throws IOException {
+    int match = -1;
+    int[] states = frame.states;
+    for (int s : frame.conditional) {
+      if (frame.passes(step(s))) {
+        int next = s + 1;
+        if (index(next) < expressions[expression(next)].length()) {
+          states = add(states, next);
+        } else if (match < 0 || expression(next) < match) {
+          match = expression(next);
+        }
+      }
+    }
+    frame.states = states;
+    frame.conditional = NO_STATES;
+    List<Token> buffer = frame.buffer;
+    frame.buffer = null;
+    if (match >= 0) {
+      stack.pop();
+      buffer.add(0, Token.START_OBJECT);
+      matches.add(new Match(match, frame.name, buffer));
+      return true;
+    }
+    // Now that we know the states, the buffered scalars might be matches in their own right.
+    for (int i = 0; i + 1 < buffer.size(); i += 2) {
+      if (buffer.get(i + 1).type != JsonStreamToken.VALUE) {
+        break;
+      }
+      Transition t = transition(states, buffer.get(i).name);
+      if (t.match >= 0) {
+        matches.add(new Match(t.match, buffer.get(i).name, Arrays.asList(buffer.get(i + 1))));
+      }
+    }
+    return false;
+  }
+
+  private Transition transition(int[] states, String name) {
+    int[] next = NO_STATES;
+    int[] conditional = NO_STATES;
+    int match = -1;
+    for (int s : states) {
+      JsonPathExpression.Step step = step(s);
+      if (step.descendant()) {
+        next = add(next, s);
+      }
+      if (!step.matches(name)) {
+        continue;
+      }
+      if (!step.predicates().isEmpty()) {
+        conditional = add(conditional, s);
+      } else if (index(s) + 1 < expressions[expression(s)].length()) {
+        next = add(next, s + 1);
+      } else if (match < 0 || expression(s) < match) {
+        match = expression(s);
+      }
+    }
+    return new Transition(next, conditional, match);
+  }
+
+  private JsonPathExpression.Step step(int state) {
+    return expressions[expression(state)].step(index(state));
+  }
+
+  // A state is the index of the expression and the index of the next step to match.
+  private static int state(int expression, int index) {
+    return expression << 16 | index;
+  }
+
+  private static int expression(int state) {
+    return state >>> 16;
+  }
+
+  private static int index(int state) {
+    return state & 0xFFFF;
+  }
+
+  private static int[] add(int[] states, int state) {
+    for (int s : states) {
+      if (s == state) {
+        return states;
+      }
+    }
+    int[] result = Arrays.copyOf(states, states.length + 1);
+    result[states.length] = state;
+    return result;
+  }
+
+  private static class Transition {
+    private final int[] states;
+    private final int[] conditional;
+    private final int match;
+
+    Transition(int[] states, int[] conditional, int match) {
+      this.states = states;
+      this.conditional = conditional;
+      this.match = match;
+    }
+
+    boolean empty() {
+      return states.length == 0 && conditional.length == 0 && match < 0;
+    }
+  }
+
+  private class Frame {
+    private final String name;
+    private final boolean array;
+    private final Transition transition;
+    private int[] states;
+    private int[] conditional;
+    private List<Token> buffer;
+    private Map<String, String> fields;
+
+    Frame(String name, Transition t, boolean array) {
+      this.name = name;
+      this.array = array;
+      transition = t;
+      states = t.states;
+      conditional = array ? NO_STATES : t.conditional;
+      if (pending()) {
+        buffer = new ArrayList<>();
+        fields = new HashMap<>();
+      }
+    }
+
+    boolean pending() {
+      return conditional.length > 0;
+    }
+
+    // Whether we've seen enough to decide all of the predicates.
+    boolean decided() {
+      for (int s : conditional) {
+        boolean seenAll = true;
+        boolean failed = false;
+        for (Map.Entry<String, String> p : step(s).predicates().entrySet()) {
+          if (!fields.containsKey(p.getKey())) {
+            seenAll = false;
+          } else if (!Objects.equals(p.getValue(), fields.get(p.getKey()))) {
+            failed = true;
+          }
+        }
+        if (!seenAll && !failed) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    boolean passes(JsonPathExpression.Step step) {
+      for (Map.Entry<String, String> p : step.predicates().entrySet()) {
+        if (!fields.containsKey(p.getKey()) || !Objects.equals(p.getValue(), fields.get(p.getKey()))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static class Token {
+    private static final Token START_OBJECT = new Token(JsonStreamToken.START_OBJECT, null, null);
+    private static final Token END_OBJECT = new Token(JsonStreamToken.END_OBJECT, null, null);
+
+    private final JsonStreamToken type;
+    private final String name;
+    private final Value value;
+
+    Token(String name) {
+      this(JsonStreamToken.NAME, name, null);
+    }
+
+    Token(Value value) {
+      this(JsonStreamToken.VALUE, null, value);
+    }
+
+    private Token(JsonStreamToken type, String name, Value value) {
+      this.type = type;
+      this.name = name;
+      this.value = value;
+    }
+  }
+
+  /**
+   * A match as <code>{"name": value}</code>; any buffered tokens are replayed first, then the rest of the value is read
+   * from the underlying source.
+   */
+  private class Match implements JsonStreamSource {
+    private static final int START = 0;
+    private static final int NAME = 1;
+    private static final int VALUE = 2;
+    private static final int END = 3;
+    private static final int DONE = 4;
+
+    private final int expression;
+    private final String name;
+    private final Deque<Token> replay;
+    private int phase = START;
+    private int depth = 0;
+
+    Match(int expression, String name, List<Token> replay) {
+      this.expression = expression;
+      this.name = name;
+      this.replay = new ArrayDeque<>(replay);
+    }
+
+    @Override
+    public JsonStreamToken peek() throws IOException {
+      switch (phase) {
+        case START:
+          return JsonStreamToken.START_OBJECT;
+        case NAME:
+          return JsonStreamToken.NAME;
+        case VALUE:
+          return replay.isEmpty() ? source.peek() : replay.peek().type;
+        case END:
+          return JsonStreamToken.END_OBJECT;
+        default:
+          return JsonStreamToken.NONE;
+      }
+    }
+
+    @Override
+    public String name() throws IOException {
+      if (phase == NAME) {
+        phase = VALUE;
+        return name;
+      }
+      expect(JsonStreamToken.NAME);
+      return replay.isEmpty() ? source.name() : replay.poll().name;
+    }
+
+    @Override
+    public Value value() throws IOException {
+      expect(JsonStreamToken.VALUE);
+      Value v = replay.isEmpty() ? source.value() : replay.poll().value;
+      consumed(0);
+      return v;
+    }
+
+    @Override
+    public void startObject() throws IOException {
+      if (phase == START) {
+        phase = NAME;
+        return;
+      }
+      expect(JsonStreamToken.START_OBJECT);
+      if (replay.isEmpty()) {
+        source.startObject();
+      } else {
+        replay.poll();
+      }
+      consumed(1);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+      if (phase == END) {
+        phase = DONE;
+        return;
+      }
+      expect(JsonStreamToken.END_OBJECT);
+      if (replay.isEmpty()) {
+        source.endObject();
+      } else {
+        replay.poll();
+      }
+      consumed(-1);
+    }
+
+    @Override
+    public void startArray() throws IOException {
+      expect(JsonStreamToken.START_ARRAY);
+      source.startArray();
+      consumed(1);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+      expect(JsonStreamToken.END_ARRAY);
+      source.endArray();
+      consumed(-1);
+    }
+
+    // The underlying source belongs to the matcher.
+    @Override
+    public void close() {
+    }
+
+    void skipRemaining() throws IOException {
+      while (phase != DONE) {
+        switch (peek()) {
+          case START_OBJECT:
+            startObject();
+            break;
+          case END_OBJECT:
+            endObject();
+            break;
+          case START_ARRAY:
+            startArray();
+            break;
+          case END_ARRAY:
+            endArray();
+            break;
+          case NAME:
+            name();
+            break;
+          case VALUE:
+            value();
+            break;
+          default:
+            throw new IOException("Unexpected end of input");
+        }
+      }
+    }
+
+    private void expect(JsonStreamToken expected) throws IOException {
+      if (phase != VALUE || peek() != expected) {
+        throw new IOException("Unexpected token: " + peek());
+      }
+    }
+
+    private void consumed(int change) {
+      depth += change;
+      if (depth == 0) {
+        phase = END;
+      }
+    }
+
+    @Override
+    public int getLineNumber() {
+      return source.getLineNumber();
+    }
+
+    @Override
+    public int getColumnNumber() {
+      return source.getColumnNumber();
+    }
+
+    @Override
+    public int getCharacterOffset() {
+      return source.getCharacterOffset();
+    }
+
+    @Override
+    public String getPublicId() {
+      return source.getPublicId();
+    }
+
+    @Override
+    public String getSystemId() {
+      return source.getSystemId();
+    }
+  }
+}
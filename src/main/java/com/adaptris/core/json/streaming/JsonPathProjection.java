@@ -0,0 +1,289 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamToken;
+
+/**
+ * Extracts the values of a set of paths from a JSON document in a single pass over the token stream.
+ * <p>
+ * The paths are the same pseudo-xpath used by {@link JsonStreamingSplitter}; they are compiled into a tree keyed on
+ * each element of the path, so every key in the document is checked against all the paths at once. Values that can't
+ * match any of the paths are skipped without being materialised, and reading stops as soon as every path has been
+ * found, so the rest of the document is never read.
+ * </p>
+ * <p>
+ * As with the splitter, arrays are transparent: if the value of a key is an array then each element is considered in
+ * turn, so the value of a path is the first matching element. Scalars are returned as their text, objects (and
+ * arrays) as JSON, which is written as the object is read; if a deeper path is still wanted, then it is matched against
+ * the same tokens as they are copied, so nothing is read twice.
+ * </p>
+ * <p>
+ * A projection can be used any number of times, but not concurrently; the paths are only compiled once, so the same
+ * projection can be applied to each of a large number of values.
+ * </p>
+ */
+final class JsonPathProjection {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final Node root = new Node();
+  private final int total;
+  private Map<String, String> results;
+  private int remaining;
+
+  /**
+   * Constructor.
+   *
+   * @param paths the paths to extract, keyed by the name that the result should be stored against.
+   */
+  JsonPathProjection(Map<String, String> paths) {
+    int count = 0;
+    for (Map.Entry<String, String> e : paths.entrySet()) {
+      Node node = root;
+      for (String element : e.getValue().substring(e.getValue().startsWith("/") ? 1 : 0).split("/")) {
+        node = node.children.computeIfAbsent(element, k -> new Node());
+      }
+      node.targets.add(e.getKey());
+      count++;
+    }
+    total = count;
+  }
+
+  /**
+   * Read the next value from the source, with the paths relative to that value.
+   *
+   * @param source the source; once everything has been found the rest of the value is not read, so the source may be
+   *        left part way through it.
+   * @return the values that were found, keyed by name; paths that were not found are not present.
+   */
+  Map<String, String> project(JsonStreamSource source) throws IOException {
+    start();
+    if (remaining > 0 && source.peek() == JsonStreamToken.START_OBJECT) {
+      object(source, root);
+    } else {
+      PathFilteringSource.skipValue(source);
+    }
+    return results;
+  }
+
+  private void start() {
+    results = new LinkedHashMap<>();
+    remaining = total;
+    root.reset();
+  }
+
+  // returns true once everything has been found.
+  private boolean object(JsonStreamSource source, Node node) throws IOException {
+    source.startObject();
+    while (source.peek() == JsonStreamToken.NAME) {
+      Node child = node.child(source.name());
+      if (child == null || !child.wanted()) {
+        PathFilteringSource.skipValue(source);
+        continue;
+      }
+      if (source.peek() == JsonStreamToken.START_ARRAY) {
+        source.startArray();
+        while (source.peek() != JsonStreamToken.END_ARRAY) {
+          if (value(source, child)) {
+            return true;
+          }
+        }
+        source.endArray();
+      } else if (value(source, child)) {
+        return true;
+      }
+    }
+    source.endObject();
+    return false;
+  }
+
+  private boolean value(JsonStreamSource source, Node node) throws IOException {
+    JsonStreamToken token = source.peek();
+    if (!node.pending()) {
+      if (token == JsonStreamToken.START_OBJECT) {
+        return object(source, node);
+      }
+      PathFilteringSource.skipValue(source);
+      return false;
+    }
+    // Record the keys up front, so that they are in the same order whether or not a deeper path is found.
+    node.targets.forEach(key -> results.put(key, ""));
+    remaining -= node.targets.size();
+    node.found = true;
+    String text;
+    if (token == JsonStreamToken.VALUE) {
+      JsonStreamSource.Value value = source.value();
+      text = value.data != null ? value.text : "";
+    } else {
+      StringWriter writer = new StringWriter();
+      try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+        CopyingSource copy = new CopyingSource(source, generator);
+        if (remaining > 0 && token == JsonStreamToken.START_OBJECT && node.wanted()) {
+          // A deeper path is still wanted, so look for it while the object is copied.
+          object(copy, node);
+          copy.finish();
+        } else {
+          PathFilteringSource.skipValue(copy);
+        }
+      }
+      text = writer.toString();
+    }
+    node.targets.forEach(key -> results.put(key, text));
+    return remaining == 0;
+  }
+
+  /**
+   * Writes every token that is read from the source to a generator.
+   */
+  private static class CopyingSource implements JsonStreamSource {
+    private final JsonStreamSource delegate;
+    private final JsonGenerator generator;
+    private int depth = 0;
+
+    CopyingSource(JsonStreamSource delegate, JsonGenerator generator) {
+      this.delegate = delegate;
+      this.generator = generator;
+    }
+
+    // Read (and copy) the rest of the value that has been started.
+    void finish() throws IOException {
+      while (depth > 0) {
+        PathFilteringSource.skipValue(this);
+      }
+    }
+
+    @Override
+    public JsonStreamToken peek() throws IOException {
+      return delegate.peek();
+    }
+
+    @Override
+    public String name() throws IOException {
+      String name = delegate.name();
+      generator.writeFieldName(name);
+      return name;
+    }
+
+    @Override
+    public Value value() throws IOException {
+      Value value = delegate.value();
+      if (value.data instanceof String) {
+        generator.writeString(value.text);
+      } else if (value.data instanceof Boolean) {
+        generator.writeBoolean((Boolean) value.data);
+      } else if (value.data == null) {
+        generator.writeNull();
+      } else {
+        generator.writeNumber(value.text);
+      }
+      return value;
+    }
+
+    @Override
+    public void startObject() throws IOException {
+      delegate.startObject();
+      generator.writeStartObject();
+      depth++;
+    }
+
+    @Override
+    public void endObject() throws IOException {
+      delegate.endObject();
+      generator.writeEndObject();
+      depth--;
+    }
+
+    @Override
+    public void startArray() throws IOException {
+      delegate.startArray();
+      generator.writeStartArray();
+      depth++;
+    }
+
+    @Override
+    public void endArray() throws IOException {
+      delegate.endArray();
+      generator.writeEndArray();
+      depth--;
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+
+    @Override
+    public int getLineNumber() {
+      return delegate.getLineNumber();
+    }
+
+    @Override
+    public int getColumnNumber() {
+      return delegate.getColumnNumber();
+    }
+
+    @Override
+    public int getCharacterOffset() {
+      return delegate.getCharacterOffset();
+    }
+
+    @Override
+    public String getPublicId() {
+      return delegate.getPublicId();
+    }
+
+    @Override
+    public String getSystemId() {
+      return delegate.getSystemId();
+    }
+  }
+
+  private static class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private final Set<String> targets = new LinkedHashSet<>();
+    private boolean found = false;
+
+    Node child(String key) {
+      Node child = children.get(key);
+      if (child != null || key.indexOf(':') < 0) {
+        return child;
+      }
+      for (Map.Entry<String, Node> entry : children.entrySet()) {
+        if (JsonPathExpression.matchesKey(key, entry.getKey())) {
+          return entry.getValue();
+        }
+      }
+      return null;
+    }
+
+    boolean pending() {
+      return !found && !targets.isEmpty();
+    }
+
+    void reset() {
+      found = false;
+      children.values().forEach(Node::reset);
+    }
+
+    boolean wanted() {
+      if (pending()) {
+        return true;
+      }
+      for (Node child : children.values()) {
+        if (child.wanted()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,429 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Finds the values at a path in a JSON document without parsing them.
+ * <p>
+ * This works directly on the bytes of the document; the only things that it is aware of are the structural characters,
+ * and whether or not it is inside a string. Keys are decoded while navigating the path, but the values at the path are
+ * never decoded, they can be copied verbatim, byte for byte, to an {@link OutputStream}. As a result, the document is
+ * assumed to be UTF-8 (or any other ASCII compatible encoding), and only limited validation is performed.
+ * </p>
+ * <p>
+ * The path is the same pseudo-xpath used by {@link JsonStreamingSplitter}, {@code /envelope/document} matches the
+ * {@code document} key of the {@code envelope} object which is the root. If the value is an array then each element in
+ * the array is a match; arrays on the way to the path are traversed, so each object in the array is checked.
+ * </p>
+ * <p>
+ * Without a path, each top-level value of a sequence of concatenated values (such as {@code {...}{...}}) is a match,
+ * and the name is always null.
+ * </p>
+ */
+final class JsonPathScanner implements VerbatimScanner {
+
+  private static final int OBJECT = 0;
+  private static final int ARRAY = 1;
+  private static final int MATCHED_ARRAY = 2;
+
+  private final InputStream input;
+  private final byte[] buffer;
+  private final String[] path;
+  private final Deque<Frame> stack = new ArrayDeque<>();
+  private int pos = 0;
+  private int limit = 0;
+  private long offset = 0;
+  private boolean started = false;
+  private boolean pending = false;
+  private final boolean stopAfterMatch;
+  private boolean finished = false;
+  private String name;
+  private JsonStructuralIndex index;
+
+  /**
+   * Constructor.
+   *
+   * @param input the input, closed when this scanner is closed.
+   * @param path the path, e.g. {@code /envelope/document}
+   * @param bufferSize the size of the internal buffer.
+   */
+  JsonPathScanner(InputStream input, String path, int bufferSize) {
+    this(input, path, bufferSize, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param input the input, closed when this scanner is closed.
+   * @param path the path, e.g. {@code /envelope/document}
+   * @param bufferSize the size of the internal buffer.
+   * @param stopAfterMatch stop reading once the matching value has been read, if there are no arrays on the way to the
+   *          path that could contain another match.
+   */
+  JsonPathScanner(InputStream input, String path, int bufferSize, boolean stopAfterMatch) {
+    this.input = input;
+    this.stopAfterMatch = stopAfterMatch;
+    this.path = path != null ? path.substring(path.startsWith("/") ? 1 : 0).split("/") : null;
+    buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Scan each of the top-level values in a sequence of concatenated values.
+   *
+   * @param input the input, closed when this scanner is closed.
+   * @param bufferSize the size of the internal buffer.
+   */
+  static JsonPathScanner values(InputStream input, int bufferSize) {
+    return new JsonPathScanner(input, null, bufferSize, false);
+  }
+
+  @Override
+  public boolean hasNext() throws IOException {
+    if (path == null) {
+      pending = pending || peek() != -1;
+      return pending;
+    }
+    while (!pending) {
+      if (finished) {
+        return false;
+      }
+      if (stack.isEmpty()) {
+        if (started || peek() != '{') {
+          return false;
+        }
+        started = true;
+        pos++;
+        stack.push(new Frame(OBJECT, 0));
+        continue;
+      }
+      Frame frame = stack.peek();
+      int b = require(peek());
+      if (b == '}' || b == ']') {
+        pos++;
+        stack.pop();
+        if (frame.type == MATCHED_ARRAY) {
+          checkFinished();
+        }
+        continue;
+      }
+      if (b == ',') {
+        pos++;
+      }
+      switch (frame.type) {
+        case OBJECT:
+          nextEntry(frame.level);
+          break;
+        case ARRAY:
+          if (require(peek()) == '{') {
+            pos++;
+            stack.push(new Frame(OBJECT, frame.level));
+          } else {
+            skip();
+          }
+          break;
+        default:
+          pending = true;
+      }
+    }
+    return true;
+  }
+
+  private void nextEntry(int level) throws IOException {
+    String key = readString();
+    if (require(peek()) != ':') {
+      throw unexpected();
+    }
+    pos++;
+    if (!JsonPathExpression.matchesKey(key, path[level])) {
+      skip();
+      return;
+    }
+    int b = require(peek());
+    if (level == path.length - 1) {
+      name = key;
+      if (b == '[') {
+        pos++;
+        stack.push(new Frame(MATCHED_ARRAY, level));
+      } else {
+        pending = true;
+      }
+    } else if (b == '{') {
+      pos++;
+      stack.push(new Frame(OBJECT, level + 1));
+    } else if (b == '[') {
+      pos++;
+      stack.push(new Frame(ARRAY, level + 1));
+    } else {
+      skip();
+    }
+  }
+
+  /**
+   * Use an index of the input to jump over (or copy) objects and arrays, rather than checking each byte of them.
+   *
+   * @param index the index, which must have been built from the same input; may be null.
+   */
+  JsonPathScanner withIndex(JsonStructuralIndex index) {
+    this.index = index;
+    return this;
+  }
+
+  /**
+   * The key associated with the current value.
+   */
+  String name() {
+    return name;
+  }
+
+  @Override
+  public void copyTo(OutputStream out) throws IOException {
+    if (!pending) {
+      throw new IllegalStateException("No current value");
+    }
+    copyValue(out);
+    pending = false;
+    if (path != null && stack.peek().type != MATCHED_ARRAY) {
+      checkFinished();
+    }
+  }
+
+  // Nothing else can match unless there's an array on the way to the path.
+  private void checkFinished() {
+    if (stopAfterMatch && stack.stream().noneMatch(f -> f.type == ARRAY)) {
+      finished = true;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+  private void skip() throws IOException {
+    copyValue(null);
+  }
+
+  // Copy (or skip if out is null) the next value, only tracking structural characters and strings.
+  private void copyValue(OutputStream out) throws IOException {
+    int first = require(peek());
+    if (index != null && (first == '{' || first == '[')) {
+      long end = index.end(offset + pos);
+      if (end >= 0) {
+        copyRange(out, end, first == '{' ? '}' : ']');
+        return;
+      }
+    }
+    boolean scalar = first != '{' && first != '[' && first != '"';
+    boolean inString = false;
+    boolean escaped = false;
+    int depth = 0;
+    int start = pos;
+    while (true) {
+      if (pos == limit) {
+        write(out, start, pos);
+        if (!fill()) {
+          if (scalar) {
+            return;
+          }
+          throw new IOException("Unexpected end of input at offset " + offset);
+        }
+        start = pos;
+      }
+      byte c = buffer[pos];
+      if (inString) {
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == '"') {
+          inString = false;
+          if (depth == 0) {
+            pos++;
+            break;
+          }
+        }
+      } else if (scalar) {
+        // anything else is the start of the next value, in a sequence of values.
+        if (c == ',' || c == '}' || c == ']' || c == '{' || c == '[' || c == '"' || isWhitespace(c)) {
+          break;
+        }
+      } else if (c == '"') {
+        inString = true;
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if ((c == '}' || c == ']') && --depth == 0) {
+        pos++;
+        break;
+      }
+      pos++;
+    }
+    write(out, start, pos);
+  }
+
+  // Copy (or skip if out is null) everything up to and including the closing bracket at the given offset.
+  private void copyRange(OutputStream out, long end, int bracket) throws IOException {
+    while (offset + limit <= end) {
+      if (out == null) {
+        // skip to the bracket itself, so that it can be checked.
+        long remaining = end - (offset + limit);
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        IOUtils.skipFully(input, remaining);
+        offset += remaining;
+        break;
+      }
+      write(out, pos, limit);
+      pos = limit;
+      if (!fill()) {
+        throw new IOException("Unexpected end of input at offset " + offset);
+      }
+    }
+    if (offset + limit <= end && !fill()) {
+      throw new IOException("Unexpected end of input at offset " + offset);
+    }
+    int last = (int) (end - offset);
+    if (buffer[last] != bracket) {
+      throw new IOException("The structural index does not match the input at offset " + end);
+    }
+    write(out, pos, last + 1);
+    pos = last + 1;
+  }
+
+  private void write(OutputStream out, int start, int end) throws IOException {
+    if (out != null && end > start) {
+      out.write(buffer, start, end - start);
+    }
+  }
+
+  private String readString() throws IOException {
+    if (require(peek()) != '"') {
+      throw unexpected();
+    }
+    pos++;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    // consecutive unicode escapes are encoded together, so that surrogate pairs are encoded as a single character.
+    StringBuilder escapes = new StringBuilder();
+    while (true) {
+      int c = require(read());
+      if (c != '\\' || (escapes.length() > 0 && !unicodeEscape())) {
+        encode(escapes, bytes);
+      }
+      if (c == '"') {
+        break;
+      }
+      if (c != '\\') {
+        bytes.write(c);
+        continue;
+      }
+      c = require(read());
+      switch (c) {
+        case 'b':
+          bytes.write('\b');
+          break;
+        case 'f':
+          bytes.write('\f');
+          break;
+        case 'n':
+          bytes.write('\n');
+          break;
+        case 'r':
+          bytes.write('\r');
+          break;
+        case 't':
+          bytes.write('\t');
+          break;
+        case 'u':
+          char[] hex = new char[4];
+          for (int i = 0; i < hex.length; i++) {
+            hex[i] = (char) require(read());
+          }
+          escapes.append((char) Integer.parseInt(new String(hex), 16));
+          break;
+        default:
+          bytes.write(c);
+      }
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  // Whether the next character (after a backslash) starts a unicode escape.
+  private boolean unicodeEscape() throws IOException {
+    return (pos < limit || fill()) && buffer[pos] == 'u';
+  }
+
+  private static void encode(StringBuilder escapes, ByteArrayOutputStream bytes) {
+    if (escapes.length() > 0) {
+      byte[] utf8 = escapes.toString().getBytes(StandardCharsets.UTF_8);
+      bytes.write(utf8, 0, utf8.length);
+      escapes.setLength(0);
+    }
+  }
+
+  // skip whitespace and return the next byte without consuming it.
+  private int peek() throws IOException {
+    while (true) {
+      if (pos == limit && !fill()) {
+        return -1;
+      }
+      if (!isWhitespace(buffer[pos])) {
+        return buffer[pos] & 0xFF;
+      }
+      pos++;
+    }
+  }
+
+  private int read() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos++] & 0xFF;
+  }
+
+  private boolean fill() throws IOException {
+    offset += limit;
+    pos = 0;
+    limit = 0;
+    int count;
+    while ((count = input.read(buffer)) == 0) {
+      // keep going.
+    }
+    if (count > 0) {
+      limit = count;
+      return true;
+    }
+    return false;
+  }
+
+  private int require(int b) throws IOException {
+    if (b == -1) {
+      throw new IOException("Unexpected end of input at offset " + offset);
+    }
+    return b;
+  }
+
+  private IOException unexpected() {
+    return new IOException(String.format("Unexpected character '%c' at offset %d", (char) buffer[pos], offset + pos));
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+  }
+
+  private static class Frame {
+    private final int type;
+    private final int level;
+
+    Frame(int type, int level) {
+      this.type = type;
+      this.level = level;
+    }
+  }
+}
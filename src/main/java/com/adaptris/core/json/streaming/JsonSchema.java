@@ -0,0 +1,750 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamTarget;
+import de.odysseus.staxon.json.stream.JsonStreamToken;
+
+/**
+ * A compiled JSON Schema that is checked against the JSON tokens as they are read.
+ * <p>
+ * Only the keywords that can be checked on a single pass over the tokens, without holding on to any of the values, are
+ * supported: {@code type}, {@code properties}, {@code required}, {@code additionalProperties},
+ * {@code minProperties}, {@code maxProperties}, {@code items} (a single schema for every item), {@code minItems},
+ * {@code maxItems}, {@code enum} and {@code const} (of strings, numbers, booleans and null), {@code minimum},
+ * {@code maximum}, {@code exclusiveMinimum}, {@code exclusiveMaximum}, {@code multipleOf}, {@code minLength},
+ * {@code maxLength} and {@code pattern}. Keywords that are only annotations (such as {@code title}, {@code description},
+ * {@code format} and {@code definitions}) are ignored. Any other keyword, including those that would need the value to
+ * be checked against more than one schema (such as {@code $ref}, {@code allOf}, {@code anyOf}, {@code oneOf} and
+ * {@code not}), is rejected when the schema is loaded, rather than being silently ignored.
+ * </p>
+ * <p>
+ * The validator only keeps a stack of the schemas for the objects and arrays that are currently open (and the names of
+ * the properties that have been seen, if any are required); each token is checked as it is consumed, so the cost is a
+ * few comparisons per token, and nothing is read that wouldn't have been read anyway. The compiled schema is immutable,
+ * so it can be shared between threads.
+ * </p>
+ */
+final class JsonSchema {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+  private static final Set<String> UNSUPPORTED = new HashSet<>(Arrays.asList("$ref", "allOf", "anyOf", "oneOf", "not",
+      "if", "then", "else", "dependencies", "dependentRequired", "dependentSchemas", "patternProperties",
+      "propertyNames", "contains", "uniqueItems", "additionalItems", "prefixItems"));
+
+  // Keywords that don't affect validation.
+  private static final Set<String> ANNOTATIONS = new HashSet<>(Arrays.asList("$schema", "$id", "id", "$comment",
+      "title", "description", "default", "examples", "format", "definitions", "$defs", "readOnly", "writeOnly",
+      "deprecated", "contentMediaType", "contentEncoding"));
+
+  private static final int TYPE_OBJECT = 1;
+  private static final int TYPE_ARRAY = 2;
+  private static final int TYPE_STRING = 4;
+  private static final int TYPE_NUMBER = 8;
+  private static final int TYPE_INTEGER = 16;
+  private static final int TYPE_BOOLEAN = 32;
+  private static final int TYPE_NULL = 64;
+  private static final int TYPE_ANY = 127;
+
+  // null can't be stored in an enum set.
+  private static final Object NULL_VALUE = new Object();
+
+  private final Node root;
+
+  private JsonSchema(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Load the schema from a URL, or a file.
+   *
+   * @param location the URL or the path to the file.
+   */
+  static JsonSchema load(String location) throws IOException {
+    try (InputStream in = open(location)) {
+      return parse(JSON_FACTORY.createParser(in));
+    }
+  }
+
+  private static InputStream open(String location) throws IOException {
+    try {
+      return new URL(location).openStream();
+    } catch (MalformedURLException e) {
+      return Files.newInputStream(Paths.get(location));
+    }
+  }
+
+  static JsonSchema parse(Reader schema) throws IOException {
+    return parse(JSON_FACTORY.createParser(schema));
+  }
+
+  private static JsonSchema parse(JsonParser parser) throws IOException {
+    try {
+      parser.nextToken();
+      return new JsonSchema(compile(read(parser), ""));
+    } finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Wrap the stream factory so that every source it creates is validated, and fails on the first violation; targets
+   * are unchanged.
+   *
+   * @param factory the factory.
+   * @param itemDepth the number of objects and arrays that the values being validated are nested within, which is 0
+   *          unless the document is made up of several values (see {@link #validate(JsonStreamSource, int, boolean)}).
+   */
+  JsonStreamFactory wrap(JsonStreamFactory factory, int itemDepth) {
+    return new ValidatingStreamFactory(factory, itemDepth);
+  }
+
+  /**
+   * Validate the tokens read from the source.
+   *
+   * @param source the source.
+   * @param itemDepth the number of objects and arrays that the values being validated are nested within; if this is 0
+   *          then the document is validated, otherwise each value at that depth is validated, and everything around
+   *          them is not.
+   * @param failFast true to throw an {@link IOException} on the first violation, false to record them; see
+   *          {@link Validator#violations()}.
+   */
+  Validator validate(JsonStreamSource source, int itemDepth, boolean failFast) {
+    return new Validator(source, itemDepth, failFast);
+  }
+
+  private static Object read(JsonParser parser) throws IOException {
+    JsonToken token = parser.currentToken();
+    if (token == null) {
+      throw new IOException("Empty schema");
+    }
+    switch (token) {
+      case START_OBJECT:
+        Map<String, Object> object = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String name = parser.getCurrentName();
+          parser.nextToken();
+          object.put(name, read(parser));
+        }
+        return object;
+      case START_ARRAY:
+        List<Object> array = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          array.add(read(parser));
+        }
+        return array;
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return new BigDecimal(parser.getText());
+      case VALUE_TRUE:
+        return Boolean.TRUE;
+      case VALUE_FALSE:
+        return Boolean.FALSE;
+      case VALUE_NULL:
+        return NULL_VALUE;
+      default:
+        throw new IOException("Unexpected token in schema: " + token);
+    }
+  }
+
+  private static Node compile(Object schema, String pointer) throws IOException {
+    if (schema instanceof Boolean) {
+      return ((Boolean) schema).booleanValue() ? new Node() : Node.NOTHING;
+    }
+    if (!(schema instanceof Map)) {
+      throw new IOException("Schema at " + pointer(pointer) + " is not an object");
+    }
+    Map<?, ?> keywords = (Map<?, ?>) schema;
+    Node node = new Node();
+    for (Map.Entry<?, ?> e : keywords.entrySet()) {
+      String keyword = (String) e.getKey();
+      Object value = e.getValue();
+      String at = pointer + "/" + keyword;
+      if (UNSUPPORTED.contains(keyword)) {
+        throw new IOException("Unsupported schema keyword at " + at);
+      }
+      if (ANNOTATIONS.contains(keyword)) {
+        continue;
+      }
+      switch (keyword) {
+        case "type":
+          node.types = types(value, at);
+          break;
+        case "properties":
+          for (Map.Entry<?, ?> p : map(value, at).entrySet()) {
+            node.properties.put((String) p.getKey(), compile(p.getValue(), at + "/" + p.getKey()));
+          }
+          break;
+        case "required":
+          for (Object name : list(value, at)) {
+            node.required.add(string(name, at));
+          }
+          break;
+        case "additionalProperties":
+          node.additionalProperties = compile(value, at);
+          break;
+        case "items":
+          node.items = compile(value, at);
+          break;
+        case "enum":
+          node.enumeration = new HashSet<>();
+          for (Object v : list(value, at)) {
+            node.enumeration.add(scalar(v, at));
+          }
+          break;
+        case "const":
+          node.constant = scalar(value, at);
+          break;
+        case "minimum":
+          node.minimum = number(value, at);
+          break;
+        case "maximum":
+          node.maximum = number(value, at);
+          break;
+        case "exclusiveMinimum":
+          // draft 4 uses a boolean that modifies minimum.
+          if (value instanceof Boolean) {
+            node.minimumExclusive = (Boolean) value;
+          } else {
+            node.exclusiveMinimum = number(value, at);
+          }
+          break;
+        case "exclusiveMaximum":
+          if (value instanceof Boolean) {
+            node.maximumExclusive = (Boolean) value;
+          } else {
+            node.exclusiveMaximum = number(value, at);
+          }
+          break;
+        case "multipleOf":
+          node.multipleOf = number(value, at);
+          if (node.multipleOf.signum() <= 0) {
+            throw new IOException("Expected a number greater than 0 at " + at);
+          }
+          break;
+        case "minProperties":
+          node.minProperties = number(value, at).intValue();
+          break;
+        case "maxProperties":
+          node.maxProperties = number(value, at).intValue();
+          break;
+        case "minLength":
+          node.minLength = number(value, at).intValue();
+          break;
+        case "maxLength":
+          node.maxLength = number(value, at).intValue();
+          break;
+        case "minItems":
+          node.minItems = number(value, at).intValue();
+          break;
+        case "maxItems":
+          node.maxItems = number(value, at).intValue();
+          break;
+        case "pattern":
+          try {
+            node.pattern = Pattern.compile(string(value, at));
+          } catch (PatternSyntaxException ex) {
+            throw new IOException("Invalid pattern at " + at + ": " + ex.getMessage());
+          }
+          break;
+        default:
+          throw new IOException("Unknown schema keyword at " + at);
+      }
+    }
+    return node;
+  }
+
+  // Numbers are compared by value, so 1 and 1.0 are the same.
+  private static Object scalar(Object value, String at) throws IOException {
+    if (value instanceof Map || value instanceof List) {
+      throw new IOException("Unsupported value at " + at + ", only scalars are supported");
+    }
+    return value instanceof BigDecimal ? ((BigDecimal) value).stripTrailingZeros() : value;
+  }
+
+  private static int types(Object value, String at) throws IOException {
+    if (value instanceof List) {
+      int types = 0;
+      for (Object type : (List<?>) value) {
+        types |= type(string(type, at), at);
+      }
+      return types;
+    }
+    return type(string(value, at), at);
+  }
+
+  private static int type(String name, String at) throws IOException {
+    switch (name) {
+      case "object":
+        return TYPE_OBJECT;
+      case "array":
+        return TYPE_ARRAY;
+      case "string":
+        return TYPE_STRING;
+      // every integer is a number.
+      case "number":
+        return TYPE_NUMBER | TYPE_INTEGER;
+      case "integer":
+        return TYPE_INTEGER;
+      case "boolean":
+        return TYPE_BOOLEAN;
+      case "null":
+        return TYPE_NULL;
+      default:
+        throw new IOException("Unknown type at " + at + ": " + name);
+    }
+  }
+
+  private static Map<?, ?> map(Object value, String at) throws IOException {
+    if (!(value instanceof Map)) {
+      throw new IOException("Expected an object at " + at);
+    }
+    return (Map<?, ?>) value;
+  }
+
+  private static List<?> list(Object value, String at) throws IOException {
+    if (!(value instanceof List)) {
+      throw new IOException("Expected an array at " + at);
+    }
+    return (List<?>) value;
+  }
+
+  private static String string(Object value, String at) throws IOException {
+    if (!(value instanceof String)) {
+      throw new IOException("Expected a string at " + at);
+    }
+    return (String) value;
+  }
+
+  private static BigDecimal number(Object value, String at) throws IOException {
+    if (!(value instanceof BigDecimal)) {
+      throw new IOException("Expected a number at " + at);
+    }
+    return (BigDecimal) value;
+  }
+
+  private static String pointer(String pointer) {
+    return pointer.isEmpty() ? "/" : pointer;
+  }
+
+  private static final class Node {
+    // rejects everything, i.e. a schema of false.
+    static final Node NOTHING = new Node();
+
+    static {
+      NOTHING.types = 0;
+    }
+
+    private int types = TYPE_ANY;
+    private final Map<String, Node> properties = new HashMap<>();
+    private final List<String> required = new ArrayList<>();
+    private Node additionalProperties;
+    private Node items;
+    private Set<Object> enumeration;
+    private Object constant;
+    private BigDecimal multipleOf;
+    private int minProperties = -1;
+    private int maxProperties = -1;
+    private BigDecimal minimum;
+    private BigDecimal maximum;
+    private boolean minimumExclusive;
+    private boolean maximumExclusive;
+    private BigDecimal exclusiveMinimum;
+    private BigDecimal exclusiveMaximum;
+    private int minLength = -1;
+    private int maxLength = -1;
+    private int minItems = -1;
+    private int maxItems = -1;
+    private Pattern pattern;
+
+    Node property(String name) {
+      Node node = properties.get(name);
+      return node != null ? node : additionalProperties;
+    }
+  }
+
+  /**
+   * Validates the tokens as they are read from the underlying source.
+   * <p>
+   * Tokens are checked as they are consumed, rather than when they are peeked, so that a violation is always reported
+   * while the value that contains it is being read.
+   * </p>
+   */
+  final class Validator implements JsonStreamSource {
+    private final JsonStreamSource delegate;
+    private final int itemDepth;
+    private final boolean failFast;
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private final List<Violation> violations = new ArrayList<>();
+
+    private Validator(JsonStreamSource delegate, int itemDepth, boolean failFast) {
+      this.delegate = delegate;
+      this.itemDepth = itemDepth;
+      this.failFast = failFast;
+    }
+
+    /**
+     * The violations that have been found so far, if not failing fast.
+     */
+    List<Violation> violations() {
+      return Collections.unmodifiableList(violations);
+    }
+
+    /**
+     * The JSON pointer of the value that is being read; or of the last value that was read, if it's been closed.
+     */
+    String pointer() {
+      StringBuilder pointer = new StringBuilder();
+      for (Iterator<Frame> i = stack.descendingIterator(); i.hasNext();) {
+        Frame frame = i.next();
+        if (frame.array && frame.count >= 0) {
+          pointer.append('/').append(frame.count);
+        } else if (!frame.array && frame.name != null) {
+          pointer.append('/').append(frame.name.replace("~", "~0").replace("/", "~1"));
+        }
+      }
+      return pointer.toString();
+    }
+
+    @Override
+    public JsonStreamToken peek() throws IOException {
+      return delegate.peek();
+    }
+
+    @Override
+    public String name() throws IOException {
+      String name = delegate.name();
+      Frame frame = stack.peek();
+      if (frame != null) {
+        frame.name = name;
+        frame.items++;
+        if (frame.seen != null) {
+          frame.seen.add(name);
+        }
+      }
+      return name;
+    }
+
+    @Override
+    public Value value() throws IOException {
+      Value value = delegate.value();
+      Node schema = next();
+      if (schema != null) {
+        check(schema, value);
+      }
+      return value;
+    }
+
+    @Override
+    public void startObject() throws IOException {
+      delegate.startObject();
+      Node schema = next();
+      if (schema != null) {
+        checkType(schema, TYPE_OBJECT, "an object");
+        checkEnum(schema, "an object");
+      }
+      stack.push(new Frame(schema, false));
+    }
+
+    @Override
+    public void endObject() throws IOException {
+      delegate.endObject();
+      Frame frame = stack.peek();
+      frame.name = null;
+      if (frame.seen != null) {
+        for (String name : frame.schema.required) {
+          if (!frame.seen.contains(name)) {
+            violation("is missing the required property " + name);
+          }
+        }
+      }
+      if (frame.schema != null) {
+        if (frame.schema.minProperties >= 0 && frame.items < frame.schema.minProperties) {
+          violation("has fewer than " + frame.schema.minProperties + " properties");
+        }
+        if (frame.schema.maxProperties >= 0 && frame.items > frame.schema.maxProperties) {
+          violation("has more than " + frame.schema.maxProperties + " properties");
+        }
+      }
+      stack.pop();
+    }
+
+    @Override
+    public void startArray() throws IOException {
+      delegate.startArray();
+      Node schema = next();
+      if (schema != null) {
+        checkType(schema, TYPE_ARRAY, "an array");
+        checkEnum(schema, "an array");
+      }
+      stack.push(new Frame(schema, true));
+    }
+
+    @Override
+    public void endArray() throws IOException {
+      delegate.endArray();
+      Frame frame = stack.peek();
+      frame.count = -1;
+      if (frame.schema != null) {
+        if (frame.schema.minItems >= 0 && frame.items < frame.schema.minItems) {
+          violation("has fewer than " + frame.schema.minItems + " items");
+        }
+        if (frame.schema.maxItems >= 0 && frame.items > frame.schema.maxItems) {
+          violation("has more than " + frame.schema.maxItems + " items");
+        }
+      }
+      stack.pop();
+    }
+
+    // The schema for the next value, or null if it isn't being validated.
+    private Node next() {
+      Frame parent = stack.peek();
+      if (parent != null && parent.array) {
+        parent.count++;
+        parent.items++;
+      }
+      if (stack.size() == itemDepth) {
+        return itemDepth == 0 || parent.array ? root : null;
+      }
+      if (parent == null || parent.schema == null) {
+        return null;
+      }
+      return parent.array ? parent.schema.items : parent.schema.property(parent.name);
+    }
+
+    private void check(Node schema, Value value) throws IOException {
+      Object data = value.data;
+      if (data == null) {
+        checkType(schema, TYPE_NULL, "null");
+      } else if (data instanceof Boolean) {
+        checkType(schema, TYPE_BOOLEAN, value.text);
+      } else if (data instanceof Number) {
+        BigDecimal number = new BigDecimal(value.text);
+        boolean integer = number.signum() == 0 || number.stripTrailingZeros().scale() <= 0;
+        if ((schema.types & (integer ? TYPE_INTEGER : TYPE_NUMBER)) == 0) {
+          violation(value.text + " is not " + describe(schema.types));
+        }
+        checkRange(schema, number, value.text);
+      } else {
+        checkType(schema, TYPE_STRING, "a string");
+        checkString(schema, value.text);
+      }
+      if (schema.enumeration != null || schema.constant != null) {
+        Object key = data == null ? NULL_VALUE
+            : data instanceof Number ? new BigDecimal(value.text).stripTrailingZeros() : data;
+        String text = data instanceof String ? "\"" + value.text + "\"" : value.text;
+        if (schema.enumeration != null && !schema.enumeration.contains(key)) {
+          violation(text + " is not one of the allowed values");
+        }
+        if (schema.constant != null && !schema.constant.equals(key)) {
+          violation(text + " is not the allowed value");
+        }
+      }
+    }
+
+    private void checkType(Node schema, int type, String description) throws IOException {
+      if ((schema.types & type) == 0) {
+        violation(schema == Node.NOTHING ? "is not allowed" : description + " is not " + describe(schema.types));
+      }
+    }
+
+    private void checkEnum(Node schema, String description) throws IOException {
+      if (schema.enumeration != null) {
+        violation(description + " is not one of the allowed values");
+      }
+      if (schema.constant != null) {
+        violation(description + " is not the allowed value");
+      }
+    }
+
+    private void checkRange(Node schema, BigDecimal number, String text) throws IOException {
+      if (schema.minimum != null) {
+        int c = number.compareTo(schema.minimum);
+        if (c < 0 || schema.minimumExclusive && c == 0) {
+          violation(text + " is less than the minimum of " + schema.minimum);
+        }
+      }
+      if (schema.maximum != null) {
+        int c = number.compareTo(schema.maximum);
+        if (c > 0 || schema.maximumExclusive && c == 0) {
+          violation(text + " is greater than the maximum of " + schema.maximum);
+        }
+      }
+      if (schema.exclusiveMinimum != null && number.compareTo(schema.exclusiveMinimum) <= 0) {
+        violation(text + " is not greater than " + schema.exclusiveMinimum);
+      }
+      if (schema.exclusiveMaximum != null && number.compareTo(schema.exclusiveMaximum) >= 0) {
+        violation(text + " is not less than " + schema.exclusiveMaximum);
+      }
+      if (schema.multipleOf != null && number.remainder(schema.multipleOf).signum() != 0) {
+        violation(text + " is not a multiple of " + schema.multipleOf);
+      }
+    }
+
+    private void checkString(Node schema, String text) throws IOException {
+      if (schema.minLength >= 0 || schema.maxLength >= 0) {
+        int length = text.codePointCount(0, text.length());
+        if (schema.minLength >= 0 && length < schema.minLength) {
+          violation("is shorter than " + schema.minLength + " characters");
+        }
+        if (schema.maxLength >= 0 && length > schema.maxLength) {
+          violation("is longer than " + schema.maxLength + " characters");
+        }
+      }
+      if (schema.pattern != null && !schema.pattern.matcher(text).find()) {
+        violation("does not match the pattern " + schema.pattern.pattern());
+      }
+    }
+
+    private String describe(int types) {
+      List<String> names = new ArrayList<>();
+      String[] all = {"an object", "an array", "a string", "a number", "an integer", "a boolean", "null"};
+      for (int i = 0; i < all.length; i++) {
+        // a number includes integers.
+        if ((types & 1 << i) != 0 && !(i == 4 && (types & TYPE_NUMBER) != 0)) {
+          names.add(all[i]);
+        }
+      }
+      return names.isEmpty() ? "allowed" : String.join(" or ", names);
+    }
+
+    private void violation(String reason) throws IOException {
+      Violation violation = new Violation(pointer(), reason);
+      if (failFast) {
+        throw new IOException("JSON does not match the schema at " + violation);
+      }
+      violations.add(violation);
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+
+    @Override
+    public int getLineNumber() {
+      return delegate.getLineNumber();
+    }
+
+    @Override
+    public int getColumnNumber() {
+      return delegate.getColumnNumber();
+    }
+
+    @Override
+    public int getCharacterOffset() {
+      return delegate.getCharacterOffset();
+    }
+
+    @Override
+    public String getPublicId() {
+      return delegate.getPublicId();
+    }
+
+    @Override
+    public String getSystemId() {
+      return delegate.getSystemId();
+    }
+  }
+
+  /**
+   * A value that doesn't match the schema.
+   */
+  static final class Violation {
+    private final String pointer;
+    private final String reason;
+
+    private Violation(String pointer, String reason) {
+      this.pointer = pointer;
+      this.reason = reason;
+    }
+
+    /**
+     * Whether the violation is the value with the given JSON pointer, or anywhere within it.
+     */
+    boolean within(String valuePointer) {
+      return pointer.equals(valuePointer) || pointer.startsWith(valuePointer + "/");
+    }
+
+    @Override
+    public String toString() {
+      return pointer(pointer) + ": " + reason;
+    }
+  }
+
+  private static class Frame {
+    private final Node schema;
+    private final boolean array;
+    private final Set<String> seen;
+    private String name;
+    // the index of the current item, and the number of items (or properties).
+    private int count = -1;
+    private int items = 0;
+
+    Frame(Node schema, boolean array) {
+      this.schema = schema;
+      this.array = array;
+      seen = schema != null && !array && !schema.required.isEmpty() ? new HashSet<>() : null;
+    }
+  }
+
+  private class ValidatingStreamFactory extends JsonStreamFactory {
+    private final JsonStreamFactory delegate;
+    private final int itemDepth;
+
+    ValidatingStreamFactory(JsonStreamFactory delegate, int itemDepth) {
+      this.delegate = delegate;
+      this.itemDepth = itemDepth;
+    }
+
+    @Override
+    public JsonStreamSource createJsonStreamSource(InputStream input) throws IOException {
+      return validate(delegate.createJsonStreamSource(input), itemDepth, true);
+    }
+
+    @Override
+    public JsonStreamSource createJsonStreamSource(Reader reader) throws IOException {
+      return validate(delegate.createJsonStreamSource(reader), itemDepth, true);
+    }
+
+    @Override
+    public JsonStreamTarget createJsonStreamTarget(OutputStream output, boolean pretty) throws IOException {
+      return delegate.createJsonStreamTarget(output, pretty);
+    }
+
+    @Override
+    public JsonStreamTarget createJsonStreamTarget(Writer writer, boolean pretty) throws IOException {
+      return delegate.createJsonStreamTarget(writer, pretty);
+    }
+  }
+}
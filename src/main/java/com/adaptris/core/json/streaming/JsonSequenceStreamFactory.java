@@ -0,0 +1,356 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.output.CloseShieldWriter;
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamTarget;
+
+/**
+ * Reads and writes a sequence of JSON values rather than a single document; either JSON Lines (newline delimited JSON),
+ * or concatenated JSON such as {@code {...}{...}}.
+ * <p>
+ * On input, the values are presented to the parser as though they were the document
+ * {@code {"lines":{"line":[<value1>,<value2>,...]}}} (or {@code {"line":[...]}} if there is a virtual root); so each
+ * value becomes a {@code line} element beneath the root. For concatenated JSON, the names are {@code documents} and
+ * {@code document} instead. This is done by adding the separators as the characters are read; the start of each
+ * top-level value is found by tracking strings and nesting, so nothing is buffered, and the values may be separated by
+ * any whitespace (or nothing at all, unless they're numbers or literals). Since each line of JSON Lines is a single
+ * value, both are read in the same way.
+ * </p>
+ * <p>
+ * On output, each child of the root element (or each element beneath the virtual root) is written as a separate
+ * document, on its own line, regardless of its name; repeated elements are written one per line rather than as an
+ * array. Each line is written as soon as its element is complete; the output is both JSON Lines and concatenated JSON.
+ * </p>
+ */
+final class JsonSequenceStreamFactory extends JsonStreamFactory {
+
+  static final String LINES = "lines";
+  static final String LINE = "line";
+  static final String DOCUMENTS = "documents";
+  static final String DOCUMENT = "document";
+
+  private final JsonStreamFactory delegate;
+  private final boolean virtualRoot;
+  private final String root;
+  private final String element;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate the underlying factory.
+   * @param virtualRoot whether the configuration has a virtual root, which removes one level of nesting.
+   * @param root the name of the root element when reading.
+   * @param element the name of the element for each value when reading.
+   */
+  JsonSequenceStreamFactory(JsonStreamFactory delegate, boolean virtualRoot, String root, String element) {
+    this.delegate = delegate;
+    this.virtualRoot = virtualRoot;
+    this.root = root;
+    this.element = element;
+  }
+
+  static JsonSequenceStreamFactory jsonLines(JsonStreamFactory delegate, boolean virtualRoot) {
+    return new JsonSequenceStreamFactory(delegate, virtualRoot, LINES, LINE);
+  }
+
+  static JsonSequenceStreamFactory concatenated(JsonStreamFactory delegate, boolean virtualRoot) {
+    return new JsonSequenceStreamFactory(delegate, virtualRoot, DOCUMENTS, DOCUMENT);
+  }
+
+  @Override
+  public JsonStreamSource createJsonStreamSource(InputStream input) throws IOException {
+    return delegate.createJsonStreamSource(new LinesInputStream(new BufferedInputStream(input), framing()));
+  }
+
+  @Override
+  public JsonStreamSource createJsonStreamSource(Reader reader) throws IOException {
+    return delegate.createJsonStreamSource(new LinesReader(new BufferedReader(reader), framing()));
+  }
+
+  @Override
+  public JsonStreamTarget createJsonStreamTarget(OutputStream output, boolean pretty) throws IOException {
+    return new LinesTarget(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public JsonStreamTarget createJsonStreamTarget(Writer writer, boolean pretty) throws IOException {
+    return new LinesTarget(writer);
+  }
+
+  private Framing framing() {
+    return virtualRoot ? new Framing("{\"" + element + "\":[", "]}")
+        : new Framing("{\"" + root + "\":{\"" + element + "\":[", "]}}");
+  }
+
+  /**
+   * Adds the JSON around and between the values.
+   * <p>
+   * Works on characters or bytes, since everything it looks for or adds is ASCII.
+   * </p>
+   */
+  private static class Framing {
+    private final String prefix;
+    private final String suffix;
+    private int prefixPos = 0;
+    private int suffixPos = -1;
+    private int pending = -1;
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+    private boolean inScalar = false;
+    private boolean anyValues = false;
+
+    Framing(String prefix, String suffix) {
+      this.prefix = prefix;
+      this.suffix = suffix;
+    }
+
+    int next(IntSource in) throws IOException {
+      if (prefixPos < prefix.length()) {
+        return prefix.charAt(prefixPos++);
+      }
+      if (pending >= 0) {
+        int c = pending;
+        pending = -1;
+        return c;
+      }
+      if (suffixPos >= 0) {
+        return suffixPos < suffix.length() ? suffix.charAt(suffixPos++) : -1;
+      }
+      int c = in.read();
+      if (c < 0) {
+        suffixPos = 0;
+        return next(in);
+      }
+      if (startsValue(c)) {
+        if (anyValues) {
+          // the separator goes before the first character of the value.
+          pending = c;
+          return ',';
+        }
+        anyValues = true;
+      }
+      return c;
+    }
+
+    // Track strings and nesting, returning true if this is the first character of a top-level value.
+    private boolean startsValue(int c) {
+      if (inString) {
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == '"') {
+          inString = false;
+        }
+        return false;
+      }
+      if (isWhitespace(c)) {
+        inScalar = false;
+        return false;
+      }
+      if (c == '"' || c == '{' || c == '[') {
+        // a number or literal can only be followed by another value.
+        inScalar = false;
+      }
+      boolean start = depth == 0 && !inScalar;
+      if (c == '"') {
+        inString = true;
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      } else if (depth == 0) {
+        inScalar = true;
+      }
+      return start;
+    }
+
+    private static boolean isWhitespace(int c) {
+      return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+  }
+
+  @FunctionalInterface
+  private interface IntSource {
+    int read() throws IOException;
+  }
+
+  private static class LinesReader extends Reader {
+    private final Reader in;
+    private final Framing framing;
+    // created once, rather than for every character.
+    private final IntSource source;
+
+    LinesReader(Reader in, Framing framing) {
+      this.in = in;
+      this.framing = framing;
+      source = in::read;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return framing.next(source);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int n = 0;
+      for (int c; n < len && (c = framing.next(source)) >= 0; n++) {
+        cbuf[off + n] = (char) c;
+      }
+      return n > 0 ? n : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private static class LinesInputStream extends InputStream {
+    private final InputStream in;
+    private final Framing framing;
+    // created once, rather than for every character.
+    private final IntSource source;
+
+    LinesInputStream(InputStream in, Framing framing) {
+      this.in = in;
+      this.framing = framing;
+      source = in::read;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return framing.next(source);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int n = 0;
+      for (int c; n < len && (c = framing.next(source)) >= 0; n++) {
+        b[off + n] = (byte) c;
+      }
+      return n > 0 ? n : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes each value beneath the root as a document on its own line.
+   */
+  private class LinesTarget implements JsonStreamTarget {
+    private final Writer out;
+    // the number of objects to skip before the lines start.
+    private final int skip;
+    private int depth = 0;
+    private JsonStreamTarget line;
+    private int lineDepth = 0;
+
+    LinesTarget(Writer out) {
+      this.out = out;
+      skip = virtualRoot ? 1 : 2;
+    }
+
+    private JsonStreamTarget startLine() throws IOException {
+      line = delegate.createJsonStreamTarget(new CloseShieldWriter(out), false);
+      lineDepth = 0;
+      return line;
+    }
+
+    private void endLine() throws IOException {
+      line.close();
+      line = null;
+      out.write('\n');
+    }
+
+    @Override
+    public void name(String name) throws IOException {
+      if (line != null) {
+        line.name(name);
+      }
+    }
+
+    @Override
+    public void value(Object value) throws IOException {
+      if (line != null) {
+        line.value(value);
+      } else if (depth >= skip) {
+        startLine().value(value);
+        endLine();
+      }
+    }
+
+    @Override
+    public void startObject() throws IOException {
+      if (line == null && depth < skip) {
+        depth++;
+        return;
+      }
+      (line != null ? line : startLine()).startObject();
+      lineDepth++;
+    }
+
+    @Override
+    public void endObject() throws IOException {
+      if (line == null) {
+        depth--;
+        return;
+      }
+      line.endObject();
+      if (--lineDepth == 0) {
+        endLine();
+      }
+    }
+
+    // Arrays of lines are written one per line; anything else is part of a line.
+    @Override
+    public void startArray() throws IOException {
+      if (line != null) {
+        line.startArray();
+        lineDepth++;
+      }
+    }
+
+    @Override
+    public void endArray() throws IOException {
+      if (line == null) {
+        return;
+      }
+      line.endArray();
+      if (--lineDepth == 0) {
+        endLine();
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
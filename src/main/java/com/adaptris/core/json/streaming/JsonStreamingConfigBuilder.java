@@ -1,8 +1,13 @@
 package com.adaptris.core.json.streaming;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Map;
 import javax.xml.namespace.QName;
 import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
 import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.DisplayOrder;
 import com.adaptris.annotation.InputFieldDefault;
@@ -11,6 +16,7 @@ import com.adaptris.util.KeyValuePairSet;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import de.odysseus.staxon.json.JsonXMLConfig;
 import de.odysseus.staxon.json.JsonXMLConfigBuilder;
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -24,7 +30,9 @@ import lombok.Setter;
 @DisplayOrder(order =
 {
     "prettyPrint", "autoArray", "autoPrimitive", "namespaceDeclarations", "virtualRoot", "multipleProcessingInstruction",
-    "namespaceMappings", "namespaceSeparator", "repairingNamespaces"
+    "namespaceMappings", "namespaceSeparator", "repairingNamespaces", "engine", "maxTokenLength", "maxNestingDepth",
+    "maxDocumentSize", "maxSplitElementSize", "typeHints", "jsonLines", "concatenated", "schema",
+    "inputCompression", "outputCompression"
 })
 @NoArgsConstructor
 public class JsonStreamingConfigBuilder {
@@ -106,12 +114,307 @@ public class JsonStreamingConfigBuilder {
   @Setter
   private KeyValuePairSet namespaceMappings;
 
+  /**
+   * The engine that reads and writes the JSON; default is {@link JsonStreamingEngine#STAXON} if not specified.
+   * <p>
+   * Switching engine should not change the output, the XML mapping is always handled by StAXON.
+   * </p>
+   */
+  @InputFieldDefault(value = "STAXON")
+  @AdvancedConfig
+  @Getter
+  @Setter
+  private JsonStreamingEngine engine;
+
+  /**
+   * The maximum length of any single string or number in the JSON being read; default is no limit if not specified.
+   * <p>
+   * This is measured on the source, so escape sequences count as more than one character; if the JSON is being read as
+   * bytes then it is the number of bytes.
+   * </p>
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  private Integer maxTokenLength;
+
+  /**
+   * The maximum nesting depth of objects and arrays in the JSON being read; default is no limit if not specified.
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  private Integer maxNestingDepth;
+
+  /**
+   * The maximum size of the JSON being read, in characters or bytes; default is no limit if not specified.
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  private Long maxDocumentSize;
+
+  /**
+   * The maximum size of each element when splitting, measured on the source document; default is no limit if not
+   * specified.
+   * <p>
+   * Only used by the splitters; the split fails as soon as a single element exceeds this size, rather than after the
+   * element has been read.
+   * </p>
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  private Long maxSplitElementSize;
+
+  /**
+   * The URL (or file) of the array and type hints to use when writing JSON, instead of autoArray and autoPrimitive.
+   * <p>
+   * The hints list the elements that are always arrays, numbers or booleans, one per line, e.g.
+   * {@code array /orders/order} or {@code number //price}. If set, then autoArray and autoPrimitive are ignored when
+   * writing JSON; since nothing has to be guessed, each element is written as soon as it is seen, and the same
+   * element is always written the same way, whether there is one of them or many. The hints are loaded once, when the
+   * factory is first created.
+   * </p>
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  private String typeHints;
+
+  /**
+   * Whether the JSON is JSON Lines (newline delimited JSON) rather than a single document; default is false if not
+   * specified.
+   * <p>
+   * When reading, each line becomes a {@code line} element beneath a {@code lines} root element (or beneath the virtual
+   * root, if there is one). When writing, each child of the root element (or of the virtual root) is written as a
+   * separate document on its own line. The splitters treat this differently, see
+   * {@link JsonStreamingSplitter#setJsonStreamingConfig(JsonStreamingConfigBuilder)}.
+   * </p>
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "false")
+  private Boolean jsonLines;
+
+  /**
+   * Whether the JSON is a sequence of concatenated values, such as {@code {...}{...}}, rather than a single document;
+   * default is false if not specified.
+   * <p>
+   * The values may be separated by whitespace (or nothing); when reading, each value becomes a {@code document} element
+   * beneath a {@code documents} root element (or beneath the virtual root, if there is one); each value is streamed as
+   * it is read, so the sequence can be any length. When writing, this behaves exactly as
+   * {@link #setJsonLines(Boolean)}, since that is also a sequence of values. If both are set then JSON Lines takes
+   * precedence.
+   * </p>
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "false")
+  private Boolean concatenated;
+
+  /**
+   * The URL (or file) of a JSON Schema that the JSON being read must match.
+   * <p>
+   * The JSON is checked against the schema as it is read, so a document that doesn't match fails at the first
+   * violation, without needing a separate pass over the document. Only a subset of JSON Schema is supported: the
+   * {@code type}, {@code properties}, {@code required}, {@code additionalProperties}, {@code minProperties},
+   * {@code maxProperties}, {@code items}, {@code minItems}, {@code maxItems}, {@code enum}, {@code const},
+   * {@code minimum}, {@code maximum}, {@code exclusiveMinimum}, {@code exclusiveMaximum}, {@code multipleOf},
+   * {@code minLength}, {@code maxLength} and {@code pattern} keywords, along with annotations such as {@code title}; a
+   * schema that uses any other keyword (such as {@code $ref}, or {@code anyOf}) is rejected. For JSON Lines or
+   * concatenated JSON, each value is checked against the schema. The schema is loaded once, when the factory is first
+   * created. JSON that is written is not checked.
+   * </p>
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  private String schema;
+
+  /**
+   * How the JSON being read is compressed; default is {@link JsonCompression#NONE} if not specified.
+   * <p>
+   * The JSON is decompressed as it is read, so the limits apply to the decompressed JSON. Use
+   * {@link JsonCompression#DETECT} if the JSON may or may not be compressed.
+   * </p>
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "NONE")
+  private JsonCompression inputCompression;
+
+  /**
+   * How the JSON being written should be compressed; default is {@link JsonCompression#NONE} if not specified.
+   * <p>
+   * The JSON is compressed as it is written; for the splitters, each split message is compressed separately.
+   * </p>
+   */
+  @AdvancedConfig
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "NONE")
+  private JsonCompression outputCompression;
+
   public JsonXMLConfig build() {
     return new JsonXMLConfigBuilder().autoArray(autoArray()).autoPrimitive(autoPrimitive()).multiplePI(multiplePI())
         .namespaceDeclarations(namespaceDeclarations()).namespaceSeparator(namespaceSeparator()).prettyPrint(prettyPrint())
         .repairingNamespaces(repairingNamespaces()).virtualRoot(virtualRoot()).namespaceMappings(namespaceMappings()).build();
   }
 
+  /**
+   * Return a value that identifies the current resolved settings.
+   * <p>
+   * Two builders with equal keys will {@link #build()} equivalent configurations; used by
+   * {@link JsonStreamingFactoryCache} so that it is keyed on the settings, and not the builder instance.
+   * </p>
+   */
+  Object cacheKey() {
+    return Arrays.asList(autoArray(), autoPrimitive(), multiplePI(), namespaceDeclarations(), namespaceSeparator(),
+        prettyPrint(), repairingNamespaces(), virtualRoot(), namespaceMappings(), engine(), maxTokenLength(),
+        maxNestingDepth(), maxDocumentSize(), getTypeHints(), jsonLines(),
+        concatenated(), getSchema(), inputCompression(), outputCompression());
+  }
+
+  /**
+   * A builder with only the settings that affect reading JSON; the XML mapping doesn't matter when the JSON is only
+   * being turned into events.
+   */
+  JsonStreamingConfigBuilder inputConfig() {
+    return new JsonStreamingConfigBuilder().withEngine(getEngine()).withMaxTokenLength(getMaxTokenLength())
+        .withMaxNestingDepth(getMaxNestingDepth()).withMaxDocumentSize(getMaxDocumentSize()).withSchema(getSchema())
+        .withInputCompression(getInputCompression());
+  }
+
+  /**
+   * The stream factory for the engine, enforcing any limits on the JSON that is read.
+   */
+  JsonStreamFactory streamFactory() {
+    return streamFactory(schema());
+  }
+
+  /**
+   * The stream factory for the engine, enforcing any limits on the JSON that is read, and validating it against the
+   * schema.
+   *
+   * @param schema the compiled schema, or null to not validate.
+   */
+  JsonStreamFactory streamFactory(JsonSchema schema) {
+    return JsonCompression.wrap(uncompressedStreamFactory(schema), inputCompression(), outputCompression());
+  }
+
+  /**
+   * As {@link #streamFactory(JsonSchema)}, but without any compression; for when the compression is applied to the input
+   * or output separately.
+   *
+   * @param schema the compiled schema, or null to not validate.
+   */
+  JsonStreamFactory uncompressedStreamFactory(JsonSchema schema) {
+    JsonInputLimits limits = inputLimits();
+    JsonStreamFactory factory = limits != null ? limits.wrap(engine().streamFactory()) : engine().streamFactory();
+    if (schema != null) {
+      int itemDepth = 0;
+      if (jsonLines() || concatenated()) {
+        // each value is framed as an item of an array beneath the root element.
+        itemDepth = virtualRoot() != null ? 2 : 3;
+      }
+      factory = schema.wrap(factory, itemDepth);
+    }
+    if (jsonLines()) {
+      factory = JsonSequenceStreamFactory.jsonLines(factory, virtualRoot() != null);
+    } else if (concatenated()) {
+      factory = JsonSequenceStreamFactory.concatenated(factory, virtualRoot() != null);
+    }
+    return factory;
+  }
+
+  /**
+   * The limits to enforce on the JSON that is read, or null if there are none.
+   */
+  JsonInputLimits inputLimits() {
+    if (maxTokenLength() == 0 && maxNestingDepth() == 0 && maxDocumentSize() == 0) {
+      return null;
+    }
+    return new JsonInputLimits(maxTokenLength(), maxNestingDepth(), maxDocumentSize());
+  }
+
+  /**
+   * The type hints to use when writing JSON, or null if there are none.
+   */
+  JsonTypeHints typeHints() {
+    if (StringUtils.isBlank(getTypeHints())) {
+      return null;
+    }
+    try {
+      return JsonTypeHints.load(getTypeHints());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to load type hints from " + getTypeHints(), e);
+    }
+  }
+
+  /**
+   * The compiled schema to validate the JSON that is read, or null if there isn't one.
+   */
+  JsonSchema schema() {
+    if (StringUtils.isBlank(getSchema())) {
+      return null;
+    }
+    try {
+      return JsonSchema.load(getSchema());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to load the schema from " + getSchema(), e);
+    }
+  }
+
+  public JsonStreamingConfigBuilder withInputCompression(JsonCompression c) {
+    setInputCompression(c);
+    return this;
+  }
+
+  public JsonCompression inputCompression() {
+    return ObjectUtils.defaultIfNull(getInputCompression(), JsonCompression.NONE);
+  }
+
+  public JsonStreamingConfigBuilder withOutputCompression(JsonCompression c) {
+    setOutputCompression(c);
+    return this;
+  }
+
+  public JsonCompression outputCompression() {
+    return ObjectUtils.defaultIfNull(getOutputCompression(), JsonCompression.NONE);
+  }
+
+  public JsonStreamingConfigBuilder withSchema(String s) {
+    setSchema(s);
+    return this;
+  }
+
+  public JsonStreamingConfigBuilder withJsonLines(Boolean b) {
+    setJsonLines(b);
+    return this;
+  }
+
+  public boolean jsonLines() {
+    return BooleanUtils.toBooleanDefaultIfNull(getJsonLines(), false);
+  }
+
+  public JsonStreamingConfigBuilder withConcatenated(Boolean b) {
+    setConcatenated(b);
+    return this;
+  }
+
+  public boolean concatenated() {
+    return BooleanUtils.toBooleanDefaultIfNull(getConcatenated(), false);
+  }
+
+  public JsonStreamingConfigBuilder withTypeHints(String s) {
+    setTypeHints(s);
+    return this;
+  }
+
   public JsonStreamingConfigBuilder withAutoArray(Boolean b) {
     setAutoArray(b);
     return this;
@@ -198,4 +501,49 @@ public class JsonStreamingConfigBuilder {
   public boolean multiplePI() {
     return BooleanUtils.toBooleanDefaultIfNull(getMultipleProcessingInstruction(), JsonXMLConfig.DEFAULT.isMultiplePI());
   }
+
+  public JsonStreamingConfigBuilder withEngine(JsonStreamingEngine e) {
+    setEngine(e);
+    return this;
+  }
+
+  public JsonStreamingEngine engine() {
+    return ObjectUtils.defaultIfNull(getEngine(), JsonStreamingEngine.STAXON);
+  }
+
+  public JsonStreamingConfigBuilder withMaxTokenLength(Integer i) {
+    setMaxTokenLength(i);
+    return this;
+  }
+
+  public int maxTokenLength() {
+    return getMaxTokenLength() != null ? Math.max(0, getMaxTokenLength().intValue()) : 0;
+  }
+
+  public JsonStreamingConfigBuilder withMaxNestingDepth(Integer i) {
+    setMaxNestingDepth(i);
+    return this;
+  }
+
+  public int maxNestingDepth() {
+    return getMaxNestingDepth() != null ? Math.max(0, getMaxNestingDepth().intValue()) : 0;
+  }
+
+  public JsonStreamingConfigBuilder withMaxDocumentSize(Long l) {
+    setMaxDocumentSize(l);
+    return this;
+  }
+
+  public long maxDocumentSize() {
+    return getMaxDocumentSize() != null ? Math.max(0, getMaxDocumentSize().longValue()) : 0;
+  }
+
+  public JsonStreamingConfigBuilder withMaxSplitElementSize(Long l) {
+    setMaxSplitElementSize(l);
+    return this;
+  }
+
+  public long maxSplitElementSize() {
+    return getMaxSplitElementSize() != null ? Math.max(0, getMaxSplitElementSize().longValue()) : 0;
+  }
 }
@@ -0,0 +1,296 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.validation.Valid;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.ServiceImp;
+import com.adaptris.core.util.Args;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.Setter;
+
+/**
+ * Flattens a repeating element of a JSON document into CSV (or TSV), replacing the payload, without reading the whole
+ * document into memory.
+ * <p>
+ * Each element that matches {@link #setPath(String)} becomes a row, and each column is a path relative to that
+ * element; so rather than splitting the document, transforming each split message and then aggregating them, the rows
+ * are written as the document is read, in a single pass. Only the current row is held in memory, however large the
+ * document is.
+ * </p>
+ * <p>
+ * The path supports the same expressions as {@link JsonStreamingSplitter#setPath(String)}, and is evaluated against the
+ * JSON tokens in the same way as the splitter; the columns are resolved in the same way as
+ * {@link JsonStreamingMetadataService}, so if a column matches an array then the value is the first element of the
+ * array, if it matches an object then the value is its JSON representation, and if it is missing or null then the value
+ * is empty. Numbers are written exactly as they appear in the JSON.
+ * </p>
+ *
+ * @config json-streaming-csv-service
+ */
+@XStreamAlias("json-streaming-csv-service")
+@NoArgsConstructor
+@DisplayOrder(order = {"path", "columns", "format", "includeHeader", "suppressPathNotFound", "bufferSize",
+    "jsonStreamingConfig"})
+@ComponentProfile(summary = "Flatten a repeating element of a JSON document into CSV by streaming the document",
+    tag = "service,json,csv", since = "3.11.1")
+public class JsonStreamingCsvService extends ServiceImp {
+
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /**
+   * The format of the output.
+   */
+  public enum Format {
+    /**
+     * Comma separated, with each row ending in CRLF as per RFC 4180.
+     */
+    CSV(',', "\r\n"),
+    /**
+     * Tab separated, with each row ending in LF.
+     */
+    TSV('\t', "\n");
+
+    private final char separator;
+    private final String lineEnding;
+
+    Format(char separator, String lineEnding) {
+      this.separator = separator;
+      this.lineEnding = lineEnding;
+    }
+  }
+
+  /**
+   * The path to the repeating element, which may contain {@code %message{}} expressions.
+   */
+  @Getter
+  @Setter
+  @NotBlank
+  private String path;
+
+  /**
+   * The columns to write.
+   * <p>
+   * The key is the name of the column, which is used in the header; the value is the path to the value, relative to
+   * the repeating element (e.g. {@code id} or {@code customer/name}), which may contain {@code %message{}} expressions.
+   * The columns are written in the order that they are listed.
+   * </p>
+   */
+  @Getter
+  @Setter
+  @NotNull
+  @NonNull
+  @Valid
+  @AutoPopulated
+  private KeyValuePairSet columns = new KeyValuePairSet();
+
+  /**
+   * The format of the output; default is {@link Format#CSV} if not specified.
+   * <p>
+   * Values that contain the separator, a double quote or a line break are quoted in the same way for both formats.
+   * </p>
+   */
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "CSV")
+  private Format format;
+
+  /**
+   * Whether to write the column names as the first row; default is true if not specified.
+   */
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "true")
+  private Boolean includeHeader;
+
+  /**
+   * Whether to write an empty table if the path isn't found; default is false, which throws an exception.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean suppressPathNotFound;
+
+  /**
+   * The internal buffer size; default is 8192.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  private Integer bufferSize;
+
+  /**
+   * The JSON configuration used to read the document.
+   * <p>
+   * Only the settings that affect reading JSON are used (such as the engine, the limits, the schema and the input
+   * compression); if {@link JsonStreamingConfigBuilder#setOutputCompression(JsonCompression)} is set then the output
+   * is compressed. The settings that decide the JSON type of each value ({@code autoArray}, {@code autoPrimitive} and
+   * {@code typeHints}) don't apply, since a CSV value has no type; every value is written as the text that appears in
+   * the JSON.
+   * </p>
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  private JsonStreamingConfigBuilder jsonStreamingConfig;
+
+  public JsonStreamingCsvService withPath(String s) {
+    setPath(s);
+    return this;
+  }
+
+  public JsonStreamingCsvService withColumns(KeyValuePairSet b) {
+    setColumns(b);
+    return this;
+  }
+
+  public JsonStreamingCsvService withFormat(Format f) {
+    setFormat(f);
+    return this;
+  }
+
+  public JsonStreamingCsvService withIncludeHeader(Boolean b) {
+    setIncludeHeader(b);
+    return this;
+  }
+
+  public JsonStreamingCsvService withSuppressPathNotFound(Boolean b) {
+    setSuppressPathNotFound(b);
+    return this;
+  }
+
+  public JsonStreamingCsvService withBufferSize(Integer i) {
+    setBufferSize(i);
+    return this;
+  }
+
+  public JsonStreamingCsvService withJsonStreamingConfig(JsonStreamingConfigBuilder b) {
+    setJsonStreamingConfig(b);
+    return this;
+  }
+
+  @Override
+  public void doService(AdaptrisMessage msg) throws ServiceException {
+    String thePath = msg.resolve(getPath());
+    Map<String, String> paths = new LinkedHashMap<>();
+    for (KeyValuePair kvp : getColumns()) {
+      paths.put(kvp.getKey(), msg.resolve(kvp.getValue()));
+    }
+    JsonPathProjection projection = new JsonPathProjection(paths);
+    JsonStreamingConfigBuilder config = jsonStreamingConfig();
+    try (BufferedReader in = new BufferedReader(config.inputCompression().reader(msg), bufferSize());
+        JsonPathMatcher matcher = new JsonPathMatcher(
+            JsonStreamingFactoryCache.streamFactory(config.inputConfig()).createJsonStreamSource(in),
+            Collections.singletonList(JsonPathExpression.compile(thePath)))) {
+      // Fail before the payload is replaced.
+      boolean found = matcher.next();
+      if (!found && !suppressPathNotFound()) {
+        throw new ServiceException("Failed to find " + thePath);
+      }
+      try (Writer out = new BufferedWriter(config.outputCompression().writer(msg), bufferSize())) {
+        if (includeHeader()) {
+          writeRow(out, paths.keySet(), null);
+        }
+        for (; found; found = matcher.next()) {
+          JsonStreamSource match = matcher.match();
+          match.startObject();
+          match.name();
+          writeRow(out, paths.keySet(), projection.project(match));
+        }
+      }
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapServiceException(e);
+    }
+  }
+
+  // Writes the column names if there is no row.
+  private void writeRow(Writer out, Collection<String> columns, Map<String, String> row) throws IOException {
+    Format format = format();
+    boolean first = true;
+    for (String column : columns) {
+      if (!first) {
+        out.write(format.separator);
+      }
+      first = false;
+      writeValue(out, row != null ? StringUtils.defaultString(row.get(column)) : column, format.separator);
+    }
+    out.write(format.lineEnding);
+  }
+
+  private static void writeValue(Writer out, String value, char separator) throws IOException {
+    if (value.indexOf(separator) < 0 && StringUtils.containsNone(value, '"', '\r', '\n')) {
+      out.write(value);
+      return;
+    }
+    out.write('"');
+    out.write(value.replace("\"", "\"\""));
+    out.write('"');
+  }
+
+  protected Format format() {
+    return ObjectUtils.defaultIfNull(getFormat(), Format.CSV);
+  }
+
+  protected boolean includeHeader() {
+    return BooleanUtils.toBooleanDefaultIfNull(getIncludeHeader(), true);
+  }
+
+  protected boolean suppressPathNotFound() {
+    return BooleanUtils.toBooleanDefaultIfNull(getSuppressPathNotFound(), false);
+  }
+
+  protected int bufferSize() {
+    return ObjectUtils.defaultIfNull(getBufferSize(), DEFAULT_BUFFER_SIZE);
+  }
+
+  protected JsonStreamingConfigBuilder jsonStreamingConfig() {
+    return ObjectUtils.defaultIfNull(getJsonStreamingConfig(), new JsonStreamingConfigBuilder());
+  }
+
+  @Override
+  public void prepare() throws CoreException {
+    try {
+      Args.notBlank(getPath(), "path");
+      for (KeyValuePair kvp : getColumns()) {
+        Args.notBlank(kvp.getKey(), "column");
+        Args.notBlank(kvp.getValue(), "path");
+      }
+    } catch (IllegalArgumentException e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  @Override
+  protected void initService() throws CoreException {
+  }
+
+  @Override
+  protected void closeService() {
+  }
+}
@@ -0,0 +1,44 @@
+package com.adaptris.core.json.streaming;
+
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+import de.odysseus.staxon.json.stream.impl.JsonStreamFactoryImpl;
+
+/**
+ * The underlying engine that tokenises and writes the JSON.
+ * <p>
+ * Regardless of the engine, the conversion to/from XML is always handled by StAXON so that the behaviour of
+ * {@code autoArray}, {@code autoPrimitive}, {@code virtualRoot} and the multiple processing instructions is unchanged;
+ * switching engine should not change the output.
+ * </p>
+ *
+ * @see JsonStreamingConfigBuilder#setEngine(JsonStreamingEngine)
+ */
+public enum JsonStreamingEngine {
+  /**
+   * The StAXON scanner and writer; the default.
+   */
+  STAXON {
+    @Override
+    JsonStreamFactory streamFactory() {
+      return STAXON_FACTORY;
+    }
+  },
+  /**
+   * Jackson's {@code JsonParser} and {@code JsonGenerator}.
+   * <p>
+   * This is generally faster than {@link #STAXON}, and it is stricter about what is valid JSON.
+   * </p>
+   */
+  JACKSON {
+    @Override
+    JsonStreamFactory streamFactory() {
+      return JACKSON_FACTORY;
+    }
+  };
+
+  // Both stream factories are stateless, so we can share them.
+  private static final JsonStreamFactory STAXON_FACTORY = new JsonStreamFactoryImpl();
+  private static final JsonStreamFactory JACKSON_FACTORY = new JacksonStreamFactory();
+
+  abstract JsonStreamFactory streamFactory();
+}
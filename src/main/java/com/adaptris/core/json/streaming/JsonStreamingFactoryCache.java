@@ -0,0 +1,282 @@
+package com.adaptris.core.json.streaming;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.util.XMLEventAllocator;
+import de.odysseus.staxon.json.JsonXMLConfig;
+import de.odysseus.staxon.json.JsonXMLInputFactory;
+import de.odysseus.staxon.json.JsonXMLOutputFactory;
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+
+/**
+ * Caches the {@link JsonXMLConfig} and StAXON factories built from a {@link JsonStreamingConfigBuilder}.
+ * <p>
+ * Entries are keyed on the resolved settings of the builder (see {@link JsonStreamingConfigBuilder#cacheKey()}) rather
+ * than on the builder instance; changing any setting on a builder means that the next lookup resolves to a different
+ * entry, so stale factories are never handed out. The configuration and factories held in the cache are immutable, which
+ * makes them safe to share between threads; attempts to reconfigure a cached factory will throw an
+ * {@link UnsupportedOperationException}.
+ * </p>
+ * <p>
+ * The cache isn't tied to the lifecycle of the components that use it: entries are keyed on settings rather than on a
+ * component, so a single entry is typically shared by many components (and by builders that aren't part of a
+ * component at all, such as those created on the fly by the services), and an entry can be rebuilt from its builder at
+ * any time. Instead the cache is bounded; once it is full, the entry that has gone longest without being used is
+ * evicted to make room for the new one, so components that are still in use keep their entries even if configuration
+ * is being changed programmatically.
+ * </p>
+ */
+final class JsonStreamingFactoryCache {
+
+  // The number of distinct configurations is expected to be small (one per configured component), this is just to stop
+  // runaway growth if configuration is being changed programmatically.
+  static final int MAX_ENTRIES = 256;
+
+  private static final ConcurrentMap<Object, Entry> CACHE = new ConcurrentHashMap<>();
+
+  private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+  private JsonStreamingFactoryCache() {
+  }
+
+  /**
+   * Get the (immutable) {@link JsonXMLConfig} for the builder.
+   */
+  static JsonXMLConfig config(JsonStreamingConfigBuilder builder) {
+    return entry(builder).config;
+  }
+
+  /**
+   * Get a shared {@link XMLInputFactory} that reads JSON using the builder's configuration.
+   */
+  static XMLInputFactory inputFactory(JsonStreamingConfigBuilder builder) {
+    return entry(builder).inputFactory;
+  }
+
+  /**
+   * Get a shared {@link XMLOutputFactory} that writes JSON using the builder's configuration.
+   */
+  static XMLOutputFactory outputFactory(JsonStreamingConfigBuilder builder) {
+    return entry(builder).outputFactory;
+  }
+
+  /**
+   * Get a shared {@link XMLOutputFactory} that writes JSON using the builder's configuration, but never compresses it;
+   * for when the compression is applied to the output separately.
+   */
+  static XMLOutputFactory uncompressedOutputFactory(JsonStreamingConfigBuilder builder) {
+    return entry(builder).uncompressedOutputFactory;
+  }
+
+  /**
+   * Get the shared stream factory for the builder's engine, with its limits and schema.
+   */
+  static JsonStreamFactory streamFactory(JsonStreamingConfigBuilder builder) {
+    return entry(builder).streamFactory;
+  }
+
+  /**
+   * Get the builder's compiled schema, or null if it doesn't have one.
+   */
+  static JsonSchema schema(JsonStreamingConfigBuilder builder) {
+    return entry(builder).schema;
+  }
+
+  /**
+   * Get a shared {@link XMLEventFactory} instance.
+   * <p>
+   * This avoids the service loader lookup that {@link XMLEventFactory#newInstance()} performs on each invocation.
+   * </p>
+   */
+  static XMLEventFactory eventFactory() {
+    return EVENT_FACTORY;
+  }
+
+  /**
+   * Discard all cached entries.
+   */
+  static void clear() {
+    CACHE.clear();
+  }
+
+  static int size() {
+    return CACHE.size();
+  }
+
+  private static Entry entry(JsonStreamingConfigBuilder builder) {
+    Object key = builder.cacheKey();
+    Entry result = CACHE.get(key);
+    if (result == null) {
+      if (CACHE.size() >= MAX_ENTRIES) {
+        evictLeastRecentlyUsed();
+      }
+      result = CACHE.computeIfAbsent(key, k -> new Entry(builder));
+    }
+    result.lastUsed = System.nanoTime();
+    return result;
+  }
+
+  // Only happens on a miss when the cache is full, so a scan is fine.
+  private static void evictLeastRecentlyUsed() {
+    Map.Entry<Object, Entry> eldest = null;
+    for (Map.Entry<Object, Entry> e : CACHE.entrySet()) {
+      if (eldest == null || e.getValue().lastUsed - eldest.getValue().lastUsed < 0) {
+        eldest = e;
+      }
+    }
+    if (eldest != null) {
+      CACHE.remove(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  private static class Entry {
+    private final JsonXMLConfig config;
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory;
+    private final XMLOutputFactory uncompressedOutputFactory;
+    private final JsonStreamFactory streamFactory;
+    private final JsonSchema schema;
+    private volatile long lastUsed;
+
+    Entry(JsonStreamingConfigBuilder builder) {
+      config = new ImmutableConfig(builder.build());
+      schema = builder.schema();
+      JsonStreamFactory uncompressed = builder.uncompressedStreamFactory(schema);
+      streamFactory = JsonCompression.wrap(uncompressed, builder.inputCompression(), builder.outputCompression());
+      inputFactory = new SealedInputFactory(config, streamFactory);
+      JsonTypeHints hints = builder.typeHints();
+      outputFactory = outputFactory(config, streamFactory, hints);
+      uncompressedOutputFactory = streamFactory == uncompressed ? outputFactory
+          : outputFactory(config, uncompressed, hints);
+    }
+
+    private static XMLOutputFactory outputFactory(JsonXMLConfig config, JsonStreamFactory streamFactory,
+        JsonTypeHints hints) {
+      return hints != null
+          ? new TypeHintOutputFactory(new SealedOutputFactory(new ImmutableConfig(config, true), streamFactory), hints)
+          : new SealedOutputFactory(config, streamFactory);
+    }
+  }
+
+  private static class ImmutableConfig implements JsonXMLConfig {
+    private final boolean autoArray;
+    private final boolean autoPrimitive;
+    private final boolean multiplePI;
+    private final boolean namespaceDeclarations;
+    private final char namespaceSeparator;
+    private final boolean prettyPrint;
+    private final QName virtualRoot;
+    private final boolean repairingNamespaces;
+    private final Map<String, String> namespaceMappings;
+
+    ImmutableConfig(JsonXMLConfig c) {
+      this(c, false);
+    }
+
+    // Type hints replace the guesses, and declare arrays with processing instructions.
+    ImmutableConfig(JsonXMLConfig c, boolean typeHints) {
+      autoArray = c.isAutoArray() && !typeHints;
+      autoPrimitive = c.isAutoPrimitive() && !typeHints;
+      multiplePI = c.isMultiplePI() || typeHints;
+      namespaceDeclarations = c.isNamespaceDeclarations();
+      namespaceSeparator = c.getNamespaceSeparator();
+      prettyPrint = c.isPrettyPrint();
+      virtualRoot = c.getVirtualRoot();
+      repairingNamespaces = c.isRepairingNamespaces();
+      namespaceMappings = c.getNamespaceMappings() != null ? Collections.unmodifiableMap(c.getNamespaceMappings()) : null;
+    }
+
+    @Override
+    public boolean isAutoArray() {
+      return autoArray;
+    }
+
+    @Override
+    public boolean isAutoPrimitive() {
+      return autoPrimitive;
+    }
+
+    @Override
+    public boolean isMultiplePI() {
+      return multiplePI;
+    }
+
+    @Override
+    public boolean isNamespaceDeclarations() {
+      return namespaceDeclarations;
+    }
+
+    @Override
+    public char getNamespaceSeparator() {
+      return namespaceSeparator;
+    }
+
+    @Override
+    public boolean isPrettyPrint() {
+      return prettyPrint;
+    }
+
+    @Override
+    public QName getVirtualRoot() {
+      return virtualRoot;
+    }
+
+    @Override
+    public boolean isRepairingNamespaces() {
+      return repairingNamespaces;
+    }
+
+    @Override
+    public Map<String, String> getNamespaceMappings() {
+      return namespaceMappings;
+    }
+  }
+
+  private static class SealedInputFactory extends JsonXMLInputFactory {
+    private final boolean sealed;
+
+    SealedInputFactory(JsonXMLConfig config, JsonStreamFactory streamFactory) {
+      super(config, streamFactory);
+      sealed = true;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) throws IllegalArgumentException {
+      checkSealed(sealed);
+      super.setProperty(name, value);
+    }
+
+    @Override
+    public void setEventAllocator(XMLEventAllocator allocator) {
+      checkSealed(sealed);
+      super.setEventAllocator(allocator);
+    }
+  }
+
+  private static class SealedOutputFactory extends JsonXMLOutputFactory {
+    private final boolean sealed;
+
+    SealedOutputFactory(JsonXMLConfig config, JsonStreamFactory streamFactory) {
+      super(config, streamFactory);
+      sealed = true;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) throws IllegalArgumentException {
+      checkSealed(sealed);
+      super.setProperty(name, value);
+    }
+  }
+
+  private static void checkSealed(boolean sealed) {
+    if (sealed) {
+      throw new UnsupportedOperationException("Shared factory instances may not be reconfigured");
+    }
+  }
+}
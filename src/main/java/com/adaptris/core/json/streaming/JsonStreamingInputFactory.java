@@ -3,12 +3,15 @@ package com.adaptris.core.json.streaming;
 import javax.xml.stream.XMLInputFactory;
 import com.adaptris.stax.XmlInputFactoryBuilder;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
-import de.odysseus.staxon.json.JsonXMLInputFactory;
 import lombok.NoArgsConstructor;
 
 /**
  * {@link com.adaptris.stax.XmlInputFactoryBuilder} implementation that allows us to read JSON via standard {@code javax.xml.stream}
  * interfaces.
+ * <p>
+ * The factory that is returned is shared between all instances with equivalent configuration and may not be
+ * reconfigured.
+ * </p>
  *
  * @config json-streaming-input
  * @since 3.8.3
@@ -19,6 +22,6 @@ public class JsonStreamingInputFactory extends JsonStreamBuilderImpl implements
 
   @Override
   public XMLInputFactory build() {
-    return new JsonXMLInputFactory(config().build());
+    return JsonStreamingFactoryCache.inputFactory(config());
   }
 }
@@ -0,0 +1,153 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.ServiceImp;
+import com.adaptris.core.util.Args;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.Setter;
+
+/**
+ * Extracts values from a JSON document into metadata without reading the whole document into memory.
+ * <p>
+ * Each path uses the same pseudo-xpath as {@link JsonStreamingSplitter#setPath(String)}, so
+ * {@code /order/customer/name} is fine but {@code //name} is not. All the paths are matched in a single pass over the
+ * JSON tokens; values that can't match are skipped rather than parsed, and the document is only read until every path
+ * has been found. If a path matches an array, then the value is the first element of the array; if the value is an
+ * object then the metadata is the JSON representation of that object.
+ * </p>
+ * <p>
+ * The document is read as characters in the message's content encoding, using the engine and limits from
+ * {@link #setJsonStreamingConfig(JsonStreamingConfigBuilder)}.
+ * </p>
+ *
+ * @config json-streaming-metadata-service
+ */
+@XStreamAlias("json-streaming-metadata-service")
+@NoArgsConstructor
+@DisplayOrder(order = {"metadataPaths", "suppressPathNotFound", "jsonStreamingConfig"})
+@ComponentProfile(summary = "Extract values from a JSON document into metadata by streaming the document",
+    tag = "service,json,metadata", since = "3.11.1")
+public class JsonStreamingMetadataService extends ServiceImp {
+
+  /**
+   * The paths to extract.
+   * <p>
+   * The key is the metadata key, and the value is the path, which may contain {@code %message{}} expressions.
+   * </p>
+   */
+  @Getter
+  @Setter
+  @NotNull
+  @NonNull
+  @Valid
+  @AutoPopulated
+  private KeyValuePairSet metadataPaths = new KeyValuePairSet();
+
+  /**
+   * Whether to ignore paths that aren't found; default is false, which throws an exception.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean suppressPathNotFound;
+
+  /**
+   * The JSON configuration used to read the document.
+   * <p>
+   * Only the settings that affect reading JSON are used (such as the engine, the limits, the schema and the input
+   * compression).
+   * </p>
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @Valid
+  private JsonStreamingConfigBuilder jsonStreamingConfig;
+
+  public JsonStreamingMetadataService withMetadataPaths(KeyValuePairSet b) {
+    setMetadataPaths(b);
+    return this;
+  }
+
+  public JsonStreamingMetadataService withSuppressPathNotFound(Boolean b) {
+    setSuppressPathNotFound(b);
+    return this;
+  }
+
+  public JsonStreamingMetadataService withJsonStreamingConfig(JsonStreamingConfigBuilder b) {
+    setJsonStreamingConfig(b);
+    return this;
+  }
+
+  @Override
+  public void doService(AdaptrisMessage msg) throws ServiceException {
+    Map<String, String> paths = new LinkedHashMap<>();
+    for (KeyValuePair kvp : getMetadataPaths()) {
+      paths.put(kvp.getKey(), msg.resolve(kvp.getValue()));
+    }
+    JsonStreamingConfigBuilder config = jsonStreamingConfig();
+    try (Reader in = config.inputCompression().reader(msg);
+        JsonStreamSource source = JsonStreamingFactoryCache.streamFactory(config.inputConfig())
+            .createJsonStreamSource(in)) {
+      Map<String, String> results = new JsonPathProjection(paths).project(source);
+      for (Map.Entry<String, String> e : paths.entrySet()) {
+        if (!results.containsKey(e.getKey()) && !suppressPathNotFound()) {
+          throw new ServiceException("Failed to find " + e.getValue());
+        }
+      }
+      results.forEach(msg::addMetadata);
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapServiceException(e);
+    }
+  }
+
+  protected boolean suppressPathNotFound() {
+    return BooleanUtils.toBooleanDefaultIfNull(getSuppressPathNotFound(), false);
+  }
+
+  protected JsonStreamingConfigBuilder jsonStreamingConfig() {
+    return ObjectUtils.defaultIfNull(getJsonStreamingConfig(), new JsonStreamingConfigBuilder());
+  }
+
+  @Override
+  public void prepare() throws CoreException {
+    try {
+      for (KeyValuePair kvp : getMetadataPaths()) {
+        Args.notBlank(kvp.getKey(), "metadataKey");
+        Args.notBlank(kvp.getValue(), "path");
+      }
+    } catch (IllegalArgumentException e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  @Override
+  protected void initService() throws CoreException {
+  }
+
+  @Override
+  protected void closeService() {
+  }
+}
@@ -0,0 +1,345 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.util.CloseableIterable;
+
+/**
+ * Throughput and latency metrics for the streaming components.
+ * <p>
+ * Metrics are opt-in; components that have a {@code metricsId} configured share a single instance per id, which is
+ * registered with the platform MBeanServer (and hence Interlok's JMX management) as
+ * {@code com.adaptris:type=JsonStreamingMetrics,id="<metricsId>"}. Everything is recorded using {@link LongAdder}s so
+ * that components processing messages concurrently don't contend with each other.
+ * </p>
+ * <p>
+ * Each component that uses the metrics holds a reference to them from {@link #acquire(String)} until it is closed, when
+ * it calls {@link #release(String)}; once the last component with the id is closed the metrics are unregistered, so
+ * restarting a channel (or removing a component) doesn't leave stale MBeans behind.
+ * </p>
+ */
+public final class JsonStreamingMetrics implements JsonStreamingMetricsMBean {
+
+  static final String JMX_TYPE = "com.adaptris:type=JsonStreamingMetrics,id=";
+
+  private static final Logger log = LoggerFactory.getLogger(JsonStreamingMetrics.class);
+  private static final Map<String, JsonStreamingMetrics> INSTANCES = new HashMap<>();
+
+  private final LongAdder messages = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder bytesIn = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+  private final LongAdder tokens = new LongAdder();
+  private final LongAdder splits = new LongAdder();
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LatencyHistogram timeToFirstSplit = new LatencyHistogram();
+  private int references = 0;
+
+  private JsonStreamingMetrics() {
+  }
+
+  /**
+   * Get the metrics for the id, registering them with JMX if this is the first reference to them.
+   * <p>
+   * Every call must be matched by a call to {@link #release(String)}.
+   * </p>
+   */
+  static synchronized JsonStreamingMetrics acquire(String id) {
+    JsonStreamingMetrics metrics = INSTANCES.computeIfAbsent(id, JsonStreamingMetrics::register);
+    metrics.references++;
+    return metrics;
+  }
+
+  /**
+   * Release a reference to the metrics for the id, unregistering them from JMX if it was the last one.
+   */
+  static synchronized void release(String id) {
+    JsonStreamingMetrics metrics = INSTANCES.get(id);
+    if (metrics == null || --metrics.references > 0) {
+      return;
+    }
+    INSTANCES.remove(id);
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = objectName(id);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+    } catch (Exception e) {
+      log.warn("Failed to unregister metrics for [{}] from JMX: {}", id, e.getMessage());
+    }
+  }
+
+  private static JsonStreamingMetrics register(String id) {
+    JsonStreamingMetrics metrics = new JsonStreamingMetrics();
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = objectName(id);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(metrics, name);
+      }
+    } catch (Exception e) {
+      // Still record the metrics, they're just not visible.
+      log.warn("Failed to register metrics for [{}] with JMX: {}", id, e.getMessage());
+    }
+    return metrics;
+  }
+
+  static ObjectName objectName(String id) throws Exception {
+    return ObjectName.getInstance(JMX_TYPE + ObjectName.quote(id));
+  }
+
+  /**
+   * Record a message that was transformed.
+   */
+  void transformed(long in, long out, long tokenCount, long startNanos) {
+    messages.increment();
+    bytesIn.add(in);
+    bytesOut.add(out);
+    tokens.add(tokenCount);
+    latency.record(micros(startNanos));
+  }
+
+  void failed() {
+    failures.increment();
+  }
+
+  void tokens(long count) {
+    tokens.add(count);
+  }
+
+  /**
+   * Wrap the split messages so that each one is recorded as it is produced; the message is recorded once all the split
+   * messages have been produced.
+   * <p>
+   * The latency is the time spent splitting: the time taken by {@code splitMessage()} plus the time spent inside
+   * {@code hasNext()} and {@code next()}, so the time that the consumer spends processing each split message isn't
+   * included. If the iterable is closed before all the split messages have been produced (because the consumer failed,
+   * or gave up) then the message is recorded as a failure.
+   * </p>
+   */
+  CloseableIterable<AdaptrisMessage> meter(Iterable<AdaptrisMessage> iterable, long in, long startNanos) {
+    return new MeteredSplitGenerator(iterable, in, startNanos);
+  }
+
+  private static long micros(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+  }
+
+  @Override
+  public long getMessageCount() {
+    return messages.sum();
+  }
+
+  @Override
+  public long getFailureCount() {
+    return failures.sum();
+  }
+
+  @Override
+  public long getBytesIn() {
+    return bytesIn.sum();
+  }
+
+  @Override
+  public long getBytesOut() {
+    return bytesOut.sum();
+  }
+
+  @Override
+  public long getTokenCount() {
+    return tokens.sum();
+  }
+
+  @Override
+  public long getSplitCount() {
+    return splits.sum();
+  }
+
+  @Override
+  public long getMeanLatencyMicros() {
+    return latency.mean();
+  }
+
+  @Override
+  public long getLatency50thPercentileMicros() {
+    return latency.percentile(50);
+  }
+
+  @Override
+  public long getLatency90thPercentileMicros() {
+    return latency.percentile(90);
+  }
+
+  @Override
+  public long getLatency99thPercentileMicros() {
+    return latency.percentile(99);
+  }
+
+  @Override
+  public long getLatency999thPercentileMicros() {
+    return latency.percentile(99.9);
+  }
+
+  @Override
+  public long getMaxLatencyMicros() {
+    return latency.max();
+  }
+
+  @Override
+  public long getMeanTimeToFirstSplitMicros() {
+    return timeToFirstSplit.mean();
+  }
+
+  @Override
+  public long getTimeToFirstSplit99thPercentileMicros() {
+    return timeToFirstSplit.percentile(99);
+  }
+
+  @Override
+  public long getMaxTimeToFirstSplitMicros() {
+    return timeToFirstSplit.max();
+  }
+
+  @Override
+  public void reset() {
+    messages.reset();
+    failures.reset();
+    bytesIn.reset();
+    bytesOut.reset();
+    tokens.reset();
+    splits.reset();
+    latency.reset();
+    timeToFirstSplit.reset();
+  }
+
+  /**
+   * The reference that a component holds to its metrics, which follows changes to the id.
+   */
+  static class Reference {
+    private String id;
+    private JsonStreamingMetrics metrics;
+
+    /**
+     * Get the metrics for the id, acquiring them if they aren't already held.
+     *
+     * @param newId the id; if blank then no metrics are recorded, and null is returned.
+     */
+    synchronized JsonStreamingMetrics get(String newId) {
+      String wanted = StringUtils.defaultIfBlank(newId, null);
+      if (!StringUtils.equals(id, wanted)) {
+        release();
+        if (wanted != null) {
+          metrics = acquire(wanted);
+          id = wanted;
+        }
+      }
+      return metrics;
+    }
+
+    /**
+     * Release the metrics, if they are held.
+     */
+    synchronized void release() {
+      if (id != null) {
+        JsonStreamingMetrics.release(id);
+      }
+      id = null;
+      metrics = null;
+    }
+  }
+
+  private class MeteredSplitGenerator implements CloseableIterable<AdaptrisMessage>, Iterator<AdaptrisMessage> {
+    private final CloseableIterable<AdaptrisMessage> iterable;
+    private final long in;
+    private final long startNanos;
+    private long splitNanos;
+    private Iterator<AdaptrisMessage> iterator;
+    private boolean first = true;
+    private boolean finished = false;
+
+    MeteredSplitGenerator(Iterable<AdaptrisMessage> iterable, long in, long startNanos) {
+      this.iterable = CloseableIterable.ensureCloseable(iterable);
+      this.in = in;
+      this.startNanos = startNanos;
+      // the time taken by splitMessage() itself.
+      splitNanos = System.nanoTime() - startNanos;
+    }
+
+    @Override
+    public Iterator<AdaptrisMessage> iterator() {
+      if (iterator != null) {
+        throw new IllegalStateException("iterator already invoked");
+      }
+      iterator = iterable.iterator();
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      long start = System.nanoTime();
+      try {
+        boolean result = iterator.hasNext();
+        splitNanos += System.nanoTime() - start;
+        if (!result) {
+          finish(false);
+        }
+        return result;
+      } catch (RuntimeException e) {
+        finish(true);
+        throw e;
+      }
+    }
+
+    @Override
+    public AdaptrisMessage next() {
+      long start = System.nanoTime();
+      try {
+        AdaptrisMessage msg = iterator.next();
+        splitNanos += System.nanoTime() - start;
+        if (first) {
+          first = false;
+          timeToFirstSplit.record(micros(startNanos));
+        }
+        splits.increment();
+        bytesOut.add(msg.getSize());
+        return msg;
+      } catch (RuntimeException e) {
+        finish(true);
+        throw e;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      // if it hasn't finished, then the consumer stopped early.
+      finish(true);
+      iterable.close();
+    }
+
+    private void finish(boolean failed) {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      if (failed) {
+        failures.increment();
+        return;
+      }
+      messages.increment();
+      bytesIn.add(in);
+      latency.record(TimeUnit.NANOSECONDS.toMicros(splitNanos));
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.adaptris.core.json.streaming;
+
+/**
+ * Management interface for {@link JsonStreamingMetrics}.
+ * <p>
+ * All durations are in microseconds, and all counts are since the component was first used (or since the last
+ * {@link #reset()}).
+ * </p>
+ */
+public interface JsonStreamingMetricsMBean {
+
+  /**
+   * The number of messages that have been transformed or split.
+   */
+  long getMessageCount();
+
+  /**
+   * The number of messages that failed; including a split that was closed before all its split messages were produced.
+   */
+  long getFailureCount();
+
+  /**
+   * The total size of the messages that were read.
+   */
+  long getBytesIn();
+
+  /**
+   * The total size of the messages (or split messages) that were written.
+   */
+  long getBytesOut();
+
+  /**
+   * The number of StAX events that were processed.
+   */
+  long getTokenCount();
+
+  /**
+   * The number of split messages that were produced.
+   */
+  long getSplitCount();
+
+  /**
+   * The mean time taken to transform or split a message.
+   * <p>
+   * For a split, this is only the time spent producing the split messages; the time that the consumer spends processing
+   * each split message is not included.
+   * </p>
+   */
+  long getMeanLatencyMicros();
+
+  long getLatency50thPercentileMicros();
+
+  long getLatency90thPercentileMicros();
+
+  long getLatency99thPercentileMicros();
+
+  long getLatency999thPercentileMicros();
+
+  long getMaxLatencyMicros();
+
+  /**
+   * The mean time between starting to split a message and the first split message being available.
+   */
+  long getMeanTimeToFirstSplitMicros();
+
+  long getTimeToFirstSplit99thPercentileMicros();
+
+  long getMaxTimeToFirstSplitMicros();
+
+  /**
+   * Reset all the counters.
+   */
+  void reset();
+}
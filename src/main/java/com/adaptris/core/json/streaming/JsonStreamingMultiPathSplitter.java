@@ -0,0 +1,408 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.services.splitter.MessageSplitterImp;
+import com.adaptris.core.util.Args;
+import com.adaptris.core.util.CloseableIterable;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import de.odysseus.staxon.json.JsonXMLStreamConstants;
+import de.odysseus.staxon.json.JsonXMLStreamReader;
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+
+/**
+ * Splitter implementation that splits on several paths in a single pass over the JSON document.
+ * <p>
+ * Each path is keyed by a name; every element that matches one of the paths becomes a split message, in the order that
+ * they appear in the document, and the name of the path that it matched is stored against
+ * {@link #setPathMetadataKey(String)}. This means that a document containing (for instance) {@code /order/lines} and
+ * {@code /order/shipments} is only parsed once, rather than once per path.
+ * </p>
+ * <p>
+ * The paths support the same expressions as {@link JsonStreamingSplitter#setPath(String)}, and are always evaluated
+ * against the JSON tokens, so {@code /order/lines} only matches {@code lines} directly beneath {@code order}. If an
+ * element matches more than one path then it is only emitted once, for the first path in the list; anything nested
+ * within a match is part of that match, and is not emitted again.
+ * </p>
+ *
+ * @config json-streaming-multi-path-splitter
+ */
+@XStreamAlias("json-streaming-multi-path-splitter")
+@DisplayOrder(order = {"paths", "pathMetadataKey", "bufferSize", "suppressPathNotFound", "wrapWithArray",
+    "jsonStreamingConfig", "memoryMappedInput"})
+@ComponentProfile(summary = "Split a JSON document on several paths in a single pass", tag = "splitter,json",
+    since = "3.11.1")
+public class JsonStreamingMultiPathSplitter extends MessageSplitterImp {
+
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+  private static final String DEFAULT_PATH_METADATA_KEY = "jsonSplitPath";
+
+  @NotNull
+  @Valid
+  @AutoPopulated
+  private KeyValuePairSet paths = new KeyValuePairSet();
+
+  @AdvancedConfig
+  @InputFieldDefault(value = DEFAULT_PATH_METADATA_KEY)
+  private String pathMetadataKey;
+
+  @AdvancedConfig
+  private Integer bufferSize;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean suppressPathNotFound;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean wrapWithArray;
+
+  @AdvancedConfig
+  private JsonStreamingConfigBuilder jsonStreamingConfig;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean memoryMappedInput;
+
+  public JsonStreamingMultiPathSplitter() {
+    // the same defaults as JsonStreamingSplitter.
+    jsonStreamingConfig = new JsonStreamingConfigBuilder().withAutoArray(true).withAutoPrimitive(true);
+  }
+
+  public JsonStreamingMultiPathSplitter(KeyValuePairSet paths) {
+    this();
+    setPaths(paths);
+  }
+
+  public JsonStreamingMultiPathSplitter withPaths(KeyValuePairSet p) {
+    setPaths(p);
+    return this;
+  }
+
+  public JsonStreamingMultiPathSplitter withPathMetadataKey(String s) {
+    setPathMetadataKey(s);
+    return this;
+  }
+
+  public JsonStreamingMultiPathSplitter withBufferSize(Integer i) {
+    setBufferSize(i);
+    return this;
+  }
+
+  public JsonStreamingMultiPathSplitter withSuppressPathNotFound(Boolean b) {
+    setSuppressPathNotFound(b);
+    return this;
+  }
+
+  public JsonStreamingMultiPathSplitter withWrapWithArray(Boolean b) {
+    setWrapWithArray(b);
+    return this;
+  }
+
+  public JsonStreamingMultiPathSplitter withJsonStreamingConfig(JsonStreamingConfigBuilder b) {
+    setJsonStreamingConfig(b);
+    return this;
+  }
+
+  public JsonStreamingMultiPathSplitter withMemoryMappedInput(Boolean b) {
+    setMemoryMappedInput(b);
+    return this;
+  }
+
+  @Override
+  public CloseableIterable<AdaptrisMessage> splitMessage(AdaptrisMessage msg) throws CoreException {
+    try {
+      List<String> names = new ArrayList<>();
+      List<JsonPathExpression> expressions = new ArrayList<>();
+      for (KeyValuePair kvp : getPaths()) {
+        names.add(kvp.getKey());
+        expressions.add(JsonPathExpression.compile(msg.resolve(kvp.getValue())));
+      }
+      if (expressions.isEmpty()) {
+        throw new CoreException("No paths configured");
+      }
+      JsonStreamFactory streamFactory = JsonStreamingFactoryCache.streamFactory(inputConfig());
+      Closeable input;
+      JsonStreamSource source;
+      if (mapInput(msg)) {
+        InputStream in = MappedFileInputStream.open(msg);
+        input = in;
+        source = streamFactory.createJsonStreamSource(in);
+      } else {
+        BufferedReader buf = new BufferedReader(getJsonStreamingConfig().inputCompression().reader(msg),
+            bufferSize());
+        input = buf;
+        source = streamFactory.createJsonStreamSource(buf);
+      }
+      MultiPathSplitGenerator generator = new MultiPathSplitGenerator(msg, new JsonPathMatcher(source, expressions),
+          input, names);
+      try {
+        if (!generator.hasNext() && !suppressPathNotFound()) {
+          throw new CoreException("Failed to find any of " + expressions);
+        }
+      } catch (Exception e) {
+        generator.close();
+        throw e;
+      }
+      return generator;
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  public KeyValuePairSet getPaths() {
+    return paths;
+  }
+
+  /**
+   * Set the paths to split on.
+   * <p>
+   * The key is the name of the path, which is stored as metadata on each split message; the value is the path, which
+   * may contain {@code %message{}} expressions.
+   * </p>
+   *
+   * @param paths the paths.
+   */
+  public void setPaths(KeyValuePairSet paths) {
+    this.paths = Args.notNull(paths, "paths");
+  }
+
+  public String getPathMetadataKey() {
+    return pathMetadataKey;
+  }
+
+  /**
+   * Set the metadata key that will contain the name of the path that each split message matched.
+   *
+   * @param s the metadata key; default is {@code jsonSplitPath} if not specified.
+   */
+  public void setPathMetadataKey(String s) {
+    pathMetadataKey = s;
+  }
+
+  public Integer getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Set the internal buffer size.
+   *
+   * @param i the buffer size (default is 8192).
+   */
+  public void setBufferSize(Integer i) {
+    bufferSize = i;
+  }
+
+  public Boolean getSuppressPathNotFound() {
+    return suppressPathNotFound;
+  }
+
+  /**
+   * Whether to return no split messages if none of the paths are found.
+   *
+   * @param b true to suppress the error; default is false, which throws an exception.
+   */
+  public void setSuppressPathNotFound(Boolean b) {
+    suppressPathNotFound = b;
+  }
+
+  public Boolean getWrapWithArray() {
+    return wrapWithArray;
+  }
+
+  /**
+   * Whether to always wrap the element in each split message in an array.
+   *
+   * @param b true to wrap each element in an array; default is false.
+   */
+  public void setWrapWithArray(Boolean b) {
+    wrapWithArray = b;
+  }
+
+  public JsonStreamingConfigBuilder getJsonStreamingConfig() {
+    return jsonStreamingConfig;
+  }
+
+  /**
+   * Set the JSON configuration used to write each split message.
+   * <p>
+   * Only the engine, the limits and the input compression are used when reading the document.
+   * </p>
+   *
+   * @param b the configuration.
+   */
+  public void setJsonStreamingConfig(JsonStreamingConfigBuilder b) {
+    jsonStreamingConfig = Args.notNull(b, "jsonStreamingConfig");
+  }
+
+  public Boolean getMemoryMappedInput() {
+    return memoryMappedInput;
+  }
+
+  /**
+   * Read file backed messages through a memory mapped file.
+   * <p>
+   * This is the same as {@link JsonStreamingSplitter#setMemoryMappedInput(Boolean)}; the bytes of a
+   * {@link com.adaptris.core.lms.FileBackedMessage} are handed directly to the parser rather than being read through
+   * {@link AdaptrisMessage#getReader()}. Messages that are not file backed, or that have a content encoding other than
+   * UTF-8, are read as normal. This should not be enabled if the message factory compresses the file.
+   * </p>
+   *
+   * @param b true to memory map file backed messages; default is false.
+   */
+  public void setMemoryMappedInput(Boolean b) {
+    memoryMappedInput = b;
+  }
+
+  protected boolean memoryMappedInput() {
+    return BooleanUtils.toBooleanDefaultIfNull(getMemoryMappedInput(), false);
+  }
+
+  protected int bufferSize() {
+    return ObjectUtils.defaultIfNull(getBufferSize(), DEFAULT_BUFFER_SIZE);
+  }
+
+  protected String pathMetadataKey() {
+    return ObjectUtils.defaultIfNull(getPathMetadataKey(), DEFAULT_PATH_METADATA_KEY);
+  }
+
+  protected boolean suppressPathNotFound() {
+    return BooleanUtils.toBooleanDefaultIfNull(getSuppressPathNotFound(), false);
+  }
+
+  protected boolean wrapWithArray() {
+    return BooleanUtils.toBooleanDefaultIfNull(getWrapWithArray(), false);
+  }
+
+  // The parser reads the bytes as UTF-8, so anything else has to go through the reader.
+  private boolean mapInput(AdaptrisMessage msg) {
+    return memoryMappedInput() && MappedFileInputStream.canMap(msg) && VerbatimScanner.isUtf8(msg);
+  }
+
+  // The input side of the splitter has always used the StAXON defaults; only the engine and the limits are taken from
+  // the configuration.
+  private JsonStreamingConfigBuilder inputConfig() {
+    return getJsonStreamingConfig().inputConfig();
+  }
+
+  private class MultiPathSplitGenerator implements CloseableIterable<AdaptrisMessage>, Iterator<AdaptrisMessage> {
+    private final AdaptrisMessage originalMessage;
+    private final JsonPathMatcher matcher;
+    private final Closeable input;
+    private final List<String> names;
+    private final AdaptrisMessageFactory factory;
+    private boolean iteratorInvoked = false;
+    private Boolean available;
+
+    MultiPathSplitGenerator(AdaptrisMessage msg, JsonPathMatcher matcher, Closeable input, List<String> names) {
+      originalMessage = msg;
+      this.matcher = matcher;
+      this.input = input;
+      this.names = names;
+      factory = selectFactory(msg);
+    }
+
+    @Override
+    public Iterator<AdaptrisMessage> iterator() {
+      if (iteratorInvoked) {
+        throw new IllegalStateException("iterator already invoked");
+      }
+      iteratorInvoked = true;
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        if (available == null) {
+          available = matcher.next();
+        }
+        return available;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public AdaptrisMessage next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      available = null;
+      try {
+        AdaptrisMessage splitMsg = factory.newMessage();
+        try (OutputStream output = splitMsg.getOutputStream()) {
+          write(output);
+        }
+        copyMetadata(originalMessage, splitMsg);
+        splitMsg.addMetadata(pathMetadataKey(), names.get(matcher.expression()));
+        return splitMsg;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private void write(OutputStream output) throws XMLStreamException, CoreException {
+      JsonStreamingConfigBuilder config = inputConfig();
+      XMLEventReader reader = JsonStreamingFactoryCache.inputFactory(config).createXMLEventReader(
+          new JsonXMLStreamReader(matcher.match(), config.multiplePI(), config.namespaceSeparator(),
+              config.namespaceMappings()));
+      XMLEventWriter writer = JsonStreamingFactoryCache.outputFactory(getJsonStreamingConfig())
+          .createXMLEventWriter(output);
+      long maxElementSize = getJsonStreamingConfig().maxSplitElementSize();
+      XMLEvent start = null;
+      while (reader.hasNext()) {
+        XMLEvent event = reader.nextEvent();
+        start = start == null ? event : start;
+        if (maxElementSize > 0 && event.getLocation() != null && start.getLocation() != null
+            && event.getLocation().getCharacterOffset() - start.getLocation().getCharacterOffset() > maxElementSize) {
+          throw new CoreException("Element exceeds the maximum size of " + maxElementSize);
+        }
+        writer.add(event);
+        if (event.isStartDocument() && wrapWithArray()) {
+          writer.add(JsonStreamingFactoryCache.eventFactory().createProcessingInstruction(
+              JsonXMLStreamConstants.MULTIPLE_PI_TARGET, matcher.name()));
+        }
+      }
+      // finishes the output if it is being compressed.
+      writer.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        matcher.close();
+      } finally {
+        IOUtils.closeQuietly(input);
+      }
+    }
+  }
+}
@@ -3,12 +3,15 @@ package com.adaptris.core.json.streaming;
 import javax.xml.stream.XMLOutputFactory;
 import com.adaptris.stax.XmlOutputFactoryBuilder;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
-import de.odysseus.staxon.json.JsonXMLOutputFactory;
 import lombok.NoArgsConstructor;
 
 /**
  * {@link com.adaptris.stax.XmlOutputFactoryBuilder} implementation that allows us to write JSON via standard
  * {@code javax.xml.stream} interfaces.
+ * <p>
+ * The factory that is returned is shared between all instances with equivalent configuration and may not be
+ * reconfigured.
+ * </p>
  *
  * @config json-streaming-output
  * @since 3.8.3
@@ -19,7 +22,7 @@ public class JsonStreamingOutputFactory extends JsonStreamBuilderImpl implements
 
   @Override
   public XMLOutputFactory build() {
-    return new JsonXMLOutputFactory(config().build());
+    return JsonStreamingFactoryCache.outputFactory(config());
   }
 
 }
@@ -2,47 +2,77 @@ package com.adaptris.core.json.streaming;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.validation.Valid;
 import javax.validation.constraints.NotBlank;
 import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.XMLEventConsumer;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ReaderInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.ComponentProfile;
 import com.adaptris.annotation.DisplayOrder;
 import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.ComponentLifecycle;
 import com.adaptris.core.CoreException;
+import com.adaptris.core.lms.FileBackedMessageFactory;
 import com.adaptris.core.services.splitter.MessageSplitterImp;
 import com.adaptris.core.util.Args;
+import com.adaptris.core.util.CloseableIterable;
 import com.adaptris.core.util.ExceptionHelper;
 import com.adaptris.stax.lms.StaxSplitGenerator;
 import com.adaptris.stax.lms.StaxSplitGeneratorConfig;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
-import de.odysseus.staxon.json.JsonXMLConfig;
-import de.odysseus.staxon.json.JsonXMLInputFactory;
-import de.odysseus.staxon.json.JsonXMLOutputFactory;
 import de.odysseus.staxon.json.JsonXMLStreamConstants;
+import de.odysseus.staxon.json.JsonXMLStreamReader;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
 
 /**
  * Splitter implementation that splits based on JSON streaming events.
  * <p>
  * Note that this is only a pseudo-xpath evaluator as it only allows simple element traversal and not any XPath functions.
- * {@code /path/to/repeating/element} would be fine, but {@code //repeating/element} would not. It works based on
- * {@link XMLEventReader} and navigates based on {@link StartElement} events only.
+ * {@code /path/to/repeating/element} works based on {@link XMLEventReader} and navigates based on {@link StartElement}
+ * events only. Paths that use {@code *}, {@code //} or {@code [field='x']} are instead matched against the JSON tokens;
+ * see {@link #setPath(String)}.
  * </p>
  *
  * @config json-streaming-splitter
  * @author mwarman
  */
 @XStreamAlias("json-streaming-splitter")
-@DisplayOrder(order = {"path", "bufferSize", "suppressPathNotFound", "wrapWithArray", "jsonStreamingConfig"})
+@DisplayOrder(order = {"path", "bufferSize", "suppressPathNotFound", "wrapWithArray", "jsonStreamingConfig", "batchSize",
+    "maxBatchBytes", "parallelism", "prefetch", "verbatim", "memoryMappedInput",
+    "structuralIndex", "strictPath", "metricsId", "checkpointStore", "checkpointInterval", "spillThreshold",
+    "spillMessageFactory", "rejectInvalidChildren"})
 @ComponentProfile(since = "3.8.2")
-public class JsonStreamingSplitter extends MessageSplitterImp {
+public class JsonStreamingSplitter extends MessageSplitterImp implements ComponentLifecycle {
 
   private transient static final int DEFAULT_BUFFER_SIZE = 8192;
 
@@ -62,6 +92,64 @@ public class JsonStreamingSplitter extends MessageSplitterImp {
   @AdvancedConfig
   private Boolean wrapWithArray;
 
+  @AdvancedConfig
+  @InputFieldDefault(value = "1")
+  private Integer batchSize;
+
+  @AdvancedConfig
+  private Long maxBatchBytes;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "0")
+  private Integer parallelism;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "0")
+  private Integer prefetch;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean verbatim;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean memoryMappedInput;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean structuralIndex;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean strictPath;
+
+  @AdvancedConfig
+  private String metricsId;
+
+  @AdvancedConfig
+  @Valid
+  private SplitCheckpointStore checkpointStore;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "1000")
+  private Integer checkpointInterval;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "0")
+  private Long spillThreshold;
+
+  @AdvancedConfig
+  @Valid
+  private AdaptrisMessageFactory spillMessageFactory;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean rejectInvalidChildren;
+
+  private transient Logger log = LoggerFactory.getLogger(JsonStreamingSplitter.class);
+  private transient ThreadPoolExecutor workers;
+  private transient JsonStreamingMetrics.Reference metrics = new JsonStreamingMetrics.Reference();
+
   public JsonStreamingSplitter() {
     //set defaults for backwards compatibility reasons
     jsonStreamingConfig = new JsonStreamingConfigBuilder().withAutoArray(true).withAutoPrimitive(true);
@@ -71,30 +159,203 @@ public class JsonStreamingSplitter extends MessageSplitterImp {
     this();
     setPath(path);
   }
+
   @Override
   public Iterable<AdaptrisMessage> splitMessage(AdaptrisMessage msg) throws CoreException {
+    JsonStreamingMetrics metrics = metrics();
+    long start = System.nanoTime();
     try {
-      String thePath = msg.resolve(getPath());
-      BufferedReader buf = new BufferedReader(msg.getReader(), bufferSize());
-      XMLEventReader reader = new JsonXMLInputFactory().createXMLEventReader(buf);
-      JsonXMLConfig config = getJsonStreamingConfig().build();
-      XMLEventFactory eventFactory = XMLEventFactory.newInstance();
-      return new JsonStreamingSplitGenerator(
-          new JsonStreamingSplitGeneratorConfig()
-              .withOriginalMessage(msg)
-              .withJsonXMLConfig(config)
-              .withXMLEventFactory(eventFactory)
-              .withWrapWithArray(wrapWithArray())
-              .withXmlEventReader(reader)
-              .withSuppressPathNotFound(suppressPathNotFound())
-              .withPath(thePath)
-              .withInputReader(buf));
-    }
-    catch (Exception e) {
+      Iterable<AdaptrisMessage> result = split(msg);
+      // checkpoints are committed by the consumer, so they're already wrapped around the prefetch.
+      if (!(result instanceof CheckpointingSplitGenerator)) {
+        result = prefetch(result);
+      }
+      return metrics != null ? metrics.meter(result, msg.getSize(), start) : result;
+    } catch (Exception e) {
+      if (metrics != null) {
+        metrics.failed();
+      }
       throw ExceptionHelper.wrapCoreException(e);
     }
   }
 
+  private Iterable<AdaptrisMessage> split(AdaptrisMessage msg) throws Exception {
+    String thePath = msg.resolve(getPath());
+    boolean sequence = getJsonStreamingConfig().jsonLines() || getJsonStreamingConfig().concatenated();
+    JsonSchema schema = JsonStreamingFactoryCache.schema(getJsonStreamingConfig());
+    boolean rejecting = schema != null && rejectInvalidChildren();
+    if (getCheckpointStore() != null && (verbatim() || sequence || rejecting
+        || JsonPathExpression.isExpression(thePath))) {
+      throw new CoreException("Checkpoints are not supported for verbatim splitting, JSON Lines, concatenated JSON, "
+          + "rejecting invalid children or path expressions: " + thePath);
+    }
+    if (schema != null && (verbatim() || sequence)) {
+      throw new CoreException(
+          "Schema validation is not supported for verbatim splitting, JSON Lines or concatenated JSON");
+    }
+    if (sequence) {
+      return sequenceSplit(msg);
+    }
+    if (JsonPathExpression.isExpression(thePath) || rejecting) {
+      return expressionSplit(msg, thePath, rejecting ? schema : null);
+    }
+    // The scanner reads the bytes as UTF-8, anything else has to be parsed.
+    if (verbatim() && VerbatimScanner.isUtf8(msg)) {
+      return verbatimSplit(msg, thePath);
+    }
+    JsonStreamingSplitGeneratorConfig cfg = generatorConfig(msg)
+        .withSuppressPathNotFound(suppressPathNotFound())
+        .withPath(thePath);
+    SplitCheckpointTracker tracker = null;
+    SplitCheckpoint checkpoint = null;
+    if (mapInput(msg)) {
+      InputStream in = MappedFileInputStream.open(msg);
+      cfg.withInputStream(in).withXmlEventReader(eventReader(in, thePath));
+    } else {
+      Reader reader = getJsonStreamingConfig().inputCompression().reader(msg);
+      if (getCheckpointStore() != null) {
+        checkpoint = getCheckpointStore().load(msg.getUniqueId());
+        tracker = checkpoint != null ? SplitCheckpointTracker.resume(reader, thePath, checkpoint)
+            : SplitCheckpointTracker.start(reader, thePath);
+        reader = tracker;
+        cfg.withElementCounts(new ConcurrentLinkedQueue<>());
+      }
+      BufferedReader buf = new BufferedReader(reader, bufferSize());
+      cfg.withInputReader(buf).withXmlEventReader(eventReader(buf, thePath));
+    }
+    try {
+      Iterable<AdaptrisMessage> result;
+      if (parallelism() > 0) {
+        AdaptrisMessageFactory factory = selectFactory(msg);
+        result = new ParallelSplitGenerator<>(new JsonStreamingSliceGenerator(cfg),
+            slice -> writeSlice(cfg, factory, slice), workers(), parallelism());
+      } else {
+        result = new JsonStreamingSplitGenerator(cfg);
+      }
+      if (tracker != null) {
+        return new CheckpointingSplitGenerator(prefetch(result), tracker, cfg.elementCounts, getCheckpointStore(),
+            msg.getUniqueId(), checkpoint != null ? checkpoint.getIndex() : 0, checkpointInterval());
+      }
+      return result;
+    } catch (Exception e) {
+      cfg.closeInputStream();
+      throw e;
+    }
+  }
+
+  private JsonStreamingSplitGeneratorConfig generatorConfig(AdaptrisMessage msg) {
+    return new JsonStreamingSplitGeneratorConfig()
+        .withOriginalMessage(msg)
+        .withXMLOutputFactory(JsonStreamingFactoryCache.uncompressedOutputFactory(getJsonStreamingConfig()))
+        .withXMLEventFactory(JsonStreamingFactoryCache.eventFactory())
+        .withWrapWithArray(wrapWithArray() || batchSize() > 1)
+        .withBatch(batchSize(), maxBatchBytes())
+        .withMaxElementSize(getJsonStreamingConfig().maxSplitElementSize())
+        .withMetrics(metrics())
+        .withPooledBuffers(getJsonStreamingConfig().engine() == JsonStreamingEngine.STAXON ? bufferSize() : 0);
+  }
+
+  private Iterable<AdaptrisMessage> prefetch(Iterable<AdaptrisMessage> messages) {
+    // the parallel generators already work ahead of the consumer.
+    if (prefetch() > 0 && parallelism() == 0) {
+      return new PrefetchSplitGenerator(messages, prefetch());
+    }
+    return messages;
+  }
+
+  private XMLEventReader eventReader(InputStream in, String thePath) throws Exception {
+    if (strictPath()) {
+      return filteredEventReader(JsonStreamingFactoryCache.streamFactory(inputConfig()).createJsonStreamSource(in),
+          thePath);
+    }
+    return JsonStreamingFactoryCache.inputFactory(inputConfig()).createXMLEventReader(in);
+  }
+
+  // Checkpoints are tracked on the path, so every element that the splitter sees has to be on the path as well.
+  private XMLEventReader eventReader(Reader in, String thePath) throws Exception {
+    if (strictPath() || getCheckpointStore() != null) {
+      return filteredEventReader(JsonStreamingFactoryCache.streamFactory(inputConfig()).createJsonStreamSource(in),
+          thePath);
+    }
+    return JsonStreamingFactoryCache.inputFactory(inputConfig()).createXMLEventReader(in);
+  }
+
+  // Skip everything that isn't on the path before it's turned into events.
+  private XMLEventReader filteredEventReader(JsonStreamSource source, String thePath) throws XMLStreamException {
+    return eventReader(new PathFilteringSource(source, thePath));
+  }
+
+  private XMLEventReader eventReader(JsonStreamSource source) throws XMLStreamException {
+    JsonStreamingConfigBuilder config = inputConfig();
+    return JsonStreamingFactoryCache.inputFactory(config).createXMLEventReader(new JsonXMLStreamReader(source,
+        config.multiplePI(), config.namespaceSeparator(), config.namespaceMappings()));
+  }
+
+  // Paths with wildcards, descendants or predicates can't be handled by StaxSplitGenerator, so they're matched
+  // against the JSON tokens instead.
+  // If there's a schema then each match is validated as it's read, and rejected if it doesn't match.
+  private Iterable<AdaptrisMessage> expressionSplit(AdaptrisMessage msg, String thePath, JsonSchema schema)
+      throws Exception {
+    if (verbatim()) {
+      throw new CoreException("Verbatim splitting does not support path expressions: " + thePath);
+    }
+    JsonPathExpression expression = JsonPathExpression.compile(thePath);
+    JsonStreamingSplitGeneratorConfig cfg = generatorConfig(msg);
+    Closeable input;
+    JsonStreamSource source;
+    if (mapInput(msg)) {
+      InputStream in = MappedFileInputStream.open(msg);
+      input = in;
+      source = JsonStreamingFactoryCache.streamFactory(inputConfig()).createJsonStreamSource(in);
+    } else {
+      BufferedReader buf = new BufferedReader(getJsonStreamingConfig().inputCompression().reader(msg),
+          bufferSize());
+      input = buf;
+      source = JsonStreamingFactoryCache.streamFactory(inputConfig()).createJsonStreamSource(buf);
+    }
+    JsonSchema.Validator validator = schema != null ? schema.validate(source, 0, false) : null;
+    JsonPathMatcher matcher = new JsonPathMatcher(validator != null ? validator : source,
+        Collections.singletonList(expression));
+    AdaptrisMessageFactory factory = selectFactory(msg);
+    // Only the parallel split needs the events for each match in memory; otherwise they're written as they're read.
+    if (parallelism() > 0) {
+      ExpressionSplitGenerator<List<XMLEvent>> slices = new ExpressionSplitGenerator<>(cfg, matcher, validator, input,
+          m -> m.nextSlice());
+      checkFound(slices, thePath);
+      return new ParallelSplitGenerator<>(slices, slice -> writeSlice(cfg, factory, slice), workers(),
+          parallelism());
+    }
+    ExpressionSplitGenerator<AdaptrisMessage> result = new ExpressionSplitGenerator<>(cfg, matcher, validator, input,
+        m -> m.writeNext(factory));
+    checkFound(result, thePath);
+    return result;
+  }
+
+  private void checkFound(ExpressionSplitGenerator<?> matches, String thePath) throws Exception {
+    try {
+      if (!matches.hasNext() && !suppressPathNotFound()) {
+        throw new CoreException("Failed to find " + thePath);
+      }
+    } catch (Exception e) {
+      matches.close();
+      throw e;
+    }
+  }
+
+  // Checkpoints are tracked on the characters, so they always use the reader.
+  private boolean mapInput(AdaptrisMessage msg) {
+    return memoryMappedInput() && getCheckpointStore() == null && MappedFileInputStream.canMap(msg)
+        && VerbatimScanner.isUtf8(msg);
+  }
+
+  // The input side of the splitter has always used the StAXON defaults; only the engine and the limits are taken from
+  // the configuration.
+  private JsonStreamingConfigBuilder inputConfig() {
+    JsonStreamingConfigBuilder config = getJsonStreamingConfig().inputConfig();
+    // invalid children are rejected by the splitter itself.
+    return rejectInvalidChildren() ? config.withSchema(null) : config;
+  }
+
   public Integer getBufferSize() {
     return bufferSize;
   }
@@ -105,6 +366,9 @@ public class JsonStreamingSplitter extends MessageSplitterImp {
    * This is used when; the default buffer size matches the default buffer size in {@link BufferedReader} and {@link BufferedWriter}
    * , changes to the buffersize will impact performance and memory usage depending on the underlying operating system/disk.
    * </p>
+   * <p>
+   * With the StAXON engine, it is also the initial size of the per-thread buffer that each split message is written to.
+   * </p>
    *
    * @param b the buffer size (default is 8192).
    */
@@ -116,6 +380,389 @@ public class JsonStreamingSplitter extends MessageSplitterImp {
     return getBufferSize() != null ? getBufferSize().intValue() : DEFAULT_BUFFER_SIZE;
   }
 
+  public Integer getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Set the number of elements in each split message.
+   * <p>
+   * If this is greater than 1, then each split message contains a JSON array of up to this many elements (i.e. it is as
+   * though {@link #setWrapWithArray(Boolean)} was true) which cuts down the number of messages if the elements are small
+   * and can be processed in bulk downstream. Metadata is only copied once per split message.
+   * </p>
+   *
+   * @param i the batch size; default is 1 if not specified.
+   * @see #setMaxBatchBytes(Long)
+   */
+  public void setBatchSize(Integer i) {
+    batchSize = i;
+  }
+
+  protected int batchSize() {
+    return getBatchSize() != null ? Math.max(1, getBatchSize().intValue()) : 1;
+  }
+
+  public Long getMaxBatchBytes() {
+    return maxBatchBytes;
+  }
+
+  /**
+   * Set the maximum size of each batch of elements.
+   * <p>
+   * Only applicable if {@link #setBatchSize(Integer)} is greater than 1; once the split message has reached this size no
+   * more elements will be added to it, even if the batch size has not been reached. The check is made after each element,
+   * so a split message may exceed this by up to the size of a single element. Unless {@link #setVerbatim(Boolean)} is
+   * true, the size is measured on the source document rather than the split message (the JSON writer may not emit
+   * anything until the split message is complete), so it is an approximation that will be affected by whitespace and
+   * the output configuration.
+   * </p>
+   *
+   * @param l the maximum number of bytes; default is no limit.
+   */
+  public void setMaxBatchBytes(Long l) {
+    maxBatchBytes = l;
+  }
+
+  protected long maxBatchBytes() {
+    return getMaxBatchBytes() != null ? Math.max(0, getMaxBatchBytes().longValue()) : 0;
+  }
+
+  public Integer getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Set the number of threads used to build the split messages.
+   * <p>
+   * If set then a dedicated thread reads through the source document, slicing out each element, while a pool of this
+   * many threads serialise the slices into messages concurrently. Messages are still returned in the order that they
+   * appear in the source document, and at most twice this number of messages are pending at any one time. This is only
+   * worth enabling if you have a large number of elements to split, and spare CPU to do so.
+   * </p>
+   *
+   * @param i the number of threads; default is 0 (or null), which means the messages are built sequentially by the
+   *        thread iterating over the split messages.
+   */
+  public void setParallelism(Integer i) {
+    parallelism = i;
+  }
+
+  protected int parallelism() {
+    return getParallelism() != null ? Math.max(0, getParallelism().intValue()) : 0;
+  }
+
+  // Shared by every split, rather than starting new threads each time.
+  // If the parallelism changes then the old pool isn't shut down, since splits on other threads may still be submitting
+  // to it; its threads time out once they're idle.
+  private synchronized ThreadPoolExecutor workers() {
+    if (workers == null || workers.getMaximumPoolSize() != parallelism()) {
+      workers = ParallelSplitGenerator.newWorkers(parallelism());
+    }
+    return workers;
+  }
+
+  @Override
+  public void init() {
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  @Override
+  public synchronized void close() {
+    if (workers != null) {
+      workers.shutdown();
+      workers = null;
+    }
+    metrics.release();
+  }
+
+  public Integer getPrefetch() {
+    return prefetch;
+  }
+
+  /**
+   * Set the number of split messages to create ahead of the consumer.
+   * <p>
+   * If set then the split messages are created on a background thread, and up to this many are held ready while the
+   * current split message is being processed; so parsing the source document overlaps with the downstream services
+   * rather than alternating with them. Closing the split messages early stops the background thread and releases the
+   * source document. This has no effect if {@link #setParallelism(Integer)} is set, as the messages are already built
+   * ahead of the consumer.
+   * </p>
+   *
+   * @param i the number of split messages to prefetch; default is 0 (or null), which means each split message is only
+   *        created when it is asked for.
+   */
+  public void setPrefetch(Integer i) {
+    prefetch = i;
+  }
+
+  protected int prefetch() {
+    return getPrefetch() != null ? Math.max(0, getPrefetch().intValue()) : 0;
+  }
+
+  public Boolean getVerbatim() {
+    return verbatim;
+  }
+
+  /**
+   * Split by copying each element verbatim from the source document.
+   * <p>
+   * Rather than parsing the document and serialising each element, the boundaries of each element are found by scanning
+   * the raw bytes (only tracking nesting and strings), and the exact bytes of the element are copied into the split
+   * message; each split message is still of the form <code>{"element": ...}</code> (or <code>{"element":[...]}</code>
+   * if {@link #setWrapWithArray(Boolean)} is true). This is significantly faster, and means that the element is exactly
+   * as it was in the source, since {@code autoArray}/{@code autoPrimitive} (or any other setting of
+   * {@link #setJsonStreamingConfig(JsonStreamingConfigBuilder)}) are never applied.
+   * </p>
+   * <p>
+   * Note that the source document is read as UTF-8, so this only applies to messages that have no content encoding or
+   * are UTF-8; any other message is split as though this was false. There is only minimal validation of the JSON;
+   * invalid content will be copied as is.
+   * </p>
+   *
+   * @param b true to copy elements verbatim; default is false.
+   */
+  public void setVerbatim(Boolean b) {
+    verbatim = b;
+  }
+
+  protected boolean verbatim() {
+    return BooleanUtils.toBooleanDefaultIfNull(getVerbatim(), false);
+  }
+
+  public Boolean getStrictPath() {
+    return strictPath;
+  }
+
+  /**
+   * Only follow the exact path, skipping everything else without parsing it.
+   * <p>
+   * By default, navigating to the path walks every element in the document (and the first element that matches the
+   * next part of the path is followed wherever it is); so a large object before the elements being split is still
+   * turned into events, and the whole document is always read. If this is true, then only keys that are on the path
+   * are followed; everything else is skipped by the tokenizer without creating any events. Once the value at the
+   * path has been closed, and there are no arrays on the way to the path that could contain another match, the rest
+   * of the document isn't read at all, so the time taken to produce the first split message no longer depends on the
+   * size of the content before it.
+   * </p>
+   * <p>
+   * For a document where the split elements only occur at the path, the result is the same. Note that content that
+   * is skipped is not validated.
+   * </p>
+   *
+   * @param b true to only follow the exact path; default is false.
+   */
+  public void setStrictPath(Boolean b) {
+    strictPath = b;
+  }
+
+  protected boolean strictPath() {
+    return BooleanUtils.toBooleanDefaultIfNull(getStrictPath(), false);
+  }
+
+  public String getMetricsId() {
+    return metricsId;
+  }
+
+  /**
+   * Record throughput and latency metrics for this splitter.
+   * <p>
+   * If set, then the number of messages, bytes in and out, the number of events written, the number of split messages,
+   * the time taken to produce the first split message and the time taken to split each message are recorded and
+   * available via JMX as {@code com.adaptris:type=JsonStreamingMetrics,id="<metricsId>"}. Components with the same id
+   * share the same metrics, which are unregistered once they have all been closed. Verbatim splitting doesn't create
+   * events, so no events are recorded.
+   * </p>
+   *
+   * @param s the id; default is null, which means no metrics are recorded.
+   * @see JsonStreamingMetricsMBean
+   */
+  public void setMetricsId(String s) {
+    metricsId = s;
+  }
+
+  protected JsonStreamingMetrics metrics() {
+    return metrics.get(getMetricsId());
+  }
+
+  public SplitCheckpointStore getCheckpointStore() {
+    return checkpointStore;
+  }
+
+  /**
+   * Record checkpoints so that splitting can be resumed part way through a message.
+   * <p>
+   * If set, then as the split messages are processed, the position of the last element that has been processed is saved
+   * to the store against the message id, every {@link #setCheckpointInterval(Integer)} elements, and when the split
+   * messages are closed before they have all been processed (e.g. because a downstream service failed). If the same
+   * message is split again, the document is skipped up to that position without being parsed, and splitting resumes
+   * from the next element; once every split message has been processed, the checkpoint is removed. A split message is
+   * only treated as processed once the next split message is requested, so in the event of a failure, some split
+   * messages may be produced again.
+   * </p>
+   * <p>
+   * Checkpoints are tracked on the path, so the path is always evaluated as if {@link #setStrictPath(Boolean)} was true,
+   * and the message is always read through {@link AdaptrisMessage#getReader()}; verbatim splitting and path expressions
+   * are not supported.
+   * </p>
+   *
+   * @param s the store; default is null, which means no checkpoints are recorded.
+   * @see FileSplitCheckpointStore
+   */
+  public void setCheckpointStore(SplitCheckpointStore s) {
+    checkpointStore = s;
+  }
+
+  public Integer getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  /**
+   * Set the number of elements between each checkpoint.
+   *
+   * @param i the number of elements; default is 1000 if not specified.
+   * @see #setCheckpointStore(SplitCheckpointStore)
+   */
+  public void setCheckpointInterval(Integer i) {
+    checkpointInterval = i;
+  }
+
+  protected int checkpointInterval() {
+    return getCheckpointInterval() != null ? Math.max(1, getCheckpointInterval().intValue()) : 1000;
+  }
+
+  public Boolean getMemoryMappedInput() {
+    return memoryMappedInput;
+  }
+
+  /**
+   * Read file backed messages through a memory mapped file.
+   * <p>
+   * If the message is a {@link com.adaptris.core.lms.FileBackedMessage} then the underlying file is mapped into memory
+   * and the bytes are handed directly to the parser, which decodes the UTF-8 as it tokenizes; rather than reading it
+   * through {@link AdaptrisMessage#getReader()} and a {@link BufferedReader}. This is of most benefit when the
+   * {@link JsonStreamingEngine#JACKSON} engine is used, since it parses bytes natively. Messages that are not file
+   * backed, or that have a content encoding other than UTF-8, are read as normal.
+   * </p>
+   * <p>
+   * Note that the file is read directly, so this should not be enabled if the message factory compresses the file.
+   * </p>
+   *
+   * @param b true to memory map file backed messages; default is false.
+   */
+  public void setMemoryMappedInput(Boolean b) {
+    memoryMappedInput = b;
+  }
+
+  protected boolean memoryMappedInput() {
+    return BooleanUtils.toBooleanDefaultIfNull(getMemoryMappedInput(), false);
+  }
+
+  public Long getSpillThreshold() {
+    return spillThreshold;
+  }
+
+  /**
+   * Set the size at which a split message is written to a file instead of memory.
+   * <p>
+   * Each split message is held in memory until it reaches this size; at that point, a message is created from
+   * {@link #setSpillMessageFactory(AdaptrisMessageFactory)} instead, and the rest of the split message is written
+   * directly to that. So a feed with a mix of small and very large elements can be split with a small heap, since the
+   * heap only has to hold an element up to this size, rather than the largest element. The spilled message is passed on
+   * as it is, and is not copied back into memory.
+   * </p>
+   * <p>
+   * Note that if {@link #setParallelism(Integer)} is set, then the events for each element are still held in memory
+   * while they wait to be written.
+   * </p>
+   *
+   * @param l the size in bytes; default is 0 if not specified, which never spills.
+   */
+  public void setSpillThreshold(Long l) {
+    spillThreshold = l;
+  }
+
+  protected long spillThreshold() {
+    return getSpillThreshold() != null ? Math.max(0, getSpillThreshold().longValue()) : 0;
+  }
+
+  public AdaptrisMessageFactory getSpillMessageFactory() {
+    return spillMessageFactory;
+  }
+
+  /**
+   * Set the message factory for split messages that exceed {@link #setSpillThreshold(Long)}.
+   *
+   * @param f the factory; default is a {@link FileBackedMessageFactory} if not specified.
+   */
+  public void setSpillMessageFactory(AdaptrisMessageFactory f) {
+    spillMessageFactory = f;
+  }
+
+  protected AdaptrisMessageFactory spillMessageFactory() {
+    return getSpillMessageFactory() != null ? getSpillMessageFactory() : new FileBackedMessageFactory();
+  }
+
+  public Boolean getStructuralIndex() {
+    return structuralIndex;
+  }
+
+  /**
+   * Use a structural index of the message when splitting verbatim (or splitting concatenated JSON).
+   * <p>
+   * The index records where each object and array starts and ends, so that the split can jump straight past anything
+   * that isn't on the path, and copy each matching object or array in one go. Building the index needs a pass over the
+   * message, so it is stored against the message (as object metadata) and reused by every splitter that splits the
+   * same message with this enabled; this is of most benefit when a large message is split more than once, on paths that
+   * skip most of the document. Since building the index for a single split would only add a pass, the first split
+   * of a message doesn't use one, and the index is built when it is split for the second time. The index is rebuilt if
+   * the size of the payload changes, and isn't used for messages of 2GB or more.
+   * </p>
+   *
+   * @param b true to use a structural index; default is false.
+   * @see #setVerbatim(Boolean)
+   */
+  public void setStructuralIndex(Boolean b) {
+    structuralIndex = b;
+  }
+
+  protected boolean structuralIndex() {
+    return BooleanUtils.toBooleanDefaultIfNull(getStructuralIndex(), false);
+  }
+
+  public Boolean getRejectInvalidChildren() {
+    return rejectInvalidChildren;
+  }
+
+  /**
+   * Reject the split messages that don't match the schema, rather than failing the whole document.
+   * <p>
+   * If the {@link #setJsonStreamingConfig(JsonStreamingConfigBuilder)} has a schema, then by default the split fails as
+   * soon as anything in the document doesn't match it. If this is true, then each element is validated as it is read,
+   * and an element that doesn't match is logged and skipped, and the split carries on with the next element; anything
+   * that doesn't match outside of the elements (e.g. a required field in the root object) still fails the split. The
+   * path is always matched against the JSON tokens, as it is with {@link #setStrictPath(Boolean)}; checkpoints are not
+   * supported. This has no effect if there is no schema.
+   * </p>
+   *
+   * @param b true to reject invalid elements; default is false.
+   */
+  public void setRejectInvalidChildren(Boolean b) {
+    rejectInvalidChildren = b;
+  }
+
+  protected boolean rejectInvalidChildren() {
+    return BooleanUtils.toBooleanDefaultIfNull(getRejectInvalidChildren(), false);
+  }
+
   public String getPath() {
     return path;
   }
@@ -148,8 +795,18 @@ public class JsonStreamingSplitter extends MessageSplitterImp {
    * Set the xpath-alike path to the element on which you want to split.
    * <p>
    * Note that this is only a pseudo-xpath evaluator as it only allows simple element traversal and not any XPath functions.
-   * {@code /path/to/repeating/element} would be fine, but {@code //repeating/element} would not. It works based on
-   * {@link XMLEventReader} and navigates based on {@link StartElement} events only.
+   * {@code /path/to/repeating/element} would be fine, and works based on {@link XMLEventReader} navigating based on
+   * {@link StartElement} events only.
+   * </p>
+   * <p>
+   * The path may also use a small subset of XPath: {@code *} for any key, {@code //} for a key at any depth, and
+   * {@code [field='x']} to only match objects where the scalar {@code field} has the value {@code x}; e.g.
+   * {@code //order[status='open']/line}. Such paths are compiled once and evaluated against the JSON tokens as they are
+   * read; a predicate is only checked against the scalar fields that appear before the first object or array in the
+   * same object. Path expressions are not supported if {@link #setVerbatim(Boolean)} is true; if batching, then elements
+   * with different names matched by the same expression are still batched together under the name of the first.
+   * Matches don't nest: each match is split as a whole, so with {@code //record} a {@code record} inside another
+   * {@code record} is part of the outer split message, and is not split on its own.
    * </p>
    *
    * @param path the path.
@@ -162,22 +819,49 @@ public class JsonStreamingSplitter extends MessageSplitterImp {
     return jsonStreamingConfig;
   }
 
+  /**
+   * Set the JSON configuration used to write each split message.
+   * <p>
+   * If {@link JsonStreamingConfigBuilder#setJsonLines(Boolean)} is true, then the message is split by line rather than
+   * by path, and the path is ignored. Each line is copied verbatim, in the same way as {@link #setVerbatim(Boolean)}, so
+   * the lines are never parsed; a batch of lines is still JSON Lines, unless {@link #setWrapWithArray(Boolean)} is
+   * true, in which case the lines are wrapped in an array. If {@link JsonStreamingConfigBuilder#setConcatenated(Boolean)}
+   * is true, then each top-level value is split in the same way. The lines are scanned as UTF-8, so a message with any
+   * other content encoding is transcoded as it is read (without the structural index), and the split messages are
+   * UTF-8.
+   * </p>
+   * <p>
+   * If {@link JsonStreamingConfigBuilder#setInputCompression(JsonCompression)} is set, then the message is decompressed
+   * as it is split (and the structural index is not used); if
+   * {@link JsonStreamingConfigBuilder#setOutputCompression(JsonCompression)} is set, then each split message is
+   * compressed, including those split verbatim.
+   * </p>
+   *
+   * @param jsonStreamingConfig the configuration.
+   */
   public void setJsonStreamingConfig(JsonStreamingConfigBuilder jsonStreamingConfig) {
     this.jsonStreamingConfig = Args.notNull(jsonStreamingConfig, "jsonStreamingConfig");
   }
 
   private class JsonStreamingSplitGeneratorConfig extends StaxSplitGeneratorConfig {
     AdaptrisMessage originalMessage;
-    JsonXMLConfig jsonXMLConfig;
+    XMLOutputFactory xmlOutputFactory;
     XMLEventFactory xmlEventFactory;
     boolean wrapWithArray;
+    int batchSize = 1;
+    long maxBatchBytes = 0;
+    long maxElementSize = 0;
+    JsonStreamingMetrics metrics;
+    int pooledBufferSize = 0;
+    Queue<Integer> elementCounts;
+    InputStream inputStream;
 
     JsonStreamingSplitGeneratorConfig withOriginalMessage(AdaptrisMessage msg) {
       originalMessage = msg;
       return this;
     }
-    JsonStreamingSplitGeneratorConfig withJsonXMLConfig(JsonXMLConfig jsonXMLConfig) {
-      this.jsonXMLConfig = jsonXMLConfig;
+    JsonStreamingSplitGeneratorConfig withXMLOutputFactory(XMLOutputFactory xmlOutputFactory) {
+      this.xmlOutputFactory = xmlOutputFactory;
       return this;
     }
     JsonStreamingSplitGeneratorConfig withXMLEventFactory(XMLEventFactory xmlEventFactory) {
@@ -190,6 +874,123 @@ public class JsonStreamingSplitter extends MessageSplitterImp {
       return this;
     }
 
+    JsonStreamingSplitGeneratorConfig withBatch(int batchSize, long maxBatchBytes) {
+      this.batchSize = batchSize;
+      this.maxBatchBytes = maxBatchBytes;
+      return this;
+    }
+
+    JsonStreamingSplitGeneratorConfig withMaxElementSize(long max) {
+      maxElementSize = max;
+      return this;
+    }
+
+    JsonStreamingSplitGeneratorConfig withMetrics(JsonStreamingMetrics m) {
+      metrics = m;
+      return this;
+    }
+
+    // Jackson already recycles its buffers, so this is only worth doing for StAXON.
+    JsonStreamingSplitGeneratorConfig withPooledBuffers(int bufferSize) {
+      pooledBufferSize = bufferSize;
+      return this;
+    }
+
+    SplitOutputBuffer acquireBuffer() {
+      return pooledBufferSize > 0 ? SplitOutputBuffer.acquire(pooledBufferSize) : null;
+    }
+
+    // The number of elements in each split message, in order; only needed for checkpoints.
+    JsonStreamingSplitGeneratorConfig withElementCounts(Queue<Integer> queue) {
+      elementCounts = queue;
+      return this;
+    }
+
+    void recordElements(int count) {
+      if (elementCounts != null) {
+        elementCounts.add(count);
+      }
+    }
+
+    void recordTokens(long count) {
+      if (metrics != null) {
+        metrics.tokens(count);
+      }
+    }
+
+    // Used instead of an input reader when the parser reads the bytes directly.
+    JsonStreamingSplitGeneratorConfig withInputStream(InputStream in) {
+      inputStream = in;
+      return this;
+    }
+
+    void closeInputStream() {
+      IOUtils.closeQuietly(inputStream);
+    }
+
+    boolean batching() {
+      return batchSize > 1;
+    }
+
+    // The size of the batch is measured by how much of the source has been consumed.
+    boolean batchFull(int count, XMLEvent first, XMLEvent last) {
+      if (count >= batchSize) {
+        return true;
+      }
+      if (maxBatchBytes > 0 && first.getLocation() != null && last.getLocation() != null) {
+        return last.getLocation().getCharacterOffset() - first.getLocation().getCharacterOffset() >= maxBatchBytes;
+      }
+      return false;
+    }
+
+    // Fail as soon as an element is too big, rather than after it has been read; measured on the source.
+    void checkElementSize(XMLEvent start, XMLEvent event) throws CoreException {
+      if (maxElementSize > 0 && start.getLocation() != null && event.getLocation() != null
+          && event.getLocation().getCharacterOffset() - start.getLocation().getCharacterOffset() > maxElementSize) {
+        throw new CoreException("Element exceeds the maximum size of " + maxElementSize);
+      }
+    }
+
+    // Find the next element of a batch, which is the next element of the same array; anything else (such as the end of
+    // the array's parent) ends the batch, and StaxSplitGenerator finds the next element for the next batch.
+    XMLEvent nextElement(String elementName) throws XMLStreamException {
+      XMLEventReader reader = getXmlEventReader();
+      while (reader.hasNext()) {
+        XMLEvent event = reader.nextEvent();
+        if (event.isStartElement()) {
+          return event.asStartElement().getName().getLocalPart().equals(elementName) ? event : null;
+        }
+        if (event.isEndElement()) {
+          return null;
+        }
+      }
+      return null;
+    }
+
+    XMLEventWriter startChild(OutputStream output, SplitOutputBuffer buffer, StartElement element)
+        throws XMLStreamException {
+      if (buffer != null) {
+        buffer.streamTo(output);
+      }
+      XMLEventWriter writer = buffer != null ? xmlOutputFactory.createXMLEventWriter(buffer)
+          : xmlOutputFactory.createXMLEventWriter(output);
+      writer.add(xmlEventFactory.createStartDocument());
+      if (wrapWithArray) {
+        writer.add(xmlEventFactory.createProcessingInstruction(JsonXMLStreamConstants.MULTIPLE_PI_TARGET,
+            element.getName().getLocalPart()));
+      }
+      return writer;
+    }
+
+    void endChild(XMLEventWriter writer, OutputStream output, SplitOutputBuffer buffer)
+        throws XMLStreamException, IOException {
+      writer.add(xmlEventFactory.createEndDocument());
+      writer.flush();
+      if (buffer != null) {
+        buffer.writeTo(output);
+      }
+    }
+
   }
   private class JsonStreamingSplitGenerator extends StaxSplitGenerator<JsonStreamingSplitGeneratorConfig, AdaptrisMessage> {
     private transient AdaptrisMessageFactory factory;
@@ -203,26 +1004,531 @@ public class JsonStreamingSplitter extends MessageSplitterImp {
       factory = selectFactory(cfg.originalMessage);
     }
 
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        getConfig().closeInputStream();
+      }
+    }
+
     @Override
     public AdaptrisMessage generateNextMessage(XMLEvent event, String elementName) throws Exception {
       if (event == null) {
         return null;
       }
-      AdaptrisMessage splitMsg = factory.newMessage();
-      try (OutputStream output = splitMsg.getOutputStream()){
-        XMLEventWriter writer = new JsonXMLOutputFactory(getConfig().jsonXMLConfig).createXMLEventWriter(output);
-        writer.add(getConfig().xmlEventFactory.createStartDocument());
-        if(getConfig().wrapWithArray) {
-          writer.add(getConfig().xmlEventFactory.createProcessingInstruction(JsonXMLStreamConstants.MULTIPLE_PI_TARGET, event.asStartElement().getName().getLocalPart()));
+      AdaptrisMessage splitMsg;
+      SplitOutputBuffer buffer = getConfig().acquireBuffer();
+      try (SplitMessageOutputStream output = splitOutput(factory)) {
+        XMLEventWriter writer = getConfig().startChild(output, buffer, event.asStartElement());
+        XMLEvent first = event;
+        long tokens = 0;
+        int count = 1;
+        for (;; count++) {
+          XMLEvent start = event;
+          while (isNotEndElement(event, elementName) && getConfig().getXmlEventReader().hasNext()){
+            getConfig().checkElementSize(start, event);
+            writer.add(event);
+            tokens++;
+            event = getConfig().getXmlEventReader().nextEvent();
+          }
+          if (!getConfig().batching()) {
+            break;
+          }
+          if (event.isEndElement()) {
+            writer.add(event);
+            tokens++;
+          }
+          if (getConfig().batchFull(count, first, event) || (event = getConfig().nextElement(elementName)) == null) {
+            break;
+          }
         }
-        while (isNotEndElement(event, elementName) && getConfig().getXmlEventReader().hasNext()){
-          writer.add(event);
-          event = getConfig().getXmlEventReader().nextEvent();
+        getConfig().endChild(writer, output, buffer);
+        getConfig().recordTokens(tokens);
+        getConfig().recordElements(count);
+        splitMsg = output.message();
+      } finally {
+        if (buffer != null) {
+          buffer.release();
         }
-        writer.add(getConfig().xmlEventFactory.createEndDocument());
       }
       copyMetadata(getConfig().originalMessage, splitMsg);
       return splitMsg;
     }
   }
+
+  private AdaptrisMessage writeSlice(JsonStreamingSplitGeneratorConfig cfg, AdaptrisMessageFactory factory,
+      List<XMLEvent> slice) throws Exception {
+    AdaptrisMessage splitMsg;
+    SplitOutputBuffer buffer = cfg.acquireBuffer();
+    try (SplitMessageOutputStream output = splitOutput(factory)) {
+      XMLEventWriter writer = cfg.startChild(output, buffer, slice.get(0).asStartElement());
+      for (XMLEvent event : slice) {
+        writer.add(event);
+      }
+      cfg.endChild(writer, output, buffer);
+      cfg.recordTokens(slice.size());
+      splitMsg = output.message();
+    } finally {
+      if (buffer != null) {
+        buffer.release();
+      }
+    }
+    copyMetadata(cfg.originalMessage, splitMsg);
+    return splitMsg;
+  }
+
+  // Collects the events for each element so that they can be serialised on another thread.
+  private class JsonStreamingSliceGenerator extends StaxSplitGenerator<JsonStreamingSplitGeneratorConfig, List<XMLEvent>> {
+
+    public JsonStreamingSliceGenerator(JsonStreamingSplitGeneratorConfig cfg) throws Exception {
+      super(cfg);
+    }
+
+    @Override
+    public void init(JsonStreamingSplitGeneratorConfig cfg) {
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        getConfig().closeInputStream();
+      }
+    }
+
+    @Override
+    public List<XMLEvent> generateNextMessage(XMLEvent event, String elementName) throws Exception {
+      if (event == null) {
+        return null;
+      }
+      List<XMLEvent> slice = new ArrayList<>();
+      XMLEvent first = event;
+      int count = 1;
+      for (;; count++) {
+        XMLEvent start = event;
+        while (isNotEndElement(event, elementName) && getConfig().getXmlEventReader().hasNext()) {
+          getConfig().checkElementSize(start, event);
+          slice.add(event);
+          event = getConfig().getXmlEventReader().nextEvent();
+        }
+        if (!getConfig().batching()) {
+          break;
+        }
+        if (event.isEndElement()) {
+          slice.add(event);
+        }
+        if (getConfig().batchFull(count, first, event) || (event = getConfig().nextElement(elementName)) == null) {
+          break;
+        }
+      }
+      getConfig().recordElements(count);
+      return slice;
+    }
+  }
+
+  private Iterable<AdaptrisMessage> verbatimSplit(AdaptrisMessage msg, String thePath) throws Exception {
+    return verbatimSplit(msg, new JsonPathScanner(verbatimInput(msg), thePath, bufferSize(), strictPath())
+        .withIndex(structuralIndex(msg)), "Failed to find " + thePath, this::writeVerbatim);
+  }
+
+  private Iterable<AdaptrisMessage> sequenceSplit(AdaptrisMessage msg) throws Exception {
+    if (getJsonStreamingConfig().jsonLines()) {
+      return verbatimSplit(msg, new JsonLinesScanner(verbatimInput(msg), bufferSize()), "No lines found",
+          this::writeSequence);
+    }
+    return verbatimSplit(msg, JsonPathScanner.values(verbatimInput(msg), bufferSize()).withIndex(structuralIndex(msg)),
+        "No values found", this::writeSequence);
+  }
+
+  private InputStream verbatimInput(AdaptrisMessage msg) throws IOException {
+    JsonInputLimits limits = getJsonStreamingConfig().inputLimits();
+    return limits != null ? limits.wrap(rawInput(msg)) : rawInput(msg);
+  }
+
+  // The scanners read UTF-8, so anything else is transcoded as it's read.
+  private InputStream rawInput(AdaptrisMessage msg) throws IOException {
+    if (!VerbatimScanner.isUtf8(msg)) {
+      return new ReaderInputStream(getJsonStreamingConfig().inputCompression().reader(msg), StandardCharsets.UTF_8,
+          bufferSize());
+    }
+    InputStream in = memoryMappedInput() && MappedFileInputStream.canMap(msg) ? MappedFileInputStream.open(msg)
+        : msg.getInputStream();
+    return getJsonStreamingConfig().inputCompression().decompress(in);
+  }
+
+  // The index is of the message as it is stored, so it can't be used if the message has to be decompressed or
+  // transcoded.
+  private JsonStructuralIndex structuralIndex(AdaptrisMessage msg) throws IOException {
+    if (!structuralIndex() || getJsonStreamingConfig().inputCompression() != JsonCompression.NONE
+        || !VerbatimScanner.isUtf8(msg)) {
+      return null;
+    }
+    JsonStructuralIndex index = JsonStructuralIndex.cached(msg);
+    if (index == null && JsonStructuralIndex.reused(msg)) {
+      try (InputStream in = rawInput(msg)) {
+        index = JsonStructuralIndex.build(msg, in, bufferSize());
+      }
+    }
+    return index;
+  }
+
+  private <S extends VerbatimScanner> Iterable<AdaptrisMessage> verbatimSplit(AdaptrisMessage msg, S scanner,
+      String notFound, VerbatimWriter<S> writer) throws Exception {
+    try {
+      if (!scanner.hasNext() && !suppressPathNotFound()) {
+        throw new CoreException(notFound);
+      }
+    } catch (Exception e) {
+      scanner.close();
+      throw e;
+    }
+    AdaptrisMessageFactory factory = selectFactory(msg);
+    VerbatimSupplier<AdaptrisMessage> supplier = () -> {
+      try (SplitMessageOutputStream out = splitOutput(factory)) {
+        writer.write(scanner, out);
+        return out.message();
+      }
+    };
+    if (parallelism() > 0) {
+      return new ParallelSplitGenerator<>(new VerbatimSplitGenerator<>(scanner, supplier),
+          splitMsg -> verbatimMessage(msg, splitMsg), workers(), parallelism());
+    }
+    return new VerbatimSplitGenerator<>(scanner, () -> verbatimMessage(msg, supplier.next()));
+  }
+
+  private void writeVerbatim(JsonPathScanner scanner, OutputStream out) throws IOException {
+    String prefix = "{\"" + StringUtils.replaceEach(scanner.name(), new String[] {"\\", "\""},
+        new String[] {"\\\\", "\\\""}) + "\":";
+    boolean array = wrapWithArray() || batchSize() > 1;
+    CountingOutputStream counter = new CountingOutputStream(out);
+    counter.write(prefix.getBytes(StandardCharsets.UTF_8));
+    if (array) {
+      counter.write('[');
+    }
+    copyBatch(scanner, counter, ',');
+    if (array) {
+      counter.write(']');
+    }
+    counter.write('}');
+  }
+
+  // Each value is a document in its own right, so a batch is a sequence of lines unless it's wrapped in an array.
+  private void writeSequence(VerbatimScanner scanner, OutputStream out) throws IOException {
+    CountingOutputStream counter = new CountingOutputStream(out);
+    if (wrapWithArray()) {
+      counter.write('[');
+      copyBatch(scanner, counter, ',');
+      counter.write(']');
+    } else {
+      copyBatch(scanner, counter, '\n');
+    }
+  }
+
+  private void copyBatch(VerbatimScanner scanner, CountingOutputStream counter, int separator) throws IOException {
+    long maxElementSize = getJsonStreamingConfig().maxSplitElementSize();
+    int count = 0;
+    do {
+      if (count++ > 0) {
+        counter.write(separator);
+      }
+      scanner.copyTo(maxElementSize > 0 ? new ElementSizeLimit(counter, maxElementSize) : counter);
+    } while (count < batchSize() && (maxBatchBytes() == 0 || counter.getByteCount() < maxBatchBytes())
+        && scanner.hasNext());
+  }
+
+  private SplitMessageOutputStream splitOutput(AdaptrisMessageFactory factory) throws IOException {
+    return new SplitMessageOutputStream(factory, spillMessageFactory(), spillThreshold(),
+        getJsonStreamingConfig().outputCompression());
+  }
+
+  private AdaptrisMessage verbatimMessage(AdaptrisMessage original, AdaptrisMessage splitMsg) {
+    if (!VerbatimScanner.isUtf8(original)) {
+      splitMsg.setContentEncoding(StandardCharsets.UTF_8.name());
+    } else if (original.getContentEncoding() != null) {
+      splitMsg.setContentEncoding(original.getContentEncoding());
+    }
+    copyMetadata(original, splitMsg);
+    return splitMsg;
+  }
+
+  // Fails as soon as a single element has been copied past the limit.
+  private static class ElementSizeLimit extends FilterOutputStream {
+    private final long max;
+    private long remaining;
+
+    ElementSizeLimit(OutputStream out, long max) {
+      super(out);
+      this.max = max;
+      remaining = max;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      reserve(1);
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      reserve(len);
+      out.write(b, off, len);
+    }
+
+    private void reserve(int len) throws IOException {
+      remaining -= len;
+      if (remaining < 0) {
+        throw new IOException("Element exceeds the maximum size of " + max);
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface VerbatimWriter<S extends VerbatimScanner> {
+    void write(S scanner, OutputStream out) throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface VerbatimSupplier<T> {
+    T next() throws Exception;
+  }
+
+  private class VerbatimSplitGenerator<T> implements CloseableIterable<T>, Iterator<T> {
+    private final VerbatimScanner scanner;
+    private final VerbatimSupplier<T> supplier;
+    private boolean iteratorInvoked = false;
+
+    VerbatimSplitGenerator(VerbatimScanner scanner, VerbatimSupplier<T> supplier) {
+      this.scanner = scanner;
+      this.supplier = supplier;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      if (iteratorInvoked) {
+        throw new IllegalStateException("iterator already invoked");
+      }
+      iteratorInvoked = true;
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return scanner.hasNext();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        return supplier.next();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      scanner.close();
+    }
+  }
+
+  // Starts the split message on the first event, and writes each event to it as it's read.
+  private class SplitEventWriter implements XMLEventConsumer {
+    private final JsonStreamingSplitGeneratorConfig cfg;
+    private final OutputStream output;
+    private final SplitOutputBuffer buffer;
+    private XMLEventWriter writer;
+    private long tokens = 0;
+
+    SplitEventWriter(JsonStreamingSplitGeneratorConfig cfg, OutputStream output, SplitOutputBuffer buffer) {
+      this.cfg = cfg;
+      this.output = output;
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void add(XMLEvent event) throws XMLStreamException {
+      if (writer == null) {
+        writer = cfg.startChild(output, buffer, event.asStartElement());
+      }
+      writer.add(event);
+      tokens++;
+    }
+
+    void end() throws XMLStreamException, IOException {
+      cfg.endChild(writer, output, buffer);
+      cfg.recordTokens(tokens);
+    }
+  }
+
+  @FunctionalInterface
+  private interface MatchReader<T> {
+    T read(ExpressionSplitGenerator<T> matches) throws Exception;
+  }
+
+  // Each match (or batch of matches) is converted to XML by a reader of its own; either written straight to the split
+  // message, or collected as a slice of events.
+  private class ExpressionSplitGenerator<T> implements CloseableIterable<T>, Iterator<T> {
+    private final JsonStreamingSplitGeneratorConfig cfg;
+    private final JsonPathMatcher matcher;
+    private final JsonSchema.Validator validator;
+    private final Closeable input;
+    private final MatchReader<T> reader;
+    private boolean iteratorInvoked = false;
+    private Boolean available;
+    // if validating, then each match is read (and validated) before it's available.
+    private List<XMLEvent> pending;
+    private int violations = 0;
+    // the last event of the current batch.
+    private XMLEvent last;
+
+    ExpressionSplitGenerator(JsonStreamingSplitGeneratorConfig cfg, JsonPathMatcher matcher,
+        JsonSchema.Validator validator, Closeable input, MatchReader<T> reader) {
+      this.cfg = cfg;
+      this.matcher = matcher;
+      this.validator = validator;
+      this.input = input;
+      this.reader = reader;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      if (iteratorInvoked) {
+        throw new IllegalStateException("iterator already invoked");
+      }
+      iteratorInvoked = true;
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        while (available == null) {
+          available = matcher.next();
+          if (validator != null && !validate(available)) {
+            available = null;
+          }
+        }
+        return available;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        return reader.read(this);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private List<XMLEvent> nextSlice() throws XMLStreamException, CoreException {
+      List<XMLEvent> slice = new ArrayList<>();
+      readBatch(slice::add);
+      return slice;
+    }
+
+    private AdaptrisMessage writeNext(AdaptrisMessageFactory factory) throws Exception {
+      AdaptrisMessage splitMsg;
+      SplitOutputBuffer buffer = cfg.acquireBuffer();
+      try (SplitMessageOutputStream output = splitOutput(factory)) {
+        SplitEventWriter writer = new SplitEventWriter(cfg, output, buffer);
+        readBatch(writer);
+        writer.end();
+        splitMsg = output.message();
+      } finally {
+        if (buffer != null) {
+          buffer.release();
+        }
+      }
+      copyMetadata(cfg.originalMessage, splitMsg);
+      return splitMsg;
+    }
+
+    private void readBatch(XMLEventConsumer consumer) throws XMLStreamException, CoreException {
+      XMLEvent first = null;
+      int count = 0;
+      do {
+        available = null;
+        XMLEvent start;
+        if (pending != null) {
+          for (XMLEvent event : pending) {
+            consumer.add(event);
+          }
+          start = pending.get(0);
+          last = pending.get(pending.size() - 1);
+          pending = null;
+        } else {
+          start = readMatch(consumer);
+        }
+        first = first == null ? start : first;
+        count++;
+      } while (cfg.batching() && !cfg.batchFull(count, first, last) && hasNext());
+    }
+
+    // Returns the first event of the match.
+    private XMLEvent readMatch(XMLEventConsumer consumer) throws XMLStreamException, CoreException {
+      XMLEventReader reader = eventReader(matcher.match());
+      XMLEvent start = null;
+      while (reader.hasNext()) {
+        XMLEvent event = reader.nextEvent();
+        if (!event.isStartDocument() && !event.isEndDocument()) {
+          start = start == null ? event : start;
+          cfg.checkElementSize(start, event);
+          consumer.add(event);
+          last = event;
+        }
+      }
+      return start;
+    }
+
+    // Read the match, and check whether anything in it didn't match the schema; anything that didn't match outside of
+    // the matches fails the split.
+    private boolean validate(boolean found) throws XMLStreamException, CoreException {
+      if (found) {
+        List<XMLEvent> events = new ArrayList<>();
+        readMatch(events::add);
+        pending = events;
+      }
+      String pointer = validator.pointer();
+      List<JsonSchema.Violation> all = validator.violations();
+      List<JsonSchema.Violation> rejected = new ArrayList<>();
+      for (JsonSchema.Violation violation : all.subList(violations, all.size())) {
+        if (!found || !violation.within(pointer)) {
+          throw new CoreException("JSON does not match the schema at " + violation);
+        }
+        rejected.add(violation);
+      }
+      violations = all.size();
+      if (!rejected.isEmpty()) {
+        log.warn("Rejecting {} at {}, it does not match the schema: {}", matcher.name(), pointer, rejected);
+        pending = null;
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        matcher.close();
+      } finally {
+        IOUtils.closeQuietly(input);
+      }
+    }
+  }
 }
@@ -0,0 +1,232 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.apache.commons.io.IOUtils;
+import com.adaptris.core.AdaptrisMessage;
+
+/**
+ * An index of where each object and array starts and ends in the raw bytes of a JSON document.
+ * <p>
+ * Once built, the index lets {@link JsonPathScanner} jump straight past an object or array that it isn't interested
+ * in (or copy it in one go), rather than checking every byte of it for strings and brackets. The index is built in a
+ * single pass, which checks the bytes 8 at a time using SWAR (SIMD within a register) arithmetic on a {@code long}:
+ * most 8 byte words contain no quotes, backslashes or brackets and are skipped without looking at each byte; only the
+ * words that do contain one are handled a byte at a time.
+ * </p>
+ * <p>
+ * The index holds the start and end offset of every object and array, as two {@code int}s, so it is 8 bytes for each
+ * object and array in the document; a document made up of lots of small objects can have an index that's a sizeable
+ * fraction of its own size. Documents of 2GB or more can't be indexed.
+ * </p>
+ * <p>
+ * The index is stored against the message as object metadata, so that it is only built once however many times the
+ * message is split, and is held for as long as the message is. Since a single split gains nothing from the index, it
+ * isn't built until the message is split a second time (see {@link #reused(AdaptrisMessage)}). The payload could have
+ * changed since the index was built, so it's discarded if the size of the payload is different, and the scanner checks
+ * that each end it jumps to is actually a bracket.
+ * </p>
+ */
+final class JsonStructuralIndex {
+
+  static final String OBJECT_METADATA_KEY = JsonStructuralIndex.class.getName();
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGHS = 0x8080808080808080L;
+  private static final long QUOTES = ONES * '"';
+  private static final long BACKSLASHES = ONES * '\\';
+  // '[' and ']' only differ from '{' and '}' by 0x20.
+  private static final long CASE = ONES * 0x20;
+  private static final long OPEN = ONES * '{';
+  private static final long CLOSE = ONES * '}';
+
+  private final long size;
+  private final int[] starts;
+  private final int[] ends;
+
+  private JsonStructuralIndex(long size, int[] starts, int[] ends) {
+    this.size = size;
+    this.starts = starts;
+    this.ends = ends;
+  }
+
+  /**
+   * Get the index that has previously been stored against the message.
+   *
+   * @return the index, or null if there isn't one, or the payload has changed size since it was built.
+   */
+  static JsonStructuralIndex cached(AdaptrisMessage msg) {
+    Object cached = msg.getObjectHeaders().get(OBJECT_METADATA_KEY);
+    if (cached instanceof JsonStructuralIndex && ((JsonStructuralIndex) cached).size == msg.getSize()) {
+      return (JsonStructuralIndex) cached;
+    }
+    return null;
+  }
+
+  /**
+   * Record that the message is being split, so that the index is built if it is split again.
+   *
+   * @return true if the message has been split before (and hasn't changed size since), in which case the index is worth
+   *         building.
+   */
+  static boolean reused(AdaptrisMessage msg) {
+    Object previous = msg.getObjectHeaders().get(OBJECT_METADATA_KEY);
+    if (previous instanceof Long && ((Long) previous).longValue() == msg.getSize()) {
+      return true;
+    }
+    msg.addObjectHeader(OBJECT_METADATA_KEY, Long.valueOf(msg.getSize()));
+    return false;
+  }
+
+  /**
+   * Build the index for the message and store it against the message.
+   *
+   * @param msg the message.
+   * @param input the raw bytes of the payload, which are read fully but not closed.
+   * @param bufferSize the size of the buffer used to read the input.
+   * @return the index, or null if the payload doesn't have balanced brackets or is too large, in which case nothing is
+   *         stored.
+   */
+  static JsonStructuralIndex build(AdaptrisMessage msg, InputStream input, int bufferSize) throws IOException {
+    JsonStructuralIndex index = build(input, bufferSize);
+    if (index != null) {
+      msg.addObjectHeader(OBJECT_METADATA_KEY, index);
+    }
+    return index;
+  }
+
+  /**
+   * Build the index.
+   *
+   * @param input the input, which is read fully but not closed.
+   * @param bufferSize the size of the buffer used to read the input.
+   * @return the index, or null if the input doesn't have balanced brackets or is too large.
+   */
+  static JsonStructuralIndex build(InputStream input, int bufferSize) throws IOException {
+    Builder builder = new Builder();
+    byte[] buffer = new byte[Math.max(bufferSize, Long.BYTES)];
+    ByteBuffer words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    long offset = 0;
+    int count;
+    while ((count = IOUtils.read(input, buffer)) > 0) {
+      if (offset + count > Integer.MAX_VALUE) {
+        return null;
+      }
+      builder.scan(buffer, words, count, (int) offset);
+      offset += count;
+    }
+    return builder.build(offset);
+  }
+
+  /**
+   * The offset of the end of the object or array that starts at the given offset.
+   *
+   * @return the offset of the closing bracket, or -1 if there is no object or array starting at the offset.
+   */
+  long end(long start) {
+    if (start > Integer.MAX_VALUE) {
+      return -1;
+    }
+    int i = Arrays.binarySearch(starts, (int) start);
+    return i >= 0 ? ends[i] : -1;
+  }
+
+  /**
+   * The number of objects and arrays in the index.
+   */
+  int size() {
+    return starts.length;
+  }
+
+  // Whether any byte of the word is zero.
+  private static boolean hasZero(long word) {
+    return ((word - ONES) & ~word & HIGHS) != 0;
+  }
+
+  private static class Builder {
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int count = 0;
+    private int[] stack = new int[32];
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+    private boolean balanced = true;
+
+    void scan(byte[] buffer, ByteBuffer words, int length, int offset) {
+      int i = 0;
+      for (; i + Long.BYTES <= length; i += Long.BYTES) {
+        long word = words.getLong(i);
+        boolean quotes = hasZero(word ^ QUOTES);
+        if (inString) {
+          if (!quotes && !hasZero(word ^ BACKSLASHES)) {
+            // an escaped character at the start of the word isn't special.
+            escaped = false;
+            continue;
+          }
+        } else if (!quotes && !hasZero((word | CASE) ^ OPEN) && !hasZero((word | CASE) ^ CLOSE)) {
+          continue;
+        }
+        for (int j = i; j < i + Long.BYTES; j++) {
+          update(buffer[j], offset + j);
+        }
+      }
+      for (; i < length; i++) {
+        update(buffer[i], offset + i);
+      }
+    }
+
+    private void update(byte c, int offset) {
+      if (inString) {
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == '"') {
+          inString = false;
+        }
+        return;
+      }
+      switch (c) {
+        case '"':
+          inString = true;
+          break;
+        case '{':
+        case '[':
+          push(offset);
+          break;
+        case '}':
+        case ']':
+          if (depth == 0) {
+            balanced = false;
+          } else {
+            ends[stack[--depth]] = offset;
+          }
+          break;
+        default:
+      }
+    }
+
+    private void push(int offset) {
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+      }
+      if (depth == stack.length) {
+        stack = Arrays.copyOf(stack, depth * 2);
+      }
+      starts[count] = offset;
+      stack[depth++] = count++;
+    }
+
+    JsonStructuralIndex build(long size) {
+      if (!balanced || depth != 0 || inString) {
+        return null;
+      }
+      return new JsonStructuralIndex(size, Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+    }
+  }
+}
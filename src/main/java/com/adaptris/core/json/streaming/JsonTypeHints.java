@@ -0,0 +1,146 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The array and type hints that are used instead of {@code autoArray} and {@code autoPrimitive} when writing JSON.
+ * <p>
+ * The hints are a simple text file, with one rule per line, of the form {@code <type> <path>}; where the type is one of
+ * {@code array}, {@code number} or {@code boolean} and the path is either an absolute path to the element from the root
+ * element (e.g. {@code /orders/order}) or {@code //name} for an element with that name anywhere in the document. Blank
+ * lines and lines starting with {@code #} are ignored. An element can have more than one type (e.g. {@code array} and
+ * {@code number} for a list of numbers).
+ * </p>
+ *
+ * <pre>
+ * {@code
+ * # each order is always an array, even if there is only one.
+ * array   /orders/order
+ * number  /orders/order/quantity
+ * boolean /orders/order/paid
+ * array   //line
+ * number  //price
+ * }
+ * </pre>
+ * <p>
+ * The absolute paths are compiled into a tree so that finding the hints for an element is a lookup on its parent,
+ * rather than a comparison with each of the rules.
+ * </p>
+ */
+final class JsonTypeHints {
+
+  static final int ARRAY = 1;
+  static final int NUMBER = 2;
+  static final int BOOLEAN = 4;
+
+  private final Node root = new Node();
+  private final Map<String, Integer> anywhere = new HashMap<>();
+
+  private JsonTypeHints() {
+  }
+
+  /**
+   * Load the hints from a URL, or a file.
+   *
+   * @param location the URL or the path to the file.
+   */
+  static JsonTypeHints load(String location) throws IOException {
+    try (InputStream in = open(location)) {
+      return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+  }
+
+  private static InputStream open(String location) throws IOException {
+    try {
+      return new URL(location).openStream();
+    } catch (MalformedURLException e) {
+      return Files.newInputStream(Paths.get(location));
+    }
+  }
+
+  static JsonTypeHints parse(Reader rules) throws IOException {
+    JsonTypeHints hints = new JsonTypeHints();
+    BufferedReader reader = new BufferedReader(rules);
+    int lineNumber = 0;
+    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+      lineNumber++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] rule = line.split("\\s+");
+      if (rule.length != 2 || !rule[1].startsWith("/") || rule[1].length() == 1) {
+        throw new IOException("Invalid type hint at line " + lineNumber + ": " + line);
+      }
+      hints.add(type(rule[0], lineNumber), rule[1]);
+    }
+    return hints;
+  }
+
+  private static int type(String name, int lineNumber) throws IOException {
+    switch (name.toLowerCase()) {
+      case "array":
+        return ARRAY;
+      case "number":
+        return NUMBER;
+      case "boolean":
+        return BOOLEAN;
+      default:
+        throw new IOException("Unknown type hint at line " + lineNumber + ": " + name);
+    }
+  }
+
+  private void add(int type, String path) {
+    if (path.startsWith("//")) {
+      anywhere.merge(path.substring(2), type, (a, b) -> a | b);
+      return;
+    }
+    Node node = root;
+    for (String name : StringUtils.split(path, '/')) {
+      node = node.children.computeIfAbsent(name, k -> new Node());
+    }
+    node.types |= type;
+  }
+
+  /**
+   * The node for the root element.
+   */
+  Node root(String name) {
+    return root.child(name);
+  }
+
+  /**
+   * The hints for an element.
+   *
+   * @param node the node for the element, which may be null if it has no absolute path rules.
+   * @param name the name of the element.
+   */
+  int types(Node node, String name) {
+    int types = node != null ? node.types : 0;
+    return anywhere.isEmpty() ? types : types | anywhere.getOrDefault(name, 0);
+  }
+
+  static final class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private int types;
+
+    /**
+     * The node for a child element, or null if there are no rules on or below it.
+     */
+    Node child(String name) {
+      return children.get(name);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.adaptris.core.json.streaming;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of durations.
+ * <p>
+ * Values are recorded into log-linear buckets in the same way as HdrHistogram; every power of two is split into 8
+ * buckets, so any reported percentile is within 12.5% of the true value, and the memory used is fixed regardless of the
+ * range of values. Each bucket is a {@link LongAdder} so concurrent recording doesn't contend.
+ * </p>
+ */
+final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+  LatencyHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  void record(long value) {
+    long v = Math.max(0, value);
+    buckets[index(v)].increment();
+    count.increment();
+    total.add(v);
+    max.accumulate(v);
+  }
+
+  long count() {
+    return count.sum();
+  }
+
+  long mean() {
+    long n = count.sum();
+    return n > 0 ? total.sum() / n : 0;
+  }
+
+  long max() {
+    return max.get();
+  }
+
+  /**
+   * The value at the given percentile; the highest value that could have been recorded in the bucket, capped at the
+   * maximum recorded value.
+   *
+   * @param percentile the percentile, e.g. 99.9
+   */
+  long percentile(double percentile) {
+    long n = count.sum();
+    if (n == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100.0));
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i].sum();
+      if (seen >= target) {
+        return Math.min(highestValue(i), max());
+      }
+    }
+    return max();
+  }
+
+  void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    count.reset();
+    total.reset();
+    max.reset();
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  static long highestValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,107 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.lms.FileBackedMessage;
+
+/**
+ * {@link InputStream} that reads a file through a {@link MappedByteBuffer}.
+ * <p>
+ * The file is mapped a region at a time, so files larger than 2GB are supported. Data is copied directly from the
+ * mapped region into the caller's array, so unlike {@code BufferedInputStream(FileInputStream)} there is no
+ * intermediate heap buffer. Since there is no buffering, this is intended to be used by parsers that read in blocks
+ * (such as Jackson's {@code JsonParser}) rather than a byte at a time.
+ * </p>
+ */
+final class MappedFileInputStream extends InputStream {
+
+  private static final long REGION_SIZE = 256L * 1024 * 1024;
+
+  private final FileChannel channel;
+  private final long size;
+  private long position = 0;
+  private MappedByteBuffer region;
+
+  MappedFileInputStream(File file) throws IOException {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    size = channel.size();
+  }
+
+  /**
+   * Whether the message can be read via {@link #open(AdaptrisMessage)}.
+   */
+  static boolean canMap(AdaptrisMessage msg) {
+    return msg instanceof FileBackedMessage;
+  }
+
+  /**
+   * Open the file that backs the message.
+   * <p>
+   * Note that this reads the file directly, so it should not be used if the message factory compresses (or otherwise
+   * encodes) the file.
+   * </p>
+   */
+  static InputStream open(AdaptrisMessage msg) throws IOException {
+    return new MappedFileInputStream(((FileBackedMessage) msg).currentSource());
+  }
+
+  private boolean ensureRemaining() throws IOException {
+    if (region != null && region.hasRemaining()) {
+      return true;
+    }
+    if (position >= size) {
+      return false;
+    }
+    long length = Math.min(REGION_SIZE, size - position);
+    region = channel.map(MapMode.READ_ONLY, position, length);
+    position += length;
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return ensureRemaining() ? region.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensureRemaining()) {
+      return -1;
+    }
+    int count = Math.min(len, region.remaining());
+    region.get(b, off, count);
+    return count;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = 0;
+    while (skipped < n && ensureRemaining()) {
+      int count = (int) Math.min(n - skipped, region.remaining());
+      region.position(region.position() + count);
+      skipped += count;
+    }
+    return skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    long remaining = size - position + (region != null ? region.remaining() : 0);
+    return (int) Math.min(Integer.MAX_VALUE, remaining);
+  }
+
+  @Override
+  public void close() throws IOException {
+    region = null;
+    channel.close();
+  }
+}
@@ -0,0 +1,203 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.util.CloseableIterable;
+import com.adaptris.core.util.ManagedThreadFactory;
+
+/**
+ * Turns slices of the source document into messages using a pool of worker threads.
+ * <p>
+ * A single reader thread iterates over the slices (so the source document is still only read once, sequentially),
+ * and hands each slice to a worker to be serialised. The pending results are held in a bounded queue, in source
+ * order, so the messages are returned in the same order as the sequential equivalent; if the consumer falls behind,
+ * the reader blocks, which limits the number of slices held in memory.
+ * </p>
+ * <p>
+ * The workers are a pool that is shared by every split (see {@link #newWorkers(int)}); so the only thread started for
+ * each split is the reader. Closing the iterable, or the first failure, stops the reader, cancels any outstanding work
+ * and closes the underlying slices.
+ * </p>
+ *
+ * @param <T> the type of slice.
+ */
+final class ParallelSplitGenerator<T> implements CloseableIterable<AdaptrisMessage>, Iterator<AdaptrisMessage> {
+
+  /**
+   * Serialises a slice into a message.
+   */
+  @FunctionalInterface
+  interface Serialiser<T> {
+    AdaptrisMessage serialise(T slice) throws Exception;
+  }
+
+  private static final Future<AdaptrisMessage> END_OF_SLICES = CompletableFuture.completedFuture(null);
+  private static final long IDLE_SECONDS = 60;
+
+  private transient Logger log = LoggerFactory.getLogger(ParallelSplitGenerator.class);
+
+  private final CloseableIterable<T> slices;
+  private final Serialiser<T> serialiser;
+  private final BlockingQueue<Future<AdaptrisMessage>> pending;
+  private final ExecutorService workers;
+  private final Thread reader;
+
+  private volatile boolean closed = false;
+  private boolean iteratorInvoked = false;
+  private boolean exhausted = false;
+  private AdaptrisMessage nextMessage;
+
+  /**
+   * Constructor.
+   *
+   * @param slices the slices; iterated over by the reader thread, and closed when the reader finishes.
+   * @param serialiser converts a slice into a message; invoked on the worker threads.
+   * @param workers the worker threads, from {@link #newWorkers(int)}; these are not shut down.
+   * @param parallelism the number of worker threads; the queue of pending results is twice this size.
+   */
+  ParallelSplitGenerator(CloseableIterable<T> slices, Serialiser<T> serialiser, ExecutorService workers,
+      int parallelism) {
+    this.slices = slices;
+    this.serialiser = serialiser;
+    this.workers = workers;
+    pending = new ArrayBlockingQueue<>(parallelism * 2);
+    reader = new ManagedThreadFactory(getClass().getSimpleName()).newThread(this::readSlices);
+    reader.start();
+  }
+
+  /**
+   * Create a pool of worker threads that can be shared by many splits.
+   * <p>
+   * The threads time out when they are idle, so the pool doesn't have to be shut down; the splitters don't have a
+   * lifecycle in which to do so.
+   * </p>
+   *
+   * @param parallelism the number of threads.
+   */
+  static ThreadPoolExecutor newWorkers(int parallelism) {
+    ThreadPoolExecutor workers = new ThreadPoolExecutor(parallelism, parallelism, IDLE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new ManagedThreadFactory(ParallelSplitGenerator.class.getSimpleName()));
+    workers.allowCoreThreadTimeOut(true);
+    return workers;
+  }
+
+  private void readSlices() {
+    try {
+      for (T slice : slices) {
+        if (closed) {
+          break;
+        }
+        Future<AdaptrisMessage> result = workers.submit(() -> serialiser.serialise(slice));
+        try {
+          pending.put(result);
+        } catch (InterruptedException e) {
+          result.cancel(true);
+          throw e;
+        }
+      }
+      pending.put(END_OF_SLICES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      fail(e);
+    } finally {
+      closeQuietly();
+    }
+  }
+
+  private void fail(Exception e) {
+    CompletableFuture<AdaptrisMessage> failure = new CompletableFuture<>();
+    failure.completeExceptionally(e);
+    try {
+      pending.put(failure);
+    } catch (InterruptedException ignored) {
+      // we're being closed, so nobody is waiting for it.
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void closeQuietly() {
+    closeQuietly(slices);
+  }
+
+  private void closeQuietly(CloseableIterable<?> c) {
+    try {
+      c.close();
+    } catch (Exception e) {
+      log.trace("Ignoring exception closing slices", e);
+    }
+  }
+
+  @Override
+  public Iterator<AdaptrisMessage> iterator() {
+    if (iteratorInvoked) {
+      throw new IllegalStateException("iterator already invoked");
+    }
+    iteratorInvoked = true;
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextMessage == null && !exhausted) {
+      try {
+        nextMessage = pending.take().get();
+        exhausted = nextMessage == null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        // Nothing after the failure will be used, so stop now rather than when the iterable is closed.
+        closeQuietly(this);
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+            : new RuntimeException(e.getCause());
+      }
+    }
+    return nextMessage != null;
+  }
+
+  @Override
+  public AdaptrisMessage next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    AdaptrisMessage result = nextMessage;
+    nextMessage = null;
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    exhausted = true;
+    reader.interrupt();
+    cancelPending();
+    try {
+      // Wait for the reader to release the underlying source.
+      reader.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Anything the reader added before it stopped.
+    cancelPending();
+  }
+
+  private void cancelPending() {
+    for (Future<AdaptrisMessage> f = pending.poll(); f != null; f = pending.poll()) {
+      f.cancel(true);
+    }
+  }
+}
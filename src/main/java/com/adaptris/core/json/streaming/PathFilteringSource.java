@@ -0,0 +1,239 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamToken;
+
+/**
+ * {@link JsonStreamSource} wrapper that hides everything that isn't on a path.
+ * <p>
+ * Keys that aren't on the path are skipped along with their values at the token level, before they ever become
+ * {@code XMLEvent}s; if the underlying source is {@link Skippable} then it is asked to skip the value, otherwise the
+ * tokens are consumed while counting depth. Arrays on the way to the path are traversed, so each object in the array is
+ * checked; everything beneath the path itself is passed through untouched.
+ * </p>
+ * <p>
+ * Once the value at the path has been closed, and there are no arrays on the way to the path that might contain
+ * another match, the remaining input is never read; the source behaves as if every open object and array had been
+ * closed immediately afterwards.
+ * </p>
+ */
+final class PathFilteringSource implements JsonStreamSource {
+
+  /**
+   * Implemented by sources that can skip an entire value more efficiently than by reading each of its tokens.
+   */
+  interface Skippable {
+    /**
+     * Skip the next value, which may be a scalar, an object or an array.
+     */
+    void skipValue() throws IOException;
+  }
+
+  private final JsonStreamSource delegate;
+  private final String[] path;
+  private final Deque<Frame> stack = new ArrayDeque<>();
+  private String pendingName;
+  private int valueLevel = 0;
+  private boolean done = false;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate the underlying source.
+   * @param path the path, e.g. {@code /envelope/document}
+   */
+  PathFilteringSource(JsonStreamSource delegate, String path) {
+    this.delegate = delegate;
+    this.path = path.substring(path.startsWith("/") ? 1 : 0).split("/");
+  }
+
+  @Override
+  public JsonStreamToken peek() throws IOException {
+    if (done) {
+      return stack.isEmpty() ? JsonStreamToken.NONE : stack.peek().array ? JsonStreamToken.END_ARRAY
+          : JsonStreamToken.END_OBJECT;
+    }
+    if (pendingName != null) {
+      return JsonStreamToken.NAME;
+    }
+    while (true) {
+      JsonStreamToken token = delegate.peek();
+      Frame top = stack.peek();
+      if (token != JsonStreamToken.NAME || top == null || top.level >= path.length) {
+        return token;
+      }
+      String name = delegate.name();
+      if (JsonPathExpression.matchesKey(name, path[top.level])) {
+        pendingName = name;
+        valueLevel = top.level + 1;
+        return JsonStreamToken.NAME;
+      }
+      skipValue(delegate);
+    }
+  }
+
+  @Override
+  public String name() throws IOException {
+    if (peek() != JsonStreamToken.NAME) {
+      throw new IOException("Unexpected token: " + peek());
+    }
+    if (pendingName != null) {
+      String name = pendingName;
+      pendingName = null;
+      return name;
+    }
+    // beneath the path, so we stay at the same level.
+    valueLevel = stack.peek().level;
+    return delegate.name();
+  }
+
+  @Override
+  public Value value() throws IOException {
+    Value value = delegate.value();
+    checkComplete();
+    return value;
+  }
+
+  @Override
+  public void startObject() throws IOException {
+    delegate.startObject();
+    stack.push(new Frame(false, nextLevel()));
+  }
+
+  @Override
+  public void endObject() throws IOException {
+    end(JsonStreamToken.END_OBJECT);
+    if (!done) {
+      delegate.endObject();
+    }
+    stack.pop();
+    checkComplete();
+  }
+
+  @Override
+  public void startArray() throws IOException {
+    delegate.startArray();
+    stack.push(new Frame(true, nextLevel()));
+  }
+
+  @Override
+  public void endArray() throws IOException {
+    end(JsonStreamToken.END_ARRAY);
+    if (!done) {
+      delegate.endArray();
+    }
+    stack.pop();
+    checkComplete();
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+
+  private void end(JsonStreamToken expected) throws IOException {
+    if (peek() != expected) {
+      throw new IOException("Unexpected token: " + peek());
+    }
+  }
+
+  // Elements of an array are at the same level as the array itself.
+  private int nextLevel() {
+    Frame top = stack.peek();
+    if (top == null) {
+      return 0;
+    }
+    return top.array ? top.level : valueLevel;
+  }
+
+  // Any value that makes it into an object at the last level of the path must be for a matching key.
+  private void checkComplete() {
+    Frame top = stack.peek();
+    if (done || top == null || top.array || top.level != path.length - 1) {
+      return;
+    }
+    for (Frame f : stack) {
+      if (f.array) {
+        return;
+      }
+    }
+    done = true;
+  }
+
+  /**
+   * Skip the next value from the source, using {@link Skippable} if it's supported.
+   */
+  static void skipValue(JsonStreamSource delegate) throws IOException {
+    if (delegate instanceof Skippable) {
+      ((Skippable) delegate).skipValue();
+      return;
+    }
+    int depth = 0;
+    do {
+      switch (delegate.peek()) {
+        case START_OBJECT:
+          delegate.startObject();
+          depth++;
+          break;
+        case START_ARRAY:
+          delegate.startArray();
+          depth++;
+          break;
+        case END_OBJECT:
+          delegate.endObject();
+          depth--;
+          break;
+        case END_ARRAY:
+          delegate.endArray();
+          depth--;
+          break;
+        case NAME:
+          delegate.name();
+          break;
+        case VALUE:
+          delegate.value();
+          break;
+        default:
+          throw new IOException("Unexpected end of input");
+      }
+    } while (depth > 0);
+  }
+
+  @Override
+  public int getLineNumber() {
+    return delegate.getLineNumber();
+  }
+
+  @Override
+  public int getColumnNumber() {
+    return delegate.getColumnNumber();
+  }
+
+  @Override
+  public int getCharacterOffset() {
+    return delegate.getCharacterOffset();
+  }
+
+  @Override
+  public String getPublicId() {
+    return delegate.getPublicId();
+  }
+
+  @Override
+  public String getSystemId() {
+    return delegate.getSystemId();
+  }
+
+  private static class Frame {
+    private final boolean array;
+    private final int level;
+
+    Frame(boolean array, int level) {
+      this.array = array;
+      this.level = level;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.util.CloseableIterable;
+import com.adaptris.core.util.ManagedThreadFactory;
+
+/**
+ * Creates the split messages ahead of the consumer on a background thread.
+ * <p>
+ * The split messages are created on a single thread, in order, and held in a bounded queue; so the next split message
+ * is (usually) ready by the time that the consumer has finished with the current one, and the source document is
+ * parsed while the downstream services are running rather than in between them. If the consumer falls behind, the
+ * producer blocks once the queue is full.
+ * </p>
+ * <p>
+ * Closing the iterable stops the producer, discards anything that has been prefetched and closes the underlying
+ * iterable (and so the source document).
+ * </p>
+ */
+final class PrefetchSplitGenerator implements CloseableIterable<AdaptrisMessage>, Iterator<AdaptrisMessage> {
+
+  private static final Future<AdaptrisMessage> END_OF_MESSAGES = CompletableFuture.completedFuture(null);
+
+  private transient Logger log = LoggerFactory.getLogger(PrefetchSplitGenerator.class);
+
+  private final CloseableIterable<AdaptrisMessage> messages;
+  private final BlockingQueue<Future<AdaptrisMessage>> prefetched;
+  private final Thread producer;
+
+  private volatile boolean closed = false;
+  private boolean iteratorInvoked = false;
+  private boolean exhausted = false;
+  private AdaptrisMessage nextMessage;
+
+  /**
+   * Constructor.
+   *
+   * @param messages the split messages; iterated over by the producer thread, and closed when it finishes.
+   * @param depth the maximum number of split messages to create ahead of the consumer.
+   */
+  PrefetchSplitGenerator(Iterable<AdaptrisMessage> messages, int depth) {
+    this.messages = CloseableIterable.ensureCloseable(messages);
+    prefetched = new ArrayBlockingQueue<>(Math.max(1, depth));
+    producer = new ManagedThreadFactory(getClass().getSimpleName()).newThread(this::produce);
+    producer.start();
+  }
+
+  private void produce() {
+    try {
+      for (AdaptrisMessage msg : messages) {
+        if (closed) {
+          break;
+        }
+        prefetched.put(CompletableFuture.completedFuture(msg));
+      }
+      prefetched.put(END_OF_MESSAGES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      fail(e);
+    } finally {
+      closeQuietly();
+    }
+  }
+
+  private void fail(Exception e) {
+    CompletableFuture<AdaptrisMessage> failure = new CompletableFuture<>();
+    failure.completeExceptionally(e);
+    try {
+      prefetched.put(failure);
+    } catch (InterruptedException ignored) {
+      // we're being closed, so nobody is waiting for it.
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      messages.close();
+    } catch (Exception e) {
+      log.trace("Ignoring exception closing split messages", e);
+    }
+  }
+
+  @Override
+  public Iterator<AdaptrisMessage> iterator() {
+    if (iteratorInvoked) {
+      throw new IllegalStateException("iterator already invoked");
+    }
+    iteratorInvoked = true;
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextMessage == null && !exhausted) {
+      try {
+        nextMessage = prefetched.take().get();
+        exhausted = nextMessage == null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        exhausted = true;
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+            : new RuntimeException(e.getCause());
+      }
+    }
+    return nextMessage != null;
+  }
+
+  @Override
+  public AdaptrisMessage next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    AdaptrisMessage result = nextMessage;
+    nextMessage = null;
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    exhausted = true;
+    producer.interrupt();
+    prefetched.clear();
+    try {
+      // Wait for the producer to release the source document.
+      producer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    prefetched.clear();
+  }
+}
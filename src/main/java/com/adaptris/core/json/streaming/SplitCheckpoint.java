@@ -0,0 +1,47 @@
+package com.adaptris.core.json.streaming;
+
+/**
+ * The position that {@link JsonStreamingSplitter} has reached in a document.
+ * <p>
+ * As well as the offset of the end of the last element that has been processed, the checkpoint holds the structure
+ * enclosing the elements, as the JSON text that opens each of the objects and arrays that contain it (e.g.
+ * {@code {"envelope":{"document":[}); so the document can be resumed from the offset without re-reading anything that
+ * comes before it.
+ * </p>
+ */
+public final class SplitCheckpoint {
+
+  private final long offset;
+  private final long index;
+  private final String structure;
+
+  /**
+   * Constructor.
+   *
+   * @param offset the offset, in characters, of the end of the last element that has been processed.
+   * @param index the number of elements that have been processed.
+   * @param structure the JSON that opens the objects and arrays enclosing the element.
+   */
+  public SplitCheckpoint(long offset, long index, String structure) {
+    this.offset = offset;
+    this.index = index;
+    this.structure = structure;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public long getIndex() {
+    return index;
+  }
+
+  public String getStructure() {
+    return structure;
+  }
+
+  @Override
+  public String toString() {
+    return "SplitCheckpoint[offset=" + offset + ", index=" + index + ", structure=" + structure + "]";
+  }
+}
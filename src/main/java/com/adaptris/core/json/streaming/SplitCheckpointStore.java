@@ -0,0 +1,34 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+
+/**
+ * Stores the checkpoints made by {@link JsonStreamingSplitter} so that splitting a message can be resumed.
+ *
+ * @see JsonStreamingSplitter#setCheckpointStore(SplitCheckpointStore)
+ */
+public interface SplitCheckpointStore {
+
+  /**
+   * Get the last checkpoint that was saved.
+   *
+   * @param id the id of the message being split.
+   * @return the checkpoint, or null if there isn't one.
+   */
+  SplitCheckpoint load(String id) throws IOException;
+
+  /**
+   * Save a checkpoint, replacing any previous checkpoint.
+   *
+   * @param id the id of the message being split.
+   * @param checkpoint the checkpoint.
+   */
+  void save(String id, SplitCheckpoint checkpoint) throws IOException;
+
+  /**
+   * Remove the checkpoint, once the message has been completely split.
+   *
+   * @param id the id of the message being split.
+   */
+  void delete(String id) throws IOException;
+}
@@ -0,0 +1,281 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.SequenceReader;
+
+/**
+ * Records where each element on a path ends, as the JSON is read, so that splitting can be resumed from there.
+ * <p>
+ * The parsers read ahead, so their locations can't be used to find the end of an element; instead the characters are
+ * tracked as they are handed to the parser, using a simple state machine that follows the objects, arrays and keys
+ * (but doesn't validate the JSON). Each time an element on the path ends, a {@link SplitCheckpoint} is queued with its
+ * offset, and the structure that encloses it; the splitter then takes the checkpoint for the last element that has been
+ * processed. Offsets are in characters, and are always relative to the original document.
+ * </p>
+ */
+final class SplitCheckpointTracker extends FilterReader {
+
+  private final String[] path;
+  private final Queue<SplitCheckpoint> checkpoints = new ConcurrentLinkedQueue<>();
+  private final List<Frame> stack = new ArrayList<>();
+  // the offset in the original document of the first character read.
+  private final long base;
+  private long position = 0;
+  private long index;
+  private boolean inString = false;
+  private boolean escaped = false;
+  private boolean inLiteral = false;
+  private StringBuilder key;
+  // the depth of the element being read, or -1 if not in an element.
+  private int elementDepth = -1;
+  private String structure;
+
+  private SplitCheckpointTracker(Reader in, String path, long base, long index) {
+    super(in);
+    this.path = path.substring(path.startsWith("/") ? 1 : 0).split("/");
+    this.base = base;
+    this.index = index;
+  }
+
+  /**
+   * Track the document from the start.
+   *
+   * @param in the document.
+   * @param path the path to the elements, e.g. {@code /envelope/document}
+   */
+  static SplitCheckpointTracker start(Reader in, String path) {
+    return new SplitCheckpointTracker(in, path, 0, 0);
+  }
+
+  /**
+   * Resume the document from a checkpoint.
+   * <p>
+   * The document is skipped up to the checkpoint without being parsed; the structure from the checkpoint is then put
+   * in front of the remainder, so that the parser sees a document that starts with the next element.
+   * </p>
+   *
+   * @param in the document.
+   * @param path the path to the elements, e.g. {@code /envelope/document}
+   * @param checkpoint the checkpoint.
+   */
+  static SplitCheckpointTracker resume(Reader in, String path, SplitCheckpoint checkpoint) throws IOException {
+    IOUtils.skipFully(in, checkpoint.getOffset());
+    PushbackReader remainder = new PushbackReader(in, 1);
+    long offset = checkpoint.getOffset();
+    int c;
+    // skip the separator after the last element.
+    while ((c = remainder.read()) >= 0 && (Character.isWhitespace(c) || c == ',')) {
+      offset++;
+      if (c == ',') {
+        break;
+      }
+    }
+    if (c >= 0 && c != ',') {
+      remainder.unread(c);
+    }
+    String structure = checkpoint.getStructure();
+    return new SplitCheckpointTracker(new SequenceReader(new StringReader(structure), remainder), path,
+        offset - structure.length(), checkpoint.getIndex());
+  }
+
+  /**
+   * Remove the checkpoints up to and including the given element.
+   *
+   * @param elements the number of elements that have been processed.
+   * @return the checkpoint after that element, or null if there isn't one.
+   */
+  SplitCheckpoint checkpoint(long elements) {
+    SplitCheckpoint result = null;
+    for (SplitCheckpoint c = checkpoints.peek(); c != null && c.getIndex() <= elements; c = checkpoints.peek()) {
+      result = checkpoints.poll();
+    }
+    return result != null && result.getIndex() == elements ? result : null;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int c = super.read();
+    if (c >= 0) {
+      update(c);
+    }
+    return c;
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    int n = super.read(cbuf, off, len);
+    for (int i = 0; i < n; i++) {
+      update(cbuf[off + i]);
+    }
+    return n;
+  }
+
+  // Skipped characters aren't seen, so skip by reading.
+  @Override
+  public long skip(long n) throws IOException {
+    char[] buf = new char[(int) Math.min(n, 8192)];
+    long remaining = n;
+    int read = 0;
+    while (remaining > 0 && (read = read(buf, 0, (int) Math.min(remaining, buf.length))) > 0) {
+      remaining -= read;
+    }
+    return n - remaining;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  private void update(int c) {
+    position++;
+    if (inString) {
+      if (escaped) {
+        escaped = false;
+      } else if (c == '\\') {
+        escaped = true;
+      } else if (c == '"') {
+        inString = false;
+        if (key != null) {
+          top().key = key.toString();
+          key = null;
+          structure = null;
+        } else {
+          valueEnd(position);
+        }
+        return;
+      }
+      if (key != null) {
+        key.append((char) c);
+      }
+      return;
+    }
+    switch (c) {
+      case '"':
+        endLiteral();
+        inString = true;
+        if (!stack.isEmpty() && !top().array && top().expectKey) {
+          key = new StringBuilder();
+        } else {
+          valueStart(false);
+        }
+        break;
+      case '{':
+      case '[':
+        endLiteral();
+        valueStart(c == '[');
+        stack.add(new Frame(c == '['));
+        structure = null;
+        break;
+      case '}':
+      case ']':
+        endLiteral();
+        if (!stack.isEmpty()) {
+          stack.remove(stack.size() - 1);
+          structure = null;
+        }
+        valueEnd(position);
+        break;
+      case ':':
+        endLiteral();
+        if (!stack.isEmpty()) {
+          top().expectKey = false;
+        }
+        break;
+      case ',':
+        endLiteral();
+        if (!stack.isEmpty() && !top().array) {
+          top().expectKey = true;
+        }
+        break;
+      case ' ':
+      case '\t':
+      case '\r':
+      case '\n':
+        endLiteral();
+        break;
+      default:
+        // numbers and literals
+        if (!inLiteral) {
+          inLiteral = true;
+          valueStart(false);
+        }
+    }
+  }
+
+  private void endLiteral() {
+    if (inLiteral) {
+      inLiteral = false;
+      // the literal ended before this character.
+      valueEnd(position - 1);
+    }
+  }
+
+  // Arrays on the path aren't elements, each of the values in them is.
+  private void valueStart(boolean array) {
+    if (elementDepth < 0 && !array && onPath()) {
+      elementDepth = stack.size();
+    }
+  }
+
+  private void valueEnd(long end) {
+    if (elementDepth == stack.size()) {
+      elementDepth = -1;
+      checkpoints.add(new SplitCheckpoint(base + end, ++index, structure()));
+    }
+  }
+
+  private boolean onPath() {
+    int i = 0;
+    for (Frame frame : stack) {
+      if (frame.array) {
+        continue;
+      }
+      if (i >= path.length || !path[i].equals(frame.key)) {
+        return false;
+      }
+      i++;
+    }
+    return i == path.length;
+  }
+
+  // The JSON that opens everything that encloses the current element.
+  private String structure() {
+    if (structure == null) {
+      StringBuilder result = new StringBuilder();
+      for (int i = 0; i < stack.size(); i++) {
+        Frame frame = stack.get(i);
+        result.append(frame.array ? '[' : '{');
+        if (!frame.array && i < stack.size() - 1) {
+          result.append('"').append(frame.key).append("\":");
+        }
+      }
+      structure = result.toString();
+    }
+    return structure;
+  }
+
+  private Frame top() {
+    return stack.get(stack.size() - 1);
+  }
+
+  private static class Frame {
+    private final boolean array;
+    private boolean expectKey;
+    private String key;
+
+    Frame(boolean array) {
+      this.array = array;
+      expectKey = !array;
+    }
+  }
+}
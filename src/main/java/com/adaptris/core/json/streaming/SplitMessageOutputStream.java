@@ -0,0 +1,136 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+
+/**
+ * The output for a single split message, which spills to a message from a different factory once it is too big.
+ * <p>
+ * Until the threshold is crossed the bytes are held in memory, and the split message is created from them at the end;
+ * as soon as the threshold is crossed, a message is created from the spill factory (normally a
+ * {@link com.adaptris.core.lms.FileBackedMessageFactory}) and everything is written directly to it, so the rest of the
+ * element never touches the heap, and the spilled message is handed on as it is, without being copied again. If there
+ * is no threshold, then everything is written directly to a message from the normal factory.
+ * </p>
+ * <p>
+ * If the split messages are to be compressed, then the threshold is measured on the compressed bytes.
+ * </p>
+ */
+final class SplitMessageOutputStream extends OutputStream {
+
+  private static final int SPILL_BUFFER_SIZE = 8192;
+
+  private final AdaptrisMessageFactory factory;
+  private final AdaptrisMessageFactory spillFactory;
+  private final long threshold;
+  private final OutputStream output;
+  private ByteArrayOutputStream memory;
+  private AdaptrisMessage message;
+  private OutputStream target;
+  private boolean closed = false;
+  private boolean spilled = false;
+
+  /**
+   * Constructor.
+   *
+   * @param factory the factory for split messages.
+   * @param spillFactory the factory for split messages that are bigger than the threshold.
+   * @param threshold the threshold in bytes, 0 to never spill.
+   * @param compression how to compress the split message.
+   */
+  SplitMessageOutputStream(AdaptrisMessageFactory factory, AdaptrisMessageFactory spillFactory, long threshold,
+      JsonCompression compression) throws IOException {
+    this.factory = factory;
+    this.spillFactory = spillFactory;
+    this.threshold = threshold;
+    if (threshold > 0) {
+      memory = new ByteArrayOutputStream((int) Math.min(threshold, SPILL_BUFFER_SIZE));
+      target = memory;
+    } else {
+      message = factory.newMessage();
+      target = message.getOutputStream();
+    }
+    output = compression.compress(new Sink());
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    output.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    output.write(b, off, len);
+  }
+
+  private void reserve(int len) throws IOException {
+    if (memory != null && memory.size() + len > threshold) {
+      message = spillFactory.newMessage();
+      target = new BufferedOutputStream(message.getOutputStream(), SPILL_BUFFER_SIZE);
+      memory.writeTo(target);
+      memory = null;
+      spilled = true;
+    }
+  }
+
+  /**
+   * Whether the message has spilled.
+   */
+  boolean spilled() {
+    return spilled;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    output.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      output.close();
+    }
+  }
+
+  /**
+   * Close the output and return the split message.
+   */
+  AdaptrisMessage message() throws IOException {
+    close();
+    if (memory != null) {
+      message = factory.newMessage(memory.toByteArray());
+      memory = null;
+    }
+    return message;
+  }
+
+  // Where the (possibly compressed) bytes end up.
+  private class Sink extends OutputStream {
+    @Override
+    public void write(int b) throws IOException {
+      reserve(1);
+      target.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      reserve(len);
+      target.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      target.close();
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A per-thread, reusable buffer that each split message is written into before being encoded to its payload.
+ * <p>
+ * The StAXON writer chain can't be reset, but the expensive part of creating one for a small element is the
+ * {@code OutputStreamWriter} (and its encoder and byte buffer) that StAXON wraps around every output stream. Writing to
+ * this buffer instead means that the characters are held in a reusable array, and are encoded with a reusable encoder
+ * and byte buffer; so once the buffers have grown to fit the elements, splitting allocates little beyond the split
+ * messages themselves. Buffers that have grown much larger than the configured size are released after use so that a
+ * single large element doesn't pin memory to the thread.
+ * </p>
+ * <p>
+ * If the buffer is given an output with {@link #streamTo(OutputStream)}, then it is encoded to that output whenever it
+ * is full, rather than growing; so a large element is streamed through the buffer without being held in memory.
+ * </p>
+ */
+final class SplitOutputBuffer extends Writer {
+
+  // Anything bigger than this multiple of the configured size is released after use.
+  private static final int RETAIN_MULTIPLE = 16;
+
+  private static final ThreadLocal<SplitOutputBuffer> POOL = new ThreadLocal<>();
+
+  private final int size;
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final ByteBuffer bytes;
+  private char[] chars;
+  private int count = 0;
+  private boolean inUse = false;
+  private boolean encoding = false;
+  private OutputStream target;
+
+  private SplitOutputBuffer(int size) {
+    this.size = Math.max(size, 256);
+    chars = new char[this.size];
+    bytes = ByteBuffer.allocate(this.size);
+  }
+
+  /**
+   * Get the buffer for the current thread, which must be {@link #release()}d once the split message has been written.
+   * <p>
+   * If the current thread's buffer is already in use, or it's the wrong size, then a new buffer is returned.
+   * </p>
+   *
+   * @param size the initial size of the buffers.
+   */
+  static SplitOutputBuffer acquire(int size) {
+    SplitOutputBuffer pooled = POOL.get();
+    if (pooled != null && !pooled.inUse && pooled.size == Math.max(size, 256)) {
+      pooled.inUse = true;
+      return pooled;
+    }
+    SplitOutputBuffer buffer = new SplitOutputBuffer(size);
+    if (pooled == null || !pooled.inUse) {
+      POOL.set(buffer);
+    }
+    buffer.inUse = true;
+    return buffer;
+  }
+
+  /**
+   * Encode the buffer to the output whenever it is full, rather than growing it.
+   *
+   * @param out the output, which is not closed; this should be the same output as {@link #writeTo(OutputStream)}.
+   */
+  void streamTo(OutputStream out) {
+    target = out;
+  }
+
+  /**
+   * Encode everything that has been written (and not already streamed) as UTF-8.
+   *
+   * @param out the output, which is not closed.
+   */
+  void writeTo(OutputStream out) throws IOException {
+    encode(out, true);
+  }
+
+  private void encode(OutputStream out, boolean endOfInput) throws IOException {
+    if (!encoding) {
+      encoder.reset();
+      encoding = true;
+    }
+    CharBuffer in = CharBuffer.wrap(chars, 0, count);
+    while (true) {
+      CoderResult result = encoder.encode(in, bytes, endOfInput);
+      if (result.isOverflow()) {
+        drain(out);
+        continue;
+      }
+      if (result.isError()) {
+        result.throwException();
+      }
+      break;
+    }
+    if (endOfInput) {
+      while (encoder.flush(bytes).isOverflow()) {
+        drain(out);
+      }
+      encoding = false;
+    }
+    drain(out);
+    // anything left is half of a surrogate pair, which is encoded next time.
+    int remaining = in.remaining();
+    System.arraycopy(chars, in.position(), chars, 0, remaining);
+    count = remaining;
+  }
+
+  private void drain(OutputStream out) throws IOException {
+    bytes.flip();
+    out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+    bytes.clear();
+  }
+
+  /**
+   * Return the buffer to the pool.
+   */
+  void release() {
+    count = 0;
+    target = null;
+    encoding = false;
+    if (chars.length > size * RETAIN_MULTIPLE) {
+      chars = new char[size];
+    }
+    inUse = false;
+  }
+
+  int size() {
+    return count;
+  }
+
+  @Override
+  public void write(int c) throws IOException {
+    reserve(1);
+    chars[count++] = (char) c;
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    reserve(len);
+    System.arraycopy(cbuf, off, chars, count, len);
+    count += len;
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException {
+    reserve(len);
+    str.getChars(off, off + len, chars, count);
+    count += len;
+  }
+
+  private void reserve(int len) throws IOException {
+    if (count + len > chars.length && target != null) {
+      encode(target, false);
+    }
+    if (count + len > chars.length) {
+      chars = Arrays.copyOf(chars, Math.max(count + len, chars.length * 2));
+    }
+  }
+
+  @Override
+  public void flush() {
+  }
+
+  @Override
+  public void close() {
+  }
+}
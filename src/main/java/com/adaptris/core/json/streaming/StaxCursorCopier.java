@@ -0,0 +1,149 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.util.XMLEventAllocator;
+import javax.xml.transform.stax.StAXResult;
+import org.apache.commons.lang3.StringUtils;
+import de.odysseus.staxon.event.SimpleXMLEventAllocator;
+import de.odysseus.staxon.json.JsonXMLOutputFactory;
+
+/**
+ * Copies from an {@link XMLStreamReader} to an {@link XMLStreamWriter} using the cursor API.
+ * <p>
+ * The output is the same as {@code XMLEventWriter#add(XMLEventReader)}, each cursor position is mapped to the
+ * {@link XMLStreamWriter} calls that an {@link XMLEventWriter} would make for the equivalent event. The difference is
+ * that no {@code XMLEvent} (or {@code Attribute}/{@code Namespace}) instances are created for elements, attributes
+ * and character data, which makes a significant difference to the amount of garbage generated for large documents.
+ * </p>
+ * <p>
+ * The start document is the exception, since the handling of the encoding/version differs between writer
+ * implementations; it is converted into an event and handed off to an {@link XMLEventWriter} that wraps the same
+ * {@link XMLStreamWriter} (once per document, so the overhead is negligible).
+ * </p>
+ */
+final class StaxCursorCopier {
+
+  private static final XMLEventAllocator ALLOCATOR = new SimpleXMLEventAllocator();
+
+  private StaxCursorCopier() {
+  }
+
+  /**
+   * Transcode the input to the output.
+   *
+   * @param inputFactory the factory to create the {@link XMLStreamReader}
+   * @param outputFactory the factory to create the {@link XMLStreamWriter}
+   * @param in the inputstream which is not closed.
+   * @param out the outputstream which is not closed.
+   * @return the number of events copied.
+   */
+  static long copy(XMLInputFactory inputFactory, XMLOutputFactory outputFactory, InputStream in, OutputStream out)
+      throws XMLStreamException {
+    XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+    try {
+      XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out);
+      try {
+        return copy(reader, writer, outputFactory);
+      } finally {
+        writer.flush();
+        writer.close();
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Copy everything from the current position of the reader to the writer.
+   *
+   * @param reader the reader.
+   * @param writer the writer.
+   * @param outputFactory the factory that created the writer; used to handle the start document event.
+   * @return the number of events copied.
+   */
+  static long copy(XMLStreamReader reader, XMLStreamWriter writer, XMLOutputFactory outputFactory)
+      throws XMLStreamException {
+    int event = reader.getEventType();
+    long count = 0;
+    while (true) {
+      write(event, reader, writer, outputFactory);
+      count++;
+      if (event == XMLStreamConstants.END_DOCUMENT || !reader.hasNext()) {
+        break;
+      }
+      event = reader.next();
+    }
+    return count;
+  }
+
+  private static void write(int event, XMLStreamReader reader, XMLStreamWriter writer, XMLOutputFactory outputFactory)
+      throws XMLStreamException {
+    switch (event) {
+      case XMLStreamConstants.START_ELEMENT:
+        writeStartElement(reader, writer);
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        writer.writeEndElement();
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.SPACE:
+        writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+        break;
+      case XMLStreamConstants.CDATA:
+        writer.writeCData(reader.getText());
+        break;
+      case XMLStreamConstants.PROCESSING_INSTRUCTION:
+        writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+        break;
+      case XMLStreamConstants.COMMENT:
+        writer.writeComment(reader.getText());
+        break;
+      case XMLStreamConstants.ENTITY_REFERENCE:
+        writer.writeEntityRef(reader.getLocalName());
+        break;
+      case XMLStreamConstants.DTD:
+        writer.writeDTD(reader.getText());
+        break;
+      case XMLStreamConstants.START_DOCUMENT:
+        eventWriter(outputFactory, writer).add(ALLOCATOR.allocate(reader));
+        break;
+      case XMLStreamConstants.END_DOCUMENT:
+        writer.writeEndDocument();
+        break;
+      default:
+        throw new XMLStreamException("Unexpected event type " + event);
+    }
+  }
+
+  private static XMLEventWriter eventWriter(XMLOutputFactory outputFactory, XMLStreamWriter writer)
+      throws XMLStreamException {
+    if (outputFactory instanceof JsonXMLOutputFactory) {
+      return ((JsonXMLOutputFactory) outputFactory).createXMLEventWriter(writer);
+    }
+    return outputFactory.createXMLEventWriter(new StAXResult(writer));
+  }
+
+  private static void writeStartElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+    // Use the QName so that null prefix/namespace are normalised in the same way as a StartElement event.
+    QName name = reader.getName();
+    writer.writeStartElement(name.getPrefix(), name.getLocalPart(), name.getNamespaceURI());
+    for (int i = 0, count = reader.getNamespaceCount(); i < count; i++) {
+      writer.writeNamespace(StringUtils.defaultString(reader.getNamespacePrefix(i)),
+          StringUtils.defaultString(reader.getNamespaceURI(i)));
+    }
+    for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+      writer.writeAttribute(StringUtils.defaultString(reader.getAttributePrefix(i)),
+          StringUtils.defaultString(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i),
+          reader.getAttributeValue(i));
+    }
+  }
+}
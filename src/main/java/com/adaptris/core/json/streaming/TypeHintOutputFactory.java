@@ -0,0 +1,377 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Result;
+import javax.xml.transform.stream.StreamResult;
+import org.apache.commons.lang3.StringUtils;
+import de.odysseus.staxon.json.JsonXMLOutputFactory;
+import de.odysseus.staxon.json.JsonXMLStreamConstants;
+import de.odysseus.staxon.json.JsonXMLStreamWriter;
+
+/**
+ * {@link XMLOutputFactory} that writes JSON using {@link JsonTypeHints} rather than guessing arrays and primitives.
+ * <p>
+ * Each element is checked against the hints as it is started; arrays are declared with the same
+ * {@code <?xml-multiple?>} processing instruction that {@code multipleProcessingInstruction} uses, so the JSON for each
+ * element is written immediately, and a single element is always an array if the hints say it is. Only the text of
+ * elements that are numbers or booleans is held until the end of the element, so that it can be converted; text that
+ * isn't a valid number or boolean is written as a string.
+ * </p>
+ * <p>
+ * The factory is shared in the same way as any other factory from {@link JsonStreamingFactoryCache}, so it may not be
+ * reconfigured.
+ * </p>
+ */
+final class TypeHintOutputFactory extends XMLOutputFactory {
+
+  private final JsonXMLOutputFactory delegate;
+  private final JsonTypeHints hints;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate the factory, which must have autoArray and autoPrimitive disabled, and multiple processing
+   *        instructions enabled.
+   * @param hints the hints.
+   */
+  TypeHintOutputFactory(JsonXMLOutputFactory delegate, JsonTypeHints hints) {
+    this.delegate = delegate;
+    this.hints = hints;
+  }
+
+  @Override
+  public XMLStreamWriter createXMLStreamWriter(Writer stream) throws XMLStreamException {
+    return new TypeHintStreamWriter(delegate.createXMLStreamWriter(stream), hints);
+  }
+
+  @Override
+  public XMLStreamWriter createXMLStreamWriter(OutputStream stream) throws XMLStreamException {
+    return new TypeHintStreamWriter(delegate.createXMLStreamWriter(stream), hints);
+  }
+
+  @Override
+  public XMLStreamWriter createXMLStreamWriter(OutputStream stream, String encoding) throws XMLStreamException {
+    return new TypeHintStreamWriter(delegate.createXMLStreamWriter(stream, encoding), hints);
+  }
+
+  @Override
+  public XMLStreamWriter createXMLStreamWriter(Result result) throws XMLStreamException {
+    if (result instanceof StreamResult) {
+      StreamResult stream = (StreamResult) result;
+      if (stream.getWriter() != null) {
+        return createXMLStreamWriter(stream.getWriter());
+      }
+      if (stream.getOutputStream() != null) {
+        return createXMLStreamWriter(stream.getOutputStream());
+      }
+    }
+    throw new UnsupportedOperationException("Unsupported result: " + result);
+  }
+
+  @Override
+  public XMLEventWriter createXMLEventWriter(Result result) throws XMLStreamException {
+    return delegate.createXMLEventWriter(createXMLStreamWriter(result));
+  }
+
+  @Override
+  public XMLEventWriter createXMLEventWriter(OutputStream stream) throws XMLStreamException {
+    return delegate.createXMLEventWriter(createXMLStreamWriter(stream));
+  }
+
+  @Override
+  public XMLEventWriter createXMLEventWriter(OutputStream stream, String encoding) throws XMLStreamException {
+    return delegate.createXMLEventWriter(createXMLStreamWriter(stream, encoding));
+  }
+
+  @Override
+  public XMLEventWriter createXMLEventWriter(Writer stream) throws XMLStreamException {
+    return delegate.createXMLEventWriter(createXMLStreamWriter(stream));
+  }
+
+  @Override
+  public void setProperty(String name, Object value) throws IllegalArgumentException {
+    throw new UnsupportedOperationException("Shared factory instances may not be reconfigured");
+  }
+
+  @Override
+  public Object getProperty(String name) throws IllegalArgumentException {
+    return delegate.getProperty(name);
+  }
+
+  @Override
+  public boolean isPropertySupported(String name) {
+    return delegate.isPropertySupported(name);
+  }
+
+  private static class TypeHintStreamWriter implements XMLStreamWriter {
+    private final JsonXMLStreamWriter delegate;
+    private final JsonTypeHints hints;
+    private final Deque<Scope> scopes = new ArrayDeque<>();
+
+    TypeHintStreamWriter(JsonXMLStreamWriter delegate, JsonTypeHints hints) {
+      this.delegate = delegate;
+      this.hints = hints;
+    }
+
+    // Declare the array before the first of the elements in each parent.
+    private Scope start(String prefix, String localName) throws XMLStreamException {
+      Scope parent = scopes.peek();
+      JsonTypeHints.Node node = parent == null ? hints.root(localName)
+          : parent.node != null ? parent.node.child(localName) : null;
+      Scope scope = new Scope(node, hints.types(node, localName));
+      String name = StringUtils.isEmpty(prefix) ? localName : prefix + ":" + localName;
+      if (parent != null) {
+        if ((scope.types & JsonTypeHints.ARRAY) != 0 && !name.equals(parent.lastChild)) {
+          delegate.writeProcessingInstruction(JsonXMLStreamConstants.MULTIPLE_PI_TARGET, name);
+        }
+        parent.lastChild = name;
+      }
+      return scope;
+    }
+
+    private void end(Scope scope) throws XMLStreamException {
+      if (scope.text == null) {
+        return;
+      }
+      String text = scope.text.toString().trim();
+      BigDecimal number = (scope.types & JsonTypeHints.NUMBER) != 0 ? toNumber(text) : null;
+      if (number != null) {
+        delegate.writeNumber(number);
+      } else if ((scope.types & JsonTypeHints.BOOLEAN) != 0
+          && ("true".equalsIgnoreCase(text) || "false".equalsIgnoreCase(text))) {
+        delegate.writeBoolean(Boolean.valueOf(text));
+      } else {
+        delegate.writeCharacters(scope.text.toString());
+      }
+    }
+
+    // Anything that isn't a number is written as it is.
+    private static BigDecimal toNumber(String text) {
+      try {
+        return new BigDecimal(text);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    private boolean typed() {
+      Scope scope = scopes.peek();
+      return scope != null && (scope.types & (JsonTypeHints.NUMBER | JsonTypeHints.BOOLEAN)) != 0;
+    }
+
+    private void text(String text) {
+      Scope scope = scopes.peek();
+      if (scope.text == null) {
+        scope.text = new StringBuilder();
+      }
+      scope.text.append(text);
+    }
+
+    @Override
+    public void writeStartElement(String localName) throws XMLStreamException {
+      Scope scope = start(null, localName);
+      delegate.writeStartElement(localName);
+      scopes.push(scope);
+    }
+
+    @Override
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+      Scope scope = start(delegate.getPrefix(namespaceURI), localName);
+      delegate.writeStartElement(namespaceURI, localName);
+      scopes.push(scope);
+    }
+
+    @Override
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+      Scope scope = start(prefix, localName);
+      delegate.writeStartElement(prefix, localName, namespaceURI);
+      scopes.push(scope);
+    }
+
+    @Override
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+      start(delegate.getPrefix(namespaceURI), localName);
+      delegate.writeEmptyElement(namespaceURI, localName);
+    }
+
+    @Override
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+      start(prefix, localName);
+      delegate.writeEmptyElement(prefix, localName, namespaceURI);
+    }
+
+    @Override
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+      start(null, localName);
+      delegate.writeEmptyElement(localName);
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+      Scope scope = scopes.poll();
+      if (scope != null) {
+        end(scope);
+      }
+      delegate.writeEndElement();
+    }
+
+    @Override
+    public void writeCharacters(String text) throws XMLStreamException {
+      if (typed()) {
+        text(text);
+      } else {
+        delegate.writeCharacters(text);
+      }
+    }
+
+    @Override
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+      if (typed()) {
+        text(new String(text, start, len));
+      } else {
+        delegate.writeCharacters(text, start, len);
+      }
+    }
+
+    @Override
+    public void writeCData(String data) throws XMLStreamException {
+      if (typed()) {
+        text(data);
+      } else {
+        delegate.writeCData(data);
+      }
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+      delegate.writeEndDocument();
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+      delegate.close();
+    }
+
+    @Override
+    public void flush() throws XMLStreamException {
+      delegate.flush();
+    }
+
+    @Override
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+      delegate.writeAttribute(localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+        throws XMLStreamException {
+      delegate.writeAttribute(prefix, namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+      delegate.writeAttribute(namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+      delegate.writeNamespace(prefix, namespaceURI);
+    }
+
+    @Override
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+      delegate.writeDefaultNamespace(namespaceURI);
+    }
+
+    @Override
+    public void writeComment(String data) throws XMLStreamException {
+      delegate.writeComment(data);
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+      delegate.writeProcessingInstruction(target);
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+      delegate.writeProcessingInstruction(target, data);
+    }
+
+    @Override
+    public void writeDTD(String dtd) throws XMLStreamException {
+      delegate.writeDTD(dtd);
+    }
+
+    @Override
+    public void writeEntityRef(String name) throws XMLStreamException {
+      delegate.writeEntityRef(name);
+    }
+
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+      delegate.writeStartDocument();
+    }
+
+    @Override
+    public void writeStartDocument(String version) throws XMLStreamException {
+      delegate.writeStartDocument(version);
+    }
+
+    @Override
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+      delegate.writeStartDocument(encoding, version);
+    }
+
+    @Override
+    public String getPrefix(String uri) throws XMLStreamException {
+      return delegate.getPrefix(uri);
+    }
+
+    @Override
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+      delegate.setPrefix(prefix, uri);
+    }
+
+    @Override
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+      delegate.setDefaultNamespace(uri);
+    }
+
+    @Override
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+      delegate.setNamespaceContext(context);
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+      return delegate.getNamespaceContext();
+    }
+
+    @Override
+    public Object getProperty(String name) throws IllegalArgumentException {
+      return delegate.getProperty(name);
+    }
+  }
+
+  private static class Scope {
+    private final JsonTypeHints.Node node;
+    private final int types;
+    private String lastChild;
+    private StringBuilder text;
+
+    Scope(JsonTypeHints.Node node, int types) {
+      this.node = node;
+      this.types = types;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.adaptris.core.json.streaming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import com.adaptris.core.AdaptrisMessage;
+
+/**
+ * Finds values in the raw bytes of a message so that they can be split without parsing them.
+ */
+interface VerbatimScanner extends Closeable {
+
+  /**
+   * Move to the next value, skipping the current one if it has not been copied.
+   *
+   * @return true if there is a value.
+   */
+  boolean hasNext() throws IOException;
+
+  /**
+   * Copy the current value to the output.
+   */
+  void copyTo(OutputStream out) throws IOException;
+
+  /**
+   * Whether the bytes of the message can be read directly as UTF-8.
+   * <p>
+   * Anything that reads the bytes rather than {@link AdaptrisMessage#getReader()} decodes them as UTF-8, so it should
+   * only do so if that's what the reader would have done anyway.
+   * </p>
+   */
+  static boolean isUtf8(AdaptrisMessage msg) {
+    return msg.getContentEncoding() == null || StandardCharsets.UTF_8.name().equalsIgnoreCase(msg.getContentEncoding());
+  }
+}
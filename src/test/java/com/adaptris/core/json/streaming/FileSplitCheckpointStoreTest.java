@@ -0,0 +1,36 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSplitCheckpointStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testSaveLoadDelete() throws Exception {
+    File dir = new File(folder.getRoot(), "checkpoints");
+    FileSplitCheckpointStore store = new FileSplitCheckpointStore().withDirectory(dir.getCanonicalPath());
+    assertNull(store.load("id"));
+    store.save("message:id/1", new SplitCheckpoint(100, 10, "{\"envelope\":{\"document\":["));
+    store.save("message:id/1", new SplitCheckpoint(200, 20, "{\"envelope\":{\"document\":["));
+    assertEquals(1, dir.list().length);
+    SplitCheckpoint checkpoint = store.load("message:id/1");
+    assertEquals(200, checkpoint.getOffset());
+    assertEquals(20, checkpoint.getIndex());
+    assertEquals("{\"envelope\":{\"document\":[", checkpoint.getStructure());
+    store.delete("message:id/1");
+    assertNull(store.load("message:id/1"));
+    store.delete("message:id/1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoDirectory() throws Exception {
+    new FileSplitCheckpointStore().load("id");
+  }
+}
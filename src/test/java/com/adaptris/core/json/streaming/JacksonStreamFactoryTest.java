@@ -0,0 +1,135 @@
+package com.adaptris.core.json.streaming;
+
+import static com.adaptris.core.json.streaming.StaxCursorCopierTest.JSON_DOCUMENTS;
+import static com.adaptris.core.json.streaming.StaxCursorCopierTest.XML_DOCUMENTS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.transform.json.TransformationDirection;
+import com.adaptris.core.util.CloseableIterable;
+
+public class JacksonStreamFactoryTest {
+
+  private static final List<Supplier<JsonStreamingConfigBuilder>> CONFIGS = Arrays.asList(
+      () -> new JsonStreamingConfigBuilder(),
+      () -> new JsonStreamingConfigBuilder().withAutoArray(true).withAutoPrimitive(true),
+      () -> new JsonStreamingConfigBuilder().withPrettyPrint(true),
+      () -> new JsonStreamingConfigBuilder().withPrettyPrint(true).withAutoArray(true).withAutoPrimitive(true),
+      () -> new JsonStreamingConfigBuilder().withMultipleProcessingInstruction(false).withNamespaceDeclarations(false));
+
+  private static final String SPLIT_PAYLOAD = "{\"envelope\":{\"document\":[{\"nested\":0,\"array\":[5,6,7],"
+      + "\"object\":{\"something\":true}},{\"nested\":1,\"value\":\"Another \\\"quoted\\\"\"},{\"nested\":2.5e3}]}}";
+
+  @Test
+  public void testEngine() {
+    assertEquals(JsonStreamingEngine.STAXON, new JsonStreamingConfigBuilder().engine());
+    JsonStreamingConfigBuilder builder = new JsonStreamingConfigBuilder().withEngine(JsonStreamingEngine.JACKSON);
+    assertEquals(JsonStreamingEngine.JACKSON, builder.engine());
+    assertNotSame(JsonStreamingFactoryCache.inputFactory(builder),
+        JsonStreamingFactoryCache.inputFactory(new JsonStreamingConfigBuilder()));
+    assertSame(JsonStreamingFactoryCache.inputFactory(builder),
+        JsonStreamingFactoryCache.inputFactory(new JsonStreamingConfigBuilder().withEngine(JsonStreamingEngine.JACKSON)));
+  }
+
+  @Test
+  public void testXmlToJson_SameOutput() throws Exception {
+    for (Supplier<JsonStreamingConfigBuilder> config : CONFIGS) {
+      for (String xml : XML_DOCUMENTS) {
+        assertSameOutput(config, xml, TransformationDirection.XML_TO_JSON);
+      }
+    }
+  }
+
+  @Test
+  public void testJsonToXml_SameOutput() throws Exception {
+    for (Supplier<JsonStreamingConfigBuilder> config : CONFIGS) {
+      for (String json : JSON_DOCUMENTS) {
+        assertSameOutput(config, json, TransformationDirection.JSON_TO_XML);
+      }
+    }
+  }
+
+  @Test
+  public void testVirtualRoot_SameOutput() throws Exception {
+    Supplier<JsonStreamingConfigBuilder> config = () -> new JsonStreamingConfigBuilder().withVirtualRoot("root");
+    assertSameOutput(config, "{\"a\":1,\"b\":{\"c\":[1,2,3]}}", TransformationDirection.JSON_TO_XML);
+    assertSameOutput(config, "<root><a>1</a><b><c>1</c><c>2</c></b></root>", TransformationDirection.XML_TO_JSON);
+    Supplier<JsonStreamingConfigBuilder> pretty = () -> config.get().withPrettyPrint(true);
+    assertSameOutput(pretty, "<root><a>1</a><b><c>1</c><c>2</c></b><d/></root>", TransformationDirection.XML_TO_JSON);
+  }
+
+  @Test
+  public void testSplitter_SameOutput() throws Exception {
+    for (Supplier<JsonStreamingConfigBuilder> config : CONFIGS) {
+      for (boolean wrap : new boolean[] {true, false}) {
+        List<AdaptrisMessage> staxon = split(config.get(), wrap);
+        List<AdaptrisMessage> jackson = split(config.get().withEngine(JsonStreamingEngine.JACKSON), wrap);
+        assertEquals(3, jackson.size());
+        assertEquals(staxon.size(), jackson.size());
+        for (int i = 0; i < staxon.size(); i++) {
+          assertArrayEquals(staxon.get(i).getPayload(), jackson.get(i).getPayload());
+        }
+      }
+    }
+  }
+
+  @Test(expected = ServiceException.class)
+  public void testJsonToXml_NestedArray() throws Exception {
+    transform(JsonStreamingEngine.JACKSON, "{\"a\":[[1,2],[3,4]]}", TransformationDirection.JSON_TO_XML);
+  }
+
+  @Test
+  public void testJsonToXml_MultipleRoots() throws Exception {
+    // Anything after the first root is ignored, which is what StAXON does.
+    assertSameOutput(() -> new JsonStreamingConfigBuilder(), "{\"a\":1} {\"b\":2}",
+        TransformationDirection.JSON_TO_XML);
+  }
+
+  @Test(expected = ServiceException.class)
+  public void testJsonToXml_Invalid() throws Exception {
+    transform(JsonStreamingEngine.JACKSON, "{\"a\": ", TransformationDirection.JSON_TO_XML);
+  }
+
+  private static void transform(JsonStreamingEngine engine, String input, TransformationDirection dir) throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(input, "UTF-8");
+    new AdvancedStreamingTransformationDriver().withConfig(new JsonStreamingConfigBuilder().withEngine(engine))
+        .transform(msg, dir);
+  }
+
+  private static List<AdaptrisMessage> split(JsonStreamingConfigBuilder config, boolean wrap) throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setJsonStreamingConfig(config);
+    splitter.setWrapWithArray(wrap);
+    List<AdaptrisMessage> result = new ArrayList<>();
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(SPLIT_PAYLOAD);
+    try (CloseableIterable<AdaptrisMessage> messages = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+      for (AdaptrisMessage m : messages) {
+        result.add(m);
+      }
+    }
+    return result;
+  }
+
+  private static void assertSameOutput(Supplier<JsonStreamingConfigBuilder> config, String input,
+      TransformationDirection dir) throws Exception {
+    AdaptrisMessage staxon = AdaptrisMessageFactory.getDefaultInstance().newMessage(input, "UTF-8");
+    AdaptrisMessage jackson = AdaptrisMessageFactory.getDefaultInstance().newMessage(input, "UTF-8");
+    AdaptrisMessage cursor = AdaptrisMessageFactory.getDefaultInstance().newMessage(input, "UTF-8");
+    new AdvancedStreamingTransformationDriver().withConfig(config.get()).transform(staxon, dir);
+    new AdvancedStreamingTransformationDriver().withConfig(config.get().withEngine(JsonStreamingEngine.JACKSON))
+        .transform(jackson, dir);
+    new AdvancedStreamingTransformationDriver().withConfig(config.get().withEngine(JsonStreamingEngine.JACKSON))
+        .withCursorTranscoding(true).transform(cursor, dir);
+    assertArrayEquals(input, staxon.getPayload(), jackson.getPayload());
+    assertArrayEquals(input, staxon.getPayload(), cursor.getPayload());
+  }
+}
@@ -0,0 +1,121 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamTarget;
+
+public class JsonCompressionTest {
+
+  private static final String JSON = "{\"a\":[1,\"é\"]}";
+
+  @Test
+  public void testGzip() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = JsonCompression.GZIP.compress(bytes)) {
+      out.write(JSON.getBytes(StandardCharsets.UTF_8));
+    }
+    assertEquals(JSON, gunzip(bytes.toByteArray()));
+    assertEquals(JSON, read(JsonCompression.GZIP.decompress(new ByteArrayInputStream(bytes.toByteArray()))));
+    try {
+      read(JsonCompression.GZIP.decompress(new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8))));
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test
+  public void testNone() throws Exception {
+    InputStream in = new ByteArrayInputStream(new byte[0]);
+    assertSame(in, JsonCompression.NONE.decompress(in));
+    OutputStream out = new ByteArrayOutputStream();
+    assertSame(out, JsonCompression.NONE.compress(out));
+    assertSame(out, JsonCompression.DETECT.compress(out));
+  }
+
+  @Test
+  public void testDetect() throws Exception {
+    assertEquals(JSON, read(JsonCompression.DETECT.decompress(new ByteArrayInputStream(gzip(JSON)))));
+    assertEquals(JSON, read(JsonCompression.DETECT.decompress(
+        new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8)))));
+    assertEquals("1", read(JsonCompression.DETECT.decompress(new ByteArrayInputStream(new byte[] {'1'}))));
+    assertEquals("", read(JsonCompression.DETECT.decompress(new ByteArrayInputStream(new byte[0]))));
+    try {
+      JsonCompression.DETECT.decompress(new ByteArrayInputStream(new byte[] {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd, 0}));
+      fail();
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage().contains("zstd"));
+    }
+  }
+
+  @Test
+  public void testReader() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(gzip(JSON));
+    msg.setContentEncoding(StandardCharsets.UTF_8.name());
+    assertEquals(JSON, IOUtils.toString(JsonCompression.DETECT.reader(msg)));
+    msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON, StandardCharsets.UTF_8.name());
+    assertEquals(JSON, IOUtils.toString(JsonCompression.NONE.reader(msg)));
+  }
+
+  @Test
+  public void testWrap() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamFactory factory = engine.streamFactory();
+      assertSame(factory, JsonCompression.wrap(factory, JsonCompression.NONE, JsonCompression.DETECT));
+      JsonStreamFactory wrapped = JsonCompression.wrap(factory, JsonCompression.GZIP, JsonCompression.GZIP);
+      try (JsonStreamSource source = wrapped.createJsonStreamSource(new ByteArrayInputStream(gzip(JSON)))) {
+        source.startObject();
+        assertEquals("a", source.name());
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (JsonStreamTarget target = wrapped.createJsonStreamTarget(bytes, false)) {
+        target.startObject();
+        target.name("a");
+        target.value(1);
+        target.endObject();
+      }
+      assertEquals("{\"a\":1}", gunzip(bytes.toByteArray()));
+      // JSON written as characters can't be compressed.
+      StringWriter writer = new StringWriter();
+      try (JsonStreamTarget target = wrapped.createJsonStreamTarget(writer, false)) {
+        target.startArray();
+        target.endArray();
+      }
+      assertEquals("[]", writer.toString());
+    }
+  }
+
+  static byte[] gzip(String s) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  static String gunzip(byte[] bytes) throws IOException {
+    return read(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  private static String read(InputStream in) throws IOException {
+    try (InputStream input = in) {
+      return IOUtils.toString(input, StandardCharsets.UTF_8);
+    }
+  }
+}
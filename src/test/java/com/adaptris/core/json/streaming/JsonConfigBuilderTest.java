@@ -33,6 +33,27 @@ public class JsonConfigBuilderTest {
     assertNotNull(builder.build());
   }
 
+  @Test
+  public void testLimits() {
+    JsonStreamingConfigBuilder builder = new JsonStreamingConfigBuilder();
+    assertEquals(0, builder.maxTokenLength());
+    assertEquals(0, builder.maxNestingDepth());
+    assertEquals(0, builder.maxDocumentSize());
+    assertEquals(0, builder.maxSplitElementSize());
+    assertNull(builder.inputLimits());
+    Object key = builder.cacheKey();
+    assertEquals(10, builder.withMaxTokenLength(10).maxTokenLength());
+    assertEquals(0, builder.withMaxNestingDepth(-1).maxNestingDepth());
+    assertEquals(100L, builder.withMaxDocumentSize(100L).maxDocumentSize());
+    assertEquals(50L, builder.withMaxSplitElementSize(50L).maxSplitElementSize());
+    assertNotNull(builder.inputLimits());
+    assertFalse(key.equals(builder.cacheKey()));
+    JsonStreamingConfigBuilder input = builder.inputConfig();
+    assertEquals(10, input.maxTokenLength());
+    assertEquals(100L, input.maxDocumentSize());
+    assertEquals(0, input.maxSplitElementSize());
+  }
+
   @Test
   public void testAutoArray() {
     JsonStreamingConfigBuilder builder = new JsonStreamingConfigBuilder();
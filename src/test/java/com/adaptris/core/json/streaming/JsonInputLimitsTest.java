@@ -0,0 +1,109 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.transform.json.TransformationDirection;
+
+public class JsonInputLimitsTest {
+
+  private static final String JSON = "{\"a\": \"12345\", \"b\": [1234, {\"c\": \"x\\\"y\\\\\"}], \"d\": true}";
+
+  @Test
+  public void testWithinLimits() throws Exception {
+    assertEquals(JSON, read(new JsonInputLimits(6, 3, JSON.length()), JSON));
+    assertEquals(JSON, readBytes(new JsonInputLimits(6, 3, JSON.length()), JSON));
+  }
+
+  @Test
+  public void testTokenLength() throws Exception {
+    assertLimited(new JsonInputLimits(4, 0, 0), JSON, "maximum length");
+    assertLimited(new JsonInputLimits(4, 0, 0), "{\"a\": 123456}", "maximum length");
+    // The escaped quote doesn't end the string
+    assertLimited(new JsonInputLimits(4, 0, 0), "{\"a\": \"\\\"12345\"}", "maximum length");
+    // Only the one token
+    assertEquals("{\"a\": \"1234\", \"b\": \"5678\"}", read(new JsonInputLimits(4, 0, 0),
+        "{\"a\": \"1234\", \"b\": \"5678\"}"));
+  }
+
+  @Test
+  public void testNestingDepth() throws Exception {
+    assertLimited(new JsonInputLimits(0, 2, 0), JSON, "nesting depth");
+    // brackets within a string don't count.
+    assertEquals("{\"a\": \"[[[[\"}", read(new JsonInputLimits(0, 1, 0), "{\"a\": \"[[[[\"}"));
+  }
+
+  @Test
+  public void testDocumentSize() throws Exception {
+    assertLimited(new JsonInputLimits(0, 0, JSON.length() - 1), JSON, "maximum size");
+  }
+
+  @Test
+  public void testSkip() throws Exception {
+    try (Reader reader = new JsonInputLimits(0, 0, 10).wrap(new StringReader(JSON))) {
+      assertEquals(10, reader.skip(10));
+      try {
+        reader.read();
+        fail();
+      } catch (IOException expected) {
+      }
+    }
+  }
+
+  @Test
+  public void testConfigBuilder() throws Exception {
+    String deep = "{\"a\":{\"b\":{\"c\":{\"d\":1}}}}";
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      AdvancedStreamingTransformationDriver driver = new AdvancedStreamingTransformationDriver().withConfig(
+          new JsonStreamingConfigBuilder().withEngine(engine).withMaxNestingDepth(3));
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(deep);
+      try {
+        driver.transform(msg, TransformationDirection.JSON_TO_XML);
+        fail();
+      } catch (ServiceException expected) {
+      }
+      driver.getConfig().withMaxNestingDepth(4);
+      msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(deep);
+      driver.transform(msg, TransformationDirection.JSON_TO_XML);
+      assertTrue(msg.getContent().contains("<d>1</d>"));
+    }
+  }
+
+  private static void assertLimited(JsonInputLimits limits, String json, String message) throws Exception {
+    try {
+      read(limits, json);
+      fail();
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage().contains(message));
+    }
+    try {
+      readBytes(limits, json);
+      fail();
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage().contains(message));
+    }
+  }
+
+  private static String read(JsonInputLimits limits, String json) throws IOException {
+    try (Reader reader = limits.wrap(new StringReader(json))) {
+      return IOUtils.toString(reader);
+    }
+  }
+
+  private static String readBytes(JsonInputLimits limits, String json) throws IOException {
+    try (InputStream in = limits.wrap(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class JsonLinesScannerTest {
+
+  @Test
+  public void testLines() throws Exception {
+    String lines = "{\"a\":1}\n\n  [1, 2]  \r\n\"x\\ny\"\r\n\t\ntrue";
+    List<String> expected = Arrays.asList("{\"a\":1}", "[1, 2]", "\"x\\ny\"", "true");
+    for (int size : new int[] {1, 2, 3, 8192}) {
+      assertEquals(expected, values(lines, size));
+    }
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    assertEquals(Collections.emptyList(), values("", 8192));
+    assertEquals(Collections.emptyList(), values("\r\n \n", 8192));
+  }
+
+  @Test
+  public void testSkipsUncopiedValues() throws Exception {
+    try (JsonLinesScanner scanner = scanner("1\n2", 8192)) {
+      assertTrue(scanner.hasNext());
+      assertTrue(scanner.hasNext());
+      assertEquals("1", copy(scanner));
+      assertTrue(scanner.hasNext());
+      assertEquals("2", copy(scanner));
+      assertFalse(scanner.hasNext());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCopy_NoValue() throws Exception {
+    try (JsonLinesScanner scanner = scanner("", 8192)) {
+      assertFalse(scanner.hasNext());
+      copy(scanner);
+    }
+  }
+
+  private static List<String> values(String lines, int bufferSize) throws IOException {
+    List<String> result = new ArrayList<>();
+    try (JsonLinesScanner scanner = scanner(lines, bufferSize)) {
+      while (scanner.hasNext()) {
+        result.add(copy(scanner));
+      }
+    }
+    return result;
+  }
+
+  private static JsonLinesScanner scanner(String lines, int bufferSize) {
+    return new JsonLinesScanner(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)), bufferSize);
+  }
+
+  private static String copy(JsonLinesScanner scanner) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    scanner.copyTo(out);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
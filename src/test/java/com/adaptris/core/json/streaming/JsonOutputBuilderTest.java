@@ -2,12 +2,30 @@ package com.adaptris.core.json.streaming;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.skyscreamer.jsonassert.JSONAssert;
+import org.skyscreamer.jsonassert.JSONCompareMode;
 
 public class JsonOutputBuilderTest {
 
+  private static final String HINTS = "# orders\n" + "array /orders/order\n" + "number /orders/order/quantity\n"
+      + "boolean /orders/order/paid\n\n" + "array //line\n" + "number //price\n" + "array //price\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Before
   public void setUp() throws Exception {
   }
@@ -22,4 +40,42 @@ public class JsonOutputBuilderTest {
     assertNotNull(builder.build());
   }
 
+  @Test
+  public void testTypeHints() throws Exception {
+    File hints = folder.newFile("hints.txt");
+    Files.write(hints.toPath(), HINTS.getBytes(StandardCharsets.UTF_8));
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      // autoArray and autoPrimitive are ignored.
+      JsonStreamingOutputFactory builder = new JsonStreamingOutputFactory().withConfig(new JsonStreamingConfigBuilder()
+          .withTypeHints(hints.getCanonicalPath()).withAutoArray(true).withAutoPrimitive(true).withEngine(engine));
+      String xml = "<orders><order><quantity>2</quantity><paid>true</paid><code>007</code>"
+          + "<line><price>1.5</price></line><line><price>x</price><price>3</price></line></order></orders>";
+      assertEquals("{\"orders\":{\"order\":[{\"quantity\":2,\"paid\":true,\"code\":\"007\","
+          + "\"line\":[{\"price\":[1.5]},{\"price\":[\"x\",3]}]}]}}", toJson(builder.build(), xml));
+      // a number or boolean that isn't valid is left as it is.
+      xml = "<orders><order><quantity>lots</quantity><paid>yes</paid></order><order><paid>FALSE</paid></order></orders>";
+      JSONAssert.assertEquals("{\"orders\":{\"order\":[{\"quantity\":\"lots\",\"paid\":\"yes\"},{\"paid\":false}]}}",
+          toJson(builder.build(), xml), JSONCompareMode.STRICT);
+    }
+  }
+
+  @Test
+  public void testTypeHints_Missing() throws Exception {
+    JsonStreamingOutputFactory builder = new JsonStreamingOutputFactory().withConfig(new JsonStreamingConfigBuilder()
+        .withTypeHints(new File(folder.getRoot(), "missing.txt").getCanonicalPath()));
+    try {
+      builder.build();
+      fail();
+    } catch (RuntimeException expected) {
+      assertTrue(expected.getMessage().startsWith("Failed to load type hints"));
+    }
+  }
+
+  private static String toJson(XMLOutputFactory factory, String xml) throws Exception {
+    StringWriter out = new StringWriter();
+    XMLEventWriter writer = factory.createXMLEventWriter(out);
+    writer.add(XMLInputFactory.newInstance().createXMLEventReader(new StringReader(xml)));
+    writer.close();
+    return out.toString();
+  }
 }
@@ -0,0 +1,65 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class JsonPathExpressionTest {
+
+  @Test
+  public void testIsExpression() {
+    assertFalse(JsonPathExpression.isExpression("/envelope/document"));
+    assertTrue(JsonPathExpression.isExpression("/envelope/*"));
+    assertTrue(JsonPathExpression.isExpression("//document"));
+    assertTrue(JsonPathExpression.isExpression("/envelope/document[type='x']"));
+  }
+
+  @Test
+  public void testCompile() {
+    JsonPathExpression expr = JsonPathExpression.compile("/data/*//record[type='a b'][ id = \"x/y\" ]");
+    assertEquals("/data/*//record[type='a b'][ id = \"x/y\" ]", expr.toString());
+    assertEquals(3, expr.length());
+    assertFalse(expr.step(0).descendant());
+    assertTrue(expr.step(0).matches("data"));
+    assertTrue(expr.step(0).matches("ns:data"));
+    assertFalse(expr.step(0).matches("metadata"));
+    assertTrue(expr.step(1).matches("anything"));
+    assertTrue(expr.step(2).descendant());
+    Map<String, String> expected = new LinkedHashMap<>();
+    expected.put("type", "a b");
+    expected.put("id", "x/y");
+    assertEquals(expected, expr.step(2).predicates());
+    assertEquals(Collections.emptyMap(), expr.step(1).predicates());
+  }
+
+  @Test
+  public void testCompile_Cached() {
+    JsonPathExpression.clear();
+    JsonPathExpression expr = JsonPathExpression.compile("//document");
+    assertSame(expr, JsonPathExpression.compile("//document"));
+    assertEquals(1, JsonPathExpression.size());
+    JsonPathExpression.clear();
+    assertNotSame(expr, JsonPathExpression.compile("//document"));
+  }
+
+  @Test
+  public void testCompile_Invalid() {
+    for (String path : Arrays.asList("document", "/a//", "/a/[x='y']", "/a[x]", "/a[x='y'", "/a[x='y]", "/a[='y']",
+        "/a[x=y]", "/a[x='y']z")) {
+      try {
+        JsonPathExpression.compile(path);
+        fail(path + " should be invalid");
+      } catch (IllegalArgumentException expected) {
+        assertTrue(expected.getMessage().contains(path));
+      }
+    }
+  }
+}
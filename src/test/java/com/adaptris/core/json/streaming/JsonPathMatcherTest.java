@@ -0,0 +1,165 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+
+public class JsonPathMatcherTest {
+
+  private static final String JSON = "{\"data\":{\"a\":{\"items\":[1,2]},\"b\":{\"items\":{\"x\":3}},"
+      + "\"c\":{\"nested\":{\"items\":4}}},\"items\":5}";
+
+  @Test
+  public void testWildcard() throws Exception {
+    assertEquals(Arrays.asList("{\"items\":1}", "{\"items\":2}", "{\"items\":{\"x\":3}}"),
+        matches(JSON, "/data/*/items"));
+    assertEquals(Arrays.asList("{\"a\":{\"items\":[1,2]}}", "{\"b\":{\"items\":{\"x\":3}}}",
+        "{\"c\":{\"nested\":{\"items\":4}}}"), matches(JSON, "/data/*"));
+  }
+
+  @Test
+  public void testDescendant() throws Exception {
+    assertEquals(Arrays.asList("{\"items\":1}", "{\"items\":2}", "{\"items\":{\"x\":3}}", "{\"items\":4}",
+        "{\"items\":5}"), matches(JSON, "//items"));
+    assertEquals(Arrays.asList("{\"items\":4}"), matches(JSON, "/data//nested/items"));
+    assertEquals(Arrays.asList("{\"x\":3}"), matches(JSON, "//items/x"));
+  }
+
+  @Test
+  public void testDescendant_Nested() throws Exception {
+    // The outer match is returned; the inner match is part of it.
+    String json = "{\"r\":{\"id\":1,\"r\":{\"id\":2}},\"other\":{\"r\":3}}";
+    assertEquals(Arrays.asList("{\"r\":{\"id\":1,\"r\":{\"id\":2}}}", "{\"r\":3}"), matches(json, "//r"));
+  }
+
+  @Test
+  public void testPredicates() throws Exception {
+    String json = "{\"orders\":[{\"status\":\"open\",\"id\":1,\"lines\":[{\"sku\":\"a\"}]},"
+        + "{\"status\":\"closed\",\"id\":2,\"lines\":[{\"sku\":\"b\"}]},"
+        + "{\"id\":3,\"lines\":[{\"sku\":\"c\"}],\"status\":\"open\"},"
+        + "{\"id\":4,\"status\":\"open\"}]}";
+    assertEquals(Arrays.asList("{\"orders\":{\"status\":\"open\",\"id\":1,\"lines\":[{\"sku\":\"a\"}]}}",
+        "{\"orders\":{\"id\":4,\"status\":\"open\"}}"), matches(json, "/orders[status='open']"));
+    assertEquals(Arrays.asList("{\"lines\":{\"sku\":\"a\"}}"), matches(json, "/orders[status='open']/lines"));
+    assertEquals(Arrays.asList("{\"id\":4}"), matches(json, "//orders[status='open'][id='4']/id"));
+    assertEquals(Collections.emptyList(), matches(json, "/orders[status='pending']"));
+  }
+
+  @Test
+  public void testMultipleExpressions() throws Exception {
+    List<String> result = new ArrayList<>();
+    try (JsonPathMatcher matcher = new JsonPathMatcher(source(JSON), Arrays.asList(
+        JsonPathExpression.compile("/data/a/items"), JsonPathExpression.compile("/items")))) {
+      while (matcher.next()) {
+        result.add(matcher.expression() + ":" + matcher.name());
+      }
+    }
+    assertEquals(Arrays.asList("0:items", "0:items", "1:items"), result);
+  }
+
+  @Test
+  public void testStopsAtEndOfRoot() throws Exception {
+    assertEquals(Arrays.asList("{\"a\":1}"), matches("{\"a\":1} [[[ not json", "//a"));
+  }
+
+  @Test
+  public void testSkipsUnreadMatch() throws Exception {
+    try (JsonPathMatcher matcher = new JsonPathMatcher(source(JSON),
+        Arrays.asList(JsonPathExpression.compile("//items")))) {
+      assertTrue(matcher.next());
+      assertTrue(matcher.next());
+      assertTrue(matcher.next());
+      assertEquals("{\"items\":{\"x\":3}}", toJson(matcher.match()));
+      assertTrue(matcher.next());
+      assertTrue(matcher.next());
+      assertFalse(matcher.next());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testNestedArrays() throws Exception {
+    matches("{\"a\":[[1,2]]}", "//a");
+  }
+
+  private static List<String> matches(String json, String path) throws IOException {
+    List<String> result = new ArrayList<>();
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      List<String> values = new ArrayList<>();
+      try (JsonPathMatcher matcher = new JsonPathMatcher(source(engine, json),
+          Arrays.asList(JsonPathExpression.compile(path)))) {
+        while (matcher.next()) {
+          values.add(toJson(matcher.match()));
+        }
+      }
+      if (engine.ordinal() > 0) {
+        assertEquals(engine.name(), result, values);
+      }
+      result = values;
+    }
+    return result;
+  }
+
+  private static JsonStreamSource source(String json) throws IOException {
+    return source(JsonStreamingEngine.JACKSON, json);
+  }
+
+  private static JsonStreamSource source(JsonStreamingEngine engine, String json) throws IOException {
+    return engine.streamFactory().createJsonStreamSource(new StringReader(json));
+  }
+
+  private static String toJson(JsonStreamSource source) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    boolean comma = false;
+    for (int depth = 0;;) {
+      switch (source.peek()) {
+        case START_OBJECT:
+          sb.append(comma ? "," : "").append('{');
+          source.startObject();
+          depth++;
+          comma = false;
+          break;
+        case START_ARRAY:
+          sb.append(comma ? "," : "").append('[');
+          source.startArray();
+          depth++;
+          comma = false;
+          break;
+        case END_OBJECT:
+          sb.append('}');
+          source.endObject();
+          depth--;
+          comma = true;
+          break;
+        case END_ARRAY:
+          sb.append(']');
+          source.endArray();
+          depth--;
+          comma = true;
+          break;
+        case NAME:
+          sb.append(comma ? "," : "").append('"').append(source.name()).append("\":");
+          comma = false;
+          break;
+        case VALUE:
+          JsonStreamSource.Value value = source.value();
+          sb.append(comma ? "," : "");
+          sb.append(value.data instanceof String ? "\"" + value.text + "\"" : value.text);
+          comma = true;
+          break;
+        default:
+          return sb.toString();
+      }
+      if (depth == 0) {
+        return sb.toString();
+      }
+    }
+  }
+}
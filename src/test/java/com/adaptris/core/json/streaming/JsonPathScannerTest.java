@@ -0,0 +1,159 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class JsonPathScannerTest {
+
+  @Test
+  public void testIntermediateArrays() throws Exception {
+    String json = "{\"root\":{\"a\":[{\"b\":1},{\"c\":2},{\"b\":[3,{\"x\":\"y\"}]},\"ignored\"]}}";
+    assertEquals(Arrays.asList("1", "3", "{\"x\":\"y\"}"), values(json, "/root/a/b"));
+  }
+
+  @Test
+  public void testKeys() throws Exception {
+    String json = "{\"ns:root\":{\"\\u0061\":true, \"a\\\"b\":false}}";
+    try (JsonPathScanner scanner = scanner(json, "/root/a")) {
+      assertTrue(scanner.hasNext());
+      assertEquals("a", scanner.name());
+      assertEquals("true", copy(scanner));
+      assertFalse(scanner.hasNext());
+    }
+  }
+
+  @Test
+  public void testKeys_SurrogatePair() throws Exception {
+    String json = "{\"root\":{\"\\ud83d\\ude00\\u00e9\":1, \"\\ud83d\\ude00\\\"\":2}}";
+    assertEquals(Arrays.asList("1"), values(json, "/root/\ud83d\ude00\u00e9"));
+    assertEquals(Arrays.asList("2"), values(json, "/root/\ud83d\ude00\""));
+  }
+
+  @Test
+  public void testSkipsUncopiedValues() throws Exception {
+    try (JsonPathScanner scanner = scanner("{\"root\":[1,2,3]}", "/root")) {
+      assertTrue(scanner.hasNext());
+      assertTrue(scanner.hasNext());
+      assertEquals("1", copy(scanner));
+      assertTrue(scanner.hasNext());
+      assertEquals("2", copy(scanner));
+    }
+  }
+
+  @Test
+  public void testNotAnObject() throws Exception {
+    assertEquals(Collections.emptyList(), values("[1,2,3]", "/root"));
+    assertEquals(Collections.emptyList(), values("", "/root"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCopy_NoValue() throws Exception {
+    try (JsonPathScanner scanner = scanner("{\"root\":[]}", "/root")) {
+      assertFalse(scanner.hasNext());
+      copy(scanner);
+    }
+  }
+
+  @Test
+  public void testStopAfterMatch() throws Exception {
+    String json = "{\"root\":{\"a\":[1,2],\"b\":3,\"a\":[4]}} trailing garbage";
+    try (JsonPathScanner scanner = new JsonPathScanner(stream(json), "/root/a", 4, true)) {
+      assertTrue(scanner.hasNext());
+      assertEquals("1", copy(scanner));
+      assertTrue(scanner.hasNext());
+      assertEquals("2", copy(scanner));
+      assertFalse(scanner.hasNext());
+    }
+    try (JsonPathScanner scanner = new JsonPathScanner(stream(json), "/root/b", 4, true)) {
+      assertTrue(scanner.hasNext());
+      assertEquals("3", copy(scanner));
+      assertFalse(scanner.hasNext());
+    }
+  }
+
+  @Test
+  public void testStopAfterMatch_IntermediateArrays() throws Exception {
+    String json = "{\"root\":{\"a\":[{\"b\":1},{\"c\":2},{\"b\":[3,{\"x\":\"y\"}]},\"ignored\"]}}";
+    List<String> result = new ArrayList<>();
+    try (JsonPathScanner scanner = new JsonPathScanner(stream(json), "/root/a/b", 4, true)) {
+      while (scanner.hasNext()) {
+        result.add(copy(scanner));
+      }
+    }
+    assertEquals(Arrays.asList("1", "3", "{\"x\":\"y\"}"), result);
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalid() throws Exception {
+    values("{\"root\" 1}", "/root");
+  }
+
+  @Test
+  public void testConcatenatedValues() throws Exception {
+    String json = "{\"a\":\"}{\"}[1,{\"b\":[]}] \"x\"12\ntrue{}";
+    assertEquals(Arrays.asList("{\"a\":\"}{\"}", "[1,{\"b\":[]}]", "\"x\"", "12", "true", "{}"), values(json, null));
+    assertEquals(Collections.emptyList(), values(" \n", null));
+    try (JsonPathScanner scanner = JsonPathScanner.values(stream("1 2"), 4)) {
+      assertTrue(scanner.hasNext());
+      assertEquals(null, scanner.name());
+      assertEquals("1", copy(scanner));
+    }
+  }
+
+  @Test
+  public void testStructuralIndex() throws Exception {
+    String json = "{\"skip\":{\"a\":[{\"b\":\"}\"}],\"root\":1},\"root\":{\"a\":[{\"b\":[1,2]},{\"b\":{\"c\":\"]\"}}]}}";
+    JsonStructuralIndex index = JsonStructuralIndex.build(stream(json), 8192);
+    for (int size : new int[] {1, 3, 4, 64}) {
+      for (String path : new String[] {"/root/a", "/root/a/b", "/skip"}) {
+        assertEquals(values(json, path), values(new JsonPathScanner(stream(json), path, size).withIndex(index)));
+      }
+    }
+    assertEquals(values(json + "[]", null), values(JsonPathScanner.values(stream(json + "[]"), 4)
+        .withIndex(JsonStructuralIndex.build(stream(json + "[]"), 8192))));
+  }
+
+  @Test(expected = IOException.class)
+  public void testStructuralIndex_Mismatch() throws Exception {
+    JsonStructuralIndex index = JsonStructuralIndex.build(stream("{\"a\":{\"b\":1},\"root\":[1]}"), 8192);
+    values(new JsonPathScanner(stream("{\"a\":{\"b\":10},\"root\":[1]}"), "/root", 4).withIndex(index));
+  }
+
+  private static List<String> values(String json, String path) throws IOException {
+    return values(scanner(json, path));
+  }
+
+  private static List<String> values(JsonPathScanner scanner) throws IOException {
+    List<String> result = new ArrayList<>();
+    try (JsonPathScanner s = scanner) {
+      while (s.hasNext()) {
+        result.add(copy(s));
+      }
+    }
+    return result;
+  }
+
+  private static String copy(JsonPathScanner scanner) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    scanner.copyTo(out);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static JsonPathScanner scanner(String json, String path) {
+    return new JsonPathScanner(stream(json), path, 4);
+  }
+
+  private static ByteArrayInputStream stream(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,201 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+
+public class JsonSchemaTest {
+
+  private static final String SCHEMA = "{\"$schema\": \"http://json-schema.org/draft-07/schema#\","
+      + "\"title\": \"order\", \"type\": \"object\", \"required\": [\"id\", \"lines\"], \"properties\": {"
+      + "\"id\": {\"type\": \"string\", \"pattern\": \"^[A-Z]{2}[0-9]+$\", \"minLength\": 4, \"maxLength\": 8},"
+      + "\"status\": {\"enum\": [\"open\", \"closed\", null, 1]},"
+      + "\"lines\": {\"type\": \"array\", \"minItems\": 1, \"maxItems\": 2, \"items\": {\"type\": \"object\","
+      + "  \"required\": [\"qty\"], \"additionalProperties\": false, \"properties\": {"
+      + "    \"qty\": {\"type\": \"integer\", \"minimum\": 1, \"exclusiveMaximum\": 100},"
+      + "    \"price\": {\"type\": [\"number\", \"null\"], \"exclusiveMinimum\": 0}}}}}}";
+
+  @Test
+  public void testValid() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      assertEquals(0, validate(engine, "{\"id\": \"AB12\", \"status\": null, \"lines\": [{\"qty\": 1.0, "
+          + "\"price\": 9.99}, {\"qty\": 99, \"price\": null}], \"other\": {\"x\": [true]}}").size());
+      assertEquals(0, validate(engine, "{\"id\": \"AB12\", \"status\": 1.0, \"lines\": [{\"qty\": 1}]}").size());
+    }
+  }
+
+  @Test
+  public void testViolations() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      assertViolation(engine, "{\"id\": 12, \"lines\": [{\"qty\": 1}]}", "/id: 12 is not a string");
+      assertViolation(engine, "{\"id\": \"ab12\", \"lines\": [{\"qty\": 1}]}", "/id: does not match the pattern");
+      assertViolation(engine, "{\"id\": \"AB123456789\", \"lines\": [{\"qty\": 1}]}", "/id: is longer than 8");
+      assertViolation(engine, "{\"id\": \"AB1\", \"lines\": [{\"qty\": 1}]}", "/id: is shorter than 4");
+      assertViolation(engine, "{\"id\": \"AB12\", \"status\": \"lost\", \"lines\": [{\"qty\": 1}]}",
+          "/status: \"lost\" is not one of the allowed values");
+      assertViolation(engine, "{\"id\": \"AB12\", \"status\": {}, \"lines\": [{\"qty\": 1}]}",
+          "/status: an object is not one of the allowed values");
+      assertViolation(engine, "{\"id\": \"AB12\"}", "/: is missing the required property lines");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": []}", "/lines: has fewer than 1 items");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": [{\"qty\": 1}, {\"qty\": 2}, {\"qty\": 3}]}",
+          "/lines: has more than 2 items");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": {\"qty\": 1}}", "/lines: an object is not an array");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": [{\"qty\": 1}, {\"qty\": 0}]}",
+          "/lines/1/qty: 0 is less than the minimum of 1");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": [{\"qty\": 100}]}",
+          "/lines/0/qty: 100 is not less than 100");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": [{\"qty\": 1.5}]}",
+          "/lines/0/qty: 1.5 is not an integer");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": [{\"qty\": 1, \"price\": 0}]}",
+          "/lines/0/price: 0 is not greater than 0");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": [{\"qty\": 1, \"price\": \"1\"}]}",
+          "/lines/0/price: a string is not a number or null");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": [{\"price\": 1}]}",
+          "/lines/0: is missing the required property qty");
+      assertViolation(engine, "{\"id\": \"AB12\", \"lines\": [{\"qty\": 1, \"sku\": \"x\"}]}",
+          "/lines/0/sku: is not allowed");
+    }
+  }
+
+  @Test
+  public void testMultipleViolations() throws Exception {
+    List<String> violations = validate(JsonStreamingEngine.STAXON,
+        "{\"id\": \"x\", \"lines\": [{\"qty\": 0}, {\"qty\": 1}]}");
+    assertEquals(3, violations.size());
+    assertTrue(violations.get(0).startsWith("/id:"));
+    assertTrue(violations.get(2).startsWith("/lines/0/qty:"));
+  }
+
+  @Test
+  public void testDraft4ExclusiveMinimum() throws Exception {
+    JsonSchema schema = JsonSchema.parse(new StringReader("{\"properties\": {\"a\": "
+        + "{\"type\": \"number\", \"minimum\": 0, \"exclusiveMinimum\": true, \"maximum\": 10}}}"));
+    assertEquals(0, validate(schema, JsonStreamingEngine.JACKSON, "{\"a\": 10}", 0).size());
+    assertEquals(1, validate(schema, JsonStreamingEngine.JACKSON, "{\"a\": 0}", 0).size());
+  }
+
+  @Test
+  public void testFailFast() throws Exception {
+    JsonSchema schema = JsonSchema.parse(new StringReader(SCHEMA));
+    JsonStreamSource source = schema.wrap(JsonStreamingEngine.STAXON.streamFactory(), 0)
+        .createJsonStreamSource(new StringReader("{\"id\": \"AB12\", \"lines\": [{\"qty\": \"1\"}]}"));
+    try {
+      drain(source);
+      fail();
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage().contains("does not match the schema at /lines/0/qty"));
+    }
+  }
+
+  @Test
+  public void testSequence() throws Exception {
+    JsonSchema schema = JsonSchema.parse(new StringReader("{\"type\": \"object\", \"required\": [\"id\"]}"));
+    JsonStreamingConfigBuilder config = new JsonStreamingConfigBuilder().withJsonLines(true);
+    drain(config.streamFactory(schema).createJsonStreamSource(new StringReader("{\"id\": 1}\n{\"id\": 2}\n")));
+    try {
+      drain(config.streamFactory(schema).createJsonStreamSource(new StringReader("{\"id\": 1}\n\"two\"\n")));
+      fail();
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("/lines/line/1: a string is not an object"));
+    }
+    config.withVirtualRoot("lines");
+    drain(config.streamFactory(schema).createJsonStreamSource(new StringReader("{\"id\": 1}\n{\"id\": 2}\n")));
+  }
+
+  @Test
+  public void testBooleanSchemas() throws Exception {
+    JsonSchema schema = JsonSchema.parse(new StringReader(
+        "{\"properties\": {\"a\": true, \"b\": false}, \"additionalProperties\": {\"type\": \"string\"}}"));
+    assertEquals(0, validate(schema, JsonStreamingEngine.STAXON, "{\"a\": [1], \"c\": \"x\"}", 0).size());
+    assertEquals(2, validate(schema, JsonStreamingEngine.STAXON, "{\"b\": 1, \"c\": 2}", 0).size());
+  }
+
+  @Test
+  public void testConstMultipleOfAndProperties() throws Exception {
+    JsonSchema schema = JsonSchema.parse(new StringReader("{\"minProperties\": 1, \"maxProperties\": 2, "
+        + "\"properties\": {\"kind\": {\"const\": \"order\"}, \"price\": {\"multipleOf\": 0.01}, "
+        + "\"none\": {\"const\": null}, \"one\": {\"const\": 1}}}"));
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      assertEquals(0, validate(schema, engine, "{\"kind\": \"order\", \"price\": 12.50}", 0).size());
+      assertEquals(0, validate(schema, engine, "{\"none\": null, \"one\": 1.0}", 0).size());
+      assertEquals(Arrays.asList("/kind: \"invoice\" is not the allowed value"),
+          validate(schema, engine, "{\"kind\": \"invoice\"}", 0));
+      assertEquals(Arrays.asList("/kind: an object is not the allowed value"),
+          validate(schema, engine, "{\"kind\": {}}", 0));
+      assertEquals(Arrays.asList("/none: 0 is not the allowed value"), validate(schema, engine, "{\"none\": 0}", 0));
+      assertEquals(Arrays.asList("/price: 12.505 is not a multiple of 0.01"),
+          validate(schema, engine, "{\"price\": 12.505}", 0));
+      assertEquals(Arrays.asList("/: has fewer than 1 properties"), validate(schema, engine, "{}", 0));
+      assertEquals(Arrays.asList("/: has more than 2 properties"),
+          validate(schema, engine, "{\"a\": 1, \"b\": {\"c\": 1, \"d\": 2, \"e\": 3}, \"f\": [1, 2, 3]}", 0));
+    }
+  }
+
+  @Test
+  public void testUnsupported() throws Exception {
+    for (String schema : new String[] {"{\"$ref\": \"#/definitions/a\"}", "{\"properties\": {\"a\": {\"anyOf\": []}}}",
+        "{\"enum\": [{\"a\": 1}]}", "{\"type\": \"decimal\"}", "{\"pattern\": \"[\"}", "[]", "",
+        "{\"const\": [1]}", "{\"multipleOf\": 0}", "{\"maxPropertees\": 1}",
+        "{\"items\": {\"minContains\": 1}}"}) {
+      try {
+        JsonSchema.parse(new StringReader(schema));
+        fail(schema);
+      } catch (IOException expected) {
+      }
+    }
+  }
+
+  private static void assertViolation(JsonStreamingEngine engine, String json, String expected) throws IOException {
+    List<String> violations = validate(engine, json);
+    assertEquals(violations.toString(), 1, violations.size());
+    assertTrue(violations.get(0), violations.get(0).startsWith(expected));
+  }
+
+  private static List<String> validate(JsonStreamingEngine engine, String json) throws IOException {
+    return validate(JsonSchema.parse(new StringReader(SCHEMA)), engine, json, 0);
+  }
+
+  private static List<String> validate(JsonSchema schema, JsonStreamingEngine engine, String json, int itemDepth)
+      throws IOException {
+    JsonSchema.Validator validator = schema.validate(
+        engine.streamFactory().createJsonStreamSource(new StringReader(json)), itemDepth, false);
+    drain(validator);
+    return validator.violations().stream().map(Object::toString).collect(Collectors.toList());
+  }
+
+  private static void drain(JsonStreamSource source) throws IOException {
+    try (JsonStreamSource s = source) {
+      while (true) {
+        switch (s.peek()) {
+          case START_OBJECT:
+            s.startObject();
+            break;
+          case END_OBJECT:
+            s.endObject();
+            break;
+          case START_ARRAY:
+            s.startArray();
+            break;
+          case END_ARRAY:
+            s.endArray();
+            break;
+          case NAME:
+            s.name();
+            break;
+          case VALUE:
+            s.value();
+            break;
+          default:
+            return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.transform.json.TransformationDirection;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamTarget;
+import de.odysseus.staxon.json.stream.JsonStreamToken;
+
+public class JsonSequenceStreamFactoryTest {
+
+  private static final String LINES = "{\"id\":1,\"name\":\"a\"}\r\n\n  {\"id\":2,\"tags\":[\"x\",\"y\"]}\n3\n";
+
+  @Test
+  public void testSource() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonSequenceStreamFactory factory = JsonSequenceStreamFactory.jsonLines(engine.streamFactory(), false);
+      assertEquals(tokens(engine.streamFactory().createJsonStreamSource(new StringReader(
+          "{\"lines\":{\"line\":[{\"id\":1,\"name\":\"a\"},{\"id\":2,\"tags\":[\"x\",\"y\"]},3]}}"))),
+          tokens(factory.createJsonStreamSource(new StringReader(LINES))));
+      assertEquals(tokens(engine.streamFactory().createJsonStreamSource(new StringReader("{\"line\":[true]}"))),
+          tokens(JsonSequenceStreamFactory.jsonLines(engine.streamFactory(), true).createJsonStreamSource(
+              new ByteArrayInputStream("true".getBytes(StandardCharsets.UTF_8)))));
+    }
+  }
+
+  @Test
+  public void testSource_Empty() throws Exception {
+    JsonSequenceStreamFactory factory = JsonSequenceStreamFactory.jsonLines(JsonStreamingEngine.STAXON.streamFactory(), false);
+    assertEquals(tokens(JsonStreamingEngine.STAXON.streamFactory().createJsonStreamSource(
+        new StringReader("{\"lines\":{\"line\":[]}}"))),
+        tokens(factory.createJsonStreamSource(new StringReader("\n \n"))));
+  }
+
+  @Test
+  public void testSource_Concatenated() throws Exception {
+    String expected = "{\"documents\":{\"document\":[{\"a\":\"}{\\\"\"},{\"c\":[1]},\"x\",12,true,{\"b\":null}]}}";
+    String concatenated = "{\"a\":\"}{\\\"\"}{\"c\":[1]}\"x\" 12\ntrue{\"b\":null}";
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonSequenceStreamFactory factory = JsonSequenceStreamFactory.concatenated(engine.streamFactory(), false);
+      assertEquals(tokens(engine.streamFactory().createJsonStreamSource(new StringReader(expected))),
+          tokens(factory.createJsonStreamSource(new StringReader(concatenated))));
+      assertEquals(tokens(engine.streamFactory().createJsonStreamSource(new StringReader(expected))),
+          tokens(factory.createJsonStreamSource(new ByteArrayInputStream(
+              concatenated.getBytes(StandardCharsets.UTF_8)))));
+    }
+  }
+
+  @Test
+  public void testTarget() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      StringWriter writer = new StringWriter();
+      try (JsonStreamTarget target = JsonSequenceStreamFactory.jsonLines(engine.streamFactory(), false)
+          .createJsonStreamTarget(writer, true)) {
+        target.startObject();
+        target.name("lines");
+        target.startObject();
+        target.name("line");
+        target.startArray();
+        target.startObject();
+        target.name("id");
+        target.value(1L);
+        target.name("tags");
+        target.startArray();
+        target.value("x");
+        target.endArray();
+        target.endObject();
+        target.value("two");
+        target.endArray();
+        target.name("other");
+        target.startObject();
+        target.endObject();
+        target.endObject();
+        target.endObject();
+      }
+      assertEquals("{\"id\":1,\"tags\":[\"x\"]}\n\"two\"\n{}\n", writer.toString());
+    }
+  }
+
+  @Test
+  public void testTarget_OutputStream() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonStreamTarget target = JsonSequenceStreamFactory.jsonLines(JsonStreamingEngine.STAXON.streamFactory(), true)
+        .createJsonStreamTarget(out, false)) {
+      target.startObject();
+      target.name("line");
+      target.value("é");
+      target.name("line");
+      target.value("b");
+      target.endObject();
+    }
+    assertEquals("\"é\"\n\"b\"\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      AdvancedStreamingTransformationDriver driver = new AdvancedStreamingTransformationDriver().withConfig(
+          new JsonStreamingConfigBuilder().withEngine(engine).withJsonLines(true).withAutoArray(true)
+              .withAutoPrimitive(true));
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(LINES);
+      driver.transform(msg, TransformationDirection.JSON_TO_XML);
+      assertTrue(msg.getContent().contains("<line><id>1</id><name>a</name></line>"));
+      driver.transform(msg, TransformationDirection.XML_TO_JSON);
+      assertEquals("{\"id\":1,\"name\":\"a\"}\n{\"id\":2,\"tags\":[\"x\",\"y\"]}\n3\n", msg.getContent());
+    }
+  }
+
+  @Test
+  public void testRoundTrip_Concatenated() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      AdvancedStreamingTransformationDriver driver = new AdvancedStreamingTransformationDriver().withConfig(
+          new JsonStreamingConfigBuilder().withEngine(engine).withConcatenated(true).withAutoPrimitive(true));
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("{\"id\":1}{\"id\":2} {\"id\":3}");
+      driver.transform(msg, TransformationDirection.JSON_TO_XML);
+      assertTrue(msg.getContent().contains("<document><id>1</id></document><document><id>2</id>"));
+      driver.transform(msg, TransformationDirection.XML_TO_JSON);
+      assertEquals("{\"id\":1}\n{\"id\":2}\n{\"id\":3}\n", msg.getContent());
+    }
+  }
+
+  private static String tokens(JsonStreamSource source) throws Exception {
+    StringBuilder result = new StringBuilder();
+    try {
+      for (JsonStreamToken token = source.peek(); token != JsonStreamToken.NONE; token = source.peek()) {
+        result.append(token).append(' ');
+        switch (token) {
+          case NAME:
+            result.append(source.name()).append(' ');
+            break;
+          case VALUE:
+            result.append(source.value().text).append(' ');
+            break;
+          case START_OBJECT:
+            source.startObject();
+            break;
+          case END_OBJECT:
+            source.endObject();
+            break;
+          case START_ARRAY:
+            source.startArray();
+            break;
+          case END_ARRAY:
+            source.endArray();
+            break;
+          default:
+            throw new IllegalStateException(token.toString());
+        }
+      }
+    } finally {
+      source.close();
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,109 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ServiceException;
+import com.adaptris.interlok.junit.scaffolding.services.ExampleServiceCase;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+
+public class JsonStreamingCsvServiceTest extends ExampleServiceCase {
+
+  private static final String ORDERS = "{\"orders\": {\"batch\": 7, \"order\": ["
+      + "{\"id\": 1, \"customer\": {\"name\": \"Alice\", \"vip\": true}, \"total\": 12.50,"
+      + " \"lines\": [{\"sku\": \"abc\"}, {\"sku\": \"def\"}], \"note\": null},"
+      + "{\"note\": \"say \\\"hi\\\", then\\nleave\", \"id\": 2, \"customer\": {\"name\": \"Bob\"}, \"total\": 3,"
+      + " \"tags\": [\"x\", 1], \"status\": \"open\"},"
+      + "{\"id\": 3, \"customer\": \"n/a\", \"status\": \"closed\"}"
+      + "]}}";
+
+  @Test
+  public void testService() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDERS);
+      execute(service().withJsonStreamingConfig(new JsonStreamingConfigBuilder().withEngine(engine)), msg);
+      assertEquals("id,name,vip,total,sku,note,customer\r\n"
+          + "1,Alice,true,12.50,abc,,\"{\"\"name\"\":\"\"Alice\"\",\"\"vip\"\":true}\"\r\n"
+          + "2,Bob,,3,,\"say \"\"hi\"\", then\nleave\",\"{\"\"name\"\":\"\"Bob\"\"}\"\r\n"
+          + "3,,,,,,n/a\r\n", msg.getContent());
+    }
+  }
+
+  @Test
+  public void testService_Tsv() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDERS);
+    execute(new JsonStreamingCsvService().withPath("/orders/order").withFormat(JsonStreamingCsvService.Format.TSV)
+        .withIncludeHeader(false).withColumns(columns("id", "id", "tag", "tags")), msg);
+    assertEquals("1\t\n2\tx\n3\t\n", msg.getContent());
+  }
+
+  @Test
+  public void testService_PathExpression() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDERS);
+    msg.addMetadata("field", "status");
+    execute(new JsonStreamingCsvService().withPath("//order[status='closed']")
+        .withColumns(columns("id", "id", "status", "%message{field}")), msg);
+    assertEquals("id,status\r\n3,closed\r\n", msg.getContent());
+  }
+
+  @Test
+  public void testService_Compressed() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(
+        JsonCompressionTest.gzip(ORDERS));
+    execute(new JsonStreamingCsvService().withPath("/orders/order").withColumns(columns("id", "id"))
+        .withJsonStreamingConfig(new JsonStreamingConfigBuilder().withInputCompression(JsonCompression.DETECT)
+            .withOutputCompression(JsonCompression.GZIP)), msg);
+    assertEquals("id\r\n1\r\n2\r\n3\r\n", JsonCompressionTest.gunzip(msg.getPayload()));
+  }
+
+  @Test
+  public void testService_NotFound() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDERS);
+    JsonStreamingCsvService service = new JsonStreamingCsvService().withPath("/orders/missing")
+        .withColumns(columns("id", "id"));
+    try {
+      execute(service, msg);
+      fail();
+    } catch (ServiceException expected) {
+      assertEquals(ORDERS, msg.getContent());
+    }
+    execute(service.withSuppressPathNotFound(true), msg);
+    assertEquals("id\r\n", msg.getContent());
+  }
+
+  @Test(expected = ServiceException.class)
+  public void testService_InvalidJson() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(
+        "{\"orders\": {\"order\": [{\"id\": 1}, {\"id\" 2}]}}");
+    execute(new JsonStreamingCsvService().withPath("/orders/order").withColumns(columns("id", "id")), msg);
+  }
+
+  @Test(expected = CoreException.class)
+  public void testPrepare_BlankPath() throws Exception {
+    new JsonStreamingCsvService().withColumns(columns("id", "id")).prepare();
+  }
+
+  @Override
+  protected JsonStreamingCsvService retrieveObjectForSampleConfig() {
+    return new JsonStreamingCsvService().withPath("/orders/order")
+        .withColumns(columns("id", "id", "customerName", "customer/name"));
+  }
+
+  private static JsonStreamingCsvService service() {
+    return new JsonStreamingCsvService().withPath("/orders/order").withColumns(columns("id", "id", "name",
+        "customer/name", "vip", "customer/vip", "total", "total", "sku", "lines/sku", "note", "note", "customer",
+        "customer"));
+  }
+
+  private static KeyValuePairSet columns(String... namesAndPaths) {
+    KeyValuePairSet result = new KeyValuePairSet();
+    for (int i = 0; i < namesAndPaths.length; i += 2) {
+      result.add(new KeyValuePair(namesAndPaths[i], namesAndPaths[i + 1]));
+    }
+    return result;
+  }
+}
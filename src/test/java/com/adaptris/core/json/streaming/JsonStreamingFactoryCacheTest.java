@@ -0,0 +1,105 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import org.junit.Test;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+import de.odysseus.staxon.json.JsonXMLConfig;
+import de.odysseus.staxon.json.JsonXMLOutputFactory;
+
+public class JsonStreamingFactoryCacheTest {
+
+  @Test
+  public void testEquivalentConfig_SameInstance() {
+    JsonStreamingConfigBuilder b1 = new JsonStreamingConfigBuilder().withAutoArray(true);
+    JsonStreamingConfigBuilder b2 = new JsonStreamingConfigBuilder().withAutoArray(true);
+    assertSame(JsonStreamingFactoryCache.config(b1), JsonStreamingFactoryCache.config(b2));
+    assertSame(JsonStreamingFactoryCache.inputFactory(b1), JsonStreamingFactoryCache.inputFactory(b2));
+    assertSame(JsonStreamingFactoryCache.outputFactory(b1), JsonStreamingFactoryCache.outputFactory(b2));
+    JsonStreamingInputFactory factory = new JsonStreamingInputFactory().withConfig(b1);
+    assertSame(factory.build(), JsonStreamingFactoryCache.inputFactory(b2));
+  }
+
+  @Test
+  public void testChangedConfig_NewInstance() {
+    JsonStreamingConfigBuilder builder = new JsonStreamingConfigBuilder().withAutoArray(true);
+    JsonXMLConfig before = JsonStreamingFactoryCache.config(builder);
+    XMLOutputFactory outBefore = JsonStreamingFactoryCache.outputFactory(builder);
+    builder.withPrettyPrint(true);
+    JsonXMLConfig after = JsonStreamingFactoryCache.config(builder);
+    assertNotSame(before, after);
+    assertNotSame(outBefore, JsonStreamingFactoryCache.outputFactory(builder));
+    assertTrue(after.isPrettyPrint());
+    assertEquals(Boolean.TRUE, JsonStreamingFactoryCache.outputFactory(builder).getProperty(JsonXMLOutputFactory.PROP_PRETTY_PRINT));
+  }
+
+  @Test
+  public void testUncompressedOutputFactory() {
+    JsonStreamingConfigBuilder builder = new JsonStreamingConfigBuilder().withPrettyPrint(true);
+    assertSame(JsonStreamingFactoryCache.outputFactory(builder),
+        JsonStreamingFactoryCache.uncompressedOutputFactory(builder));
+    builder.withOutputCompression(JsonCompression.GZIP);
+    XMLOutputFactory uncompressed = JsonStreamingFactoryCache.uncompressedOutputFactory(builder);
+    assertNotSame(JsonStreamingFactoryCache.outputFactory(builder), uncompressed);
+    assertSame(uncompressed, JsonStreamingFactoryCache.uncompressedOutputFactory(builder));
+    assertEquals(Boolean.TRUE, uncompressed.getProperty(JsonXMLOutputFactory.PROP_PRETTY_PRINT));
+  }
+
+  @Test
+  public void testNamespaceMappings() {
+    KeyValuePairSet mappings = new KeyValuePairSet();
+    mappings.addKeyValuePair(new KeyValuePair("hello", "world"));
+    JsonStreamingConfigBuilder builder = new JsonStreamingConfigBuilder().withNamespaceMappings(mappings);
+    JsonXMLConfig config = JsonStreamingFactoryCache.config(builder);
+    assertEquals("world", config.getNamespaceMappings().get("hello"));
+    mappings.addKeyValuePair(new KeyValuePair("goodbye", "world"));
+    assertNotSame(config, JsonStreamingFactoryCache.config(builder));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testConfig_Immutable() {
+    KeyValuePairSet mappings = new KeyValuePairSet();
+    mappings.addKeyValuePair(new KeyValuePair("hello", "world"));
+    JsonStreamingFactoryCache.config(new JsonStreamingConfigBuilder().withNamespaceMappings(mappings))
+        .getNamespaceMappings().put("goodbye", "world");
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testInputFactory_Sealed() {
+    XMLInputFactory factory = JsonStreamingFactoryCache.inputFactory(new JsonStreamingConfigBuilder());
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testOutputFactory_Sealed() {
+    XMLOutputFactory factory = JsonStreamingFactoryCache.outputFactory(new JsonStreamingConfigBuilder());
+    factory.setProperty(JsonXMLOutputFactory.PROP_PRETTY_PRINT, Boolean.TRUE);
+  }
+
+  @Test
+  public void testEviction() {
+    JsonStreamingFactoryCache.clear();
+    JsonStreamingConfigBuilder inUse = new JsonStreamingConfigBuilder();
+    JsonXMLConfig config = JsonStreamingFactoryCache.config(inUse);
+    for (int i = 1; i <= JsonStreamingFactoryCache.MAX_ENTRIES * 2; i++) {
+      JsonStreamingFactoryCache.config(new JsonStreamingConfigBuilder().withMaxNestingDepth(i));
+      assertSame(config, JsonStreamingFactoryCache.config(inUse));
+      assertTrue(JsonStreamingFactoryCache.size() <= JsonStreamingFactoryCache.MAX_ENTRIES);
+    }
+    JsonStreamingFactoryCache.clear();
+  }
+
+  @Test
+  public void testClear() {
+    JsonStreamingConfigBuilder builder = new JsonStreamingConfigBuilder();
+    JsonXMLConfig before = JsonStreamingFactoryCache.config(builder);
+    JsonStreamingFactoryCache.clear();
+    assertEquals(0, JsonStreamingFactoryCache.size());
+    assertNotSame(before, JsonStreamingFactoryCache.config(builder));
+  }
+}
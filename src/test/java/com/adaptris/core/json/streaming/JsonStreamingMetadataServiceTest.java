@@ -0,0 +1,134 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ServiceException;
+import com.adaptris.interlok.junit.scaffolding.services.ExampleServiceCase;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+
+public class JsonStreamingMetadataServiceTest extends ExampleServiceCase {
+
+  private static final String ORDER = "{\"order\": {"
+      + "\"audit\": {\"customer\": \"not this one\", \"lines\": [{\"sku\": \"x\"}]},"
+      + "\"id\": 1234,"
+      + "\"customer\": {\"name\": \"Alice\", \"vip\": true},"
+      + "\"lines\": [{\"sku\": \"abc\", \"qty\": 1}, {\"sku\": \"def\", \"qty\": 2}],"
+      + "\"total\": 12.50,"
+      + "\"note\": null,"
+      + "\"ns:ref\": \"r1\""
+      + "}}";
+
+  @Test
+  public void testService() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER);
+    JsonStreamingMetadataService service = new JsonStreamingMetadataService().withMetadataPaths(
+        paths("orderId", "/order/id", "name", "/order/customer/name", "vip", "/order/customer/vip", "sku",
+            "/order/lines/sku", "total", "/order/total", "note", "/order/note", "ref", "/order/ref"));
+    execute(service, msg);
+    assertEquals("1234", msg.getMetadataValue("orderId"));
+    assertEquals("Alice", msg.getMetadataValue("name"));
+    assertEquals("true", msg.getMetadataValue("vip"));
+    assertEquals("abc", msg.getMetadataValue("sku"));
+    assertEquals("12.50", msg.getMetadataValue("total"));
+    assertEquals("", msg.getMetadataValue("note"));
+    assertEquals("r1", msg.getMetadataValue("ref"));
+  }
+
+  @Test
+  public void testService_ObjectAndNested() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER);
+    JsonStreamingMetadataService service = new JsonStreamingMetadataService()
+        .withMetadataPaths(paths("customer", "/order/customer", "name", "/order/customer/name"));
+    execute(service, msg);
+    assertEquals("{\"name\":\"Alice\",\"vip\":true}", msg.getMetadataValue("customer"));
+    assertEquals("Alice", msg.getMetadataValue("name"));
+  }
+
+  @Test
+  public void testService_ContentEncoding() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"order\": {\"customer\": {\"name\": \"Zo\u00eb\"}}}", "ISO-8859-1");
+    JsonStreamingMetadataService service = new JsonStreamingMetadataService()
+        .withMetadataPaths(paths("customer", "/order/customer", "name", "/order/customer/name"));
+    execute(service, msg);
+    assertEquals("{\"name\":\"Zo\u00eb\"}", msg.getMetadataValue("customer"));
+    assertEquals("Zo\u00eb", msg.getMetadataValue("name"));
+  }
+
+  @Test(expected = ServiceException.class)
+  public void testService_Limits() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER);
+    JsonStreamingMetadataService service = new JsonStreamingMetadataService()
+        .withMetadataPaths(paths("sku", "/order/lines/sku"))
+        .withJsonStreamingConfig(new JsonStreamingConfigBuilder().withMaxNestingDepth(2));
+    execute(service, msg);
+  }
+
+  @Test
+  public void testService_StopsWhenFound() throws Exception {
+    // Everything after the id is never read, so the invalid JSON doesn't matter.
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"order\": {\"id\": 1234, \"rest\": [[[this is not json");
+    JsonStreamingMetadataService service = new JsonStreamingMetadataService()
+        .withMetadataPaths(paths("orderId", "/order/id"));
+    execute(service, msg);
+    assertEquals("1234", msg.getMetadataValue("orderId"));
+  }
+
+  @Test
+  public void testService_Resolve() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER);
+    msg.addMetadata("field", "total");
+    JsonStreamingMetadataService service = new JsonStreamingMetadataService()
+        .withMetadataPaths(paths("total", "/order/%message{field}"));
+    execute(service, msg);
+    assertEquals("12.50", msg.getMetadataValue("total"));
+  }
+
+  @Test
+  public void testService_NotFound() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER);
+    JsonStreamingMetadataService service = new JsonStreamingMetadataService()
+        .withMetadataPaths(paths("orderId", "/order/id", "missing", "/order/missing"));
+    try {
+      execute(service, msg);
+      fail();
+    } catch (ServiceException expected) {
+      assertFalse(msg.headersContainsKey("orderId"));
+    }
+    execute(service.withSuppressPathNotFound(true), msg);
+    assertEquals("1234", msg.getMetadataValue("orderId"));
+    assertFalse(msg.headersContainsKey("missing"));
+  }
+
+  @Test(expected = ServiceException.class)
+  public void testService_InvalidJson() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("{\"order\": {\"id\" 1234}}");
+    execute(new JsonStreamingMetadataService().withMetadataPaths(paths("orderId", "/order/id")), msg);
+  }
+
+  @Test(expected = CoreException.class)
+  public void testPrepare_BlankPath() throws Exception {
+    new JsonStreamingMetadataService().withMetadataPaths(paths("orderId", "")).prepare();
+  }
+
+  @Override
+  protected JsonStreamingMetadataService retrieveObjectForSampleConfig() {
+    return new JsonStreamingMetadataService()
+        .withMetadataPaths(paths("orderId", "/order/id", "customerName", "/order/customer/name"));
+  }
+
+  private static KeyValuePairSet paths(String... keysAndPaths) {
+    KeyValuePairSet result = new KeyValuePairSet();
+    for (int i = 0; i < keysAndPaths.length; i += 2) {
+      result.add(new KeyValuePair(keysAndPaths[i], keysAndPaths[i + 1]));
+    }
+    return result;
+  }
+}
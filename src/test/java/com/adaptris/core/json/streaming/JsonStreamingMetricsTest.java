@@ -0,0 +1,177 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.transform.json.TransformationDirection;
+import com.adaptris.core.util.CloseableIterable;
+
+public class JsonStreamingMetricsTest {
+
+  private static final String JSON = "{\"envelope\": {\"document\": [{\"id\": 1}, {\"id\": 2}, {\"id\": 3}]}}";
+
+  @Test
+  public void testAcquire() throws Exception {
+    String id = UUID.randomUUID().toString();
+    JsonStreamingMetrics metrics = JsonStreamingMetrics.acquire(id);
+    assertSame(metrics, JsonStreamingMetrics.acquire(id));
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertTrue(server.isRegistered(JsonStreamingMetrics.objectName(id)));
+    metrics.transformed(10, 20, 5, System.nanoTime());
+    assertEquals(1L, server.getAttribute(JsonStreamingMetrics.objectName(id), "MessageCount"));
+    server.invoke(JsonStreamingMetrics.objectName(id), "reset", null, null);
+    assertEquals(0, metrics.getMessageCount());
+    JsonStreamingMetrics.release(id);
+    assertTrue(server.isRegistered(JsonStreamingMetrics.objectName(id)));
+    JsonStreamingMetrics.release(id);
+    assertFalse(server.isRegistered(JsonStreamingMetrics.objectName(id)));
+  }
+
+  @Test
+  public void testAcquire_QuotedName() throws Exception {
+    String id = "a,b=c:d*\"";
+    JsonStreamingMetrics metrics = JsonStreamingMetrics.acquire(id);
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      assertTrue(server.isRegistered(JsonStreamingMetrics.objectName(id)));
+      assertEquals(id, ObjectName.unquote(JsonStreamingMetrics.objectName(id).getKeyProperty("id")));
+      metrics.failed();
+      assertEquals(1L, server.getAttribute(JsonStreamingMetrics.objectName(id), "FailureCount"));
+    } finally {
+      JsonStreamingMetrics.release(id);
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    String id = UUID.randomUUID().toString();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setMetricsId(id);
+    DefaultStreamingTransformationDriver driver = new DefaultStreamingTransformationDriver();
+    driver.setMetricsId(id);
+    assertSame(splitter.metrics(), driver.metrics());
+    assertSame(splitter.metrics(), driver.metrics());
+    splitter.close();
+    assertTrue(server.isRegistered(JsonStreamingMetrics.objectName(id)));
+    driver.close();
+    assertFalse(server.isRegistered(JsonStreamingMetrics.objectName(id)));
+    // Changing the id releases the old one.
+    driver.setMetricsId(id);
+    driver.metrics();
+    assertTrue(server.isRegistered(JsonStreamingMetrics.objectName(id)));
+    driver.setMetricsId(null);
+    assertNull(driver.metrics());
+    assertFalse(server.isRegistered(JsonStreamingMetrics.objectName(id)));
+  }
+
+  @Test
+  public void testSplitter() throws Exception {
+    for (int parallelism : new int[] {0, 2}) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+      assertNull(splitter.metrics());
+      splitter.setMetricsId(UUID.randomUUID().toString());
+      splitter.setParallelism(parallelism);
+      JsonStreamingMetrics metrics = splitter.metrics();
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON);
+      long bytesOut = 0;
+      try (CloseableIterable<AdaptrisMessage> split = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+        for (AdaptrisMessage child : split) {
+          bytesOut += child.getSize();
+        }
+      }
+      assertEquals(1, metrics.getMessageCount());
+      assertEquals(0, metrics.getFailureCount());
+      assertEquals(3, metrics.getSplitCount());
+      assertEquals(JSON.length(), metrics.getBytesIn());
+      assertEquals(bytesOut, metrics.getBytesOut());
+      assertTrue(metrics.getTokenCount() >= 3 * 4);
+      assertTrue(metrics.getMaxLatencyMicros() >= metrics.getMaxTimeToFirstSplitMicros());
+      assertTrue(metrics.getLatency999thPercentileMicros() >= metrics.getLatency50thPercentileMicros());
+    }
+  }
+
+  @Test
+  public void testSplitter_SlowConsumer() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setMetricsId(UUID.randomUUID().toString());
+    try (CloseableIterable<AdaptrisMessage> split = CloseableIterable
+        .ensureCloseable(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON)))) {
+      for (AdaptrisMessage child : split) {
+        Thread.sleep(200);
+      }
+    }
+    JsonStreamingMetrics metrics = splitter.metrics();
+    assertEquals(1, metrics.getMessageCount());
+    // the consumer took at least 600ms, none of which is splitting.
+    assertTrue(metrics.getMaxLatencyMicros() < 200_000);
+    splitter.close();
+  }
+
+  @Test
+  public void testSplitter_ClosedEarly() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setMetricsId(UUID.randomUUID().toString());
+    try (CloseableIterable<AdaptrisMessage> split = CloseableIterable
+        .ensureCloseable(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON)))) {
+      split.iterator().next();
+    }
+    assertEquals(0, splitter.metrics().getMessageCount());
+    assertEquals(1, splitter.metrics().getFailureCount());
+    assertEquals(1, splitter.metrics().getSplitCount());
+    splitter.close();
+  }
+
+  @Test
+  public void testSplitter_Failure() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/missing");
+    splitter.setMetricsId(UUID.randomUUID().toString());
+    try {
+      splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON));
+      fail();
+    } catch (CoreException expected) {
+    }
+    assertEquals(1, splitter.metrics().getFailureCount());
+    assertEquals(0, splitter.metrics().getMessageCount());
+  }
+
+  @Test
+  public void testDriver() throws Exception {
+    String id = UUID.randomUUID().toString();
+    for (boolean cursor : new boolean[] {false, true}) {
+      AdvancedStreamingTransformationDriver driver = new AdvancedStreamingTransformationDriver()
+          .withCursorTranscoding(cursor).withMetricsId(id);
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON);
+      driver.transform(msg, TransformationDirection.JSON_TO_XML);
+    }
+    JsonStreamingMetrics metrics = JsonStreamingMetrics.acquire(id);
+    assertEquals(2, metrics.getMessageCount());
+    assertEquals(JSON.length() * 2, metrics.getBytesIn());
+    assertTrue(metrics.getBytesOut() > 0);
+    assertEquals(0, metrics.getTokenCount() % 2);
+    assertTrue(metrics.getTokenCount() > 0);
+    assertEquals(0, metrics.getSplitCount());
+    DefaultStreamingTransformationDriver driver = new DefaultStreamingTransformationDriver();
+    driver.setMetricsId(id);
+    try {
+      driver.transform(AdaptrisMessageFactory.getDefaultInstance().newMessage("{\"a\":"),
+          TransformationDirection.JSON_TO_XML);
+      fail();
+    } catch (Exception expected) {
+    }
+    assertEquals(1, metrics.getFailureCount());
+    driver.close();
+    JsonStreamingMetrics.release(id);
+  }
+}
@@ -0,0 +1,141 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.lms.FileBackedMessageFactory;
+import com.adaptris.core.util.CloseableIterable;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+
+public class JsonStreamingMultiPathSplitterTest {
+
+  private static final String ORDER = "{\"order\": {\"id\": 1234,"
+      + "\"lines\": [{\"sku\": \"abc\", \"qty\": 1}, {\"sku\": \"def\", \"qty\": 2}],"
+      + "\"audit\": {\"lines\": [{\"sku\": \"not this one\"}]},"
+      + "\"shipments\": {\"carrier\": \"x\", \"lines\": [1, 2]}}}";
+
+  @Test
+  public void testSplit() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamingMultiPathSplitter splitter = new JsonStreamingMultiPathSplitter(
+          paths("lines", "/order/lines", "shipments", "/order/shipments"));
+      splitter.getJsonStreamingConfig().setEngine(engine);
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER);
+      msg.addMetadata("hello", "world");
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+      assertEquals(3, list.size());
+      JSONAssert.assertEquals("{\"lines\":{\"sku\":\"def\",\"qty\":2}}", list.get(1).getContent(),
+          JSONCompareMode.STRICT);
+      JSONAssert.assertEquals("{\"shipments\":{\"carrier\":\"x\",\"lines\":[1,2]}}", list.get(2).getContent(),
+          JSONCompareMode.STRICT);
+      assertEquals("lines", list.get(0).getMetadataValue("jsonSplitPath"));
+      assertEquals("shipments", list.get(2).getMetadataValue("jsonSplitPath"));
+      assertEquals("world", list.get(2).getMetadataValue("hello"));
+    }
+  }
+
+  @Test
+  public void testSplit_MemoryMapped() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamingMultiPathSplitter splitter = new JsonStreamingMultiPathSplitter(
+          paths("lines", "/order/lines", "shipments", "/order/shipments")).withMemoryMappedInput(true);
+      splitter.getJsonStreamingConfig().setEngine(engine);
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(new FileBackedMessageFactory().newMessage(ORDER)));
+      assertEquals(3, list.size());
+      JSONAssert.assertEquals("{\"shipments\":{\"carrier\":\"x\",\"lines\":[1,2]}}", list.get(2).getContent(),
+          JSONCompareMode.STRICT);
+    }
+  }
+
+  @Test
+  public void testSplit_Expressions() throws Exception {
+    JsonStreamingMultiPathSplitter splitter = new JsonStreamingMultiPathSplitter(
+        paths("all", "//lines", "ids", "/%message{root}/id")).withPathMetadataKey("route").withWrapWithArray(true);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER);
+    msg.addMetadata("root", "order");
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(6, list.size());
+    assertEquals("ids", list.get(0).getMetadataValue("route"));
+    assertEquals("{\"id\":[1234]}", list.get(0).getContent());
+    assertEquals("all", list.get(5).getMetadataValue("route"));
+    assertEquals("{\"lines\":[2]}", list.get(5).getContent());
+  }
+
+  @Test
+  public void testSplit_Compressed() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamingMultiPathSplitter splitter = new JsonStreamingMultiPathSplitter(
+          paths("lines", "/order/lines", "shipments", "/order/shipments"));
+      splitter.getJsonStreamingConfig().withEngine(engine).withInputCompression(JsonCompression.DETECT)
+          .withOutputCompression(JsonCompression.GZIP);
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(JsonCompressionTest.gzip(ORDER))));
+      assertEquals(3, list.size());
+      JSONAssert.assertEquals("{\"shipments\":{\"carrier\":\"x\",\"lines\":[1,2]}}",
+          JsonCompressionTest.gunzip(list.get(2).getPayload()), JSONCompareMode.STRICT);
+    }
+  }
+
+  @Test
+  public void testSplit_FirstPathWins() throws Exception {
+    JsonStreamingMultiPathSplitter splitter = new JsonStreamingMultiPathSplitter(
+        paths("first", "/order/shipments", "second", "/order/*"));
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage(ORDER)));
+    assertEquals(5, list.size());
+    assertEquals("second", list.get(0).getMetadataValue("jsonSplitPath"));
+    assertEquals("first", list.get(4).getMetadataValue("jsonSplitPath"));
+  }
+
+  @Test
+  public void testSplit_NotFound() throws Exception {
+    JsonStreamingMultiPathSplitter splitter = new JsonStreamingMultiPathSplitter(paths("missing", "/order/missing"));
+    try {
+      splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER));
+      fail();
+    } catch (CoreException expected) {
+      assertTrue(expected.getMessage().contains("/order/missing"));
+    }
+    splitter.withSuppressPathNotFound(true);
+    assertEquals(0, toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER)))
+        .size());
+  }
+
+  @Test(expected = CoreException.class)
+  public void testSplit_NoPaths() throws Exception {
+    new JsonStreamingMultiPathSplitter().splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER));
+  }
+
+  @Test(expected = CoreException.class)
+  public void testSplit_InvalidPath() throws Exception {
+    new JsonStreamingMultiPathSplitter(paths("invalid", "order/lines"))
+        .splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(ORDER));
+  }
+
+  private static KeyValuePairSet paths(String... pairs) {
+    KeyValuePairSet result = new KeyValuePairSet();
+    for (int i = 0; i < pairs.length; i += 2) {
+      result.add(new KeyValuePair(pairs[i], pairs[i + 1]));
+    }
+    return result;
+  }
+
+  private static List<AdaptrisMessage> toList(CloseableIterable<AdaptrisMessage> iter) throws Exception {
+    List<AdaptrisMessage> result = new ArrayList<>();
+    try (CloseableIterable<AdaptrisMessage> messages = iter) {
+      for (AdaptrisMessage msg : messages) {
+        result.add(msg);
+      }
+    }
+    return result;
+  }
+}
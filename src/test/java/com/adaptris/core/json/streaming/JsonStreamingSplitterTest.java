@@ -3,17 +3,28 @@ package com.adaptris.core.json.streaming;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.AdaptrisMessageFactory;
 import com.adaptris.core.CoreException;
+import com.adaptris.core.lms.FileBackedMessage;
+import com.adaptris.core.lms.FileBackedMessageFactory;
 import com.adaptris.core.util.CloseableIterable;
 import com.adaptris.stax.lms.StaxPathSplitter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompare;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 import org.skyscreamer.jsonassert.JSONCompareResult;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -114,6 +125,992 @@ public class JsonStreamingSplitterTest {
     assertFalse(splitter.getJsonStreamingConfig().autoPrimitive());
   }
 
+  @Test
+  public void testParallelism() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    assertEquals(0, splitter.parallelism());
+    assertNull(splitter.getParallelism());
+    splitter.setParallelism(-1);
+    assertEquals(0, splitter.parallelism());
+    splitter.setParallelism(4);
+    assertEquals(4, splitter.parallelism());
+  }
+
+  @Test
+  public void testDoService_Parallel() throws Exception {
+    for (boolean wrap : new boolean[] {true, false}) {
+      JsonStreamingSplitter sequential = new JsonStreamingSplitter("/envelope/document");
+      sequential.setWrapWithArray(wrap);
+      JsonStreamingSplitter parallel = new JsonStreamingSplitter("/envelope/document");
+      parallel.setWrapWithArray(wrap);
+      parallel.setParallelism(2);
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload());
+      msg.addMetadata("hello", "world");
+      List<AdaptrisMessage> expected = toList(sequential.splitMessage(msg));
+      List<AdaptrisMessage> list = toList(parallel.splitMessage(msg));
+      assertEquals(3, list.size());
+      for (int i = 0; i < list.size(); i++) {
+        assertEquals(expected.get(i).getContent(), list.get(i).getContent());
+        assertEquals("world", list.get(i).getMetadataValue("hello"));
+      }
+    }
+  }
+
+  @Test
+  public void testDoService_Parallel_ChangeParallelism() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setParallelism(2);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(documents(200));
+    try (CloseableIterable<AdaptrisMessage> first = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+      Iterator<AdaptrisMessage> iterator = first.iterator();
+      iterator.next();
+      // the first split is still submitting work to the pool that it started with.
+      splitter.setParallelism(3);
+      assertEquals(200, toList(splitter.splitMessage(msg)).size());
+      int count = 1;
+      for (; iterator.hasNext(); iterator.next()) {
+        count++;
+      }
+      assertEquals(200, count);
+    } finally {
+      splitter.close();
+    }
+  }
+
+  @Test
+  public void testDoService_Parallel_Order() throws Exception {
+    StringBuilder json = new StringBuilder("{\"envelope\":{\"document\":[");
+    for (int i = 0; i < 1000; i++) {
+      json.append(i > 0 ? "," : "").append("{\"nested\":").append(i).append("}");
+    }
+    json.append("]}}");
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setParallelism(4);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(json.toString());
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(1000, list.size());
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(String.format("{\"document\":{\"nested\":%d}}", i), list.get(i).getContent());
+    }
+  }
+
+  @Test
+  public void testDoService_Parallel_Close() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setParallelism(2);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload());
+    // close before all the messages have been consumed.
+    try (CloseableIterable<AdaptrisMessage> i = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+      Iterator<AdaptrisMessage> iter = i.iterator();
+      assertTrue(iter.hasNext());
+      assertNotNull(iter.next());
+    }
+  }
+
+  @Test(expected = CoreException.class)
+  public void testSplit_Parallel_NotFound() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document/x");
+    splitter.setParallelism(2);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload());
+    splitter.splitMessage(msg);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testSplit_Parallel_InvalidJson() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setParallelism(2);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"envelope\":{\"document\":[{\"a\":1},{\"a\":2},{\"a\": ");
+    try (CloseableIterable<AdaptrisMessage> i = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+      for (AdaptrisMessage m : i) {
+        assertNotNull(m);
+      }
+    }
+  }
+
+  @Test
+  public void testSplit_Parallel_Failure() throws Exception {
+    String json = "{\"envelope\": {\"document\": [{\"id\": 1}, {\"id\": 2, \"padding\": \"" + StringUtils.repeat('x', 200)
+        + "\"}, {\"id\": 3}]}}";
+    for (int parallelism : new int[] {0, 2}) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+      splitter.setParallelism(parallelism);
+      splitter.getJsonStreamingConfig().withMaxSplitElementSize(100L);
+      try (CloseableIterable<AdaptrisMessage> i = CloseableIterable.ensureCloseable(splitter.splitMessage(
+          AdaptrisMessageFactory.getDefaultInstance().newMessage(json)))) {
+        toList(i);
+        fail();
+      } catch (RuntimeException expected) {
+        // the same failure as the sequential split, not wrapped again.
+        assertEquals(CoreException.class, expected.getCause().getClass());
+      }
+    }
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    assertEquals(0, splitter.prefetch());
+    assertNull(splitter.getPrefetch());
+    splitter.setPrefetch(-1);
+    assertEquals(0, splitter.prefetch());
+    splitter.setPrefetch(2);
+    assertEquals(2, splitter.prefetch());
+    StringBuilder json = new StringBuilder("{\"envelope\":{\"document\":[");
+    for (int i = 0; i < 100; i++) {
+      json.append(i > 0 ? "," : "").append("{\"nested\":").append(i).append("}");
+    }
+    json.append("]}}");
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(json.toString());
+    msg.addMetadata("hello", "world");
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(100, list.size());
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(String.format("{\"document\":{\"nested\":%d}}", i), list.get(i).getContent());
+      assertEquals("world", list.get(i).getMetadataValue("hello"));
+    }
+  }
+
+  @Test
+  public void testPrefetch_Close() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setPrefetch(1);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload());
+    try (CloseableIterable<AdaptrisMessage> i = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+      Iterator<AdaptrisMessage> iter = i.iterator();
+      assertTrue(iter.hasNext());
+      assertNotNull(iter.next());
+    }
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testPrefetch_InvalidJson() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setPrefetch(2);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"envelope\":{\"document\":[{\"a\":1},{\"a\":2},{\"a\": ");
+    try (CloseableIterable<AdaptrisMessage> i = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+      for (AdaptrisMessage m : i) {
+        assertNotNull(m);
+      }
+    }
+  }
+
+  @Test
+  public void testCheckpoint_Resume() throws Exception {
+    for (int parallelism : new int[] {0, 2}) {
+      for (int batch : new int[] {1, 3}) {
+        InMemoryCheckpointStore store = new InMemoryCheckpointStore();
+        JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+        splitter.setCheckpointStore(store);
+        splitter.setCheckpointInterval(2);
+        splitter.setParallelism(parallelism);
+        splitter.setBatchSize(batch);
+        assertEquals(2, splitter.checkpointInterval());
+        AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(documents(20));
+        List<String> contents = new ArrayList<>();
+        // fail while processing the 4th split message.
+        try (CloseableIterable<AdaptrisMessage> i = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+          for (AdaptrisMessage m : i) {
+            if (contents.size() == 3) {
+              break;
+            }
+            contents.add(m.getContent());
+          }
+        }
+        SplitCheckpoint checkpoint = store.checkpoints.get(msg.getUniqueId());
+        assertEquals(3 * batch, checkpoint.getIndex());
+        List<AdaptrisMessage> resumed = toList(splitter.splitMessage(msg));
+        resumed.forEach(m -> contents.add(m.getContent()));
+        JsonStreamingSplitter uncheckpointed = new JsonStreamingSplitter("/envelope/document");
+        uncheckpointed.setBatchSize(batch);
+        assertEquals(toList(uncheckpointed.splitMessage(msg)).stream().map(AdaptrisMessage::getContent)
+            .collect(Collectors.toList()), contents);
+        // complete, so the checkpoint is removed.
+        assertTrue(store.checkpoints.isEmpty());
+      }
+    }
+  }
+
+  @Test
+  public void testCheckpoint_Prefetch() throws Exception {
+    InMemoryCheckpointStore store = new InMemoryCheckpointStore();
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setCheckpointStore(store);
+    splitter.setCheckpointInterval(1);
+    splitter.setPrefetch(5);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(documents(20));
+    try (CloseableIterable<AdaptrisMessage> i = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+      Iterator<AdaptrisMessage> iter = i.iterator();
+      iter.next();
+      iter.next();
+      // the producer is ahead of the consumer, but only what has been processed is committed.
+      assertTrue(iter.hasNext());
+      assertEquals(2, store.checkpoints.get(msg.getUniqueId()).getIndex());
+    }
+    assertEquals(2, store.checkpoints.get(msg.getUniqueId()).getIndex());
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(18, list.size());
+    assertEquals("{\"document\":{\"nested\":2}}", list.get(0).getContent());
+  }
+
+  @Test
+  public void testCheckpoint_Interval() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    assertNull(splitter.getCheckpointInterval());
+    assertEquals(1000, splitter.checkpointInterval());
+    splitter.setCheckpointInterval(0);
+    assertEquals(1, splitter.checkpointInterval());
+  }
+
+  @Test(expected = CoreException.class)
+  public void testCheckpoint_Verbatim() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setCheckpointStore(new InMemoryCheckpointStore());
+    splitter.setVerbatim(true);
+    splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(VERBATIM_PAYLOAD));
+  }
+
+  @Test
+  public void testVerbatim() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    assertFalse(splitter.verbatim());
+    splitter.setVerbatim(true);
+    assertTrue(splitter.verbatim());
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(VERBATIM_PAYLOAD);
+    msg.addMetadata("hello", "world");
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(4, list.size());
+    assertEquals("{\"document\":{\"nested\": 1.0e3, \"array\" : [5,6,7],\"text\":\"}]\\\"{[\"}}", list.get(0).getContent());
+    assertEquals("{\"document\":{\"nested\":\"0\"}}", list.get(1).getContent());
+    assertEquals("{\"document\":\"scalar\"}", list.get(2).getContent());
+    assertEquals("{\"document\":12}", list.get(3).getContent());
+    assertEquals("world", list.get(0).getMetadataValue("hello"));
+  }
+
+  @Test
+  public void testSmallBuffer() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      // smaller than each split message, so the pooled buffer has to grow.
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+      splitter.setBufferSize(16);
+      splitter.getJsonStreamingConfig().setEngine(engine);
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("{\"envelope\":{\"document\":[{\"text\":\""
+          + StringUtils.repeat("\\u00e9\\u20ac\\ud83d\\ude00", 200) + "\"},{\"text\":\"x\"}]}}");
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+      assertEquals(2, list.size());
+      JSONAssert.assertEquals("{\"document\":{\"text\":\"" + StringUtils.repeat("\u00e9\u20ac\ud83d\ude00", 200) + "\"}}",
+          new String(list.get(0).getPayload(), StandardCharsets.UTF_8), JSONCompareMode.STRICT_ORDER);
+      JSONAssert.assertEquals("{\"document\":{\"text\":\"x\"}}", list.get(1).getContent(),
+          JSONCompareMode.STRICT_ORDER);
+    }
+  }
+
+  @Test
+  public void testMemoryMappedInput() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+      assertFalse(splitter.memoryMappedInput());
+      splitter.setMemoryMappedInput(true);
+      assertTrue(splitter.memoryMappedInput());
+      splitter.getJsonStreamingConfig().setEngine(engine);
+      AdaptrisMessage msg = new FileBackedMessageFactory().newMessage(payload());
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+      assertEquals(3, list.size());
+      JSONAssert.assertEquals("{\"document\":{\"nested\":0,\"array\":[5,6,7],\"object\":{\"something\":true}}}",
+          list.get(0).getContent(), JSONCompareMode.STRICT_ORDER);
+      JSONAssert.assertEquals("{\"document\":{\"nested\":2}}", list.get(2).getContent(), JSONCompareMode.STRICT_ORDER);
+    }
+  }
+
+  @Test
+  public void testMemoryMappedInput_Verbatim() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setMemoryMappedInput(true);
+    splitter.setVerbatim(true);
+    AdaptrisMessage msg = new FileBackedMessageFactory().newMessage(VERBATIM_PAYLOAD);
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(4, list.size());
+    assertEquals("{\"document\":{\"nested\":\"0\"}}", list.get(1).getContent());
+  }
+
+  @Test(expected = CoreException.class)
+  public void testMemoryMappedInput_PathNotFound() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/missing");
+    splitter.setMemoryMappedInput(true);
+    splitter.splitMessage(new FileBackedMessageFactory().newMessage(payload()));
+  }
+
+  @Test
+  public void testStrictPath() throws Exception {
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+      assertFalse(splitter.strictPath());
+      splitter.setStrictPath(true);
+      assertTrue(splitter.strictPath());
+      splitter.getJsonStreamingConfig().setEngine(engine);
+      JsonStreamingSplitter lenient = new JsonStreamingSplitter("/envelope/document");
+      lenient.getJsonStreamingConfig().setEngine(engine);
+      List<AdaptrisMessage> expected = toList(lenient.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(payload())));
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(payload())));
+      assertEquals(3, list.size());
+      for (int i = 0; i < list.size(); i++) {
+        assertEquals(expected.get(i).getContent(), list.get(i).getContent());
+      }
+    }
+  }
+
+  @Test
+  public void testStrictPath_SkipsContent() throws Exception {
+    // The document within "skip" would be split without strict path; and nothing after the array is read.
+    String json = "{\"envelope\": {\"skip\": {\"document\": [{\"a\": [1, {\"b\": null}]}], \"x\": \"y\"},"
+        + "\"document\": [{\"id\": 1}, {\"id\": 2}], \"trailer\": {\"document\": {\"id\": 3}}}} [[[ not json";
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+      splitter.setStrictPath(true);
+      splitter.getJsonStreamingConfig().setEngine(engine);
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(json)));
+      assertEquals(2, list.size());
+      JSONAssert.assertEquals("{\"document\":{\"id\":1}}", list.get(0).getContent(), JSONCompareMode.STRICT_ORDER);
+      JSONAssert.assertEquals("{\"document\":{\"id\":2}}", list.get(1).getContent(), JSONCompareMode.STRICT_ORDER);
+    }
+  }
+
+  @Test
+  public void testStrictPath_IntermediateArray() throws Exception {
+    String json = "{\"envelope\": {\"batch\": [{\"document\": {\"id\": 1}, \"other\": 1},"
+        + "{\"other\": 2}, {\"document\": [{\"id\": 2}, {\"id\": 3}]}]}}";
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/batch/document");
+      splitter.setStrictPath(true);
+      splitter.getJsonStreamingConfig().setEngine(engine);
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(json)));
+      assertEquals(3, list.size());
+      JSONAssert.assertEquals("{\"document\":{\"id\":3}}", list.get(2).getContent(), JSONCompareMode.STRICT_ORDER);
+    }
+  }
+
+  @Test(expected = CoreException.class)
+  public void testStrictPath_NotFound() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setStrictPath(true);
+    splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"envelope\": {\"other\": {\"document\": [1, 2]}}}"));
+  }
+
+  @Test
+  public void testStrictPath_Verbatim() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setStrictPath(true);
+    splitter.setVerbatim(true);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(VERBATIM_PAYLOAD + " [[ not json");
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(4, list.size());
+    assertEquals("{\"document\":12}", list.get(3).getContent());
+  }
+
+  @Test
+  public void testVerbatim_NotUtf8() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/caf\u00e9");
+    splitter.setVerbatim(true);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"envelope\":{\"caf\u00e9\":[{\"a\":\"\u00e9\"},{\"a\":2}]}}", "ISO-8859-1");
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(2, list.size());
+    // the split messages are always written as UTF-8.
+    JSONAssert.assertEquals("{\"caf\u00e9\":{\"a\":\"\u00e9\"}}",
+        new String(list.get(0).getPayload(), StandardCharsets.UTF_8), JSONCompareMode.STRICT);
+  }
+
+  @Test
+  public void testVerbatim_WrapWithArray() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setVerbatim(true);
+    splitter.setWrapWithArray(true);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(VERBATIM_PAYLOAD);
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(4, list.size());
+    assertEquals("{\"document\":[{\"nested\":\"0\"}]}", list.get(1).getContent());
+  }
+
+  @Test
+  public void testVerbatim_MatchesDefault() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setVerbatim(true);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload());
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(3, list.size());
+    JSONAssert.assertEquals("{\"document\":{\"nested\":0,\"array\":[5,6,7],\"object\":{\"something\":true}}}",
+        list.get(0).getContent(), JSONCompareMode.STRICT_ORDER);
+    JSONAssert.assertEquals("{\"document\":{\"nested\":1,\"value\":\"Another\"}}",
+        list.get(1).getContent(), JSONCompareMode.STRICT_ORDER);
+    JSONAssert.assertEquals("{\"document\":{\"nested\":2}}", list.get(2).getContent(), JSONCompareMode.STRICT_ORDER);
+  }
+
+  @Test
+  public void testVerbatim_Inception() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document/nested");
+    splitter.setVerbatim(true);
+    splitter.setBufferSize(7);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload());
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(3, list.size());
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(String.format("{\"nested\":%s}", i), list.get(i).getContent());
+    }
+  }
+
+  @Test
+  public void testVerbatim_Parallel() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setVerbatim(true);
+    splitter.setParallelism(2);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(VERBATIM_PAYLOAD);
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(4, list.size());
+    assertEquals("{\"document\":12}", list.get(3).getContent());
+  }
+
+  @Test(expected = CoreException.class)
+  public void testVerbatim_NotFound() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document/x");
+    splitter.setVerbatim(true);
+    splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(payload()));
+  }
+
+  @Test
+  public void testVerbatim_NotFound_Suppressed() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document/x");
+    splitter.setVerbatim(true);
+    splitter.setSuppressPathNotFound(true);
+    assertEquals(0, toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(payload()))).size());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testVerbatim_Truncated() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setVerbatim(true);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"envelope\":{\"document\":[{\"a\":1},{\"a\":");
+    try (CloseableIterable<AdaptrisMessage> i = CloseableIterable.ensureCloseable(splitter.splitMessage(msg))) {
+      for (AdaptrisMessage m : i) {
+        assertNotNull(m);
+      }
+    }
+  }
+
+  @Test
+  public void testBatchSize() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    assertEquals(1, splitter.batchSize());
+    assertEquals(0, splitter.maxBatchBytes());
+    splitter.setBatchSize(0);
+    assertEquals(1, splitter.batchSize());
+    splitter.setBatchSize(10);
+    splitter.setMaxBatchBytes(1024L);
+    assertEquals(10, splitter.batchSize());
+    assertEquals(1024, splitter.maxBatchBytes());
+  }
+
+  @Test
+  public void testDoService_Batch() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setBatchSize(2);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload());
+    msg.addMetadata("hello", "world");
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(2, list.size());
+    JSONAssert.assertEquals("{\"document\":[{\"nested\":0,\"array\":[5,6,7],\"object\":{\"something\":true}},"
+        + "{\"nested\":1,\"value\":\"Another\"}]}", list.get(0).getContent(), JSONCompareMode.STRICT_ORDER);
+    JSONAssert.assertEquals("{\"document\":[{\"nested\":2}]}", list.get(1).getContent(), JSONCompareMode.STRICT_ORDER);
+    assertEquals("world", list.get(1).getMetadataValue("hello"));
+  }
+
+  @Test
+  public void testDoService_Batch_MaxBytes() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setBatchSize(10);
+    splitter.setMaxBatchBytes(10L);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload());
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(3, list.size());
+    JSONAssert.assertEquals("{\"document\":[{\"nested\":2}]}", list.get(2).getContent(), JSONCompareMode.STRICT_ORDER);
+    splitter.setMaxBatchBytes(200L);
+    splitter.setParallelism(2);
+    list = toList(splitter.splitMessage(msg));
+    assertEquals(2, list.size());
+  }
+
+  @Test
+  public void testDoService_Batch_Parallel() throws Exception {
+    JsonStreamingSplitter sequential = new JsonStreamingSplitter("/envelope/document");
+    sequential.setBatchSize(2);
+    JsonStreamingSplitter parallel = new JsonStreamingSplitter("/envelope/document");
+    parallel.setBatchSize(2);
+    parallel.setParallelism(2);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload());
+    List<AdaptrisMessage> expected = toList(sequential.splitMessage(msg));
+    List<AdaptrisMessage> list = toList(parallel.splitMessage(msg));
+    assertEquals(2, list.size());
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(expected.get(i).getContent(), list.get(i).getContent());
+    }
+  }
+
+  @Test
+  public void testDoService_Batch_SameNameElsewhere() throws Exception {
+    String json = "{\"envelope\":{\"document\":[{\"a\":1},{\"a\":2}],\"other\":{\"document\":{\"a\":3}}}}";
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setBatchSize(10);
+    for (int parallelism : new int[] {0, 2}) {
+      splitter.setParallelism(parallelism);
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(json)));
+      assertEquals(2, list.size());
+      JSONAssert.assertEquals("{\"document\":[{\"a\":1},{\"a\":2}]}", list.get(0).getContent(),
+          JSONCompareMode.STRICT_ORDER);
+      JSONAssert.assertEquals("{\"document\":[{\"a\":3}]}", list.get(1).getContent(), JSONCompareMode.STRICT_ORDER);
+    }
+  }
+
+  @Test
+  public void testVerbatim_Batch() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setVerbatim(true);
+    splitter.setBatchSize(3);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(VERBATIM_PAYLOAD);
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(2, list.size());
+    assertEquals("{\"document\":[12]}", list.get(1).getContent());
+    splitter.setMaxBatchBytes(30L);
+    splitter.setParallelism(2);
+    list = toList(splitter.splitMessage(msg));
+    assertEquals(3, list.size());
+    assertEquals("{\"document\":[{\"nested\":\"0\"},\"scalar\"]}", list.get(1).getContent());
+  }
+
+  @Test
+  public void testJsonLines() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/ignored");
+    splitter.getJsonStreamingConfig().setJsonLines(true);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON_LINES);
+    msg.addMetadata("key", "value");
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(4, list.size());
+    assertEquals("{\"id\":1}", list.get(0).getContent());
+    assertEquals("[2]", list.get(1).getContent());
+    assertEquals("\"three\"", list.get(2).getContent());
+    assertEquals("value", list.get(3).getMetadataValue("key"));
+  }
+
+  @Test
+  public void testJsonLines_NotUtf8() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/ignored");
+    splitter.getJsonStreamingConfig().setJsonLines(true);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"caf\u00e9\":1}\n\"\u20ac\"\n", "UTF-16");
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(2, list.size());
+    assertEquals("UTF-8", list.get(0).getContentEncoding());
+    assertEquals("{\"caf\u00e9\":1}", list.get(0).getContent());
+    assertEquals("\"\u20ac\"", list.get(1).getContent());
+  }
+
+  @Test
+  public void testJsonLines_Batch() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/ignored");
+    splitter.getJsonStreamingConfig().setJsonLines(true);
+    splitter.setBatchSize(3);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON_LINES);
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(2, list.size());
+    assertEquals("{\"id\":1}\n[2]\n\"three\"", list.get(0).getContent());
+    splitter.setWrapWithArray(true);
+    splitter.setParallelism(2);
+    list = toList(splitter.splitMessage(msg));
+    assertEquals(2, list.size());
+    assertEquals("[{\"id\":1},[2],\"three\"]", list.get(0).getContent());
+    assertEquals("[{\"id\":4}]", list.get(1).getContent());
+  }
+
+  @Test
+  public void testJsonLines_Empty() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/ignored");
+    splitter.getJsonStreamingConfig().setJsonLines(true);
+    try {
+      splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage("\n\n"));
+      fail();
+    } catch (CoreException expected) {
+    }
+    splitter.setSuppressPathNotFound(true);
+    assertEquals(0, toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(""))).size());
+  }
+
+  @Test(expected = CoreException.class)
+  public void testJsonLines_Checkpoint() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/ignored");
+    splitter.getJsonStreamingConfig().setJsonLines(true);
+    splitter.setCheckpointStore(new InMemoryCheckpointStore());
+    splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON_LINES));
+  }
+
+  @Test
+  public void testConcatenated() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/ignored");
+    splitter.getJsonStreamingConfig().setConcatenated(true);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"id\":1}{\"id\":\"}{\"}[2] 3\"four\"");
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+    assertEquals(5, list.size());
+    assertEquals("{\"id\":1}", list.get(0).getContent());
+    assertEquals("{\"id\":\"}{\"}", list.get(1).getContent());
+    assertEquals("[2]", list.get(2).getContent());
+    assertEquals("3", list.get(3).getContent());
+    assertEquals("\"four\"", list.get(4).getContent());
+    splitter.setBatchSize(2);
+    splitter.setWrapWithArray(true);
+    list = toList(splitter.splitMessage(msg));
+    assertEquals(3, list.size());
+    assertEquals("[{\"id\":1},{\"id\":\"}{\"}]", list.get(0).getContent());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testConcatenated_Truncated() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/ignored");
+    splitter.getJsonStreamingConfig().setConcatenated(true);
+    toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage("{\"id\":1}{\"id\"")));
+  }
+
+  @Test
+  public void testVerbatim_StructuralIndex() throws Exception {
+    JsonStreamingSplitter plain = new JsonStreamingSplitter("/envelope/document");
+    plain.setVerbatim(true);
+    JsonStreamingSplitter indexed = new JsonStreamingSplitter("/envelope/document");
+    indexed.setVerbatim(true);
+    indexed.setStructuralIndex(true);
+    indexed.setBufferSize(4);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(VERBATIM_PAYLOAD);
+    List<AdaptrisMessage> expected = toList(plain.splitMessage(msg));
+    for (int i = 0; i < 3; i++) {
+      List<AdaptrisMessage> list = toList(indexed.splitMessage(msg));
+      assertEquals(expected.size(), list.size());
+      for (int j = 0; j < list.size(); j++) {
+        assertEquals(expected.get(j).getContent(), list.get(j).getContent());
+      }
+      // the first split doesn't build the index.
+      assertEquals(i > 0, JsonStructuralIndex.cached(msg) != null);
+    }
+    // the same index is used for a different path.
+    JsonStructuralIndex index = JsonStructuralIndex.cached(msg);
+    indexed.setPath("/envelope/document/nested");
+    plain.setPath("/envelope/document/nested");
+    assertEquals(toList(plain.splitMessage(msg)).size(), toList(indexed.splitMessage(msg)).size());
+    assertSame(index, JsonStructuralIndex.cached(msg));
+  }
+
+  @Test
+  public void testSpill() throws Exception {
+    String large = StringUtils.repeat("x", 20000);
+    String json = "{\"envelope\":{\"document\":[{\"small\":1},{\"large\":\"" + large + "\"},{\"small\":2}]}}";
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+      splitter.getJsonStreamingConfig().setEngine(engine);
+      splitter.setSpillThreshold(1024L);
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(json);
+      msg.addMetadata("key", "value");
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(msg));
+      assertEquals(3, list.size());
+      assertFalse(list.get(0) instanceof FileBackedMessage);
+      assertTrue(list.get(1) instanceof FileBackedMessage);
+      assertEquals("{\"document\":{\"large\":\"" + large + "\"}}", list.get(1).getContent());
+      assertEquals("value", list.get(1).getMetadataValue("key"));
+      assertEquals("{\"document\":{\"small\":2}}", list.get(2).getContent());
+      splitter.setVerbatim(true);
+      splitter.setParallelism(2);
+      list = toList(splitter.splitMessage(msg));
+      assertTrue(list.get(1) instanceof FileBackedMessage);
+      assertEquals("{\"document\":{\"large\":\"" + large + "\"}}", list.get(1).getContent());
+    }
+  }
+
+  @Test
+  public void testPathExpression() throws Exception {
+    String json = "{\"orders\": [{\"status\": \"open\", \"lines\": [{\"sku\": \"a\"}, {\"sku\": \"b\"}]},"
+        + "{\"status\": \"closed\", \"lines\": {\"sku\": \"c\"}},"
+        + "{\"lines\": {\"sku\": \"d\"}, \"status\": \"open\"}], \"archive\": {\"lines\": {\"sku\": \"e\"}}}";
+    for (JsonStreamingEngine engine : JsonStreamingEngine.values()) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/orders[status='open']/lines");
+      splitter.getJsonStreamingConfig().setEngine(engine);
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(json)));
+      assertEquals(2, list.size());
+      JSONAssert.assertEquals("{\"lines\":{\"sku\":\"b\"}}", list.get(1).getContent(), JSONCompareMode.STRICT_ORDER);
+      splitter.setPath("//lines");
+      assertEquals(5, toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(json)))
+          .size());
+      splitter.setPath("/*/lines");
+      list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(json)));
+      assertEquals(5, list.size());
+      JSONAssert.assertEquals("{\"lines\":{\"sku\":\"e\"}}", list.get(4).getContent(), JSONCompareMode.STRICT_ORDER);
+    }
+  }
+
+  @Test
+  public void testPathExpression_MatchesDefault() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("//document");
+    JsonStreamingSplitter expected = new JsonStreamingSplitter("/envelope/document");
+    for (int parallelism : new int[] {0, 2}) {
+      splitter.setParallelism(parallelism);
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(payload())));
+      List<AdaptrisMessage> expectedList = toList(expected.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(payload())));
+      assertEquals(expectedList.size(), list.size());
+      for (int i = 0; i < list.size(); i++) {
+        JSONAssert.assertEquals(expectedList.get(i).getContent(), list.get(i).getContent(), JSONCompareMode.STRICT);
+      }
+    }
+  }
+
+  @Test
+  public void testPathExpression_Batch() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/*");
+    splitter.setBatchSize(2);
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage(payload())));
+    assertEquals(2, list.size());
+    JSONAssert.assertEquals("{\"document\":[{\"nested\":2}]}", list.get(1).getContent(), JSONCompareMode.STRICT);
+  }
+
+  @Test
+  public void testPathExpression_Nested() throws Exception {
+    String json = "{\"record\": [{\"id\": 1, \"child\": {\"record\": {\"id\": 2}}}, {\"id\": 3}]}";
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("//record");
+    for (int parallelism : new int[] {0, 2}) {
+      splitter.setParallelism(parallelism);
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(json)));
+      assertEquals(2, list.size());
+      JSONAssert.assertEquals("{\"record\":{\"id\":1,\"child\":{\"record\":{\"id\":2}}}}", list.get(0).getContent(),
+          JSONCompareMode.STRICT);
+      JSONAssert.assertEquals("{\"record\":{\"id\":3}}", list.get(1).getContent(), JSONCompareMode.STRICT);
+    }
+  }
+
+  @Test
+  public void testPathExpression_NotFound() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("//missing");
+    try {
+      splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(payload()));
+      fail();
+    } catch (CoreException expected) {
+      assertTrue(expected.getMessage().contains("//missing"));
+    }
+    splitter.setSuppressPathNotFound(true);
+    assertEquals(0, toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage(payload()))).size());
+  }
+
+  @Test(expected = CoreException.class)
+  public void testPathExpression_Verbatim() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("//document");
+    splitter.setVerbatim(true);
+    splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(payload()));
+  }
+
+  @Test
+  public void testMaxSplitElementSize() throws Exception {
+    String json = "{\"envelope\": {\"document\": [{\"id\": 1}, {\"id\": 2, \"padding\": \"" + StringUtils.repeat('x', 200)
+        + "\"}, {\"id\": 3}]}}";
+    for (String path : new String[] {"/envelope/document", "//document"}) {
+      for (int parallelism : new int[] {0, 2}) {
+        JsonStreamingSplitter splitter = new JsonStreamingSplitter(path);
+        splitter.setParallelism(parallelism);
+        splitter.getJsonStreamingConfig().withMaxSplitElementSize(100L);
+        assertSplitFails(splitter, json, "maximum size");
+        splitter.getJsonStreamingConfig().withMaxSplitElementSize(1000L);
+        assertEquals(3, toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(json)))
+            .size());
+      }
+    }
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.setVerbatim(true);
+    splitter.getJsonStreamingConfig().withMaxSplitElementSize(100L);
+    assertSplitFails(splitter, json, "maximum size");
+  }
+
+  @Test
+  public void testInputLimits() throws Exception {
+    String json = "{\"envelope\": {\"document\": [{\"id\": \"" + StringUtils.repeat('x', 200) + "\"}]}}";
+    for (boolean verbatim : new boolean[] {false, true}) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+      splitter.setVerbatim(verbatim);
+      splitter.getJsonStreamingConfig().withMaxTokenLength(100);
+      assertSplitFails(splitter, json, "maximum length");
+      splitter.getJsonStreamingConfig().withMaxTokenLength(null).withMaxDocumentSize(100L);
+      assertSplitFails(splitter, json, "maximum size");
+    }
+  }
+
+  @Test
+  public void testSchema() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.getJsonStreamingConfig().withSchema(schema(DOCUMENT_SCHEMA));
+    assertEquals(5, toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage(documents(5)))).size());
+    String invalid = documents(5).replace("{\"nested\":3}", "{\"nested\":\"3\"}");
+    assertSplitFails(splitter, invalid, "does not match the schema at /envelope/document/3/nested");
+    splitter.setStrictPath(true);
+    assertSplitFails(splitter, invalid, "does not match the schema at /envelope/document/3/nested");
+    splitter.setStrictPath(false);
+    splitter.setVerbatim(true);
+    assertSplitFails(splitter, documents(5), "not supported");
+  }
+
+  @Test
+  public void testSchema_RejectInvalidChildren() throws Exception {
+    String json = documents(6).replace("{\"nested\":1}", "{\"nested\":\"1\"}")
+        .replace("{\"nested\":4}", "{\"nested\":4,\"extra\":[1]}");
+    for (int parallelism : new int[] {0, 2}) {
+      JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+      splitter.getJsonStreamingConfig().withSchema(schema(DOCUMENT_SCHEMA));
+      splitter.setRejectInvalidChildren(true);
+      splitter.setParallelism(parallelism);
+      List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+          .newMessage(json)));
+      assertEquals(4, list.size());
+      assertEquals(Arrays.asList(0, 2, 3, 5), list.stream().map(m -> Integer.valueOf(m.getContent()
+          .replaceAll("[^0-9]", ""))).collect(Collectors.toList()));
+      splitter.setBatchSize(2);
+      list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(json)));
+      assertEquals(2, list.size());
+      JSONAssert.assertEquals("{\"document\":[{\"nested\":0},{\"nested\":2}]}", list.get(0).getContent(),
+          JSONCompareMode.STRICT);
+      JSONAssert.assertEquals("{\"document\":[{\"nested\":3},{\"nested\":5}]}", list.get(1).getContent(),
+          JSONCompareMode.STRICT);
+    }
+  }
+
+  @Test
+  public void testSchema_RejectInvalidChildren_Outside() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.getJsonStreamingConfig().withSchema(schema(DOCUMENT_SCHEMA));
+    splitter.setRejectInvalidChildren(true);
+    assertSplitFails(splitter, documents(2).replace("\"id\":-1", "\"id\":\"x\""),
+        "does not match the schema at /envelope/header/id");
+    // rejecting a child doesn't stop the rest of the document from being validated.
+    assertSplitFails(splitter, documents(2).replace("\"nested\":", "\"nested\":-").replace("[1,2]", "[]"),
+        "does not match the schema at /envelope/trailer");
+    splitter.setCheckpointStore(new InMemoryCheckpointStore());
+    assertSplitFails(splitter, documents(2), "not supported");
+  }
+
+  @Test
+  public void testCompressedInput() throws Exception {
+    byte[] gzip = JsonCompressionTest.gzip(documents(4));
+    for (JsonCompression compression : new JsonCompression[] {JsonCompression.GZIP, JsonCompression.DETECT}) {
+      for (String path : new String[] {"/envelope/document", "//document"}) {
+        for (boolean verbatim : new boolean[] {false, true}) {
+          JsonStreamingSplitter splitter = new JsonStreamingSplitter(path);
+          splitter.getJsonStreamingConfig().withInputCompression(compression);
+          splitter.setVerbatim(verbatim && !path.startsWith("//"));
+          splitter.setStructuralIndex(true);
+          splitter.setMemoryMappedInput(true);
+          List<AdaptrisMessage> list = toList(splitter.splitMessage(new FileBackedMessageFactory().newMessage(gzip)));
+          assertEquals(4, list.size());
+          JSONAssert.assertEquals("{\"document\":{\"nested\":3}}", list.get(3).getContent(), JSONCompareMode.STRICT);
+          splitter.setMemoryMappedInput(false);
+          splitter.setStrictPath(true);
+          list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(gzip)));
+          assertEquals(4, list.size());
+        }
+      }
+    }
+    // uncompressed input is still read if it's being detected.
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+    splitter.getJsonStreamingConfig().withInputCompression(JsonCompression.DETECT);
+    assertEquals(4, toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage(documents(4)))).size());
+    splitter.getJsonStreamingConfig().withInputCompression(JsonCompression.GZIP);
+    assertSplitFails(splitter, documents(4), "GZIP");
+  }
+
+  @Test
+  public void testCompressedInput_JsonLines() throws Exception {
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter();
+    splitter.getJsonStreamingConfig().withJsonLines(true).withInputCompression(JsonCompression.GZIP);
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage(JsonCompressionTest.gzip("{\"a\":1}\n{\"a\":2}\n"))));
+    assertEquals(2, list.size());
+    assertEquals("{\"a\":2}", list.get(1).getContent());
+  }
+
+  @Test
+  public void testCompressedOutput() throws Exception {
+    String json = documents(4);
+    for (int parallelism : new int[] {0, 2}) {
+      for (boolean verbatim : new boolean[] {false, true}) {
+        JsonStreamingSplitter splitter = new JsonStreamingSplitter("/envelope/document");
+        splitter.getJsonStreamingConfig().withOutputCompression(JsonCompression.GZIP);
+        splitter.setVerbatim(verbatim);
+        splitter.setParallelism(parallelism);
+        splitter.setBatchSize(2);
+        List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+            .newMessage(json)));
+        assertEquals(2, list.size());
+        JSONAssert.assertEquals("{\"document\":[{\"nested\":2},{\"nested\":3}]}",
+            JsonCompressionTest.gunzip(list.get(1).getPayload()), JSONCompareMode.STRICT);
+      }
+    }
+    JsonStreamingSplitter splitter = new JsonStreamingSplitter("//document");
+    splitter.getJsonStreamingConfig().withOutputCompression(JsonCompression.GZIP)
+        .withInputCompression(JsonCompression.GZIP);
+    List<AdaptrisMessage> list = toList(splitter.splitMessage(AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage(JsonCompressionTest.gzip(json))));
+    assertEquals(4, list.size());
+    JSONAssert.assertEquals("{\"document\":{\"nested\":0}}", JsonCompressionTest.gunzip(list.get(0).getPayload()),
+        JSONCompareMode.STRICT);
+  }
+
+  private static final String DOCUMENT_SCHEMA = "{\"type\": \"object\", \"required\": [\"envelope\"], \"properties\": {"
+      + "\"envelope\": {\"properties\": {\"header\": {\"properties\": {\"id\": {\"type\": \"integer\"}}},"
+      + "\"trailer\": {\"minItems\": 1},"
+      + "\"document\": {\"items\": {\"additionalProperties\": false,"
+      + "\"properties\": {\"nested\": {\"type\": \"integer\", \"minimum\": 0}}}}}}}}";
+
+  private static String schema(String schema) throws IOException {
+    File file = File.createTempFile("schema", ".json");
+    file.deleteOnExit();
+    FileUtils.writeStringToFile(file, schema, StandardCharsets.UTF_8);
+    return file.getCanonicalPath();
+  }
+
+  private static void assertSplitFails(JsonStreamingSplitter splitter, String json, String message) {
+    try {
+      List<AdaptrisMessage> list = new ArrayList<>();
+      try (CloseableIterable<AdaptrisMessage> messages = CloseableIterable.ensureCloseable(splitter.splitMessage(
+          AdaptrisMessageFactory.getDefaultInstance().newMessage(json)))) {
+        for (AdaptrisMessage msg : messages) {
+          list.add(msg);
+        }
+      }
+      fail("Expected failure, got " + list.size() + " messages");
+    } catch (Exception expected) {
+      Throwable t = expected;
+      while (t.getCause() != null && !StringUtils.contains(t.getMessage(), message)) {
+        t = t.getCause();
+      }
+      assertTrue(expected.toString(), StringUtils.contains(t.getMessage(), message));
+    }
+  }
+
+  private static final String VERBATIM_PAYLOAD = "{\"envelope\": {\"skip\": {\"document\": [99]}, \"document\": [ "
+      + "{\"nested\": 1.0e3, \"array\" : [5,6,7],\"text\":\"}]\\\"{[\"},\n{\"nested\":\"0\"}, \"scalar\", 12 ] } }";
+
   private static List<AdaptrisMessage> toList(Iterable<AdaptrisMessage> iter) {
     if (iter instanceof List) {
       return (List<AdaptrisMessage>) iter;
@@ -128,6 +1125,8 @@ public class JsonStreamingSplitterTest {
     return result;
   }
 
+  private static final String JSON_LINES = "{\"id\":1}\r\n[2]\n\n\"three\"\n{\"id\":4}\n";
+
   private String payload() {
     return "{\n" +
         "  \"envelope\": {\n" +
@@ -154,4 +1153,31 @@ public class JsonStreamingSplitterTest {
         "  }\n" +
         "}";
   }
-}
\ No newline at end of file
+
+  private static String documents(int count) {
+    StringBuilder json = new StringBuilder("{\"envelope\":{\"header\":{\"id\":-1},\"document\":[");
+    for (int i = 0; i < count; i++) {
+      json.append(i > 0 ? ", " : "").append("{\"nested\":").append(i).append("}");
+    }
+    return json.append("],\"trailer\":[1,2]}}").toString();
+  }
+
+  private static class InMemoryCheckpointStore implements SplitCheckpointStore {
+    private final Map<String, SplitCheckpoint> checkpoints = new HashMap<>();
+
+    @Override
+    public SplitCheckpoint load(String id) {
+      return checkpoints.get(id);
+    }
+
+    @Override
+    public void save(String id, SplitCheckpoint checkpoint) {
+      checkpoints.put(id, checkpoint);
+    }
+
+    @Override
+    public void delete(String id) {
+      checkpoints.remove(id);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+
+public class JsonStructuralIndexTest {
+
+  // Long enough that the strings and brackets fall in different places in each 8 byte word.
+  private static final String JSON = "{\"plain\":\"no structure in this string at all\","
+      + "\"tricky\":\"{[\\\"]}\\\\\",\"array\":[1,{\"a\":[]},\"]\"],\"é\":{\"nested\":{\"x\":\"\\\\\"}}}";
+
+  @Test
+  public void testBuild() throws Exception {
+    for (int size : new int[] {1, 7, 8, 9, 16, 8192}) {
+      JsonStructuralIndex index = build(JSON, size);
+      assertNotNull(index);
+      assertEquals(6, index.size());
+      assertIndexed(index, JSON);
+    }
+  }
+
+  @Test
+  public void testUnbalanced() throws Exception {
+    assertNull(build("{\"a\":[1,2}", 8192));
+    assertNull(build("{\"a\":1}}", 8192));
+    assertNull(build("{\"a\":\"1}", 8192));
+    assertEquals(0, build("\"scalar\"", 8192).size());
+  }
+
+  @Test
+  public void testNotAStart() throws Exception {
+    JsonStructuralIndex index = build(JSON, 8192);
+    assertEquals(-1, index.end(1));
+    assertEquals(-1, index.end(JSON.length() + 10));
+  }
+
+  @Test
+  public void testCached() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON, StandardCharsets.UTF_8.name());
+    assertNull(JsonStructuralIndex.cached(msg));
+    JsonStructuralIndex index = JsonStructuralIndex.build(msg, msg.getInputStream(), 8192);
+    assertSame(index, JsonStructuralIndex.cached(msg));
+    msg.setContent("{}", StandardCharsets.UTF_8.name());
+    assertNull(JsonStructuralIndex.cached(msg));
+  }
+
+  @Test
+  public void testReused() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON, StandardCharsets.UTF_8.name());
+    assertFalse(JsonStructuralIndex.reused(msg));
+    assertTrue(JsonStructuralIndex.reused(msg));
+    assertNull(JsonStructuralIndex.cached(msg));
+    msg.setContent("{}", StandardCharsets.UTF_8.name());
+    assertFalse(JsonStructuralIndex.reused(msg));
+    assertEquals(-1, build(JSON, 8192).end(Integer.MAX_VALUE + 1L));
+  }
+
+  // Check every object and array against a naive scan.
+  private static void assertIndexed(JsonStructuralIndex index, String json) {
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    boolean inString = false;
+    boolean escaped = false;
+    for (int i = 0; i < bytes.length; i++) {
+      byte c = bytes[i];
+      if (inString) {
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == '"') {
+          inString = false;
+        }
+      } else if (c == '"') {
+        inString = true;
+      } else if (c == '{' || c == '[') {
+        long end = index.end(i);
+        assertEquals(c == '{' ? '}' : ']', bytes[(int) end]);
+        assertEquals(-1, index.end(i + 1));
+      }
+    }
+    assertEquals(bytes.length - 1, index.end(0));
+  }
+
+  private static JsonStructuralIndex build(String json, int bufferSize) throws IOException {
+    return JsonStructuralIndex.build(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), bufferSize);
+  }
+}
@@ -0,0 +1,41 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+
+public class JsonTypeHintsTest {
+
+  @Test
+  public void testParse() throws Exception {
+    JsonTypeHints hints = JsonTypeHints.parse(new StringReader(
+        "# comment\n\n  array   /a/b  \nnumber /a/b\nBOOLEAN /a/c\narray //d\nnumber //d\n"));
+    JsonTypeHints.Node a = hints.root("a");
+    assertNotNull(a);
+    assertNull(hints.root("b"));
+    assertEquals(0, hints.types(a, "a"));
+    assertEquals(JsonTypeHints.ARRAY | JsonTypeHints.NUMBER, hints.types(a.child("b"), "b"));
+    assertEquals(JsonTypeHints.BOOLEAN, hints.types(a.child("c"), "c"));
+    assertNull(a.child("d"));
+    assertEquals(JsonTypeHints.ARRAY | JsonTypeHints.NUMBER, hints.types(null, "d"));
+    assertEquals(0, hints.types(null, "e"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownType() throws Exception {
+    JsonTypeHints.parse(new StringReader("string /a/b"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidPath() throws Exception {
+    JsonTypeHints.parse(new StringReader("array a/b"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidRule() throws Exception {
+    JsonTypeHints.parse(new StringReader("array"));
+  }
+}
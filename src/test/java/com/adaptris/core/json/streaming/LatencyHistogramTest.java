@@ -0,0 +1,44 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    for (long v : new long[] {0, 1, 7, 8, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+      int index = LatencyHistogram.index(v);
+      assertTrue(v + " <= " + LatencyHistogram.highestValue(index), v <= LatencyHistogram.highestValue(index));
+      assertTrue(index == 0 || v > LatencyHistogram.highestValue(index - 1));
+      // within 12.5%
+      assertTrue(LatencyHistogram.highestValue(index) - v <= v / 8);
+    }
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.index(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentile(99));
+    assertEquals(0, histogram.mean());
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    assertEquals(1000, histogram.count());
+    assertEquals(500, histogram.mean());
+    assertEquals(1000, histogram.max());
+    assertWithin(500, histogram.percentile(50));
+    assertWithin(990, histogram.percentile(99));
+    assertEquals(1000, histogram.percentile(100));
+    assertEquals(1, histogram.percentile(0));
+    histogram.reset();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.max());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(expected + " ~ " + actual, actual >= expected && actual - expected <= expected / 8);
+  }
+}
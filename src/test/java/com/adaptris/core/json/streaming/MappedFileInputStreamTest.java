@@ -0,0 +1,66 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.lms.FileBackedMessageFactory;
+
+public class MappedFileInputStreamTest {
+
+  @Test
+  public void testCanMap() throws Exception {
+    assertTrue(MappedFileInputStream.canMap(new FileBackedMessageFactory().newMessage()));
+    assertFalse(MappedFileInputStream.canMap(AdaptrisMessageFactory.getDefaultInstance().newMessage()));
+  }
+
+  @Test
+  public void testRead() throws Exception {
+    AdaptrisMessage msg = new FileBackedMessageFactory().newMessage("{\"hello\":\"wörld\"}", "UTF-8");
+    try (InputStream in = MappedFileInputStream.open(msg)) {
+      assertEquals(msg.getSize(), in.available());
+      assertEquals('{', in.read());
+      assertEquals(1, in.skip(1));
+      assertEquals("hello\":\"wörld\"}", IOUtils.toString(in, StandardCharsets.UTF_8));
+      assertEquals(0, in.available());
+      assertEquals(-1, in.read());
+      assertEquals(-1, in.read(new byte[10], 0, 10));
+    }
+  }
+
+  @Test
+  public void testRead_EmptyFile() throws Exception {
+    File file = File.createTempFile("mapped", ".json");
+    try (InputStream in = new MappedFileInputStream(file)) {
+      assertEquals(0, in.available());
+      assertEquals(-1, in.read());
+      assertEquals(0, in.skip(10));
+    } finally {
+      FileUtils.deleteQuietly(file);
+    }
+  }
+
+  @Test
+  public void testRead_Bytes() throws Exception {
+    File file = File.createTempFile("mapped", ".json");
+    byte[] bytes = new byte[100000];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+    Files.write(file.toPath(), bytes);
+    try (InputStream in = new MappedFileInputStream(file)) {
+      assertArrayEquals(bytes, IOUtils.toByteArray(in));
+    } finally {
+      FileUtils.deleteQuietly(file);
+    }
+  }
+}
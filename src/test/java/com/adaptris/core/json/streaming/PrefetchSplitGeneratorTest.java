@@ -0,0 +1,115 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.util.CloseableIterable;
+
+public class PrefetchSplitGeneratorTest {
+
+  @Test
+  public void testPrefetch() throws Exception {
+    Messages messages = new Messages(10);
+    try (PrefetchSplitGenerator generator = new PrefetchSplitGenerator(messages, 3)) {
+      // the producer works ahead, but no further than the prefetch depth (plus the one it is blocked on).
+      assertTrue(messages.created(4));
+      Thread.sleep(50);
+      assertEquals(4, messages.count.get());
+      int i = 0;
+      for (AdaptrisMessage msg : generator) {
+        assertEquals(String.valueOf(i++), msg.getContent());
+      }
+      assertEquals(10, i);
+      assertTrue(messages.closed.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    Messages messages = new Messages(Integer.MAX_VALUE);
+    PrefetchSplitGenerator generator = new PrefetchSplitGenerator(messages, 2);
+    Iterator<AdaptrisMessage> iterator = generator.iterator();
+    assertTrue(iterator.hasNext());
+    assertEquals("0", iterator.next().getContent());
+    generator.close();
+    // the source is closed by the time close() returns.
+    assertEquals(0, messages.closed.getCount());
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testIteratorTwice() throws Exception {
+    try (PrefetchSplitGenerator generator = new PrefetchSplitGenerator(new Messages(1), 1)) {
+      generator.iterator();
+      generator.iterator();
+    }
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    Messages messages = new Messages(5);
+    messages.failAt = 2;
+    try (PrefetchSplitGenerator generator = new PrefetchSplitGenerator(messages, 2)) {
+      Iterator<AdaptrisMessage> iterator = generator.iterator();
+      iterator.next();
+      iterator.next();
+      try {
+        iterator.hasNext();
+        throw new AssertionError("Expected failure");
+      } catch (IllegalStateException expected) {
+        assertEquals("failed at 2", expected.getMessage());
+      }
+      assertFalse(iterator.hasNext());
+    }
+  }
+
+  private static class Messages implements CloseableIterable<AdaptrisMessage>, Iterator<AdaptrisMessage> {
+    private final int total;
+    private final AtomicInteger count = new AtomicInteger();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private int failAt = -1;
+
+    Messages(int total) {
+      this.total = total;
+    }
+
+    boolean created(int n) throws InterruptedException {
+      for (int i = 0; i < 100 && count.get() < n; i++) {
+        Thread.sleep(10);
+      }
+      return count.get() >= n;
+    }
+
+    @Override
+    public Iterator<AdaptrisMessage> iterator() {
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return count.get() < total;
+    }
+
+    @Override
+    public AdaptrisMessage next() {
+      int i = count.getAndIncrement();
+      if (i == failAt) {
+        throw new IllegalStateException("failed at " + i);
+      }
+      return AdaptrisMessageFactory.getDefaultInstance().newMessage(String.valueOf(i));
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed.countDown();
+    }
+  }
+}
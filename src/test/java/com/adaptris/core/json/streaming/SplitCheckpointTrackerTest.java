@@ -0,0 +1,58 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.io.StringReader;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class SplitCheckpointTrackerTest {
+
+  private static final String ARRAY = "{\"header\":{\"document\":\"x\"},\"envelope\":{\"document\":"
+      + "[ {\"a\":[1,{\"b\":\"}]\"}]}, 2 , \"three\\\"\",null ], \"trailer\":true}}";
+
+  @Test
+  public void testArray() throws Exception {
+    SplitCheckpointTracker tracker = SplitCheckpointTracker.start(new StringReader(ARRAY), "/envelope/document");
+    assertEquals(ARRAY, IOUtils.toString(tracker));
+    SplitCheckpoint first = tracker.checkpoint(1);
+    assertEquals(ARRAY.indexOf("]}") + 2, first.getOffset());
+    assertEquals("{\"envelope\":{\"document\":[", first.getStructure());
+    // the end of the literal, not the following space.
+    assertEquals(ARRAY.indexOf(" 2 ") + 2, tracker.checkpoint(2).getOffset());
+    assertNull(tracker.checkpoint(2));
+    SplitCheckpoint last = tracker.checkpoint(4);
+    assertEquals(4, last.getIndex());
+    assertEquals(ARRAY.indexOf("null") + 4, last.getOffset());
+    assertNull(tracker.checkpoint(5));
+  }
+
+  @Test
+  public void testObject() throws Exception {
+    String json = "{\"envelope\":{\"document\":{\"a\":1},\"document\":{\"b\":2},\"other\":3}}";
+    SplitCheckpointTracker tracker = SplitCheckpointTracker.start(new StringReader(json), "/envelope/document");
+    IOUtils.toString(tracker);
+    SplitCheckpoint first = tracker.checkpoint(1);
+    assertEquals(json.indexOf("},") + 1, first.getOffset());
+    assertEquals("{\"envelope\":{", first.getStructure());
+    assertEquals(2, tracker.checkpoint(2).getIndex());
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    SplitCheckpointTracker tracker = SplitCheckpointTracker.start(new StringReader(ARRAY), "/envelope/document");
+    IOUtils.toString(tracker);
+    SplitCheckpoint checkpoint = tracker.checkpoint(2);
+    SplitCheckpointTracker resumed = SplitCheckpointTracker.resume(new StringReader(ARRAY), "/envelope/document",
+        checkpoint);
+    assertEquals("{\"envelope\":{\"document\":[ \"three\\\"\",null ], \"trailer\":true}}", IOUtils.toString(resumed));
+    // offsets and indexes carry on from the checkpoint.
+    SplitCheckpoint next = resumed.checkpoint(3);
+    assertEquals(3, next.getIndex());
+    assertEquals(ARRAY.indexOf("\",null") + 1, next.getOffset());
+    assertEquals(ARRAY.indexOf("null") + 4, resumed.checkpoint(4).getOffset());
+    // and resuming from a resumed checkpoint works the same way.
+    assertEquals("{\"envelope\":{\"document\":[null ], \"trailer\":true}}",
+        IOUtils.toString(SplitCheckpointTracker.resume(new StringReader(ARRAY), "/envelope/document", next)));
+  }
+}
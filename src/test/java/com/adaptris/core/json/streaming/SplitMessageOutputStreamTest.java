@@ -0,0 +1,74 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.lms.FileBackedMessage;
+import com.adaptris.core.lms.FileBackedMessageFactory;
+
+public class SplitMessageOutputStreamTest {
+
+  private static final byte[] SMALL = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] LARGE = StringUtils.repeat("{\"a\":1}", 100).getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testBelowThreshold() throws Exception {
+    SplitMessageOutputStream out = output(SMALL.length);
+    out.write(SMALL);
+    AdaptrisMessage msg = out.message();
+    assertFalse(out.spilled());
+    assertFalse(msg instanceof FileBackedMessage);
+    assertArrayEquals(SMALL, msg.getPayload());
+  }
+
+  @Test
+  public void testSpill() throws Exception {
+    SplitMessageOutputStream out = output(64);
+    out.write(LARGE, 0, 10);
+    assertFalse(out.spilled());
+    for (int i = 10; i < LARGE.length; i++) {
+      out.write(LARGE[i]);
+    }
+    assertTrue(out.spilled());
+    AdaptrisMessage msg = out.message();
+    assertTrue(msg instanceof FileBackedMessage);
+    assertArrayEquals(LARGE, msg.getPayload());
+  }
+
+  @Test
+  public void testNoThreshold() throws Exception {
+    SplitMessageOutputStream out = output(0);
+    out.write(LARGE);
+    AdaptrisMessage msg = out.message();
+    assertFalse(out.spilled());
+    assertFalse(msg instanceof FileBackedMessage);
+    assertArrayEquals(LARGE, msg.getPayload());
+  }
+
+  @Test
+  public void testCompressed() throws Exception {
+    SplitMessageOutputStream out = output(64, JsonCompression.GZIP);
+    out.write(LARGE);
+    AdaptrisMessage msg = out.message();
+    // the threshold is measured after compression, and repeated JSON compresses well.
+    assertFalse(out.spilled());
+    assertArrayEquals(LARGE, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(msg.getPayload()))));
+  }
+
+  private static SplitMessageOutputStream output(long threshold) throws Exception {
+    return output(threshold, JsonCompression.NONE);
+  }
+
+  private static SplitMessageOutputStream output(long threshold, JsonCompression compression) throws Exception {
+    return new SplitMessageOutputStream(AdaptrisMessageFactory.getDefaultInstance(), new FileBackedMessageFactory(),
+        threshold, compression);
+  }
+}
@@ -0,0 +1,83 @@
+package com.adaptris.core.json.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+public class SplitOutputBufferTest {
+
+  @Test
+  public void testWriteTo() throws Exception {
+    // bigger than the minimum size, with multibyte characters that straddle the byte buffer.
+    String text = StringUtils.repeat("héllo wörld €😀 ", 100);
+    SplitOutputBuffer buffer = SplitOutputBuffer.acquire(0);
+    try {
+      buffer.write(text);
+      buffer.write('!');
+      assertEquals(text.length() + 1, buffer.size());
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      buffer.writeTo(out);
+      assertEquals(text + "!", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    } finally {
+      buffer.release();
+    }
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  public void testStreamTo() throws Exception {
+    // odd lengths so that surrogate pairs straddle the end of the buffer.
+    String text = StringUtils.repeat("x😀", 1000) + StringUtils.repeat("😀yz", 1000);
+    SplitOutputBuffer buffer = SplitOutputBuffer.acquire(257);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      buffer.streamTo(out);
+      for (int i = 0; i < text.length(); i += 3) {
+        buffer.write(text, i, Math.min(3, text.length() - i));
+      }
+      assertTrue(out.size() > 0);
+      assertTrue(buffer.size() <= 257);
+      buffer.writeTo(out);
+      assertEquals(text, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    } finally {
+      buffer.release();
+    }
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    SplitOutputBuffer buffer = SplitOutputBuffer.acquire(1024);
+    buffer.write("hello");
+    SplitOutputBuffer nested = SplitOutputBuffer.acquire(1024);
+    assertNotSame(buffer, nested);
+    nested.release();
+    buffer.release();
+    assertSame(buffer, SplitOutputBuffer.acquire(1024));
+    buffer.release();
+    // a different size replaces the pooled buffer.
+    SplitOutputBuffer other = SplitOutputBuffer.acquire(2048);
+    assertNotSame(buffer, other);
+    other.release();
+    assertSame(other, SplitOutputBuffer.acquire(2048));
+    other.release();
+  }
+
+  @Test
+  public void testReleaseAfterGrowing() throws Exception {
+    SplitOutputBuffer buffer = SplitOutputBuffer.acquire(256);
+    String text = StringUtils.repeat('x', 256 * 20);
+    buffer.write(text);
+    buffer.release();
+    buffer = SplitOutputBuffer.acquire(256);
+    buffer.write("abc");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    buffer.release();
+    assertEquals("abc", out.toString("UTF-8"));
+  }
+}
@@ -0,0 +1,93 @@
+package com.adaptris.core.json.streaming;
+
+import static com.adaptris.core.json.streaming.JsonConversionTest.JSON_MESSAGE;
+import static com.adaptris.core.json.streaming.JsonConversionTest.XML_MESSAGE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.stubs.DefectiveMessageFactory;
+import com.adaptris.core.stubs.DefectiveMessageFactory.WhenToBreak;
+import com.adaptris.core.transform.json.TransformationDirection;
+
+public class StaxCursorCopierTest {
+
+  static final List<String> XML_DOCUMENTS = Arrays.asList(XML_MESSAGE,
+      "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><root a=\"1\" b=\"two\"><child>text</child><empty/></root>",
+      "<?xml version=\"1.0\"?>\n<!-- comment -->\n<root>\n  <?xml-multiple item?>\n  <item>1</item>\n  <item>2.5</item>\n"
+          + "  <item>true</item>\n  <item><![CDATA[<cdata>]]></item>\n</root>",
+      "<ns:root xmlns:ns=\"http://example.com/ns\" xmlns=\"http://example.com/default\"><ns:a ns:attr=\"x\">1</ns:a>"
+          + "<b>&lt;escaped&amp;&gt;</b><c>null</c></ns:root>",
+      "<root><outer><inner>in</inner></outer><unicode>\u00e9\u4e2d\u6587</unicode></root>");
+
+  static final List<String> JSON_DOCUMENTS = Arrays.asList(JSON_MESSAGE,
+      "{\"root\":{\"a\":1,\"b\":2.5,\"c\":true,\"d\":null,\"e\":\"\\\"quoted\\\" \\u00e9\",\"f\":[1,2,{\"g\":\"h\"}]}}",
+      "{\"root\":{\"@attr\":\"value\",\"$\":\"text\"}}",
+      "{\"root\":{\"empty\":{},\"emptyArray\":[],\"nested\":{\"deeper\":{\"deepest\":[{\"x\":1},{\"x\":2}]}}}}");
+
+  static final List<JsonStreamingConfigBuilder> CONFIGS = Arrays.asList(new JsonStreamingConfigBuilder(),
+      new JsonStreamingConfigBuilder().withAutoArray(true).withAutoPrimitive(true),
+      new JsonStreamingConfigBuilder().withPrettyPrint(true).withMultipleProcessingInstruction(false),
+      new JsonStreamingConfigBuilder().withAutoArray(true).withPrettyPrint(true).withNamespaceDeclarations(false));
+
+  @Test
+  public void testXmlToJson_SameOutput() throws Exception {
+    for (JsonStreamingConfigBuilder config : CONFIGS) {
+      for (String xml : XML_DOCUMENTS) {
+        assertSameOutput(config, xml, TransformationDirection.XML_TO_JSON);
+      }
+    }
+  }
+
+  @Test
+  public void testJsonToXml_SameOutput() throws Exception {
+    for (JsonStreamingConfigBuilder config : CONFIGS) {
+      for (String json : JSON_DOCUMENTS) {
+        assertSameOutput(config, json, TransformationDirection.JSON_TO_XML);
+      }
+    }
+  }
+
+  @Test
+  public void testVirtualRoot_SameOutput() throws Exception {
+    JsonStreamingConfigBuilder config = new JsonStreamingConfigBuilder().withVirtualRoot("root");
+    assertSameOutput(config, "{\"a\":1,\"b\":{\"c\":[1,2,3]}}", TransformationDirection.JSON_TO_XML);
+    assertSameOutput(config, "<root><a>1</a><b><c>1</c><c>2</c></b></root>", TransformationDirection.XML_TO_JSON);
+  }
+
+  @Test
+  public void testCursorTranscoding() throws Exception {
+    AdvancedStreamingTransformationDriver driver = new AdvancedStreamingTransformationDriver();
+    assertFalse(driver.cursorTranscoding());
+    assertTrue(driver.withCursorTranscoding(true).cursorTranscoding());
+    assertFalse(new DefaultStreamingTransformationDriver().cursorTranscoding());
+  }
+
+  @Test(expected = ServiceException.class)
+  public void testCursorTranscoding_Exception() throws Exception {
+    AdaptrisMessage msg = new DefectiveMessageFactory(WhenToBreak.OUTPUT).newMessage(XML_MESSAGE);
+    new AdvancedStreamingTransformationDriver().withCursorTranscoding(true).transform(msg,
+        TransformationDirection.XML_TO_JSON);
+  }
+
+  @Test(expected = ServiceException.class)
+  public void testCursorTranscoding_InvalidInput() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("{\"a\": ");
+    new AdvancedStreamingTransformationDriver().withCursorTranscoding(true).transform(msg,
+        TransformationDirection.JSON_TO_XML);
+  }
+
+  private static void assertSameOutput(JsonStreamingConfigBuilder config, String input, TransformationDirection dir)
+      throws Exception {
+    AdaptrisMessage events = AdaptrisMessageFactory.getDefaultInstance().newMessage(input, "UTF-8");
+    AdaptrisMessage cursor = AdaptrisMessageFactory.getDefaultInstance().newMessage(input, "UTF-8");
+    new AdvancedStreamingTransformationDriver().withConfig(config).transform(events, dir);
+    new AdvancedStreamingTransformationDriver().withConfig(config).withCursorTranscoding(true).transform(cursor, dir);
+    assertArrayEquals(input, events.getPayload(), cursor.getPayload());
+  }
+}
@@ -4,12 +4,20 @@ import static com.adaptris.core.json.streaming.JsonConversionTest.JSON_MESSAGE;
 import static com.adaptris.core.json.streaming.JsonConversionTest.XML_MESSAGE;
 import static com.adaptris.core.json.streaming.JsonConversionTest.unwrap;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.junit.Test;
 import org.w3c.dom.Document;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.lms.FileBackedMessageFactory;
 import com.adaptris.core.ServiceException;
 import com.adaptris.core.stubs.DefectiveMessageFactory;
 import com.adaptris.core.stubs.DefectiveMessageFactory.WhenToBreak;
@@ -81,4 +89,71 @@ public class TransformationDriverTest {
     assertEquals(3, xpath.selectNodeList(d, "/envelope/document").getLength());
   }
 
+  @Test
+  public void testAdvanced_JsonToXml_UsesConfig() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON_MESSAGE);
+    AdvancedStreamingTransformationDriver driver = new AdvancedStreamingTransformationDriver().withConfig(
+        new JsonStreamingConfigBuilder().withMultipleProcessingInstruction(Boolean.FALSE));
+    driver.transform(msg, TransformationDirection.JSON_TO_XML);
+    assertFalse(msg.getContent().contains("xml-multiple"));
+  }
+
+  @Test
+  public void testAdvanced_JsonToXml_Schema() throws Exception {
+    File schema = File.createTempFile("schema", ".json");
+    schema.deleteOnExit();
+    FileUtils.writeStringToFile(schema, "{\"required\": [\"envelope\"], \"properties\": {\"envelope\": "
+        + "{\"properties\": {\"document\": {\"maxItems\": 3, \"items\": {\"maxProperties\": 1}}}}}}",
+        StandardCharsets.UTF_8);
+    for (boolean cursor : new boolean[] {false, true}) {
+      AdvancedStreamingTransformationDriver driver = new AdvancedStreamingTransformationDriver().withConfig(
+          new JsonStreamingConfigBuilder().withSchema(schema.getCanonicalPath())).withCursorTranscoding(cursor);
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(JSON_MESSAGE);
+      driver.transform(msg, TransformationDirection.JSON_TO_XML);
+      assertTrue(msg.getContent().contains("<three>3</three>"));
+      try {
+        driver.transform(AdaptrisMessageFactory.getDefaultInstance().newMessage(
+            JSON_MESSAGE.replace("]", ",{\"four\":\"4\"}]")), TransformationDirection.JSON_TO_XML);
+        fail();
+      } catch (ServiceException expected) {
+        assertTrue(ExceptionUtils.getStackTrace(expected).contains("/envelope/document: has more than 3 items"));
+      }
+      try {
+        driver.transform(AdaptrisMessageFactory.getDefaultInstance().newMessage(
+            JSON_MESSAGE.replace("{\"two\":\"2\"}", "{\"two\":\"2\",\"2b\":\"2\"}")),
+            TransformationDirection.JSON_TO_XML);
+        fail();
+      } catch (ServiceException expected) {
+        assertTrue(ExceptionUtils.getStackTrace(expected).contains("/envelope/document/1: has more than 1 properties"));
+      }
+    }
+  }
+
+  @Test
+  public void testAdvanced_Compression() throws Exception {
+    for (boolean cursor : new boolean[] {false, true}) {
+      AdvancedStreamingTransformationDriver driver = new AdvancedStreamingTransformationDriver().withConfig(
+          new JsonStreamingConfigBuilder().withInputCompression(JsonCompression.GZIP)
+              .withOutputCompression(JsonCompression.GZIP)).withCursorTranscoding(cursor);
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(
+          JsonCompressionTest.gzip(JSON_MESSAGE));
+      driver.transform(msg, TransformationDirection.JSON_TO_XML);
+      assertTrue(msg.getContent().contains("<three>3</three>"));
+      driver.transform(msg, TransformationDirection.XML_TO_JSON);
+      assertTrue(JsonCompressionTest.gunzip(msg.getPayload()).contains("\"three\":\"3\""));
+    }
+  }
+
+  @Test
+  public void testAdvanced_MemoryMappedInput() throws Exception {
+    AdaptrisMessage msg = new FileBackedMessageFactory().newMessage(JSON_MESSAGE);
+    AdvancedStreamingTransformationDriver driver = new AdvancedStreamingTransformationDriver()
+        .withConfig(new JsonStreamingConfigBuilder().withEngine(JsonStreamingEngine.JACKSON)).withMemoryMappedInput(true);
+    assertTrue(driver.memoryMappedInput());
+    driver.transform(msg, TransformationDirection.JSON_TO_XML);
+    XPath xpath = new XPath();
+    Document d = XmlHelper.createDocument(msg, DocumentBuilderFactoryBuilder.newInstance());
+    assertEquals(3, xpath.selectNodeList(d, "/envelope/document").getLength());
+  }
+
 }